@@ -10,8 +10,13 @@
  *******************************************************************************/
 package org.eclipse.compare.internal.core;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 
 
 /* Used to determine the change set responsible for each line */
@@ -23,11 +28,43 @@ public abstract class LCS {
 	private static final double POW_LIMIT = 1.5; // limit the time to
 													// D^POW_LIMIT
 
+	private static final int PARALLEL_THRESHOLD = 10000; // the minimum N + M of
+														// a subproblem that is
+														// computed in parallel
+
 	private int max_differences; // the maximum number of differences from
 									// each end to consider
 	
 	private int length;
 
+	private int parallelism = 1; // the maximum number of threads computing
+									// the LCS
+
+	private int forks; // the number of subproblems currently computed by
+						// other threads, guarded by this
+
+	/**
+	 * Sets the maximum number of threads used to compute the LCS. After the
+	 * middle snake has been found the two remaining subproblems are
+	 * independent; if they are large enough and a thread is available, the
+	 * first one is computed by a job while the current thread computes the
+	 * second one. The result is the same as when the LCS is computed by a
+	 * single thread.
+	 * <p>
+	 * The default is 1, i.e. the LCS is computed by the calling thread only.
+	 * Subclasses that are used with a parallelism greater than 1 must support
+	 * concurrent calls of {@link #isRangeEqual(int, int)} and
+	 * {@link #setLcs(int, int)}.
+	 * </p>
+	 * 
+	 * @param parallelism the maximum number of threads, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException();
+		this.parallelism = parallelism;
+	}
+
 	/**
 	 * Myers' algorithm for longest common subsequence. O((M + N)D) worst case
 	 * time, O(M + N + D^2) expected time, O(M + N) space
@@ -95,7 +132,9 @@ public abstract class LCS {
 	}
 
 	private boolean isCappingDisabled() {
-		return ComparePlugin.getDefault().isCappingDisabled();
+		// the plug-in is not available when running outside of OSGi
+		ComparePlugin plugin = ComparePlugin.getDefault();
+		return plugin != null && plugin.isCappingDisabled();
 	}
 
 	/**
@@ -123,7 +162,7 @@ public abstract class LCS {
 	private int lcs_rec(
 			int bottoml1, int topl1,
 			int bottoml2, int topl2, 
-			int[][] V, int[] snake, SubMonitor subMonitor) {
+			int[][] V, int[] snake, IProgressMonitor subMonitor) {
 
 		// check that both sequences are non-empty
 		if (bottoml1 > topl1 || bottoml2 > topl2) {
@@ -146,6 +185,14 @@ public abstract class LCS {
 		}
 
 		if (d > 1) {
+			if (startx - bottoml1 + starty - bottoml2 >= PARALLEL_THRESHOLD
+					&& topl1 - startx + topl2 - starty - 2 * len + 2 >= PARALLEL_THRESHOLD
+					&& acquireFork()) {
+				return len
+						+ lcs_fork(bottoml1, startx - 1, bottoml2, starty - 1,
+								startx + len, topl1, starty + len, topl2, V,
+								snake, subMonitor);
+			}
 			return len
 					+ lcs_rec(bottoml1, startx - 1, bottoml2, starty - 1, V, snake, subMonitor)
 					+ lcs_rec(startx + len, topl1, starty + len, topl2, V, snake, subMonitor);
@@ -166,12 +213,107 @@ public abstract class LCS {
 		return len;
 	}
 
-	private void worked(SubMonitor subMonitor, int work) {
+	/**
+	 * Computes the LCS of the two independent subproblems left over by a
+	 * middle snake. The 1st one is computed by a job with its own buffers, the
+	 * 2nd one by the current thread. The work done by the job is reported to
+	 * the monitor of the current thread once the job is finished since
+	 * progress monitors are not thread safe.
+	 * 
+	 * @return the sum of the lengths of the LCS of both subproblems
+	 */
+	private int lcs_fork(
+			final int bottoml1, final int topl1,
+			final int bottoml2, final int topl2,
+			int bottom2l1, int top2l1,
+			int bottom2l2, int top2l2,
+			int[][] V, int[] snake, final IProgressMonitor subMonitor) {
+		final ForkedProgressMonitor forkedMonitor = new ForkedProgressMonitor(subMonitor);
+		final int[] result = new int[1];
+		Job job = new Job(Messages.RangeComparatorLCS_0) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					int N = topl1 - bottoml1 + 1;
+					int M = topl2 - bottoml2 + 1;
+					result[0] = lcs_rec(bottoml1, topl1, bottoml2, topl2,
+							new int[2][N + M + 1], new int[3], forkedMonitor);
+					return Status.OK_STATUS;
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				} catch (RuntimeException e) {
+					forkedMonitor.exception = e;
+					return Status.CANCEL_STATUS;
+				} catch (Error e) {
+					forkedMonitor.exception = e;
+					return Status.CANCEL_STATUS;
+				} finally {
+					releaseFork();
+				}
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+
+		int length2;
+		try {
+			length2 = lcs_rec(bottom2l1, top2l1, bottom2l2, top2l2, V, snake, subMonitor);
+		} finally {
+			try {
+				job.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+		}
+		if (forkedMonitor.exception instanceof RuntimeException)
+			throw (RuntimeException) forkedMonitor.exception;
+		if (forkedMonitor.exception instanceof Error)
+			throw (Error) forkedMonitor.exception;
+		if (job.getResult() == Status.CANCEL_STATUS)
+			throw new OperationCanceledException();
+		worked(subMonitor, forkedMonitor.work);
+		return result[0] + length2;
+	}
+
+	private synchronized boolean acquireFork() {
+		if (this.forks + 1 >= this.parallelism)
+			return false;
+		this.forks++;
+		return true;
+	}
+
+	private synchronized void releaseFork() {
+		this.forks--;
+	}
+
+	private void worked(IProgressMonitor subMonitor, int work) {
 		if (subMonitor.isCanceled())
 			throw new OperationCanceledException();
 		subMonitor.worked(work);	
 	}
 
+	/*
+	 * Collects the work done by a job computing a subproblem, cancellation is
+	 * delegated to the monitor of the thread that forked the job.
+	 */
+	private static class ForkedProgressMonitor extends NullProgressMonitor {
+		private final IProgressMonitor parent;
+		int work;
+		Throwable exception;
+
+		ForkedProgressMonitor(IProgressMonitor parent) {
+			this.parent = parent;
+		}
+
+		public boolean isCanceled() {
+			return this.parent.isCanceled();
+		}
+
+		public void worked(int work) {
+			this.work += work;
+		}
+	}
+
 	/**
 	 * Helper function for Myers' LCS algorithm to find the middle snake for
 	 * l1[bottoml1..topl1] and l2[bottoml2..topl2] The x, y coodrdinates of the
@@ -197,7 +339,7 @@ public abstract class LCS {
 			int bottoml1, int topl1,
 			int bottoml2, int topl2, 
 			int[][] V, int[] snake,
-			SubMonitor subMonitor) {
+			IProgressMonitor subMonitor) {
 		int N = topl1 - bottoml1 + 1;
 		int M = topl2 - bottoml2 + 1;
 		// System.out.println("N: " + N + " M: " + M + " bottom: " + bottoml1 +
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core;
+
+/**
+ * A dictionary that interns the lines of one or more texts. Every distinct
+ * line is assigned a unique <code>int</code> id so that texts tokenized by the
+ * same table can be compared line by line with integer comparisons only.
+ * <p>
+ * Unlike {@link TextLineLCS#getTextLines(String)} no substring or line object
+ * is created while tokenizing, each line is only described by its id and its
+ * offsets in the original character sequence.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class TextLineTable {
+
+	private static final int INITIAL_CAPACITY = 256; // must be a power of 2
+
+	/*
+	 * Open addressing hash table, each slot holds the id of a line plus one so
+	 * that 0 can mean that the slot is empty
+	 */
+	private int[] slots;
+
+	// the hash code, source text and range of the first occurrence of each id
+	private int[] hashes;
+	private int[] sources;
+	private int[] starts;
+	private int[] ends;
+	private int size;
+
+	private CharSequence[] texts;
+	private int textCount;
+
+	public TextLineTable() {
+		this.slots = new int[INITIAL_CAPACITY * 2];
+		this.hashes = new int[INITIAL_CAPACITY];
+		this.sources = new int[INITIAL_CAPACITY];
+		this.starts = new int[INITIAL_CAPACITY];
+		this.ends = new int[INITIAL_CAPACITY];
+		this.texts = new CharSequence[2];
+	}
+
+	/**
+	 * Breaks the given text up into lines and interns them in this table. The
+	 * lines are delimited the same way as in
+	 * {@link TextLineLCS#getTextLines(String)}: '\n', '\r' and "\r\n" end a
+	 * line and there is always one more line than there are line delimiters.
+	 *
+	 * @param text the text to extract lines from
+	 * @return the lines of the text
+	 */
+	public Lines tokenize(CharSequence text) {
+		int source = addText(text);
+		int length = text.length();
+
+		// count the lines first so that the line arrays have the exact size
+		int count = 1;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				count++;
+			} else if (c == '\r') {
+				count++;
+				if (i + 1 < length && text.charAt(i + 1) == '\n')
+					i++;
+			}
+		}
+
+		int[] ids = new int[count];
+		int[] lineStarts = new int[count];
+		int[] lineEnds = new int[count];
+		int line = 0;
+		int begin = 0;
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r') {
+				lineStarts[line] = begin;
+				lineEnds[line] = i;
+				ids[line] = intern(text, source, begin, i, hash);
+				line++;
+				if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+					i++;
+				begin = i + 1;
+				hash = 0;
+			} else {
+				hash = 31 * hash + c;
+			}
+		}
+		// the last line, no more newline characters
+		lineStarts[line] = begin;
+		lineEnds[line] = length;
+		ids[line] = intern(text, source, begin, length, hash);
+		return new Lines(this, text, ids, lineStarts, lineEnds);
+	}
+
+	/**
+	 * Returns the number of distinct lines interned in this table.
+	 *
+	 * @return the number of distinct lines
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private int addText(CharSequence text) {
+		for (int i = 0; i < this.textCount; i++) {
+			if (this.texts[i] == text)
+				return i;
+		}
+		if (this.textCount == this.texts.length) {
+			CharSequence[] newTexts = new CharSequence[this.textCount * 2];
+			System.arraycopy(this.texts, 0, newTexts, 0, this.textCount);
+			this.texts = newTexts;
+		}
+		this.texts[this.textCount] = text;
+		return this.textCount++;
+	}
+
+	private int intern(CharSequence text, int source, int start, int end, int hash) {
+		int mask = this.slots.length - 1;
+		int index = mix(hash) & mask;
+		int slot;
+		while ((slot = this.slots[index]) != 0) {
+			int id = slot - 1;
+			if (this.hashes[id] == hash && regionMatches(id, text, start, end))
+				return id;
+			index = (index + 1) & mask;
+		}
+		int id = this.size;
+		if (id == this.hashes.length)
+			growEntries();
+		this.hashes[id] = hash;
+		this.sources[id] = source;
+		this.starts[id] = start;
+		this.ends[id] = end;
+		this.slots[index] = id + 1;
+		this.size++;
+		// keep the load factor of the slots below 1/2
+		if (this.size * 2 > this.slots.length)
+			rehash();
+		return id;
+	}
+
+	private boolean regionMatches(int id, CharSequence text, int start, int end) {
+		int length = end - start;
+		int otherStart = this.starts[id];
+		if (this.ends[id] - otherStart != length)
+			return false;
+		CharSequence other = this.texts[this.sources[id]];
+		for (int i = 0; i < length; i++) {
+			if (other.charAt(otherStart + i) != text.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private void growEntries() {
+		int capacity = this.hashes.length * 2;
+		this.hashes = grow(this.hashes, capacity);
+		this.sources = grow(this.sources, capacity);
+		this.starts = grow(this.starts, capacity);
+		this.ends = grow(this.ends, capacity);
+	}
+
+	private void rehash() {
+		int[] newSlots = new int[this.slots.length * 2];
+		int mask = newSlots.length - 1;
+		for (int id = 0; id < this.size; id++) {
+			int index = mix(this.hashes[id]) & mask;
+			while (newSlots[index] != 0)
+				index = (index + 1) & mask;
+			newSlots[index] = id + 1;
+		}
+		this.slots = newSlots;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	/*
+	 * Spreads the bits of String-like hash codes since only the low bits are
+	 * used to index the slots
+	 */
+	private static int mix(int hash) {
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return hash ^ (hash >>> 7) ^ (hash >>> 4);
+	}
+
+	/**
+	 * The lines of a text tokenized by a {@link TextLineTable}. Line
+	 * <code>i</code> is the range <code>[getStart(i), getEnd(i))</code> of
+	 * the original text, excluding the line delimiter.
+	 */
+	public static class Lines {
+		private final TextLineTable table;
+		private final CharSequence text;
+		final int[] ids;
+		private final int[] starts;
+		private final int[] ends;
+
+		Lines(TextLineTable table, CharSequence text, int[] ids, int[] starts, int[] ends) {
+			this.table = table;
+			this.text = text;
+			this.ids = ids;
+			this.starts = starts;
+			this.ends = ends;
+		}
+
+		/**
+		 * Returns the table the lines are interned in.
+		 *
+		 * @return the table the lines are interned in
+		 */
+		public TextLineTable getTable() {
+			return this.table;
+		}
+
+		/**
+		 * Returns the number of lines.
+		 *
+		 * @return the number of lines
+		 */
+		public int getLineCount() {
+			return this.ids.length;
+		}
+
+		/**
+		 * Returns the id of the given line. Two lines tokenized by the same
+		 * table have the same text if and only if they have the same id.
+		 *
+		 * @param line the line number, starting from 0
+		 * @return the id of the line
+		 */
+		public int getId(int line) {
+			return this.ids[line];
+		}
+
+		/**
+		 * Returns the offset of the first character of the given line.
+		 *
+		 * @param line the line number, starting from 0
+		 * @return the offset of the line in the original text
+		 */
+		public int getStart(int line) {
+			return this.starts[line];
+		}
+
+		/**
+		 * Returns the offset after the last character of the given line,
+		 * excluding the line delimiter.
+		 *
+		 * @param line the line number, starting from 0
+		 * @return the end offset of the line in the original text
+		 */
+		public int getEnd(int line) {
+			return this.ends[line];
+		}
+
+		/**
+		 * Returns the text of the given line. This creates a new string and is
+		 * not meant to be used while comparing lines.
+		 *
+		 * @param line the line number, starting from 0
+		 * @return the text of the line
+		 */
+		public String getText(int line) {
+			return this.text.subSequence(this.starts[line], this.ends[line]).toString();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core;
+
+/**
+ * An LCS of two texts that have been tokenized by the same
+ * {@link TextLineTable}. Lines are compared by their interned ids so no
+ * objects are allocated while the LCS is computed.
+ */
+public class TextLineTableLCS extends LCS {
+
+	private final int[] ids1;
+	private final int[] ids2;
+	private int[][] lcs;
+
+	public TextLineTableLCS(TextLineTable.Lines lines1, TextLineTable.Lines lines2) {
+		if (lines1.getTable() != lines2.getTable())
+			throw new IllegalArgumentException("Lines must be interned in the same table"); //$NON-NLS-1$
+		this.ids1 = lines1.ids;
+		this.ids2 = lines2.ids;
+	}
+
+	/**
+	 * Returns the line numbers of the longest common subsequence, where
+	 * result[0] contains line numbers of the 1st text and result[1] the
+	 * corresponding line numbers of the 2nd text. The chunks of the LCS are
+	 * shifted as far towards the front as possible, the same way as in
+	 * {@link TextLineLCS#getResult()}.
+	 *
+	 * @return the line numbers of the LCS in both texts
+	 */
+	public int[][] getResult() {
+		int length = getLength();
+		if (length == 0)
+			return new int[2][0];
+		int[][] result = new int[2][];
+
+		// compact and shift the result
+		result[0] = compactAndShiftLCS(this.lcs[0], length, this.ids1);
+		result[1] = compactAndShiftLCS(this.lcs[1], length, this.ids2);
+
+		return result;
+	}
+
+	protected int getLength2() {
+		return this.ids2.length;
+	}
+
+	protected int getLength1() {
+		return this.ids1.length;
+	}
+
+	protected boolean isRangeEqual(int i1, int i2) {
+		return this.ids1[i1] == this.ids2[i2];
+	}
+
+	protected void setLcs(int sl1, int sl2) {
+		// Add one to the values so that 0 can mean that the slot is empty
+		this.lcs[0][sl1] = sl1 + 1;
+		this.lcs[1][sl1] = sl2 + 1;
+	}
+
+	protected void initializeLcs(int length) {
+		this.lcs = new int[2][length];
+	}
+
+	/**
+	 * Takes an LCS result interspersed with empty slots, compacts it and shifts
+	 * the LCS chunks as far towards the front as possible.
+	 *
+	 * @param lcsSide the line numbers plus one of the LCS, 0 for empty slots
+	 * @param len the number of non-empty entries in lcsSide
+	 * @param ids the line ids of the original sequence
+	 * @return the compacted line numbers of the LCS
+	 */
+	private static int[] compactAndShiftLCS(int[] lcsSide, int len, int[] ids) {
+		int[] result = new int[len];
+
+		int j = 0;
+		while (lcsSide[j] == 0) {
+			j++;
+		}
+
+		result[0] = lcsSide[j] - 1;
+		j++;
+
+		for (int i = 1; i < len; i++) {
+			while (lcsSide[j] == 0) {
+				j++;
+			}
+
+			int next = result[i - 1] + 1;
+			int line = lcsSide[j] - 1;
+			if (ids[next] == ids[line]) {
+				result[i] = next;
+			} else {
+				result[i] = line;
+			}
+			j++;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.rangedifferencer;
+
+/**
+ * An extension to <code>IRangeComparator</code> that provides a hash code for
+ * each comparable entity.
+ * <p>
+ * The hash codes are used by the {@link RangeDifferencer#STRATEGY_HISTOGRAM}
+ * strategy to group equal entities without comparing every entity with every
+ * other one. Range comparators that do not implement this interface can still
+ * be used with that strategy but will be considerably slower on large inputs.
+ * </p>
+ * <p>
+ * Implementations must ensure that two entities for which
+ * <code>rangesEqual</code> returns <code>true</code> have the same hash
+ * code, also when the entities are taken from two different range comparators
+ * that are compared with each other.
+ * </p>
+ * <p>
+ * Clients may implement this interface.
+ * </p>
+ *
+ * @since org.eclipse.compare.core 3.6
+ */
+public interface IHashedRangeComparator extends IRangeComparator {
+
+	/**
+	 * Returns the hash code of the comparable entity at the given index.
+	 *
+	 * @param index the index of the comparable entity within this <code>IRangeComparator</code>
+	 * @return the hash code of the comparable entity
+	 */
+	int getRangeHash(int index);
+}
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.rangedifferencer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.compare.internal.core.LCS;
+import org.eclipse.compare.internal.core.Messages;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+
+/**
+ * Histogram diff, an extension of the patience diff algorithm. The longest
+ * common region is anchored on the entity that occurs least often in the
+ * first sequence and the regions before and after it are diffed recursively.
+ * Regions in which every common entity occurs too often are handed to Myers'
+ * LCS.
+ * <p>
+ * The entities of both comparators are first reduced to equivalence class
+ * numbers so that the rest of the algorithm only compares integers.
+ * </p>
+ */
+/* package */ class RangeComparatorHistogram {
+
+	/*
+	 * Entities that occur more often than this in a region are not used as
+	 * anchors, if a region only has such entities in common it is handed to
+	 * Myers' LCS
+	 */
+	private static final int MAX_CHAIN_LENGTH = 64;
+
+	private static final int FOUND = 0;
+	private static final int NO_COMMON_ENTITY = 1;
+	private static final int TOO_COMPLEX = 2;
+
+	private final IRangeComparator comparator1, comparator2;
+	private final int length1, length2;
+
+	// the equivalence class of every entity of both sequences
+	private int[] classes1;
+	private int[] classes2;
+
+	/*
+	 * For every entity of the 1st sequence, the index of the matching entity
+	 * of the 2nd sequence plus one so that 0 can mean that there is no match
+	 */
+	private int[] matches;
+
+	// the histogram of the region being diffed, indexed by equivalence class
+	private int[] counts;
+	private int[] heads;
+	// the next occurrence (plus one) of the same class in the 1st sequence
+	private int[] next;
+
+	// the region found by findRegion(...)
+	private int regionStart1, regionStart2, regionLength;
+
+	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		RangeComparatorHistogram histogram = new RangeComparatorHistogram(left, right);
+		SubMonitor monitor = SubMonitor.convert(pm, Messages.RangeComparatorLCS_0, 100);
+		try {
+			histogram.classify(monitor.newChild(30));
+			histogram.computeMatches(monitor.newChild(65));
+			return histogram.getDifferences(monitor.newChild(5), factory);
+		} finally {
+			if (pm != null)
+				pm.done();
+		}
+	}
+
+	public RangeComparatorHistogram(IRangeComparator comparator1, IRangeComparator comparator2) {
+		this.comparator1 = comparator1;
+		this.comparator2 = comparator2;
+		this.length1 = comparator1.getRangeCount();
+		this.length2 = comparator2.getRangeCount();
+	}
+
+	/*
+	 * Assigns an equivalence class to every entity. Entities are bucketed by
+	 * their hash code when both comparators provide one and are only compared
+	 * with the representatives of the classes in the same bucket.
+	 */
+	private void classify(SubMonitor subMonitor) {
+		try {
+			subMonitor.beginTask(null, this.length1 + this.length2);
+			int total = this.length1 + this.length2;
+			int capacity = 16;
+			while (capacity < total * 2)
+				capacity <<= 1;
+			int[] buckets = new int[capacity]; // first class of the bucket plus one
+			int[] classNext = new int[total]; // next class of the same bucket plus one
+			int[] classHashes = new int[total];
+			int[] representatives = new int[total]; // index plus one, negative for the 2nd sequence
+			int classCount = 0;
+
+			boolean hashed = this.comparator1 instanceof IHashedRangeComparator
+					&& this.comparator2 instanceof IHashedRangeComparator;
+			this.classes1 = new int[this.length1];
+			this.classes2 = new int[this.length2];
+			for (int side = 0; side < 2; side++) {
+				IRangeComparator comparator = side == 0 ? this.comparator1 : this.comparator2;
+				int[] classes = side == 0 ? this.classes1 : this.classes2;
+				for (int i = 0; i < classes.length; i++) {
+					int hash = hashed ? ((IHashedRangeComparator) comparator).getRangeHash(i) : 0;
+					int bucket = mix(hash) & (capacity - 1);
+					int found = -1;
+					for (int c = buckets[bucket] - 1; c >= 0; c = classNext[c] - 1) {
+						if (classHashes[c] == hash && isRepresentedBy(representatives[c], comparator, i)) {
+							found = c;
+							break;
+						}
+					}
+					if (found == -1) {
+						found = classCount++;
+						classHashes[found] = hash;
+						representatives[found] = side == 0 ? i + 1 : -(i + 1);
+						classNext[found] = buckets[bucket];
+						buckets[bucket] = found + 1;
+					}
+					classes[i] = found;
+					worked(subMonitor, 1);
+				}
+			}
+			this.counts = new int[classCount];
+			this.heads = new int[classCount];
+		} finally {
+			subMonitor.done();
+		}
+	}
+
+	private boolean isRepresentedBy(int representative, IRangeComparator comparator, int index) {
+		if (representative > 0)
+			return this.comparator1.rangesEqual(representative - 1, comparator, index);
+		return this.comparator2.rangesEqual(-representative - 1, comparator, index);
+	}
+
+	private void computeMatches(SubMonitor subMonitor) {
+		try {
+			subMonitor.beginTask(null, this.length1);
+			this.matches = new int[this.length1];
+			this.next = new int[this.length1];
+
+			// the regions still to be diffed, 4 ints per region
+			int[] stack = new int[64];
+			int top = 0;
+			stack[top++] = 0;
+			stack[top++] = this.length1;
+			stack[top++] = 0;
+			stack[top++] = this.length2;
+			while (top > 0) {
+				int end2 = stack[--top];
+				int start2 = stack[--top];
+				int end1 = stack[--top];
+				int start1 = stack[--top];
+
+				// the common prefix and suffix are always part of the result
+				while (start1 < end1 && start2 < end2 && this.classes1[start1] == this.classes2[start2]) {
+					this.matches[start1++] = ++start2;
+					worked(subMonitor, 1);
+				}
+				while (start1 < end1 && start2 < end2 && this.classes1[end1 - 1] == this.classes2[end2 - 1]) {
+					this.matches[--end1] = end2--;
+					worked(subMonitor, 1);
+				}
+				if (start1 == end1 || start2 == end2) {
+					worked(subMonitor, end1 - start1);
+					continue;
+				}
+
+				int result = findRegion(start1, end1, start2, end2);
+				if (result == NO_COMMON_ENTITY) {
+					worked(subMonitor, end1 - start1);
+					continue;
+				}
+				if (result == TOO_COMPLEX) {
+					new RegionLCS(start1, end1, start2, end2).longestCommonSubsequence(subMonitor.newChild(0));
+					worked(subMonitor, end1 - start1);
+					continue;
+				}
+
+				int regionEnd1 = this.regionStart1 + this.regionLength;
+				int regionEnd2 = this.regionStart2 + this.regionLength;
+				for (int i = 0; i < this.regionLength; i++) {
+					this.matches[this.regionStart1 + i] = this.regionStart2 + i + 1;
+				}
+				worked(subMonitor, this.regionLength);
+
+				if (top + 8 > stack.length) {
+					int[] newStack = new int[stack.length * 2];
+					System.arraycopy(stack, 0, newStack, 0, top);
+					stack = newStack;
+				}
+				stack[top++] = start1;
+				stack[top++] = this.regionStart1;
+				stack[top++] = start2;
+				stack[top++] = this.regionStart2;
+				stack[top++] = regionEnd1;
+				stack[top++] = end1;
+				stack[top++] = regionEnd2;
+				stack[top++] = end2;
+			}
+		} finally {
+			subMonitor.done();
+		}
+	}
+
+	/*
+	 * Finds the longest common region of [start1, end1) and [start2, end2)
+	 * that contains the entities with the lowest occurrence count in the 1st
+	 * sequence.
+	 */
+	private int findRegion(int start1, int end1, int start2, int end2) {
+		int[] classes1 = this.classes1;
+		int[] classes2 = this.classes2;
+
+		// build the histogram of the region of the 1st sequence
+		for (int i = end1 - 1; i >= start1; i--) {
+			int c = classes1[i];
+			this.next[i] = this.heads[c];
+			this.heads[c] = i + 1;
+			this.counts[c]++;
+		}
+
+		boolean hasCommon = false;
+		int lowCount = MAX_CHAIN_LENGTH + 1;
+		this.regionLength = 0;
+		for (int i2 = start2; i2 < end2;) {
+			int c = classes2[i2];
+			int count = this.counts[c];
+			if (count == 0) {
+				i2++;
+				continue;
+			}
+			hasCommon = true;
+			if (count > lowCount || count > MAX_CHAIN_LENGTH) {
+				i2++;
+				continue;
+			}
+
+			int next2 = i2 + 1;
+			for (int i1 = this.heads[c] - 1; i1 >= 0; i1 = this.next[i1] - 1) {
+				int s1 = i1, s2 = i2;
+				int e1 = i1 + 1, e2 = i2 + 1;
+				int regionCount = count;
+				while (s1 > start1 && s2 > start2 && classes1[s1 - 1] == classes2[s2 - 1]) {
+					s1--;
+					s2--;
+					if (regionCount > 1)
+						regionCount = Math.min(regionCount, this.counts[classes1[s1]]);
+				}
+				while (e1 < end1 && e2 < end2 && classes1[e1] == classes2[e2]) {
+					if (regionCount > 1)
+						regionCount = Math.min(regionCount, this.counts[classes1[e1]]);
+					e1++;
+					e2++;
+				}
+				if (next2 < e2)
+					next2 = e2;
+				if (this.regionLength < e1 - s1 || regionCount < lowCount) {
+					this.regionStart1 = s1;
+					this.regionStart2 = s2;
+					this.regionLength = e1 - s1;
+					lowCount = regionCount;
+				}
+			}
+			i2 = next2;
+		}
+
+		// reset the histogram for the next region
+		for (int i = start1; i < end1; i++) {
+			int c = classes1[i];
+			this.heads[c] = 0;
+			this.counts[c] = 0;
+		}
+
+		if (this.regionLength > 0)
+			return FOUND;
+		return hasCommon ? TOO_COMPLEX : NO_COMMON_ENTITY;
+	}
+
+	public RangeDifference[] getDifferences(SubMonitor subMonitor, AbstractRangeDifferenceFactory factory) {
+		try {
+			subMonitor.beginTask(null, this.length1 + 1);
+			List differences = new ArrayList();
+			int index1 = 0;
+			int index2 = 0;
+			while (index1 < this.length1 || index2 < this.length2) {
+				if (index1 < this.length1 && this.matches[index1] == index2 + 1) {
+					index1++;
+					index2++;
+					worked(subMonitor, 1);
+					continue;
+				}
+				int start1 = index1;
+				int start2 = index2;
+				while (index1 < this.length1 && this.matches[index1] == 0)
+					index1++;
+				index2 = index1 < this.length1 ? this.matches[index1] - 1 : this.length2;
+				differences.add(factory.createRangeDifference(RangeDifference.CHANGE, start2, index2 - start2, start1, index1 - start1));
+				worked(subMonitor, index1 - start1);
+			}
+			return (RangeDifference[]) differences.toArray(new RangeDifference[differences.size()]);
+		} finally {
+			subMonitor.done();
+		}
+	}
+
+	private void worked(SubMonitor subMonitor, int work) {
+		if (subMonitor.isCanceled())
+			throw new OperationCanceledException();
+		subMonitor.worked(work);
+	}
+
+	/*
+	 * Spreads the bits of the hash codes since only the low bits are used to
+	 * find the bucket
+	 */
+	private static int mix(int hash) {
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return hash ^ (hash >>> 7) ^ (hash >>> 4);
+	}
+
+	/*
+	 * Myers' LCS of a region in which the histogram found no good anchor
+	 */
+	private class RegionLCS extends LCS {
+
+		private final int start1, end1, start2, end2;
+
+		RegionLCS(int start1, int end1, int start2, int end2) {
+			this.start1 = start1;
+			this.end1 = end1;
+			this.start2 = start2;
+			this.end2 = end2;
+		}
+
+		protected int getLength1() {
+			return this.end1 - this.start1;
+		}
+
+		protected int getLength2() {
+			return this.end2 - this.start2;
+		}
+
+		protected boolean isRangeEqual(int i1, int i2) {
+			return RangeComparatorHistogram.this.classes1[this.start1 + i1] == RangeComparatorHistogram.this.classes2[this.start2 + i2];
+		}
+
+		protected void setLcs(int sl1, int sl2) {
+			RangeComparatorHistogram.this.matches[this.start1 + sl1] = this.start2 + sl2 + 1;
+		}
+
+		protected void initializeLcs(int lcsLength) {
+			// the matches are stored directly in the enclosing instance
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,11 +33,38 @@ import org.eclipse.core.runtime.SubMonitor;
  * Alternatively, the <code>findRanges</code> methods not only return objects for
  * the differing ranges but for non-differing ranges too.
  * </p>
+ * <p>
+ * By default the differences are computed with Myers' LCS algorithm
+ * ({@link #STRATEGY_LCS}). The methods that take a strategy argument can be
+ * used to select the histogram algorithm ({@link #STRATEGY_HISTOGRAM}) instead.
+ * </p>
  *
  * @see IRangeComparator
  * @see RangeDifference
  */
 public final class RangeDifferencer {
+
+	/**
+	 * Strategy constant (value <code>0</code>) for computing the differences
+	 * with Myers' LCS algorithm. This is the default strategy. On very long
+	 * inputs the running time is bounded, which may result in a less than
+	 * optimal set of differences.
+	 *
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static final int STRATEGY_LCS = 0;
+
+	/**
+	 * Strategy constant (value <code>1</code>) for computing the differences
+	 * with the histogram algorithm. The differences are anchored on the
+	 * entities that occur least often, which finishes in close to linear time
+	 * on large inputs with many unique entities and tends to produce better
+	 * aligned differences. Range comparators should implement
+	 * {@link IHashedRangeComparator} when used with this strategy.
+	 *
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static final int STRATEGY_HISTOGRAM = 1;
 	
 	private static final RangeDifference[] EMPTY_RESULT= new RangeDifference[0];
 	
@@ -95,6 +122,28 @@ public final class RangeDifferencer {
 	 * @since org.eclipse.compare.core 3.5
 	 */
 	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		return findDifferences(factory, STRATEGY_LCS, pm, left, right);
+	}
+
+	/**
+	 * Finds the differences between two <code>IRangeComparator</code>s using
+	 * the given strategy.
+	 * The differences are returned as an array of <code>RangeDifference</code>s.
+	 * If no differences are detected an empty array is returned.
+	 * 
+	 * @param factory
+	 * @param strategy the algorithm used to find the differences, one of
+	 *            {@link #STRATEGY_LCS} or {@link #STRATEGY_HISTOGRAM}
+	 * @param pm if not <code>null</code> used to report progress
+	 * @param left the left range comparator
+	 * @param right the right range comparator
+	 * @return an array of range differences, or an empty array if no differences were found
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, int strategy, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		if (strategy == STRATEGY_HISTOGRAM)
+			return RangeComparatorHistogram.findDifferences(factory, pm, left, right);
+		Assert.isLegal(strategy == STRATEGY_LCS);
 		return RangeComparatorLCS.findDifferences(factory, pm, left, right);
 	}
 
@@ -148,15 +197,37 @@ public final class RangeDifferencer {
 	 * @since org.eclipse.compare.core 3.5
 	 */
 	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator ancestor, IRangeComparator left, IRangeComparator right) {
+		return findDifferences(factory, STRATEGY_LCS, pm, ancestor, left, right);
+	}
+
+	/**
+	 * Finds the differences among three <code>IRangeComparator</code>s using
+	 * the given strategy.
+	 * The differences are returned as a list of <code>RangeDifference</code>s.
+	 * If no differences are detected an empty list is returned.
+	 * If the ancestor range comparator is <code>null</code>, a two-way
+	 * comparison is performed.
+	 * 	 
+	 * @param factory
+	 * @param strategy the algorithm used to find the differences, one of
+	 *            {@link #STRATEGY_LCS} or {@link #STRATEGY_HISTOGRAM}
+	 * @param pm if not <code>null</code> used to report progress
+	 * @param ancestor the ancestor range comparator or <code>null</code>
+	 * @param left the left range comparator
+	 * @param right the right range comparator
+	 * @return an array of range differences, or an empty array if no differences were found
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, int strategy, IProgressMonitor pm, IRangeComparator ancestor, IRangeComparator left, IRangeComparator right) {
 		try {
 			if (ancestor == null)
-				return findDifferences(factory, pm, left, right);
+				return findDifferences(factory, strategy, pm, left, right);
 			SubMonitor monitor = SubMonitor.convert(pm, Messages.RangeComparatorLCS_0, 100);
 			RangeDifference[] leftAncestorScript= null;
-			RangeDifference[] rightAncestorScript= findDifferences(factory, monitor.newChild(50), ancestor, right);
+			RangeDifference[] rightAncestorScript= findDifferences(factory, strategy, monitor.newChild(50), ancestor, right);
 			if (rightAncestorScript != null) {
 				monitor.setWorkRemaining(100);
-				leftAncestorScript= findDifferences(factory, monitor.newChild(50), ancestor, left);
+				leftAncestorScript= findDifferences(factory, strategy, monitor.newChild(50), ancestor, left);
 			}
 			if (rightAncestorScript == null || leftAncestorScript == null)
 				return null;
@@ -284,7 +355,26 @@ public final class RangeDifferencer {
 	 * @since org.eclipse.compare.core 3.5
 	 */
 	public static RangeDifference[] findRanges(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
-		RangeDifference[] in= findDifferences(factory, pm, left, right);
+		return findRanges(factory, STRATEGY_LCS, pm, left, right);
+	}
+
+	/**
+	 * Finds the differences among two <code>IRangeComparator</code>s using
+	 * the given strategy.
+	 * In contrast to <code>findDifferences</code>, the result
+	 * contains <code>RangeDifference</code> elements for non-differing ranges too.
+	 * 
+	 * @param factory
+	 * @param strategy the algorithm used to find the differences, one of
+	 *            {@link #STRATEGY_LCS} or {@link #STRATEGY_HISTOGRAM}
+	 * @param pm if not <code>null</code> used to report progress
+	 * @param left the left range comparator
+	 * @param right the right range comparator
+	 * @return an array of range differences
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static RangeDifference[] findRanges(AbstractRangeDifferenceFactory factory, int strategy, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		RangeDifference[] in= findDifferences(factory, strategy, pm, left, right);
 		List out= new ArrayList();
 
 		RangeDifference rd;
@@ -361,10 +451,32 @@ public final class RangeDifferencer {
 	 * @since org.eclipse.compare.core 3.5
 	 */
 	public static RangeDifference[] findRanges(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator ancestor, IRangeComparator left, IRangeComparator right) {
+		return findRanges(factory, STRATEGY_LCS, pm, ancestor, left, right);
+	}
+
+	/**
+	 * Finds the differences among three <code>IRangeComparator</code>s using
+	 * the given strategy.
+	 * In contrast to <code>findDifferences</code>, the result
+	 * contains <code>RangeDifference</code> elements for non-differing ranges too.
+	 * If the ancestor range comparator is <code>null</code>, a two-way
+	 * comparison is performed.
+	 * 
+	 * @param factory
+	 * @param strategy the algorithm used to find the differences, one of
+	 *            {@link #STRATEGY_LCS} or {@link #STRATEGY_HISTOGRAM}
+	 * @param pm if not <code>null</code> used to report progress
+	 * @param ancestor the ancestor range comparator or <code>null</code>
+	 * @param left the left range comparator
+	 * @param right the right range comparator
+	 * @return an array of range differences
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static RangeDifference[] findRanges(AbstractRangeDifferenceFactory factory, int strategy, IProgressMonitor pm, IRangeComparator ancestor, IRangeComparator left, IRangeComparator right) {
 		if (ancestor == null)
-			return findRanges(factory,pm, left, right);
+			return findRanges(factory, strategy, pm, left, right);
 
-		RangeDifference[] in= findDifferences(factory, pm, ancestor, left, right);
+		RangeDifference[] in= findDifferences(factory, strategy, pm, ancestor, left, right);
 		List out= new ArrayList();
 
 		RangeDifference rd;
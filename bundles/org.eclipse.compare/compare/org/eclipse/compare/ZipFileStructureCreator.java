@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,21 +11,32 @@
 package org.eclipse.compare;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.eclipse.compare.internal.BufferedResourceNode;
 import org.eclipse.compare.internal.CompareUIPlugin;
+import org.eclipse.compare.internal.IContentChecksum;
 import org.eclipse.compare.internal.Utilities;
 import org.eclipse.compare.structuremergeviewer.Differencer;
 import org.eclipse.compare.structuremergeviewer.IDiffContainer;
 import org.eclipse.compare.structuremergeviewer.IStructureComparator;
 import org.eclipse.compare.structuremergeviewer.IStructureCreator;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.swt.graphics.Image;
 
 /**
@@ -34,6 +45,11 @@ import org.eclipse.swt.graphics.Image;
  * hierarchical structure of <code>IStructureComparator</code>s.
  * <p>
  * It is used when comparing the internal structure of a zip archive.
+ * <p>
+ * If the archive is a file in the local file system only the names, sizes
+ * and checksums of the entries are read from the archive's central directory;
+ * the contents of an entry are inflated when they are requested. Otherwise
+ * the contents of all entries are read into memory.
  *
  * @since 2.0
  */
@@ -128,9 +144,13 @@ public class ZipFileStructureCreator implements IStructureCreator {
 		}
 	}
 
-	static class ZipFile extends ZipResource implements IStreamContentAccessor {
+	static class ZipFile extends ZipResource implements IStreamContentAccessor, IContentChecksum {
 
 		private byte[] fContents;
+		private File fArchive;	// the local archive the contents are inflated from, or null
+		private String fEntryName;
+		private long fSize= -1;
+		private long fCRC= -1;
 
 		ZipFile(String name) {
 			super(name);
@@ -148,13 +168,69 @@ public class ZipFileStructureCreator implements IStructureCreator {
 			return null;
 		}
 		
-		public InputStream getContents() {
+		public InputStream getContents() throws CoreException {
+			if (fArchive != null) {
+				try {
+					return openEntry();
+				} catch (IOException e) {
+					throw new CoreException(new Status(IStatus.ERROR, CompareUIPlugin.PLUGIN_ID, 0, e.getMessage(), e));
+				}
+			}
 			if (fContents == null)
 				fContents= new byte[0];
 			return new ByteArrayInputStream(fContents);
 		}
 
+		/*
+		 * Opens the archive and returns a stream inflating the entry. The
+		 * archive is closed with the stream, so no file handles are kept
+		 * between the requests for the contents of the entries.
+		 */
+		private InputStream openEntry() throws IOException {
+			final java.util.zip.ZipFile archive= new java.util.zip.ZipFile(fArchive);
+			try {
+				ZipEntry entry= archive.getEntry(fEntryName);
+				if (entry == null)
+					throw new IOException(fArchive + ": " + fEntryName); //$NON-NLS-1$
+				return new FilterInputStream(archive.getInputStream(entry)) {
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							archive.close();
+						}
+					}
+				};
+			} catch (IOException e) {
+				archive.close();
+				throw e;
+			} catch (RuntimeException e) {
+				archive.close();
+				throw e;
+			}
+		}
+
+		public long getContentLength() {
+			return fSize;
+		}
+
+		public long getContentChecksum() {
+			return fCRC;
+		}
+
 		byte[] getBytes() {
+			if (fArchive != null) {
+				try {
+					InputStream is= openEntry();
+					try {
+						return readBytes(is, fSize);
+					} finally {
+						is.close();
+					}
+				} catch (IOException e) {
+					return null;
+				}
+			}
 			return fContents;
 		}
 
@@ -162,17 +238,15 @@ public class ZipFileStructureCreator implements IStructureCreator {
 			fContents= buffer;
 		}
 
-		void appendBytes(byte[] buffer, int length) {
-	    	if (length > 0) {
-				int oldLen= 0;
-				if (fContents != null)
-					oldLen= fContents.length;
-				byte[] newBuf= new byte[oldLen + length];
-				if (oldLen > 0)
-		    		System.arraycopy(fContents, 0, newBuf, 0, oldLen);
-	    		System.arraycopy(buffer, 0, newBuf, oldLen, length);
-	    		fContents= newBuf;
-	    	}
+		void setEntry(File archive, ZipEntry entry) {
+			fArchive= archive;
+			fEntryName= entry.getName();
+			setSizeAndChecksum(entry);
+		}
+
+		void setSizeAndChecksum(ZipEntry entry) {
+			fSize= entry.getSize();
+			fCRC= entry.getCrc();
 		}
 	}
 	
@@ -200,6 +274,10 @@ public class ZipFileStructureCreator implements IStructureCreator {
 
 	public IStructureComparator getStructure(Object input) {
 
+		File archive= getLocalFile(input);
+		if (archive != null)
+			return getStructure(archive);
+
 		InputStream is= null;
 		
 		if (input instanceof IStreamContentAccessor) {
@@ -224,28 +302,13 @@ public class ZipFileStructureCreator implements IStructureCreator {
 
 				ZipFile ze= root.createContainer(entry.getName());
 				if (ze != null) {
-					int length= (int) entry.getSize();
-					if (length >= 0) {
-						byte[] buffer= new byte[length];
-						int offset= 0;
-	
-						do {
-							int n= zip.read(buffer, offset, length);
-							offset += n;
-							length -= n;
-						} while (length > 0);
-	
-						ze.setBytes(buffer);
-					} else {
-						byte[] buffer= new byte[1024];		
-						int n;
-						do {
-							n= zip.read(buffer, 0, 1024);
-							ze.appendBytes(buffer, n);
-						} while (n >= 0);
-					}
+					ze.setBytes(readBytes(zip, entry.getSize()));
+					zip.closeEntry();
+					// the checksum of an entry with a data descriptor is known after reading it
+					ze.setSizeAndChecksum(entry);
+				} else {
+					zip.closeEntry();
 				}
-				zip.closeEntry();
 			}
 		} catch (IOException ex) {
 			return null;
@@ -257,6 +320,40 @@ public class ZipFileStructureCreator implements IStructureCreator {
 			}
 		}
 
+		return getRoot(root);
+	}
+
+	/*
+	 * Creates the structure from the central directory of a local archive
+	 * without inflating any entry.
+	 */
+	private IStructureComparator getStructure(File archive) {
+		ZipFolder root= new ZipFolder(""); //$NON-NLS-1$
+		java.util.zip.ZipFile zip= null;
+		try {
+			zip= new java.util.zip.ZipFile(archive);
+			Enumeration entries= zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry= (ZipEntry) entries.nextElement();
+				ZipFile ze= root.createContainer(entry.getName());
+				if (ze != null)
+					ze.setEntry(archive, entry);
+			}
+		} catch (IOException ex) {
+			return null;
+		} finally {
+			if (zip != null) {
+				try {
+					zip.close();
+				} catch (IOException ex) {
+					// silently ignored
+				}
+			}
+		}
+		return getRoot(root);
+	}
+
+	private static IStructureComparator getRoot(ZipFolder root) {
 		if (root.fChildren.size() == 1) {
 			Iterator iter= root.fChildren.values().iterator();
 			return (IStructureComparator) iter.next();
@@ -264,6 +361,50 @@ public class ZipFileStructureCreator implements IStructureCreator {
 		return root;
 	}
 
+	/*
+	 * Returns the archive file in the local file system if the contents of
+	 * the input are those of the file, or null.
+	 */
+	private static File getLocalFile(Object input) {
+		if (!(input instanceof ResourceNode))
+			return null;
+		// edited contents are only available in the buffer
+		if (input instanceof BufferedResourceNode && ((BufferedResourceNode) input).isDirty())
+			return null;
+		IResource resource= ((ResourceNode) input).getResource();
+		if (!(resource instanceof IFile))
+			return null;
+		IPath location= resource.getLocation();
+		if (location == null)
+			return null;
+		File file= location.toFile();
+		return file.isFile() ? file : null;
+	}
+
+	/*
+	 * Reads the given stream to its end. The size is used to allocate the
+	 * buffer if it is known, i.e. not negative.
+	 */
+	private static byte[] readBytes(InputStream is, long size) throws IOException {
+		if (size >= 0 && size <= Integer.MAX_VALUE) {
+			byte[] buffer= new byte[(int) size];
+			int offset= 0;
+			while (offset < buffer.length) {
+				int n= is.read(buffer, offset, buffer.length - offset);
+				if (n < 0)
+					break;
+				offset+= n;
+			}
+			return buffer;
+		}
+		ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+		byte[] buffer= new byte[8192];
+		int n;
+		while ((n= is.read(buffer)) >= 0)
+			bytes.write(buffer, 0, n);
+		return bytes.toByteArray();
+	}
+
 	public String getContents(Object o, boolean ignoreWhitespace) {
 		if (o instanceof ZipFile) {
 			byte[] bytes= ((ZipFile)o).getBytes();
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Compares the byte contents of two streams block by block.
+ * <p>
+ * The comparator keeps two buffers that are reused for all comparisons, so an
+ * instance must not be used by more than one thread at a time. Inputs whose
+ * size can be determined without reading them are compared by size first.
+ * Inputs implementing {@link IContentChecksum} are compared by size and
+ * checksum; when both are known and equal the contents are considered equal.
+ * Optionally a checksum of every input that has been read completely is
+ * remembered; two inputs with different checksums are known to differ without
+ * reading them again. Inputs are identified by object identity, so a
+ * comparator that remembers checksums must only be used while the inputs do
+ * not change, e.g. for a single run of a <code>Differencer</code>.
+ * </p>
+ */
+public class ContentComparator {
+
+	private static final int BUFFER_SIZE= 64 * 1024;
+
+	private final byte[] fBuffer1= new byte[BUFFER_SIZE];
+	private final byte[] fBuffer2= new byte[BUFFER_SIZE];
+	private final Map fChecksums;
+	private final CRC32 fCRC1;
+	private final CRC32 fCRC2;
+
+	/**
+	 * Creates a comparator.
+	 *
+	 * @param rememberChecksums whether the checksums of inputs which have been
+	 *   read completely are kept to short-circuit later comparisons of the same inputs
+	 */
+	public ContentComparator(boolean rememberChecksums) {
+		if (rememberChecksums) {
+			fChecksums= new IdentityHashMap();
+			fCRC1= new CRC32();
+			fCRC2= new CRC32();
+		} else {
+			fChecksums= null;
+			fCRC1= null;
+			fCRC2= null;
+		}
+	}
+
+	/**
+	 * Returns whether the contents of the two inputs may be equal without
+	 * reading them, that is their sizes and remembered checksums (if known)
+	 * are the same.
+	 *
+	 * @param input1 the first input
+	 * @param input2 the second input
+	 * @return <code>false</code> if the contents are known to differ
+	 */
+	public boolean mayBeEqual(Object input1, Object input2) {
+		long length1= getContentLength(input1);
+		if (length1 >= 0) {
+			long length2= getContentLength(input2);
+			if (length2 >= 0 && length1 != length2)
+				return false;
+		}
+		long checksum1= getChecksum(input1);
+		if (checksum1 != -1) {
+			long checksum2= getChecksum(input2);
+			if (checksum2 != -1 && checksum1 != checksum2)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the contents of the two inputs are known to be equal
+	 * without reading them, that is both inputs implement
+	 * {@link IContentChecksum} and report the same size and checksum.
+	 *
+	 * @param input1 the first input
+	 * @param input2 the second input
+	 * @return <code>true</code> if the contents are considered equal
+	 */
+	public boolean isKnownEqual(Object input1, Object input2) {
+		if (input1 instanceof IContentChecksum && input2 instanceof IContentChecksum) {
+			IContentChecksum content1= (IContentChecksum) input1;
+			IContentChecksum content2= (IContentChecksum) input2;
+			long length= content1.getContentLength();
+			long checksum= content1.getContentChecksum();
+			return length != -1 && checksum != -1
+				&& length == content2.getContentLength()
+				&& checksum == content2.getContentChecksum();
+		}
+		return false;
+	}
+
+	/**
+	 * Compares the contents of the two streams. Streams are read in large
+	 * blocks, short reads of either stream are handled. The streams are not
+	 * closed.
+	 *
+	 * @param input1 the first input, used to remember the checksum of the contents
+	 * @param is1 the contents of the first input
+	 * @param input2 the second input, used to remember the checksum of the contents
+	 * @param is2 the contents of the second input
+	 * @return <code>true</code> if the streams contain the same bytes
+	 * @throws IOException if reading from one of the streams fails
+	 */
+	public boolean contentsEqual(Object input1, InputStream is1, Object input2, InputStream is2) throws IOException {
+		if (fCRC1 != null) {
+			fCRC1.reset();
+			fCRC2.reset();
+		}
+		int length1= 0;
+		int length2= 0;
+		while (true) {
+			// fill up whichever buffer is behind so both always hold the same range
+			if (length1 == 0) {
+				length1= read(is1, fBuffer1);
+				if (length1 > 0 && fCRC1 != null)
+					fCRC1.update(fBuffer1, 0, length1);
+			}
+			if (length2 == 0) {
+				length2= read(is2, fBuffer2);
+				if (length2 > 0 && fCRC2 != null)
+					fCRC2.update(fBuffer2, 0, length2);
+			}
+			if (length1 == -1 || length2 == -1) {
+				if (length1 == -1 && length2 == -1) {
+					rememberChecksum(input1, fCRC1);
+					rememberChecksum(input2, fCRC2);
+					return true;
+				}
+				return false;
+			}
+			if (length1 != length2) {
+				// a short read; compare the common part and keep the rest
+				int common= Math.min(length1, length2);
+				if (!regionsEqual(fBuffer1, fBuffer2, common))
+					return false;
+				if (length1 > common)
+					System.arraycopy(fBuffer1, common, fBuffer1, 0, length1 - common);
+				else
+					System.arraycopy(fBuffer2, common, fBuffer2, 0, length2 - common);
+				length1-= common;
+				length2-= common;
+				continue;
+			}
+			if (!regionsEqual(fBuffer1, fBuffer2, length1))
+				return false;
+			length1= 0;
+			length2= 0;
+		}
+	}
+
+	/*
+	 * Reads as many bytes as the stream returns in one call. Returns -1 at the
+	 * end of the stream, never 0.
+	 */
+	private static int read(InputStream is, byte[] buffer) throws IOException {
+		int n;
+		do {
+			n= is.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		return n;
+	}
+
+	private static boolean regionsEqual(byte[] buffer1, byte[] buffer2, int length) {
+		for (int i= 0; i < length; i++)
+			if (buffer1[i] != buffer2[i])
+				return false;
+		return true;
+	}
+
+	private void rememberChecksum(Object input, CRC32 crc) {
+		if (fChecksums != null)
+			fChecksums.put(input, new Long(crc.getValue()));
+	}
+
+	/*
+	 * Returns the CRC-32 of the contents of the given input if known, or -1.
+	 * The checksums of IContentChecksums and of streams read are computed the
+	 * same way, so they can be compared with each other.
+	 */
+	private long getChecksum(Object input) {
+		if (input instanceof IContentChecksum) {
+			long checksum= ((IContentChecksum) input).getContentChecksum();
+			if (checksum != -1)
+				return checksum;
+		}
+		if (fChecksums != null) {
+			Long checksum= (Long) fChecksums.get(input);
+			if (checksum != null)
+				return checksum.longValue();
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the size of the contents of the given input in bytes if it can
+	 * be determined without reading the contents, or <code>-1</code>.
+	 *
+	 * @param input the input
+	 * @return the size of the contents or <code>-1</code> if unknown
+	 */
+	public static long getContentLength(Object input) {
+		if (input instanceof IContentChecksum)
+			return ((IContentChecksum) input).getContentLength();
+		if (input instanceof BufferedResourceNode) {
+			BufferedResourceNode node= (BufferedResourceNode) input;
+			// edited contents are only available in the buffer
+			if (node.isDirty())
+				return -1;
+			IResource resource= node.getResource();
+			if (resource instanceof IFile) {
+				IPath location= resource.getLocation();
+				if (location != null) {
+					File file= location.toFile();
+					if (file.isFile())
+						return file.length();
+				}
+			}
+		}
+		return -1;
+	}
+}
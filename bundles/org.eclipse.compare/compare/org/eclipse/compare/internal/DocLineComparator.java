@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.compare.internal;
 
 import org.eclipse.compare.ICompareFilter;
 import org.eclipse.compare.contentmergeviewer.ITokenComparator;
+import org.eclipse.compare.rangedifferencer.IHashedRangeComparator;
 import org.eclipse.compare.rangedifferencer.IRangeComparator;
 import org.eclipse.core.internal.expressions.util.LRUCache;
 import org.eclipse.jface.text.BadLocationException;
@@ -26,7 +27,7 @@ import org.eclipse.jface.text.IRegion;
  * A <code>DocLineComparator</code> doesn't know anything about line separators because
  * its notion of lines is solely defined in the underlying <code>IDocument</code>.
  */
-public class DocLineComparator implements ITokenComparator {
+public class DocLineComparator implements ITokenComparator, IHashedRangeComparator {
 
 	private IDocument fDocument;
 	private int fLineOffset;
@@ -179,6 +180,30 @@ public class DocLineComparator implements ITokenComparator {
 		return false;
 	}
 
+	/**
+	 * Returns a hash code of the given line that is consistent with
+	 * <code>rangesEqual</code>. Since compare filters may change a line
+	 * depending on the line it is compared with, all lines have the same hash
+	 * code when compare filters are active.
+	 *
+	 * @param index the number of the line within this range comparator
+	 * @return the hash code of the line
+	 */
+	public int getRangeHash(int index) {
+		if (fCompareFilters != null && fCompareFilters.length > 0)
+			return 0;
+		String line= extract(index, false);
+		if (!fIgnoreWhiteSpace)
+			return line.hashCode();
+		int hash= 0;
+		for (int i= 0; i < line.length(); i++) {
+			char c= line.charAt(i);
+			if (!Character.isWhitespace(c))
+				hash= 31 * hash + c;
+		}
+		return hash;
+	}
+
 	/**
 	 * Aborts the comparison if the number of tokens is too large.
 	 * 
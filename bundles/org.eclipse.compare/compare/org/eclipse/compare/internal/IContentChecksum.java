@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal;
+
+/**
+ * Implemented by stream content accessors that know the size and the CRC-32
+ * checksum of their contents without reading them, e.g. the entries of a zip
+ * archive. The {@link ContentComparator} uses them to decide whether two
+ * contents are equal without reading either of them.
+ */
+public interface IContentChecksum {
+
+	/**
+	 * Returns the size of the contents in bytes.
+	 *
+	 * @return the size of the contents or <code>-1</code> if unknown
+	 */
+	long getContentLength();
+
+	/**
+	 * Returns the CRC-32 checksum of the contents.
+	 *
+	 * @return the checksum of the contents or <code>-1</code> if unknown
+	 */
+	long getContentChecksum();
+}
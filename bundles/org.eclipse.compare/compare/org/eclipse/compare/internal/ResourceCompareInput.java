@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,6 +63,9 @@ class ResourceCompareInput extends CompareEditorInput {
 	
 	private static final boolean NORMALIZE_CASE= true;
 	
+	// the number of threads comparing file contents; comparing trees is I/O bound
+	private static final int PARALLEL_COMPARES= 4;
+	
 	private boolean fThreeWay= false;
 	private Object fRoot;
 	private IStructureComparator fAncestor;
@@ -408,6 +411,7 @@ class ResourceCompareInput extends CompareEditorInput {
 					return new MyDiffNode((IDiffContainer) parent, description, (ITypedElement)ancestor, (ITypedElement)left, (ITypedElement)right);
 				}
 			};
+			d.setParallelism(PARALLEL_COMPARES);
 			
 			fRoot= d.findDifferences(fThreeWay, pm, null, fAncestor, fLeft, fRight);
 			return fRoot;
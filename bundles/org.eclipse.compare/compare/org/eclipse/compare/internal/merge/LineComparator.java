@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,12 +12,13 @@ package org.eclipse.compare.internal.merge;
 
 import java.io.*;
 import java.util.ArrayList;
+import org.eclipse.compare.rangedifferencer.IHashedRangeComparator;
 import org.eclipse.compare.rangedifferencer.IRangeComparator;
 
 /**
  * This implementation of IRangeComparator breaks an input stream into lines.
  */
-class LineComparator implements IRangeComparator {
+class LineComparator implements IHashedRangeComparator {
 
     private String[] fLines;
 
@@ -54,6 +55,13 @@ class LineComparator implements IRangeComparator {
         return s1.equals(s2);
     }
 
+    /* (non-Javadoc)
+     * @see org.eclipse.compare.rangedifferencer.IHashedRangeComparator#getRangeHash(int)
+     */
+    public int getRangeHash(int index) {
+        return fLines[index].hashCode();
+    }
+
     /* (non-Javadoc)
      * @see org.eclipse.compare.rangedifferencer.IRangeComparator#skipRangeComparison(int, int, org.eclipse.compare.rangedifferencer.IRangeComparator)
      */
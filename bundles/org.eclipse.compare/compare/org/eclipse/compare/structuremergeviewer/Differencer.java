@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,12 +22,16 @@ import java.util.Set;
 
 import org.eclipse.compare.IStreamContentAccessor;
 import org.eclipse.compare.ITypedElement;
+import org.eclipse.compare.internal.ContentComparator;
 import org.eclipse.compare.internal.MergeViewerContentProvider;
 import org.eclipse.compare.internal.Utilities;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import com.ibm.icu.text.MessageFormat;
 
@@ -192,12 +196,121 @@ public class Differencer {
 //		}
 	} 
 	
+	/*
+	 * The leaves of a parallel traversal and the threads comparing them.
+	 */
+	private class LeafQueue {
+		private final boolean fThreeWay;
+		private final List fLeaves;
+		private final IProgressMonitor fMonitor;
+		private int fNext;
+		private Throwable fException;
+
+		LeafQueue(boolean threeWay, List leaves, IProgressMonitor pm) {
+			fThreeWay= threeWay;
+			fLeaves= leaves;
+			fMonitor= pm;
+		}
+
+		private synchronized Node next() {
+			if (fException != null || fNext == fLeaves.size())
+				return null;
+			return (Node) fLeaves.get(fNext++);
+		}
+
+		private synchronized void failed(Throwable exception) {
+			if (fException == null)
+				fException= exception;
+		}
+
+		/*
+		 * Compares leaves until all are taken, the monitor is canceled or
+		 * a compare failed in any of the threads.
+		 */
+		void compareLeaves() {
+			fThreadComparator.set(new ContentComparator(fThreeWay));
+			try {
+				Node node;
+				while ((node= next()) != null) {
+					if (fMonitor != null && fMonitor.isCanceled())
+						return;
+					node.fCode= compare(fThreeWay, node.fAncestor, node.fLeft, node.fRight);
+				}
+			} catch (RuntimeException e) {
+				failed(e);
+			} catch (Error e) {
+				failed(e);
+			} finally {
+				fThreadComparator.set(null);
+			}
+		}
+
+		void run(int threads) {
+			Job[] jobs= new Job[Math.max(0, Math.min(threads, fLeaves.size()) - 1)];
+			String name= Utilities.getString("Differencer.jobName"); //$NON-NLS-1$
+			for (int i= 0; i < jobs.length; i++) {
+				jobs[i]= new Job(name) {
+					protected IStatus run(IProgressMonitor monitor) {
+						compareLeaves();
+						return Status.OK_STATUS;
+					}
+				};
+				jobs[i].setSystem(true);
+				jobs[i].schedule();
+			}
+			try {
+				compareLeaves();
+			} finally {
+				for (int i= 0; i < jobs.length; i++) {
+					try {
+						jobs[i].join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new OperationCanceledException();
+					}
+				}
+			}
+			if (fException instanceof RuntimeException)
+				throw (RuntimeException) fException;
+			if (fException instanceof Error)
+				throw (Error) fException;
+			if (fMonitor != null && fMonitor.isCanceled())
+				throw new OperationCanceledException();
+		}
+	}
+
+	private ContentComparator fContentComparator;
+	private final ThreadLocal fThreadComparator= new ThreadLocal();
+	private int fParallelism= 1;
+	private List fPendingLeaves;	// the leaves still to compare during a parallel traversal
+
 	/**
 	 * Creates a new differencing engine.
 	 */
 	public Differencer() {
 		// nothing to do
 	}
+
+	/**
+	 * Sets the maximum number of threads used to compare the contents of the
+	 * leaves in <code>findDifferences</code>.
+	 * <p>
+	 * With a parallelism greater than 1 the input trees are walked first and
+	 * the leaves found are then compared by several threads, the calling
+	 * thread being one of them. The result, including the order in which
+	 * <code>visit</code> is called, is the same as with a single thread.
+	 * <code>visit</code> and <code>updateProgress</code> are always called
+	 * by the calling thread, but <code>contentsEqual</code> is called
+	 * concurrently and must be thread safe. The default is 1.
+	 * </p>
+	 *
+	 * @param parallelism the maximum number of threads, at least 1
+	 * @since 3.6
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isLegal(parallelism >= 1);
+		fParallelism= parallelism;
+	}
 	
 	/**
 	 * Starts the differencing engine on the three input objects. If threeWay is <code>true</code> a 
@@ -219,7 +332,26 @@ public class Differencer {
 		
 		Node root= new Node();
 		
-		int code= traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+		// in a three-way compare the same leaf takes part in up to three content compares
+		ContentComparator previous= fContentComparator;
+		fContentComparator= new ContentComparator(threeWay);
+		int code;
+		try {
+			if (fParallelism > 1) {
+				fPendingLeaves= new ArrayList();
+				try {
+					traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+					new LeafQueue(threeWay, fPendingLeaves, pm).run(fParallelism);
+				} finally {
+					fPendingLeaves= null;
+				}
+				code= aggregate(threeWay, (Node) root.fChildren.get(0));
+			} else {
+				code= traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+			}
+		} finally {
+			fContentComparator= previous;
+		}
 				
 		if (code != NO_CHANGE) {
 			List l= root.fChildren;
@@ -309,6 +441,13 @@ public class Differencer {
 			}
 		}
 
+		if (fPendingLeaves != null) {
+			// the codes are computed by aggregate once all leaves have been compared
+			if (node.fChildren == null)
+				fPendingLeaves.add(node);
+			return NO_CHANGE;
+		}
+
 		if (content)			// a leaf
 			code= compare(threeWay, ancestor, left, right);
 								
@@ -316,6 +455,33 @@ public class Differencer {
 							
 		return code;
 	}
+
+	/*
+	 * Computes the codes of the nodes of a parallel traversal in postorder,
+	 * the same way as traverse does. The codes of the leaves are known.
+	 */
+	private int aggregate(boolean threeWay, Node node) {
+		if (node.fChildren == null)
+			return node.fCode;
+		
+		int code= NO_CHANGE;
+		
+		Iterator e= node.fChildren.iterator();
+		while (e.hasNext()) {
+			int c= aggregate(threeWay, (Node) e.next());
+			if ((c & CHANGE_TYPE_MASK) != NO_CHANGE) {
+				code|= CHANGE;	// deletions and additions of child result in a change of the container
+				code|= (c & DIRECTION_MASK);	// incoming & outgoing are just ored
+			}
+		}
+		
+		if (code == NO_CHANGE)	// no child changed
+			code= compare(threeWay, node.fAncestor, node.fLeft, node.fRight);
+		
+		node.fCode= code;
+		
+		return code;
+	}
 	
 	/**
 	 * Called for every node or leaf comparison.
@@ -450,7 +616,10 @@ public class Differencer {
 	 * <p>
 	 * The <code>Differencer</code> implementation
 	 * returns <code>true</code> if both inputs implement <code>IStreamContentAccessor</code>
-	 * and their byte contents is identical. Subclasses may override to implement 
+	 * and their byte contents is identical. The contents are compared in large blocks,
+	 * inputs whose sizes are known to differ are not read at all. Entries of zip
+	 * archives with the same size and CRC are considered equal without reading them.
+	 * Subclasses may override to implement 
 	 * a different content compare on the given inputs.
 	 * </p>
 	 *
@@ -462,6 +631,17 @@ public class Differencer {
 		
 		if (input1 == input2)
 			return true;
+		
+		ContentComparator comparator= (ContentComparator) fThreadComparator.get();
+		if (comparator == null) {
+			if (fContentComparator == null)
+				fContentComparator= new ContentComparator(false);
+			comparator= fContentComparator;
+		}
+		if (!comparator.mayBeEqual(input1, input2))
+			return false;
+		if (comparator.isKnownEqual(input1, input2))
+			return true;
 			
 		InputStream is1= getStream(input1);
 		InputStream is2= getStream(input2);
@@ -473,15 +653,7 @@ public class Differencer {
 			if (is1 == null || is2 == null)	// only one has contents
 				return false;
 			
-			while (true) {
-				int c1= is1.read();
-				int c2= is2.read();
-				if (c1 == -1 && c2 == -1)
-					return true;
-				if (c1 != c2)
-					break;
-				
-			}
+			return comparator.contentsEqual(input1, is1, input2, is2);
 		} catch (IOException ex) {
 			// NeedWork
 		} finally {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -80,7 +80,8 @@ public class DiffTree implements IDiffTree {
 		if (delta == null || visitor.visit(delta)) {
 			if (depth == IResource.DEPTH_ZERO)
 				return;
-			IPath[] children = getChildren(path);
+			// The children are not modified so they do not need to be copied
+			IPath[] children = pathTree.getChildrenNoCopy(path);
 			for (int i = 0; i < children.length; i++) {
 				IPath child = children[i];
 				accept(child, visitor, depth == IResource.DEPTH_ONE ? IResource.DEPTH_ZERO : IResource.DEPTH_INFINITE);
@@ -281,24 +282,68 @@ public class DiffTree implements IDiffTree {
 			statistics.add(delta);
 		} else {
 			statistics.remove(oldDiff);
+			removeFromSubtreeStatistics(oldDiff);
 			statistics.add(delta);
 		}
-		boolean isConflict = false;
-		if (delta instanceof IThreeWayDiff) {
-			IThreeWayDiff twd = (IThreeWayDiff) delta;
-			isConflict = twd.getDirection() == IThreeWayDiff.CONFLICTING;
-		}
-		setPropertyToRoot(delta, P_HAS_DESCENDANT_CONFLICTS, isConflict);
+		addToSubtreeStatistics(delta);
+		if (isConflict(delta) || (oldDiff != null && isConflict(oldDiff)))
+			updateConflictProperty(delta.getPath());
 	}
 	
 	private void internalRemove(IDiff delta) {
 		Assert.isTrue(!lockedForModification);
 		statistics.remove(delta);
-		setPropertyToRoot(delta, P_HAS_DESCENDANT_CONFLICTS, false);
+		removeFromSubtreeStatistics(delta);
+		if (isConflict(delta))
+			updateConflictProperty(delta.getPath());
 		setPropertyToRoot(delta, P_BUSY_HINT, false);
 		pathTree.remove(delta.getPath());
 	}
 	
+	private boolean isConflict(IDiff delta) {
+		if (delta instanceof IThreeWayDiff) {
+			IThreeWayDiff twd = (IThreeWayDiff) delta;
+			return twd.getDirection() == IThreeWayDiff.CONFLICTING;
+		}
+		return false;
+	}
+	
+	/*
+	 * Count the diff at its path and at each ancestor of its path. The counts
+	 * are kept on the nodes of the path tree, which must hold the diff.
+	 */
+	private void addToSubtreeStatistics(IDiff delta) {
+		pathTree.addToCount(delta.getPath(), getState(delta), 1);
+	}
+	
+	private void removeFromSubtreeStatistics(IDiff delta) {
+		pathTree.addToCount(delta.getPath(), getState(delta), -1);
+	}
+	
+	private int getState(IDiff delta) {
+		int state = delta.getKind();
+		if (delta instanceof IThreeWayDiff) {
+			IThreeWayDiff twd = (IThreeWayDiff) delta;
+			state |= twd.getDirection();
+		}
+		return state;
+	}
+	
+	/*
+	 * Set the descendant conflicts property of the path and its ancestors
+	 * from the number of conflicts at or below each of them.
+	 */
+	private void updateConflictProperty(IPath path) {
+		List changed = new ArrayList();
+		while (path.segmentCount() > 0) {
+			boolean hasConflicts = countFor(path, IThreeWayDiff.CONFLICTING, IThreeWayDiff.DIRECTION_MASK) > 0;
+			if (pathTree.setProperty(path, P_HAS_DESCENDANT_CONFLICTS, hasConflicts))
+				changed.add(path);
+			path = path.removeLastSegments(1);
+		}
+		accumulatePropertyChanges(P_HAS_DESCENDANT_CONFLICTS, (IPath[]) changed.toArray(new IPath[changed.size()]));
+	}
+	
 	private void internalAdded(IDiff delta) {
 		changes.added(delta);
 	}
@@ -338,6 +383,26 @@ public class DiffTree implements IDiffTree {
 			return size();
 		return statistics.countFor(state, mask);
 	}
+	
+	/**
+	 * Return the number of diffs at or below the given path whose state
+	 * matches the given mask. A state of 0 assumes a count of all diffs at or
+	 * below the path. A mask of 0 assumes a direct match of the given state.
+	 * The counts are maintained as diffs are added and removed so the cost of
+	 * this method does not depend on the number of diffs below the path.
+	 * 
+	 * @param path the path
+	 * @param state the sync state
+	 * @param mask the sync state mask
+	 * @return the number of matching diffs at or below the path
+	 * @see #countFor(int, int)
+	 * @since 3.7
+	 */
+	public long countFor(IPath path, int state, int mask) {
+		if (state == 0)
+			return pathTree.getTotalCount(path);
+		return pathTree.getCount(path, state, mask);
+	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.core.diff.IDiffTree#size()
@@ -415,6 +480,8 @@ public class DiffTree implements IDiffTree {
 	 * @see org.eclipse.team.core.diff.IDiffTree#hasDiffsMatching(org.eclipse.core.runtime.IPath, org.eclipse.team.core.diff.FastDiffFilter)
 	 */
 	public boolean hasMatchingDiffs(IPath path, final FastDiffFilter filter) {
+		if (countFor(path, 0, 0) == 0)
+			return false;
 		final RuntimeException found = new RuntimeException();
 		try {
 			accept(path, new IDiffVisitor() {
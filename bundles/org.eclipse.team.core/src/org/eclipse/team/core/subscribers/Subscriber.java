@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -518,4 +518,20 @@ abstract public class Subscriber {
 		});
 		return (direction[0] | kind[0]) & stateMask;
 	}
+
+	/**
+	 * Return whether the methods that compute synchronization states, namely
+	 * {@link #members(IResource)}, {@link #getSyncInfo(IResource)} and
+	 * {@link #getDiff(IResource)}, may be called concurrently from several
+	 * threads. Clients that know this can compute the states of a large
+	 * number of resources in parallel. By default, <code>false</code> is
+	 * returned. Subclasses whose state computation is thread safe may
+	 * override.
+	 * 
+	 * @return whether synchronization states may be computed concurrently
+	 * @since 3.7
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -41,7 +41,9 @@ import org.eclipse.team.internal.core.*;
  * an {@link org.eclipse.core.resources.IEncodedStorage}.
  * <p>
  * The cache in which the resource variants reside will occasionally clear
- * cached entries if they have not been accessed for a certain amount of time.
+ * cached entries if they have not been accessed for a certain amount of time
+ * or if the cache has grown too large. Cached contents are kept between sessions
+ * and are used by any resource variant with the same cache path.
  * </p>
  * 
  * @since 3.0
@@ -57,12 +59,13 @@ public abstract class CachedResourceVariant extends PlatformObject implements IR
 	 */
 	class ResourceVariantStorage implements IEncodedStorage {
 		public InputStream getContents() throws CoreException {
-			if (!isContentsCached()) {
+			InputStream contents = getCachedContents();
+			if (contents == null) {
 				// The cache may have been cleared if someone held
 				// on to the storage too long
 				throw new TeamException(NLS.bind(Messages.CachedResourceVariant_0, new String[] { getCachePath() })); 
 			}
-			return getCachedContents();
+			return contents;
 		}
 		public IPath getFullPath() {
 			return getDisplayPath();
@@ -153,11 +156,12 @@ public abstract class CachedResourceVariant extends PlatformObject implements IR
 	 * @return whether there are contents cached for this resource variant
 	 */
 	public boolean isContentsCached() {
-		if (isContainer() || !isHandleCached()) {
+		if (isContainer() || !getCache().hasContents(getCachePath())) {
 			return false;
 		}
-		ResourceVariantCacheEntry entry = getCache().getCacheEntry(getCachePath());
-		return entry.getState() == ResourceVariantCacheEntry.READY;
+		// The contents may have been cached by an earlier session or their handle released
+		if (!isHandleCached()) cacheHandle();
+		return true;
 	}
 	
 	/**
@@ -171,7 +175,10 @@ public abstract class CachedResourceVariant extends PlatformObject implements IR
 	 */
 	protected InputStream getCachedContents() throws TeamException {
 		if (isContainer() || !isContentsCached()) return null;
-		return getCache().getCacheEntry(getCachePath()).getContents();
+		// The contents may have been evicted since they were found in the cache
+		ResourceVariantCacheEntry entry = getCacheEntry();
+		if (entry == null) return null;
+		return entry.getContents();
 	}
 	
 	/**
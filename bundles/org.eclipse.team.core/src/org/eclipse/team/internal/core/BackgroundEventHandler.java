@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -43,7 +43,11 @@ import org.eclipse.team.core.TeamException;
  * to give the subclass a chance to dispatch the events in it's outgoing queue. The interval between
  * the first 3 dispatches will be the <code>shortDispatchDelay</code> and subsequent intervals will be
  * the <code>longDispatchDelay</code>. This is done to avoid constantly hammering the UI for long running
- * operations.<li> 
+ * operations. The intervals are lengthened when the queued events are expected to take long to process
+ * or when dispatching takes long, and a dispatch is held back briefly if the queue is about to be
+ * emptied.<li> 
+ * <li>Resource events that are queued while an equivalent event is still waiting in the queue are
+ * coalesced if the subclass allows it (see <code>isCoalescable</code>).<li> 
  * <li>Errors that occur during event processing or dispatch can be accumulated by calling the <code>handle</code>
  * method. Accumulated errors are used to form the status that is returned when the job completes.<li> 
  * </ul>
@@ -87,6 +91,39 @@ public abstract class BackgroundEventHandler {
 	
 	// time to wait for messages to be queued
 	private static final long WAIT_DELAY = 100;
+	
+	// the longest time between dispatches when there is a large backlog of events
+	private static final long MAX_DISPATCH_DELAY = 30000;
+	
+	// the number of dispatches over which a large backlog of events is spread
+	private static final int BACKLOG_DISPATCHES = 10;
+	
+	// the minimum time between dispatches as a multiple of the time a dispatch takes
+	private static final int DISPATCH_COST_FACTOR = 10;
+	
+	// the number of queued events that are searched for an equivalent event
+	private static final int COALESCE_WINDOW = 64;
+	
+	// weight of the latest sample in the moving averages
+	private static final double SAMPLE_WEIGHT = 1.0 / 16;
+	
+	// moving average of the milliseconds spent processing an event
+	private volatile double averageEventTime;
+	
+	// moving average of the milliseconds spent dispatching
+	private volatile double averageDispatchTime;
+	
+	// total milliseconds spent dispatching, used to exclude dispatches from the event processing time
+	private long dispatchTime;
+	
+	// time the oldest event processed since the last dispatch was queued
+	private long oldestUndispatched;
+	
+	// milliseconds between the queuing of the oldest event of the last dispatch and the dispatch
+	private volatile long dispatchLatency;
+	
+	// the number of events that were coalesced with an equivalent queued event
+	private int coalescedCount;
 
 	private String jobName;
 	
@@ -95,6 +132,8 @@ public abstract class BackgroundEventHandler {
 	 */
 	public static class Event {
 	    private int type;
+	    // time the event was queued
+	    long queued;
 		public Event(int type) {
 			this.type = type;
 		}
@@ -291,9 +330,10 @@ public abstract class BackgroundEventHandler {
 		if (Policy.DEBUG_BACKGROUND_EVENTS) {
 			System.out.println("Event queued on " + getName() + ":" + event.toString()); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		event.queued = System.currentTimeMillis();
 		if (front) {
 			awaitingProcessing.add(0, event);
-		} else {
+		} else if (!coalesce(event)) {
 			awaitingProcessing.add(event);
 		}
 		if (!isShutdown() && eventHandlerJob != null) {
@@ -305,6 +345,57 @@ public abstract class BackgroundEventHandler {
 		}
 	}
 	
+	/*
+	 * Coalesce the event with an equivalent event that is waiting in the queue.
+	 * A queued event is equivalent if it is of the same class and type and is on the
+	 * same resource; the deeper of the two events is kept at the position of the
+	 * queued event. The search stops at an event that is not a resource event or
+	 * at an event of another type on an overlapping resource since the events
+	 * must be processed in order. Return whether the event was coalesced.
+	 */
+	private boolean coalesce(Event event) {
+		if (!(event instanceof ResourceEvent) || !isCoalescable((ResourceEvent)event))
+			return false;
+		ResourceEvent resourceEvent = (ResourceEvent)event;
+		IResource resource = resourceEvent.getResource();
+		int last = Math.max(0, awaitingProcessing.size() - COALESCE_WINDOW);
+		for (int i = awaitingProcessing.size() - 1; i >= last; i--) {
+			Event queued = (Event) awaitingProcessing.get(i);
+			if (!(queued instanceof ResourceEvent) || queued.getResource() == null)
+				return false;
+			ResourceEvent queuedEvent = (ResourceEvent)queued;
+			IResource queuedResource = queuedEvent.getResource();
+			if (queued.getClass() == event.getClass() && queued.getType() == event.getType()) {
+				if (queuedResource.equals(resource)) {
+					// IResource.DEPTH_ZERO < IResource.DEPTH_ONE < IResource.DEPTH_INFINITE
+					if (resourceEvent.getDepth() > queuedEvent.getDepth()) {
+						event.queued = queued.queued;
+						awaitingProcessing.set(i, event);
+					}
+					coalescedCount++;
+					return true;
+				}
+			} else if (queuedResource.getFullPath().isPrefixOf(resource.getFullPath())
+					|| resource.getFullPath().isPrefixOf(queuedResource.getFullPath())) {
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Return whether the given resource event can be coalesced with an event
+	 * of the same type on the same resource that is already queued. This is
+	 * only the case if processing the event more than once, or processing it at
+	 * a greater depth, has the same effect as processing it once. By default,
+	 * events are not coalesced.
+	 * @param event the event being queued
+	 * @return whether the event can be coalesced
+	 */
+	protected boolean isCoalescable(ResourceEvent event) {
+		return false;
+	}
+	
 	/**
 	 * Return the name that is to be associated with the background job.
 	 * @return the job name
@@ -339,6 +430,48 @@ public abstract class BackgroundEventHandler {
 		return awaitingProcessing.isEmpty();
 	}
 	
+	/**
+	 * Return the number of events waiting to be processed.
+	 * @return the number of queued events
+	 */
+	public synchronized int getQueueLength() {
+		return awaitingProcessing.size();
+	}
+	
+	/**
+	 * Return the number of events that were coalesced with an equivalent
+	 * event that was already queued.
+	 * @return the number of coalesced events
+	 */
+	public synchronized int getCoalescedEventCount() {
+		return coalescedCount;
+	}
+	
+	/**
+	 * Return a moving average of the time spent processing an event.
+	 * @return the average processing time of an event in milliseconds
+	 */
+	public double getAverageEventTime() {
+		return averageEventTime;
+	}
+	
+	/**
+	 * Return the time between the queuing of the oldest event whose
+	 * results were part of the last dispatch and that dispatch.
+	 * @return the latency of the last dispatch in milliseconds
+	 */
+	public long getDispatchLatency() {
+		return dispatchLatency;
+	}
+	
+	/**
+	 * Return the estimated time needed to process the queued events.
+	 * @return the estimated time in milliseconds
+	 */
+	protected long getEstimatedQueueTime() {
+		return (long)(getQueueLength() * averageEventTime);
+	}
+	
 	/**
 	 * Process events from the events queue and dispatch results. This method does not
 	 * directly check for or handle cancelation of the provided monitor. However,
@@ -366,7 +499,14 @@ public abstract class BackgroundEventHandler {
 			dispatchCount = 1;
 			while ((event = nextElement()) != null && ! isShutdown()) {			 	
 				try {
-					processEvent(event, subMonitor);
+					long start = System.currentTimeMillis();
+					long dispatchTimeAtStart = dispatchTime;
+					try {
+						processEvent(event, subMonitor);
+					} finally {
+						// dispatches made while processing the event are not part of its cost
+						eventProcessed(event, System.currentTimeMillis() - start - (dispatchTime - dispatchTimeAtStart));
+					}
 					if (Policy.DEBUG_BACKGROUND_EVENTS) {
 						System.out.println("Event processed on " + getName() + ":" + event.toString()); //$NON-NLS-1$ //$NON-NLS-2$
 					}
@@ -391,11 +531,35 @@ public abstract class BackgroundEventHandler {
 	 * @throws TeamException
 	 */
 	protected final void dispatchEvents(IProgressMonitor monitor) throws TeamException {
-		if (doDispatchEvents(monitor)) {
-			// something was dispatched so adjust dispatch count.
-			dispatchCount++;
+		long start = System.currentTimeMillis();
+		boolean dispatched = false;
+		try {
+			dispatched = doDispatchEvents(monitor);
+		} finally {
+			timeOfLastDispatch = System.currentTimeMillis();
+			long duration = timeOfLastDispatch - start;
+			dispatchTime += duration;
+			if (dispatched) {
+				// something was dispatched so adjust dispatch count.
+				dispatchCount++;
+				averageDispatchTime += (duration - averageDispatchTime) * SAMPLE_WEIGHT;
+				if (oldestUndispatched != 0)
+					dispatchLatency = timeOfLastDispatch - oldestUndispatched;
+				if (Policy.DEBUG_BACKGROUND_EVENTS) {
+					System.out.println("Events dispatched on " + getName() + ": latency " + dispatchLatency + "ms, queue length " + getQueueLength()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				}
+			}
+			oldestUndispatched = 0;
 		}
-		timeOfLastDispatch = System.currentTimeMillis();
+	}
+	
+	/*
+	 * Record the time spent processing the event.
+	 */
+	private void eventProcessed(Event event, long duration) {
+		averageEventTime += (Math.max(0, duration) - averageEventTime) * SAMPLE_WEIGHT;
+		if (oldestUndispatched == 0 || event.queued < oldestUndispatched)
+			oldestUndispatched = event.queued;
 	}
 
 	/**
@@ -440,8 +604,27 @@ public abstract class BackgroundEventHandler {
 	
 	private boolean isDispatchDelayExceeded() {
 		long duration = System.currentTimeMillis() - timeOfLastDispatch;
-		return ((dispatchCount < DISPATCH_THRESHOLD && duration >= getShortDispatchDelay()) ||
-				duration >= getLongDispatchDelay());
+		long delay = getDispatchDelay();
+		if (duration < delay)
+			return false;
+		// Hold the dispatch back briefly if the queue is about to be emptied
+		return duration >= delay + getDispatchWaitDelay() || getEstimatedQueueTime() > getDispatchWaitDelay();
+	}
+	
+	/**
+	 * Return the time to wait between dispatches. The short and long delays are
+	 * lengthened for a large backlog of events so that it is dispatched in a limited
+	 * number of batches, and so that dispatching only takes a small part of the time.
+	 * @return the time to wait between dispatches in milliseconds
+	 */
+	protected final long getDispatchDelay() {
+		if (dispatchCount < DISPATCH_THRESHOLD) {
+			long delay = getShortDispatchDelay();
+			return Math.max(delay, Math.min((long)averageDispatchTime * DISPATCH_COST_FACTOR, getLongDispatchDelay()));
+		}
+		long delay = getLongDispatchDelay();
+		long adapted = Math.max(getEstimatedQueueTime() / BACKLOG_DISPATCHES, (long)averageDispatchTime * DISPATCH_COST_FACTOR);
+		return Math.max(delay, Math.min(adapted, MAX_DISPATCH_DELAY));
 	}
 
 	/**
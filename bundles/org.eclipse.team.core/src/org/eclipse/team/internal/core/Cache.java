@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,88 +21,122 @@ import org.eclipse.team.core.ICacheListener;
  * A synchronize operation context that supports caching of
  * properties relevant to the operation and the registering of
  * dispose listeners.
+ * <p>
+ * The properties are spread over several maps, each with its own lock,
+ * so that threads accessing different properties do not contend.
+ * </p>
  * 
  * @see org.eclipse.team.core.ICache
  * @since 3.2
  */
 public class Cache implements ICache {
 
-	Map properties;
-	ListenerList listeners;
+	// Number of maps the properties are spread over, a power of 2
+	private static final int STRIPES = 8;
+	
+	/*
+	 * The properties whose names hash to the same stripe
+	 */
+	private static class Stripe {
+		Map properties;
+	}
+	
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	// The list is thread safe and notifies from a copy of its listeners
+	final ListenerList listeners = new ListenerList(ListenerList.IDENTITY);
+	
+	public Cache() {
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	private Stripe getStripe(String name) {
+		int hash = name.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (STRIPES - 1)];
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.ui.mapping.ISynchronizeOperationContext#addProperty(java.lang.String, java.lang.Object)
 	 */
-	public synchronized void put(String name, Object value) {
-		if (properties == null) {
-			properties = new HashMap();
+	public void put(String name, Object value) {
+		Stripe stripe = getStripe(name);
+		synchronized (stripe) {
+			if (stripe.properties == null) {
+				stripe.properties = new HashMap();
+			}
+			stripe.properties.put(name, value);
 		}
-		properties.put(name, value);
 	}
 
-	public synchronized Object get(String name) {
-		if (properties == null)
-			return null;
-		return properties.get(name);
+	public Object get(String name) {
+		Stripe stripe = getStripe(name);
+		synchronized (stripe) {
+			if (stripe.properties == null)
+				return null;
+			return stripe.properties.get(name);
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.ui.mapping.ISynchronizeOperationContext#removeProperty(java.lang.String)
 	 */
-	public synchronized void remove(String name) {
-		if (properties != null)
-			properties.remove(name);
-		if (properties.isEmpty()) {
-			properties = null;
+	public void remove(String name) {
+		Stripe stripe = getStripe(name);
+		synchronized (stripe) {
+			if (stripe.properties != null) {
+				stripe.properties.remove(name);
+				if (stripe.properties.isEmpty()) {
+					stripe.properties = null;
+				}
+			}
 		}
-		
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.ui.mapping.ISynchronizeOperationContext#addDisposeListener(org.eclipse.team.ui.mapping.IDisposeListener)
 	 */
-	public synchronized void addCacheListener(ICacheListener listener) {
-		if (listeners == null)
-			listeners = new ListenerList(ListenerList.IDENTITY);
+	public void addCacheListener(ICacheListener listener) {
 		listeners.add(listener);
-		
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.ui.mapping.ISynchronizeOperationContext#removeDisposeListener(org.eclipse.team.ui.mapping.IDisposeListener)
 	 */
-	public synchronized void removeDisposeListener(ICacheListener listener) {
+	public void removeDisposeListener(ICacheListener listener) {
 		removeCacheListener(listener);
 	}
 	
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.core.ICache#removeCacheListener(org.eclipse.team.core.ICacheListener)
 	 */
-	public synchronized void removeCacheListener(ICacheListener listener) {
-		if (listeners != null)
-			listeners.remove(listener);
+	public void removeCacheListener(ICacheListener listener) {
+		listeners.remove(listener);
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.ui.mapping.ISynchronizationContext#dispose()
 	 */
 	public void dispose() {
-		if (listeners != null) {
-			Object[] allListeners = listeners.getListeners();
-			for (int i = 0; i < allListeners.length; i++) {
-				final Object listener = allListeners[i];
-				SafeRunner.run(new ISafeRunnable(){
-					public void run() throws Exception {
-						((ICacheListener)listener).cacheDisposed(Cache.this);
-					}
-					public void handleException(Throwable exception) {
-						// Ignore since the platform logs the error
-						
-					}
-				});
+		Object[] allListeners = listeners.getListeners();
+		for (int i = 0; i < allListeners.length; i++) {
+			final Object listener = allListeners[i];
+			SafeRunner.run(new ISafeRunnable(){
+				public void run() throws Exception {
+					((ICacheListener)listener).cacheDisposed(Cache.this);
+				}
+				public void handleException(Throwable exception) {
+					// Ignore since the platform logs the error
+					
+				}
+			});
+		}
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (stripes[i]) {
+				stripes[i].properties = null;
 			}
 		}
-		properties = null;
 	}
 	
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2012 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -68,6 +68,7 @@ public class Messages extends NLS {
 
 	public static String RemoteContentsCache_cacheDisposed;
 	public static String RemoteContentsCache_fileError;
+	public static String RemoteContentsCache_saveIndex;
 	public static String SubscriberEventHandler_2;
 	public static String SubscriberEventHandler_jobName;
 	public static String SubscriberChangeSetCollector_0;
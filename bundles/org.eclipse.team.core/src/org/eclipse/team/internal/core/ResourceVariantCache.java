@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,10 +10,13 @@
  *******************************************************************************/
 package org.eclipse.team.internal.core;
 
-import java.io.File;
+import java.io.*;
 import java.util.*;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.ILock;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.osgi.util.NLS;
@@ -21,25 +24,63 @@ import org.eclipse.team.core.TeamException;
 import org.eclipse.team.core.variants.CachedResourceVariant;
 
 /**
- * This class implements a caching facility that can be used by TeamProviders to cache contents
+ * This class implements a caching facility that can be used by TeamProviders to cache contents.
+ * <p>
+ * Entries whose contents are identical share a single file, which is deleted when the
+ * last entry that refers to it is purged from the cache. The cached contents are bounded
+ * by a maximum number of bytes, the least recently used contents are evicted first.
+ * An index of the cached contents is written shortly after they change and when the
+ * cache is closed on shutdown, so that they can be used again in the next session even
+ * if the workbench did not shut down cleanly. Handles that have not been accessed
+ * for an hour are released but their contents remain cached.
+ * </p>
  */
 public class ResourceVariantCache {
 	
 	// Directory to cache file contents
 	private static final String CACHE_DIRECTORY = ".cache"; //$NON-NLS-1$
-	// Maximum lifespan of local cache file, in milliseconds
+	// File in the cache directory that lists the contents kept between sessions
+	private static final String INDEX_FILE = ".index"; //$NON-NLS-1$
+	private static final int INDEX_VERSION = 2;
+	// Delay after a change of the cached contents before the index is written, in milliseconds
+	private static final long SAVE_DELAY = 5000;
+	// Maximum lifespan of a cached handle, in milliseconds
 	private static final long CACHE_FILE_LIFESPAN = 60*60*1000; // 1hr
 	
+	/**
+	 * The default maximum number of bytes of contents kept by a cache.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 64*1024*1024; // 64MB
+	
+	/*
+	 * The file holding contents that are shared by all the entries with the same contents
+	 */
+	static class Blob {
+		final String hash;
+		final String filePath;
+		final long size;
+		int references;
+		Blob(String hash, String filePath, long size) {
+			this.hash = hash;
+			this.filePath = filePath;
+			this.size = size;
+		}
+	}
+	
 	// Map of registered caches indexed by local name of a QualifiedName
 	private static Map caches = new HashMap(); // String (local name) > RemoteContentsCache
 	
 	private String name;
-	private Map cacheEntries;
+	private Map cacheEntries; // String (id) > ResourceVariantCacheEntry, least recently used first
+	private Map blobs; // String (content hash) > Blob
 	private long lastCacheCleanup;
 	private int cacheDirSize;
-
-	// Lock used to serialize the writing of cache contents
-	private ILock lock = Job.getJobManager().newLock(); 
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private long size;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private final Job saveJob;
 	
 	/**
 	 * Enables the use of remote contents caching for the given cacheId. The cache ID must be unique.
@@ -78,9 +119,26 @@ public class ResourceVariantCache {
 			return;
 		}
 		caches.remove(cacheId);
+		cache.saveJob.cancel();
 		cache.deleteCacheDirectory();
 	}
 	
+	/**
+	 * Close the cache, keeping the cached contents so that they are available
+	 * when caching is enabled again for the given id.
+	 * 
+	 * @param cacheId the unique Id of the cache
+	 */
+	public static void closeCache(String cacheId) {
+		ResourceVariantCache cache = getCache(cacheId);
+		if (cache == null) {
+			return;
+		}
+		caches.remove(cacheId);
+		cache.saveJob.cancel();
+		cache.saveCacheDirectory();
+	}
+	
 	/**
 	 * Return the cache for the given id or null if caching is not enabled for the given id.
 	 * @param cacheId
@@ -94,21 +152,59 @@ public class ResourceVariantCache {
 		String[] keys = (String[])caches.keySet().toArray(new String[caches.size()]);
         for (int i = 0; i < keys.length; i++) {
             String id = keys[i];
-			disableCache(id);
+			closeCache(id);
 		}
 	}
 	
 	private ResourceVariantCache(String name) {
 		this.name = name;
+		saveJob = new Job(NLS.bind(Messages.RemoteContentsCache_saveIndex, new String[] { name })) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					writeIndex();
+				} catch (IOException e) {
+					// The index is written again when the cache is closed
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		saveJob.setSystem(true);
 	}
 	
 	/**
-	 * Return whether the cache contains an entry for the given id. Register a hit if it does.
+	 * Return whether the cache contains a handle for the given id. Register a hit if it does.
 	 * @param id the id of the cache entry
-	 * @return true if there are contents cached for the id
+	 * @return true if there is a handle cached for the id
 	 */
 	public boolean hasEntry(String id) {
-		return internalGetCacheEntry(id) != null;
+		ResourceVariantCacheEntry entry = internalGetCacheEntry(id);
+		return entry != null && entry.getResourceVariant() != null;
+	}
+	
+	/**
+	 * Return whether the contents for the given id are cached, whether or not there is
+	 * a handle for them. The lookup is counted as a cache hit or miss. An entry whose
+	 * cache file is gone does not count as cached and is disposed.
+	 * @param id the id of the cache entry
+	 * @return true if there are contents cached for the id
+	 */
+	public boolean hasContents(String id) {
+		ResourceVariantCacheEntry entry;
+		synchronized (this) {
+			entry = internalGetCacheEntry(id);
+			if (entry == null || entry.getState() != ResourceVariantCacheEntry.READY) {
+				missCount++;
+				return false;
+			}
+			if (entry.getFile().exists()) {
+				hitCount++;
+				return true;
+			}
+			missCount++;
+		}
+		// Disposing acquires the entry lock so it is done outside of the cache monitor
+		entry.dispose();
+		return false;
 	}
 
 	protected IPath getCachePath() {
@@ -122,57 +218,308 @@ public class ResourceVariantCache {
 	private synchronized void clearOldCacheEntries() {
 		long current = new Date().getTime();
 		if ((lastCacheCleanup!=-1) && (current - lastCacheCleanup < CACHE_FILE_LIFESPAN)) return;
+		lastCacheCleanup = current;
 		List stale = new ArrayList();
 		for (Iterator iter = cacheEntries.values().iterator(); iter.hasNext();) {
 			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
 			long lastHit = entry.getLastAccessTimeStamp();
-			if ((current - lastHit) > CACHE_FILE_LIFESPAN){
+			if ((current - lastHit) > CACHE_FILE_LIFESPAN && entry.getResourceVariant() != null){
 				stale.add(entry);
 			}
 		}
 		for (Iterator iter = stale.iterator(); iter.hasNext();) {
 			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
-			entry.dispose();
+			if (entry.getState() == ResourceVariantCacheEntry.READY) {
+				// Release the handle but keep the contents until they are evicted
+				entry.setResourceVariant(null);
+			} else {
+				entry.dispose();
+			}
 		}
 	}
 	
-	private synchronized void purgeFromCache(String id) {
-		ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry)cacheEntries.get(id);
-		File f = entry.getFile();
+	private synchronized void purgeFromCache(String id, ResourceVariantCacheEntry entry) {
+		if (cacheEntries != null && cacheEntries.get(id) == entry) {
+			cacheEntries.remove(id);
+		}
+		if (entry.blob != null) {
+			releaseBlob(entry);
+		} else if (!entry.released) {
+			// The contents were never shared so the file belongs to the entry
+			deleteCacheFile(entry.getFile());
+		}
+	}
+	
+	/*
+	 * Remove the reference of the entry to its shared contents, deleting the
+	 * file if no other entry refers to it.
+	 */
+	private synchronized void releaseBlob(ResourceVariantCacheEntry entry) {
+		Blob blob = entry.blob;
+		entry.blob = null;
+		entry.released = true;
+		if (--blob.references == 0) {
+			blobs.remove(blob.hash);
+			size -= blob.size;
+			deleteCacheFile(new File(getCachePath().toFile(), blob.filePath));
+		}
+		indexChanged();
+	}
+	
+	/*
+	 * Schedule the index to be written unless it is already scheduled, so
+	 * that the cached contents survive a crash of the workbench.
+	 */
+	private void indexChanged() {
+		if (saveJob.getState() == Job.NONE)
+			saveJob.schedule(SAVE_DELAY);
+	}
+	
+	private void deleteCacheFile(File f) {
 		try {
 			deleteFile(f);
 		} catch (TeamException e) {
 			// Ignore the deletion failure.
 			// A failure only really matters when purging the directory on startup
 		}
-		cacheEntries.remove(id);
+	}
+	
+	/*
+	 * Share the contents that have been written for the given entry with the entries
+	 * whose contents are identical and evict the least recently used contents if the
+	 * cache is now too large.
+	 */
+	void contentsCached(ResourceVariantCacheEntry entry) {
+		List evicted;
+		synchronized (this) {
+			if (cacheEntries == null || cacheEntries.get(entry.getId()) != entry
+					|| entry.getState() != ResourceVariantCacheEntry.READY || entry.blob != null) {
+				return;
+			}
+			String hash = entry.getContentHash();
+			if (hash == null) {
+				// The contents could not be hashed so they are not shared
+				hash = '#' + entry.getFilePath();
+			}
+			Blob blob = (Blob)blobs.get(hash);
+			if (blob == null) {
+				blob = new Blob(hash, entry.getFilePath(), entry.getSize());
+				blobs.put(hash, blob);
+				size += blob.size;
+			} else {
+				deleteCacheFile(entry.getFile());
+				entry.setFilePath(blob.filePath);
+			}
+			blob.references++;
+			entry.blob = blob;
+			evicted = evict(entry);
+			indexChanged();
+		}
+		disposeEvicted(evicted);
+	}
+	
+	/*
+	 * Remove the least recently used contents, other than those of the given entry,
+	 * until the cache is within its maximum size. Shared contents are only freed
+	 * with the last entry that refers to them, so they are evicted together with
+	 * all their entries once the most recently used of these is reached. The
+	 * returned entries still need to be disposed.
+	 */
+	private synchronized List evict(ResourceVariantCacheEntry keep) {
+		List evicted = new ArrayList();
+		Map referrers = new HashMap(); // Blob > List of the entries visited so far
+		long remaining = size;
+		for (Iterator iter = cacheEntries.values().iterator(); remaining > maxSize && iter.hasNext();) {
+			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+			Blob blob = entry.blob;
+			if (blob == null || keep != null && blob == keep.blob) {
+				continue;
+			}
+			List entries = (List)referrers.get(blob);
+			if (entries == null) {
+				entries = new ArrayList(blob.references);
+				referrers.put(blob, entries);
+			}
+			entries.add(entry);
+			if (entries.size() == blob.references) {
+				evicted.addAll(entries);
+				remaining -= blob.size;
+			}
+		}
+		for (Iterator iter = evicted.iterator(); iter.hasNext();) {
+			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+			cacheEntries.remove(entry.getId());
+			releaseBlob(entry);
+			evictionCount++;
+		}
+		return evicted;
+	}
+	
+	private void disposeEvicted(List evicted) {
+		// Disposing acquires the entry lock so it is done outside of the cache monitor
+		for (Iterator iter = evicted.iterator(); iter.hasNext();) {
+			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+			entry.dispose();
+		}
 	}
 	
 	private synchronized void createCacheDirectory() {
 		IPath cacheLocation = getCachePath();
 		File file = cacheLocation.toFile();
+		cacheEntries = new LinkedHashMap(16, 0.75f, true /* access order */);
+		blobs = new HashMap();
+		lastCacheCleanup = -1;
+		cacheDirSize = 0;
+		size = 0;
 		if (file.exists()) {
 			try {
-				deleteFile(file);
-			} catch (TeamException e) {
-				// Check to see if were in an acceptable state
-				if (file.exists() && (!file.isDirectory() || file.listFiles().length != 0)) {
-					TeamPlugin.log(e);
+				restoreEntries(file);
+			} catch (IOException e) {
+				// The index is missing or unreadable so start with an empty cache
+				cacheEntries.clear();
+				blobs.clear();
+				cacheDirSize = 0;
+				size = 0;
+				try {
+					deleteFile(file);
+				} catch (TeamException e1) {
+					// Check to see if were in an acceptable state
+					if (file.exists() && (!file.isDirectory() || file.listFiles().length != 0)) {
+						TeamPlugin.log(e1);
+					}
 				}
 			}
 		}
 		if (! file.exists() && ! file.mkdirs()) {
 			TeamPlugin.log(new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() }))); 
 		}
-		cacheEntries = new HashMap();
+	}
+	
+	/*
+	 * Read the index written when the cache was last closed and delete the files
+	 * it does not list.
+	 */
+	private void restoreEntries(File directory) throws IOException {
+		File index = new File(directory, INDEX_FILE);
+		if (!index.exists()) {
+			throw new FileNotFoundException(index.getAbsolutePath());
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+		try {
+			if (in.readInt() != INDEX_VERSION) {
+				throw new IOException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { index.getAbsolutePath() })); 
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String id = in.readUTF();
+				String filePath = in.readUTF();
+				long lastAccess = in.readLong();
+				String hash = in.readUTF();
+				int fileNumber;
+				try {
+					fileNumber = Integer.parseInt(filePath);
+				} catch (NumberFormatException e) {
+					throw new IOException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { index.getAbsolutePath() })); 
+				}
+				cacheDirSize = Math.max(cacheDirSize, fileNumber + 1);
+				Blob blob = (Blob)blobs.get(hash);
+				if (blob == null) {
+					File file = new File(directory, filePath);
+					if (!file.isFile()) {
+						continue;
+					}
+					blob = new Blob(hash, filePath, file.length());
+					blobs.put(hash, blob);
+					size += blob.size;
+				}
+				ResourceVariantCacheEntry entry = new ResourceVariantCacheEntry(this, newLock(), id, blob.filePath, lastAccess);
+				blob.references++;
+				entry.blob = blob;
+				cacheEntries.put(id, entry);
+			}
+		} finally {
+			in.close();
+		}
+		Set files = new HashSet();
+		for (Iterator iter = blobs.values().iterator(); iter.hasNext();) {
+			files.add(((Blob) iter.next()).filePath);
+		}
+		File[] children = directory.listFiles();
+		for (int i = 0; i < children.length; i++) {
+			File child = children[i];
+			if (!child.getName().equals(INDEX_FILE) && !files.contains(child.getName())) {
+				try {
+					deleteFile(child);
+				} catch (TeamException e) {
+					// An unused file only takes up space
+				}
+			}
+		}
+		// The maximum size may have been lowered since the index was written
+		disposeEvicted(evict(null));
+	}
+	
+	/*
+	 * Write the index of the cached contents, least recently used first, so that
+	 * they can be restored in the next session. The index is written to a separate
+	 * file first so that a crash while writing does not leave a truncated index.
+	 */
+	private synchronized void writeIndex() throws IOException {
+		if (cacheEntries == null) {
+			// The cache has been closed or disposed
+			return;
+		}
+		File directory = getCachePath().toFile();
+		File index = new File(directory, INDEX_FILE);
+		File temp = new File(directory, INDEX_FILE + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			List ready = new ArrayList();
+			for (Iterator iter = cacheEntries.values().iterator(); iter.hasNext();) {
+				ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+				if (entry.blob != null) {
+					ready.add(entry);
+				}
+			}
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(ready.size());
+			for (Iterator iter = ready.iterator(); iter.hasNext();) {
+				ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+				out.writeUTF(entry.getId());
+				out.writeUTF(entry.blob.filePath);
+				out.writeLong(entry.getLastAccessTimeStamp());
+				out.writeUTF(entry.blob.hash);
+			}
+		} finally {
+			out.close();
+		}
+		if ((index.exists() && !index.delete()) || !temp.renameTo(index)) {
+			throw new IOException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { index.getAbsolutePath() }));
+		}
+	}
+	
+	private synchronized void saveCacheDirectory() {
+		try {
+			writeIndex();
+		} catch (IOException e) {
+			File index = new File(getCachePath().toFile(), INDEX_FILE);
+			TeamPlugin.log(new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { index.getAbsolutePath() }), e)); 
+			deleteCacheDirectory();
+			return;
+		}
+		cacheEntries = null;
+		blobs = null;
 		lastCacheCleanup = -1;
 		cacheDirSize = 0;
+		size = 0;
 	}
 			
 	private synchronized void deleteCacheDirectory() {
 		cacheEntries = null;
+		blobs = null;
 		lastCacheCleanup = -1;
 		cacheDirSize = 0;
+		size = 0;
 		IPath cacheLocation = getCachePath();
 		File file = cacheLocation.toFile();
 		if (file.exists()) {
@@ -203,7 +550,7 @@ public class ResourceVariantCache {
 	 * @param entry
 	 */
 	protected void purgeFromCache(ResourceVariantCacheEntry entry) {
-		purgeFromCache(entry.getId());
+		purgeFromCache(entry.getId(), entry);
 	}
 
 	private synchronized ResourceVariantCacheEntry internalGetCacheEntry(String id) {
@@ -228,21 +575,88 @@ public class ResourceVariantCache {
 	
 	public synchronized ResourceVariantCacheEntry add(String id, CachedResourceVariant resource) {
 		clearOldCacheEntries();
-		String filePath = String.valueOf(cacheDirSize++);
-		ResourceVariantCacheEntry entry = new ResourceVariantCacheEntry(this, lock, id, filePath);
+		ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry)cacheEntries.get(id);
+		if (entry == null || entry.getState() == ResourceVariantCacheEntry.DISPOSED) {
+			String filePath = String.valueOf(cacheDirSize++);
+			entry = new ResourceVariantCacheEntry(this, newLock(), id, filePath);
+			cacheEntries.put(id, entry);
+		}
+		// Replace the handle, any cached contents remain
 		entry.setResourceVariant(resource);
-		cacheEntries.put(id, entry);
 		return entry;
 	}
 
+	/*
+	 * Each entry has its own lock so that the contents of different entries
+	 * can be written concurrently, for instance by several sessions.
+	 */
+	private ILock newLock() {
+		return Job.getJobManager().newLock();
+	}
+
 	public String getName() {
 		return name;
 	}
 	
+	/**
+	 * Return the maximum number of bytes of contents kept by this cache.
+	 * @return the maximum size of the cache
+	 */
+	public synchronized long getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Set the maximum number of bytes of contents kept by this cache. The least
+	 * recently used contents are evicted if the cache is larger.
+	 * @param maxSize the maximum size of the cache
+	 */
+	public void setMaxSize(long maxSize) {
+		List evicted;
+		synchronized (this) {
+			this.maxSize = maxSize;
+			evicted = evict(null);
+		}
+		disposeEvicted(evicted);
+	}
+	
+	/**
+	 * Return the number of bytes of contents currently cached.
+	 * @return the size of the cached contents
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Return the number of lookups for which the contents were cached.
+	 * @return the hit count
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Return the number of lookups for which the contents were not cached.
+	 * @return the miss count
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Return the number of entries whose contents were evicted to keep the
+	 * cache within its maximum size.
+	 * @return the eviction count
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
 	/*
 	 * Method used for testing only
 	 */
-	public ResourceVariantCacheEntry[] getEntries() {
+	public synchronized ResourceVariantCacheEntry[] getEntries() {
 		return (ResourceVariantCacheEntry[]) cacheEntries.values().toArray(new ResourceVariantCacheEntry[cacheEntries.size()]);
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,9 @@
 package org.eclipse.team.internal.core;
 
 import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -29,12 +32,17 @@ public class ResourceVariantCacheEntry {
 	public static final int DISPOSED = 2;
 	
 	private String id;
-	private String filePath;
+	private volatile String filePath;
 	private ResourceVariantCache cache;
 	private int state = UNINITIALIZED;
 	private long lastAccess;
 	private CachedResourceVariant resourceVariant;
 	private ILock lock;
+	private byte[] contentHash;
+	// The shared contents of the entry once they are accounted for, only accessed by the cache
+	ResourceVariantCache.Blob blob;
+	// Whether the entry no longer refers to its shared contents, only accessed by the cache
+	boolean released;
 
 	public ResourceVariantCacheEntry(ResourceVariantCache cache, ILock lock, String id, String filePath) {
 		this.lock = lock;
@@ -45,8 +53,22 @@ public class ResourceVariantCacheEntry {
 		registerHit();
 	}
 
-	/* (non-Javadoc)
-	 * @see org.eclipse.team.core.sync.ICacheEntry#getContents()
+	/*
+	 * Create an entry for contents that were cached in a previous session.
+	 */
+	ResourceVariantCacheEntry(ResourceVariantCache cache, ILock lock, String id, String filePath, long lastAccess) {
+		this(cache, lock, id, filePath);
+		this.lastAccess = lastAccess;
+		state = READY;
+	}
+
+	/**
+	 * Return the cached contents or <code>null</code> if the entry is not
+	 * ready. An entry whose file is gone, because the contents were evicted
+	 * after the entry was looked up or the file was deleted, is disposed and
+	 * <code>null</code> is returned so that the contents are fetched again.
+	 * @return the cached contents or <code>null</code>
+	 * @throws TeamException if the cache file could not be read
 	 */
 	public InputStream getContents() throws TeamException {
 		if (state != READY) return null;
@@ -66,30 +88,58 @@ public class ResourceVariantCacheEntry {
 			// We will end up here if we couldn't read or delete the cache file
 			throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { ioFile.getAbsolutePath() }), e); 
 		}
-		// This can occur when there is no remote contents
-		return new ByteArrayInputStream(new byte[0]);
+		// Empty contents are cached in an empty file so the contents have been lost
+		dispose();
+		return null;
 	}
 
 	protected File getFile() {
 		return new File(cache.getCachePath().toFile(), filePath);
 	}
 
+	String getFilePath() {
+		return filePath;
+	}
+
+	/*
+	 * Point the entry to a file with identical contents.
+	 */
+	void setFilePath(String filePath) {
+		this.filePath = filePath;
+	}
+
+	/*
+	 * Return the hash of the contents written by this entry or <code>null</code>
+	 * if the contents have not been hashed.
+	 */
+	String getContentHash() {
+		if (contentHash == null) return null;
+		StringBuffer buffer = new StringBuffer(contentHash.length * 2);
+		for (int i = 0; i < contentHash.length; i++) {
+			buffer.append(Character.forDigit((contentHash[i] >> 4) & 0xF, 16));
+			buffer.append(Character.forDigit(contentHash[i] & 0xF, 16));
+		}
+		return buffer.toString();
+	}
+
 	/**
 	 * Set the contents of for this cache entry. This method supports concurrency by only allowing
-	 * one cache entry to be written at a time. In the case of two concurrent writes to the same cache entry,
-	 * the contents from the first write is used and the content from subsequent writes is ignored.
+	 * one write to this cache entry at a time, other entries can be written concurrently. In the case
+	 * of two concurrent writes to the same cache entry, the contents from the first write is used and
+	 * the content from subsequent writes is ignored.
 	 * @param stream an InputStream that provides the contents to be cached
 	 * @param monitor a progress monitor
 	 * @throws TeamException if the entry is DISPOSED or an I/O error occurred
 	 */
 	public void setContents(InputStream stream, IProgressMonitor monitor) throws TeamException {
-		// Use a lock to only allow one write at a time
+		// Use the lock of the entry to only allow one write to it at a time
 		beginOperation();
 		try {
 			internalSetContents(stream, monitor);
 		} finally {
 			endOperation();
 		}
+		cache.contentsCached(this);
 	}
 	
 	private void endOperation() {
@@ -112,9 +162,17 @@ public class ResourceVariantCacheEntry {
 			
 			// Open the cache file for writing
 			OutputStream out;
+			MessageDigest digest = null;
 			try {
 				if (state == UNINITIALIZED) {
 					out = new BufferedOutputStream(new FileOutputStream(ioFile));
+					try {
+						// The hash identifies entries with identical contents
+						digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+						out = new DigestOutputStream(out, digest);
+					} catch (NoSuchAlgorithmException e) {
+						// The contents will not be shared
+					}
 				} else {
 					// If the entry is READY, the contents must have been read in another thread.
 					// We still need to red the contents but they can be ignored since presumably they are the same
@@ -143,6 +201,9 @@ public class ResourceVariantCacheEntry {
 			}
 			
 			// Mark the cache entry as ready
+			if (digest != null) {
+				contentHash = digest.digest();
+			}
 			state = READY;
 		} catch (IOException e) {
 			throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { ioFile.getAbsolutePath() }), e); 
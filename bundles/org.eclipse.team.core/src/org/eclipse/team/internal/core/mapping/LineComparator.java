@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2012 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.team.internal.core.mapping;
 import java.io.*;
 import java.util.ArrayList;
 
+import org.eclipse.compare.rangedifferencer.IHashedRangeComparator;
 import org.eclipse.compare.rangedifferencer.IRangeComparator;
 import org.eclipse.core.resources.IEncodedStorage;
 import org.eclipse.core.resources.IStorage;
@@ -23,7 +24,7 @@ import org.eclipse.core.runtime.CoreException;
  * Copied from org.eclipse.compare.internal.merge.LineComparator 1.4 and
  * modified for {@link IStorage}.
  */
-class LineComparator implements IRangeComparator {
+class LineComparator implements IHashedRangeComparator {
 
 	private String[] fLines;
 
@@ -145,6 +146,16 @@ class LineComparator implements IRangeComparator {
 		return s1.equals(s2);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.compare.rangedifferencer.IHashedRangeComparator#getRangeHash(int)
+	 */
+	public int getRangeHash(int index) {
+		return fLines[index].hashCode();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,16 +15,39 @@ import java.util.*;
 import org.eclipse.core.runtime.IPath;
 
 /**
- * A tree of objects keyed by path
+ * A tree of objects keyed by path.
+ * <p>
+ * The nodes are spread over several maps, each with its own lock, so that
+ * lookups of different paths do not contend with each other. Changes to the
+ * tree are serialized on the tree itself and lock the map of each node they
+ * change, so a lookup only waits for a change to the node it reads. Operations
+ * over the whole tree, like {@link #getPaths()}, also lock the tree.
+ * </p>
  */
 public class PathTree {
 	
+	private static final IPath[] NO_CHILDREN = new IPath[0];
+	
+	// Number of maps the nodes are spread over, a power of 2
+	private static final int SEGMENTS = 16;
+	
 	class Node {
+		// The map that holds the node, its lock guards the fields of the node
+		final Map segment;
 		Object payload;
-		Set descendantsWithPayload;
+		// The paths of the children that have a payload or descendants with a payload
+		Set children;
+		// A copy of the children that is handed out by getChildren
+		IPath[] childrenSnapshot;
 		int flags;
+		// The states counted at or below the node and the count of each, in parallel
+		int[] countedStates;
+		long[] counts;
+		Node(Map segment) {
+			this.segment = segment;
+		}
 		public boolean isEmpty() {
-			return payload == null && (descendantsWithPayload == null || descendantsWithPayload.isEmpty());
+			return payload == null && (children == null || children.isEmpty());
 		}
 		public Object getPayload() {
 			return payload;
@@ -33,7 +56,7 @@ public class PathTree {
 			this.payload = payload;
 		}
 		public boolean hasDescendants() {
-			return descendantsWithPayload != null && !descendantsWithPayload.isEmpty();
+			return children != null && !children.isEmpty();
 		}
 		public boolean hasFlag(int propertyBit) {
 			return (flags & propertyBit) != 0;
@@ -46,31 +69,101 @@ public class PathTree {
 		}
 		public boolean descendantHasFlag(int property) {
 			if (hasDescendants()) {
-				for (Iterator iter = descendantsWithPayload.iterator(); iter.hasNext();) {
+				for (Iterator iter = children.iterator(); iter.hasNext();) {
 					IPath path = (IPath) iter.next();
 					Node child = getNode(path);
-					if (child.hasFlag(property)) {
+					if ((child.getPayload() != null && child.hasFlag(property)) || child.descendantHasFlag(property)) {
 						return true;
 					}
 				}
 			}
 			return false;
 		}
+		boolean addChild(IPath path) {
+			if (children == null)
+				children = new HashSet();
+			if (!children.add(path))
+				return false;
+			childrenSnapshot = null;
+			return true;
+		}
+		void removeChild(IPath path) {
+			if (children != null && children.remove(path)) {
+				if (children.isEmpty())
+					children = null;
+				childrenSnapshot = null;
+			}
+		}
+		IPath[] getChildrenSnapshot() {
+			if (children == null)
+				return NO_CHILDREN;
+			if (childrenSnapshot == null)
+				childrenSnapshot = (IPath[]) children.toArray(new IPath[children.size()]);
+			return childrenSnapshot;
+		}
+		void addToCount(int state, int amount) {
+			int length = countedStates == null ? 0 : countedStates.length;
+			for (int i = 0; i < length; i++) {
+				if (countedStates[i] == state) {
+					counts[i] += amount;
+					return;
+				}
+			}
+			// only a few distinct states are counted so the arrays grow by one
+			int[] newStates = new int[length + 1];
+			long[] newCounts = new long[length + 1];
+			if (length > 0) {
+				System.arraycopy(countedStates, 0, newStates, 0, length);
+				System.arraycopy(counts, 0, newCounts, 0, length);
+			}
+			newStates[length] = state;
+			newCounts[length] = amount;
+			countedStates = newStates;
+			counts = newCounts;
+		}
+		long getCount(int state, int mask) {
+			long count = 0;
+			if (countedStates != null) {
+				for (int i = 0; i < countedStates.length; i++) {
+					if (mask == 0 ? countedStates[i] == state : (countedStates[i] & mask) == state)
+						count += counts[i];
+				}
+			}
+			return count;
+		}
+		long getTotalCount() {
+			long count = 0;
+			if (counts != null) {
+				for (int i = 0; i < counts.length; i++) {
+					count += counts[i];
+				}
+			}
+			return count;
+		}
 	}
 	
-	private Map objects = new HashMap();
+	private final Map[] segments = new Map[SEGMENTS]; // IPath > Node
 
+	public PathTree() {
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new HashMap();
+		}
+	}
+	
 	/**
 	 * Return the object at the given path or <code>null</code>
 	 * if there is no object at that path
 	 * @param path the path
 	 * @return the object at the given path or <code>null</code>
 	 */
-	public synchronized Object get(IPath path) {
-		Node node = getNode(path);
-		if (node == null)
-			return null;
-		return node.getPayload();
+	public Object get(IPath path) {
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return null;
+			return node.getPayload();
+		}
 	}
 	
 	/**
@@ -86,10 +179,13 @@ public class PathTree {
 		if (node == null) {
 			node = addNode(path);
 		}
-		Object previous = node.getPayload();
-		node.setPayload(object);
+		Object previous;
+		synchronized (node.segment) {
+			previous = node.getPayload();
+			node.setPayload(object);
+		}
 		if(previous == null) {
-			addToParents(path, path);
+			addToParents(path);
 		}
 		return previous;
 	}
@@ -106,13 +202,14 @@ public class PathTree {
 		Node node = getNode(path);
 		if (node == null)
 			return null;
-		Object previous = node.getPayload();
-		node.setPayload(null);
-		if(previous != null) {
-			removeFromParents(path, path);
-			if (node.isEmpty()) {
-				removeNode(path);
-			}
+		Object previous;
+		synchronized (node.segment) {
+			previous = node.getPayload();
+			node.setPayload(null);
+		}
+		if(previous != null && node.isEmpty()) {
+			removeNode(path);
+			removeFromParents(path);
 		}
 		return previous;
 		
@@ -123,12 +220,15 @@ public class PathTree {
 	 * @param path
 	 * @return whether there are children for the given path
 	 */
-	public synchronized boolean hasChildren(IPath path) {
-		if (path.isEmpty()) return !objects.isEmpty();
-		Node node = getNode(path);
-		if (node == null)
-			return false;
-		return node.hasDescendants();
+	public boolean hasChildren(IPath path) {
+		if (path.isEmpty()) return !isEmpty();
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return false;
+			return node.hasDescendants();
+		}
 	}
 	
 	/**
@@ -136,102 +236,95 @@ public class PathTree {
 	 * @param path the path
 	 * @return the paths for any children of the given path in this set
 	 */
-	public synchronized IPath[] getChildren(IPath path) {
-		// OPTIMIZE: could be optimized so that we don't traverse all the deep 
-		// children to find the immediate ones.
-		Set children = new HashSet();
-		Node node = getNode(path);
-		if (node != null) {
-			Set possibleChildren = node.descendantsWithPayload;
-			if(possibleChildren != null) {
-				for (Iterator it = possibleChildren.iterator(); it.hasNext();) {
-					Object next = it.next();
-					IPath descendantPath = (IPath)next;
-					IPath childPath = null;
-					if(descendantPath.segmentCount() == (path.segmentCount() +  1)) {
-						childPath = descendantPath;
-					} else if (descendantPath.segmentCount() > path.segmentCount()) {
-						childPath = descendantPath.removeLastSegments(descendantPath.segmentCount() - path.segmentCount() - 1);
-					}
-					if (childPath != null) {
-						children.add(childPath);
-					}
-				}
-			}
+	public IPath[] getChildren(IPath path) {
+		IPath[] children = getChildrenNoCopy(path);
+		if (children.length == 0)
+			return children;
+		return (IPath[]) children.clone();
+	}
+	
+	/**
+	 * Return the paths for any children of the given path in this set
+	 * without copying them. The returned array is shared and must not be
+	 * modified. It is not updated by later changes to the tree.
+	 * @param path the path
+	 * @return the paths for any children of the given path in this set
+	 */
+	public IPath[] getChildrenNoCopy(IPath path) {
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return NO_CHILDREN;
+			return node.getChildrenSnapshot();
 		}
-		return (IPath[]) children.toArray(new IPath[children.size()]);
 	}
 	
-	private boolean addToParents(IPath path, IPath parent) {
-		// this flag is used to indicate if the parent was previously in the set
-		boolean addedParent = false;
-		if (path == parent) {
-			// this is the leaf that was just added
-			addedParent = true;
-		} else {
+	/*
+	 * Record the path as a child of its parent and the parent as a child of
+	 * its own parent, up to the first ancestor that already had the child.
+	 */
+	private void addToParents(IPath path) {
+		IPath child = path;
+		while (child.segmentCount() > 0) {
+			IPath parent = child.removeLastSegments(1);
 			Node node = getNode(parent);
 			if (node == null)
 				node = addNode(parent);
-			Set children = node.descendantsWithPayload;
-			if (children == null) {
-				children = new HashSet();
-				node.descendantsWithPayload = children;
-				// this is a new folder in the sync set
-				addedParent = true;
+			synchronized (node.segment) {
+				if (!node.addChild(child)) {
+					// the parent already had descendants so its ancestors are up to date
+					return;
+				}
 			}
-			children.add(path);
-		}
-		// if the parent already existed and the resource is new, record it
-		if ((parent.segmentCount() == 0 || !addToParents(path, parent.removeLastSegments(1))) && addedParent) {
-			// TODO: we may not need to record the removed subtree
-			// internalAddedSubtreeRoot(parent);
+			child = parent;
 		}
-		return addedParent;
 	}
 	
-	private boolean removeFromParents(IPath path, IPath parent) {
-		// this flag is used to indicate if the parent was removed from the set
-		boolean removedParent = false;
-		Node node = getNode(parent);
-		if (node == null) {
-			// this is the leaf
-			removedParent = true;
-		} else {
-			Set children = node.descendantsWithPayload;
-			if (children == null) {
-				// this is the leaf
-				removedParent = true;
-			} else {
-				children.remove(path);
-				if (children.isEmpty()) {
-					node.descendantsWithPayload = null;
-					if (node.isEmpty())
-						removeNode(parent);
-					removedParent = true;
-				}
+	/*
+	 * Remove the path from the children of its parent, and the parent from its
+	 * own parent if it is now empty, up to the first ancestor that is not empty.
+	 */
+	private void removeFromParents(IPath path) {
+		IPath child = path;
+		while (child.segmentCount() > 0) {
+			IPath parent = child.removeLastSegments(1);
+			Node node = getNode(parent);
+			if (node == null)
+				return;
+			synchronized (node.segment) {
+				node.removeChild(child);
 			}
+			if (!node.isEmpty())
+				return;
+			removeNode(parent);
+			child = parent;
 		}
-		//	if the parent wasn't removed and the resource was, record it
-		if ((parent.segmentCount() == 0 || !removeFromParents(path, parent.removeLastSegments(1))) && removedParent) {
-			// TODO: may not need to record this
-			//internalRemovedSubtreeRoot(parent);
-		}
-		return removedParent;
 	}
 
 	/**
 	 * Clear all entries from the path tree.
 	 */
 	public synchronized void clear() {
-		objects.clear();
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].clear();
+			}
+		}
 	}
 
 	/**
 	 * Return whether the path tree is empty.
 	 * @return whether the path tree is empty
 	 */
-	public synchronized boolean isEmpty() {
-		return objects.isEmpty();
+	public boolean isEmpty() {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				if (!segments[i].isEmpty())
+					return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -240,11 +333,13 @@ public class PathTree {
 	 */
 	public synchronized IPath[] getPaths() {
 		List result = new ArrayList();
-		for (Iterator iter = objects.keySet().iterator(); iter.hasNext();) {
-			IPath path = (IPath) iter.next();
-			Node node = getNode(path);
-			if (node.getPayload() != null)
-				result.add(path);
+		for (int i = 0; i < segments.length; i++) {
+			for (Iterator iter = segments[i].entrySet().iterator(); iter.hasNext();) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				Node node = (Node) entry.getValue();
+				if (node.getPayload() != null)
+					result.add(entry.getKey());
+			}
 		}
 		return (IPath[]) result.toArray(new IPath[result.size()]);
 	}
@@ -255,11 +350,12 @@ public class PathTree {
 	 */
 	public synchronized Collection values() {
 		List result = new ArrayList();
-		for (Iterator iter = objects.keySet().iterator(); iter.hasNext();) {
-			IPath path = (IPath) iter.next();
-			Node node = getNode(path);
-			if (node.getPayload() != null)
-				result.add(node.getPayload());
+		for (int i = 0; i < segments.length; i++) {
+			for (Iterator iter = segments[i].values().iterator(); iter.hasNext();) {
+				Node node = (Node) iter.next();
+				if (node.getPayload() != null)
+					result.add(node.getPayload());
+			}
 		}
 		return result;
 	}
@@ -272,21 +368,94 @@ public class PathTree {
 		return values().size();
 	}
 	
+	private Map getSegment(IPath path) {
+		int hash = path.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (SEGMENTS - 1)];
+	}
+	
+	/*
+	 * Only used while the tree is locked, the maps are only changed while the tree is locked
+	 */
 	private Node getNode(IPath path) {
-		return (Node)objects.get(path);
+		return (Node)getSegment(path).get(path);
 	}
 	
 	private Node addNode(IPath path) {
-		Node node;
-		node = new Node();
-		objects.put(path, node);
+		Map segment = getSegment(path);
+		Node node = new Node(segment);
+		synchronized (segment) {
+			segment.put(path, node);
+		}
 		return node;
 	}
 	
 	private Object removeNode(IPath path) {
-		return objects.remove(path);
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			return segment.remove(path);
+		}
 	}
 	
+	/**
+	 * Add the given amount to the count of the given state at the given path
+	 * and at each of its ancestors. The counts are kept on the nodes of the
+	 * tree, so the path must have an object in the tree and the count must be
+	 * removed before the object is.
+	 * @param path the path
+	 * @param state the state
+	 * @param amount the amount to add, negative to remove from the count
+	 */
+	public synchronized void addToCount(IPath path, int state, int amount) {
+		while (true) {
+			Node node = getNode(path);
+			if (node != null) {
+				synchronized (node.segment) {
+					node.addToCount(state, amount);
+				}
+			}
+			if (path.segmentCount() == 0)
+				return;
+			path = path.removeLastSegments(1);
+		}
+	}
+
+	/**
+	 * Return the number of counts at or below the given path whose state
+	 * matches the given mask. A mask of 0 assumes a direct match of the given
+	 * state.
+	 * @param path the path
+	 * @param state the state
+	 * @param mask the state mask
+	 * @return the number of matching counts at or below the path
+	 * @see #addToCount(IPath, int, int)
+	 */
+	public long getCount(IPath path, int state, int mask) {
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return 0;
+			return node.getCount(state, mask);
+		}
+	}
+
+	/**
+	 * Return the number of counts of any state at or below the given path.
+	 * @param path the path
+	 * @return the number of counts at or below the path
+	 * @see #addToCount(IPath, int, int)
+	 */
+	public long getTotalCount(IPath path) {
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return 0;
+			return node.getTotalCount();
+		}
+	}
+
 	/**
 	 * Set the property for the given path and propogate the
 	 * bit to the root. The property is only set if the given path
@@ -314,18 +483,43 @@ public class PathTree {
 		// Only unset the property if no descendants have the flag set
 		if (!value && node.descendantHasFlag(property))
 			return;
-		node.setProperty(property, value);
+		synchronized (node.segment) {
+			node.setProperty(property, value);
+		}
 		changed.add(path);
 		internalSetPropertyBit(path.removeLastSegments(1), property, value, changed);
 	}
 
-	public synchronized boolean getProperty(IPath path, int property) {
-		if (path.segmentCount() == 0)
-			return false;
+	/**
+	 * Set the property for the given path without propagating it.
+	 * The property is only set if the given path exists in the tree.
+	 * @param path the path
+	 * @param property the property bit to set
+	 * @param value whether the bit should be on or off
+	 * @return whether the bit changed
+	 */
+	public synchronized boolean setProperty(IPath path, int property, boolean value) {
 		Node node = getNode(path);
 		if (node == null)
 			return false;
-		return (node.hasFlag(property));
+		synchronized (node.segment) {
+			if (value == node.hasFlag(property))
+				return false;
+			node.setProperty(property, value);
+		}
+		return true;
+	}
+
+	public boolean getProperty(IPath path, int property) {
+		if (path.segmentCount() == 0)
+			return false;
+		Map segment = getSegment(path);
+		synchronized (segment) {
+			Node node = (Node)segment.get(path);
+			if (node == null)
+				return false;
+			return (node.hasFlag(property));
+		}
 	}
 
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.core.streams;
+
+import java.util.LinkedList;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.team.internal.core.Policy;
+import org.eclipse.team.internal.core.TeamPlugin;
+
+/**
+ * Runs the blocking i/o operations of the timeout streams on a pool of
+ * daemon threads shared by all streams. A thread is only taken while an
+ * operation is pending, so streams that are not being read or written do not
+ * hold a thread. Since the operations block for an unknown time, the pool
+ * grows whenever no thread is idle and threads that stay idle for a while
+ * terminate.
+ */
+final class StreamScheduler {
+
+	private static final long KEEP_ALIVE = 10000; // idle time before a thread terminates
+
+	private static final LinkedList tasks = new LinkedList();
+	private static int idle; // the number of threads waiting for a task
+	private static int threads; // the number of threads in the pool
+
+	private StreamScheduler() {
+		// not instantiated
+	}
+
+	/**
+	 * Runs the task on one of the threads of the pool.
+	 * @param task the task to run
+	 */
+	static void schedule(Runnable task) {
+		synchronized (tasks) {
+			tasks.addLast(task);
+			if (tasks.size() > idle) {
+				threads++;
+				if (Policy.DEBUG_STREAMS) System.out.println("StreamScheduler starting thread, threads=" + threads); //$NON-NLS-1$
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						work();
+					}
+				}, "StreamScheduler"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				thread.start();
+			} else {
+				tasks.notify();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of threads in the pool.
+	 * @return the number of threads
+	 */
+	static int getThreadCount() {
+		synchronized (tasks) {
+			return threads;
+		}
+	}
+
+	private static void work() {
+		boolean terminated = false;
+		try {
+			Runnable task;
+			while ((task = next()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					TeamPlugin.log(IStatus.ERROR, e.getMessage(), e);
+				}
+			}
+			terminated = true;
+		} finally {
+			if (!terminated) {
+				synchronized (tasks) {
+					threads--;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the next task or null if the thread has been idle for too long,
+	 * in which case it is no longer counted in the pool.
+	 */
+	private static Runnable next() {
+		synchronized (tasks) {
+			long start = System.currentTimeMillis();
+			while (tasks.isEmpty()) {
+				long remaining = KEEP_ALIVE - (System.currentTimeMillis() - start);
+				if (remaining <= 0) {
+					threads--;
+					return null;
+				}
+				idle++;
+				try {
+					tasks.wait(remaining);
+				} catch (InterruptedException e) {
+					// the threads are not interrupted by the streams, keep waiting
+				} finally {
+					idle--;
+				}
+			}
+			return (Runnable) tasks.removeFirst();
+		}
+	}
+}
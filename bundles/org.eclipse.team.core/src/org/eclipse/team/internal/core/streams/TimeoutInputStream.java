@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,22 +26,42 @@ import org.eclipse.team.internal.core.Policy;
  * generates InterruptedIOExceptions in which case it must also support resuming.
  * Check the bytesTransferred field to determine how much of the operation completed;
  * conversely, at what point to resume.
+ *
+ * The underlying stream is read by a thread of a pool shared by all timeout streams.
+ * A thread is taken when a read finds the buffer empty and reads ahead only the bytes
+ * that are available without blocking, so a stream that is not being read does not
+ * hold a thread. A stream that grows its buffer when full keeps reading ahead until
+ * the end of the stream instead.
+ *
+ * Such a stream therefore holds a thread of the pool for as long as it is open, even
+ * while nothing is available. It is meant for streams that must be drained as soon
+ * as bytes arrive, like the channel of an SSH session, which stalls the other channels
+ * of the session when its buffer is full. Giving up the thread when no bytes are
+ * available would leave arriving bytes undrained until the next read. The pool is not
+ * bounded, so the held thread does not delay other streams, but there is one such
+ * thread for each open stream.
  */
 public class TimeoutInputStream extends FilterInputStream {
 	// unsynchronized variables
 	private final long readTimeout; // read() timeout in millis
 	private final long closeTimeout; // close() timeout in millis, or -1
+	private final Runnable task = new Runnable() {
+		public void run() {
+			runTask();
+		}
+	};
 
-	// requests for the thread (synchronized)
+	// requests for the task (synchronized)
 	private boolean closeRequested = false; // if true, close requested
 
-	// responses from the thread (synchronized)
-	private Thread thread;   // if null, thread has terminated
+	// responses from the task (synchronized)
+	private boolean scheduled = false; // if true, the task is scheduled or running
+	private boolean closed = false; // if true, the underlying stream has been closed
 	private byte[] iobuffer; // circular buffer
 	private int head = 0;    // points to first unread byte
 	private int length = 0;  // number of remaining unread bytes
 	private IOException ioe = null; // if non-null, contains a pending exception
-	private boolean waitingForClose = false; // if true, thread is waiting for close()
+	private boolean waitingForClose = false; // if true, EOF or an error was encountered
 	
 	private boolean growWhenFull = false; // if true, buffer will grow when it is full
 
@@ -60,15 +80,20 @@ public class TimeoutInputStream extends FilterInputStream {
 		this.readTimeout = readTimeout;
 		this.closeTimeout = closeTimeout;
 		this.iobuffer = new byte[bufferSize];
-		thread = new Thread(new Runnable() {
-			public void run() {
-				runThread();
-			}
-		}, "TimeoutInputStream");//$NON-NLS-1$
-		thread.setDaemon(true);
-		thread.start();
 	}
 	
+	/**
+	 * Creates a timeout wrapper for an input stream that may read ahead
+	 * without bounds. A stream that grows its buffer when full holds a thread
+	 * until it is closed or reaches the end of the underlying stream.
+	 * @param in the underlying input stream
+	 * @param bufferSize the initial buffer size in bytes
+	 * @param readTimeout the number of milliseconds to block for a read() or skip() before
+	 *        throwing an InterruptedIOException; 0 blocks indefinitely
+	 * @param closeTimeout the number of milliseconds to block for a close() before throwing
+	 *        an InterruptedIOException; 0 blocks indefinitely, -1 closes the stream in the background
+	 * @param growWhenFull whether the buffer grows when it is full so that the underlying stream is always drained
+	 */
 	public TimeoutInputStream(InputStream in, int bufferSize, long readTimeout, long closeTimeout, boolean growWhenFull) {
 		this(in, bufferSize, readTimeout, closeTimeout);
 		this.growWhenFull = growWhenFull;
@@ -84,23 +109,28 @@ public class TimeoutInputStream extends FilterInputStream {
 	 * @throws IOException if an i/o error occurs
 	 */
 	public void close() throws IOException {
-		Thread oldThread;
 		synchronized (this) {
-			if (thread == null) return;
-			oldThread = thread;
+			if (closed) return;
 			closeRequested = true;
-			thread.interrupt();
+			schedule();
+			notifyAll();
 			checkError();
 		}
 		if (closeTimeout == -1) return;
-		try {
-			oldThread.join(closeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
-		}
 		synchronized (this) {
+			long start = System.currentTimeMillis();
+			while (! closed) {
+				long remaining = closeTimeout == 0 ? 0 : closeTimeout - (System.currentTimeMillis() - start);
+				if (closeTimeout != 0 && remaining <= 0) break;
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+					break;
+				}
+			}
 			checkError();
-			if (thread != null) throw new InterruptedIOException();
+			if (! closed) throw new InterruptedIOException();
 		}
 	}
 	
@@ -124,7 +154,7 @@ public class TimeoutInputStream extends FilterInputStream {
 		int b = iobuffer[head++] & 255;
 		if (head == iobuffer.length) head = 0;
 		length--;
-		notify();
+		notifyAll();
 		return b;
 	}
 	
@@ -138,12 +168,16 @@ public class TimeoutInputStream extends FilterInputStream {
 		if (! syncFill()) return -1; // EOF reached
 		int pos = off;
 		if (len > length) len = length;
-		while (len-- > 0) {
-			buffer[pos++] = iobuffer[head++];
+		while (len > 0) {
+			int n = Math.min(len, iobuffer.length - head);
+			System.arraycopy(iobuffer, head, buffer, pos, n);
+			pos += n;
+			head += n;
 			if (head == iobuffer.length) head = 0;
-			length--;
+			length -= n;
+			len -= n;
 		}
-		notify();
+		notifyAll();
 		return pos - off;
 	}
 
@@ -167,7 +201,7 @@ public class TimeoutInputStream extends FilterInputStream {
 			e.bytesTransferred = (int) amount; // assumes amount < Integer.MAX_INT
 			throw e;
 		}
-		notify();
+		notifyAll();
 		return amount;
 	}
 
@@ -187,11 +221,18 @@ public class TimeoutInputStream extends FilterInputStream {
 		if (length != 0) return true;
 		checkError(); // check errors only after we have read all remaining bytes
 		if (waitingForClose) return false;
-		notify();
-		try {
-			wait(readTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+		long start = System.currentTimeMillis();
+		for (;;) {
+			schedule(); // again if the task ended without reading any bytes
+			long remaining = readTimeout == 0 ? 0 : readTimeout - (System.currentTimeMillis() - start);
+			if (readTimeout != 0 && remaining <= 0) break;
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+				break;
+			}
+			if (length != 0 || ioe != null || waitingForClose) break;
 		}
 		if (length != 0) return true;
 		checkError(); // check errors only after we have read all remaining bytes
@@ -211,70 +252,89 @@ public class TimeoutInputStream extends FilterInputStream {
 	}
 	
 	/**
-	 * Runs the thread in the background.
+	 * Schedules the task unless it is already scheduled or there is nothing left to do.
 	 */
-	private void runThread() {
+	private void schedule() {
+		if (scheduled || closed || waitingForClose && ! closeRequested) return;
+		scheduled = true;
+		StreamScheduler.schedule(task);
+	}
+
+	/**
+	 * Runs the task in the background.
+	 */
+	private void runTask() {
 		try {
-			readUntilDone();
+			readAvailable();
 		} catch (IOException e) {
-			synchronized (this) { ioe = e; }
-		} finally {
-			waitUntilClosed();
-			try {
-				in.close();
-			} catch (IOException e) {
-				synchronized (this) { ioe = e; } 
-			} finally {
-				synchronized (this) {
-					thread = null;
-					notify();
-				}
+			synchronized (this) {
+				ioe = e;
+				waitingForClose = true;
+			}
+		} catch (RuntimeException e) {
+			IOException ex = new IOException(e.getMessage());
+			ex.initCause(e);
+			synchronized (this) {
+				ioe = ex;
+				waitingForClose = true;
 			}
 		}
-	}
-	
-	/**
-	 * Waits until we have been requested to close the stream.
-	 */
-	private synchronized void waitUntilClosed() {
-		waitingForClose = true;
-		notify();
-		while (! closeRequested) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				closeRequested = true; // alternate quit signal
+		synchronized (this) {
+			if (! closeRequested) {
+				scheduled = false;
+				notifyAll();
+				return;
+			}
+		}
+		try {
+			in.close();
+		} catch (IOException e) {
+			synchronized (this) { ioe = e; } 
+		} finally {
+			synchronized (this) {
+				closed = true;
+				waitingForClose = true;
+				scheduled = false;
+				notifyAll();
 			}
 		}
 	}
 
 	/**
-	 * Reads bytes into the buffer until EOF, closed, or error.
+	 * Reads bytes into the buffer until EOF, closed, error or the buffer is full.
+	 * Only the first read may block unless the buffer grows when full.
 	 */
-	private void readUntilDone() throws IOException {
+	private void readAvailable() throws IOException {
+		boolean block = true;
 		for (;;) {
 			int off, len;
 			synchronized (this) {
 				while (isBufferFull()) {
-					if (closeRequested) return; // quit signal
+					if (! growWhenFull || closeRequested) return;
 					waitForRead();
 				}
+				if (closeRequested || waitingForClose) return;
 				off = (head + length) % iobuffer.length;
 				len = ((head > off) ? head : iobuffer.length) - off;
 			}
+			if (! block && in.available() <= 0) return;
 			int count;
 			try {
 				// the i/o operation might block without releasing the lock,
 				// so we do this outside of the synchronized block
 				count = in.read(iobuffer, off, len);
-				if (count == -1) return; // EOF encountered
 			} catch (InterruptedIOException e) {
 				count = e.bytesTransferred; // keep partial transfer
 			}
 			synchronized (this) {
-				length += count;
-				notify();
+				if (count == -1) {
+					waitingForClose = true; // EOF encountered
+				} else {
+					length += count;
+				}
+				notifyAll();
 			}
+			block = growWhenFull;
 		}				
 	}
 	
@@ -285,17 +345,13 @@ public class TimeoutInputStream extends FilterInputStream {
 	 */
 	private synchronized void waitForRead() {
 		try {
-			if (growWhenFull) {
-				// wait a second before growing to let reads catch up
-				wait(readTimeout);
-			} else {
-				wait();
-			}
+			// wait a second before growing to let reads catch up
+			wait(readTimeout);
 		} catch (InterruptedException e) {
 			closeRequested = true; // alternate quit signal
 		}
 		// If the buffer is still full, give it a chance to grow
-		if (growWhenFull && isBufferFull()) {
+		if (isBufferFull() && ! closeRequested) {
 			growBuffer();
 		}
 	}
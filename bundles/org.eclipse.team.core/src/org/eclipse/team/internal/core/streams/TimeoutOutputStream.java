@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,22 +28,32 @@ import org.eclipse.team.internal.core.Messages;
  * generates InterruptedIOExceptions in which case it must also support resuming.
  * Check the bytesTransferred field to determine how much of the operation completed;
  * conversely, at what point to resume.
+ *
+ * The underlying stream is written by a thread of a pool shared by all timeout streams.
+ * A thread is only taken when the buffer is full, the stream is flushed or it is closed,
+ * and it is returned once the buffer has been written.
  */
 public class TimeoutOutputStream extends FilterOutputStream {
 	// unsynchronized variables
 	private final long writeTimeout; // write() timeout in millis
 	private final long closeTimeout; // close() timeout in millis, or -1
+	private final Runnable task = new Runnable() {
+		public void run() {
+			runTask();
+		}
+	};
 
-	// requests for the thread (synchronized)
+	// requests for the task (synchronized)
 	private byte[] iobuffer; // circular buffer
 	private int head = 0; // points to first unwritten byte
 	private int length = 0; // number of remaining unwritten bytes
 	private boolean closeRequested = false; // if true, close requested
 	private boolean flushRequested = false; // if true, flush requested
 
-	// responses from the thread (synchronized)
-	private Thread thread;
-	private boolean waitingForClose = false; // if true, the thread is waiting for close()
+	// responses from the task (synchronized)
+	private boolean scheduled = false; // if true, the task is scheduled or running
+	private boolean closed = false; // if true, the underlying stream has been closed
+	private boolean waitingForClose = false; // if true, an error was encountered
 	private IOException ioe = null;
 
 	/**
@@ -61,13 +71,6 @@ public class TimeoutOutputStream extends FilterOutputStream {
 		this.writeTimeout = writeTimeout;
 		this.closeTimeout = closeTimeout;
 		this.iobuffer = new byte[bufferSize];
-		thread = new Thread(new Runnable() {
-			public void run() {
-				runThread();
-			}
-		}, "TimeoutOutputStream");//$NON-NLS-1$
-		thread.setDaemon(true);
-		thread.start();
 	}
 
 	/**
@@ -81,23 +84,27 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	 * @throws IOException if an i/o error occurs
 	 */
 	public void close() throws IOException {
-		Thread oldThread;
 		synchronized (this) {
-			if (thread == null) return;
-			oldThread = thread;
+			if (closed) return;
 			closeRequested = true;
-			thread.interrupt();
+			schedule();
 			checkError();
 		}
 		if (closeTimeout == -1) return;
-		try {
-			oldThread.join(closeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
-		}
 		synchronized (this) {
+			long start = System.currentTimeMillis();
+			while (! closed) {
+				long remaining = closeTimeout == 0 ? 0 : closeTimeout - (System.currentTimeMillis() - start);
+				if (closeTimeout != 0 && remaining <= 0) break;
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+					break;
+				}
+			}
 			checkError();
-			if (thread != null) throw new InterruptedIOException();
+			if (! closed) throw new InterruptedIOException();
 		}
 	}
 
@@ -111,7 +118,6 @@ public class TimeoutOutputStream extends FilterOutputStream {
 		syncCommit(true);
 		iobuffer[(head + length) % iobuffer.length] = (byte) b;
 		length++;
-		notify();
 	}
 	
 	/**
@@ -126,16 +132,18 @@ public class TimeoutOutputStream extends FilterOutputStream {
 			do {
 				syncCommit(true);
 				while (amount < len && length != iobuffer.length) {
-					iobuffer[(head + length) % iobuffer.length] = buffer[off++];
-					length++;
-					amount++;
+					int tail = (head + length) % iobuffer.length;
+					int n = Math.min(len - amount, (tail < head ? head : iobuffer.length) - tail);
+					System.arraycopy(buffer, off, iobuffer, tail, n);
+					off += n;
+					length += n;
+					amount += n;
 				}
 			} while (amount < len);
 		} catch (InterruptedIOException e) {
 			e.bytesTransferred = amount;
 			throw e;
 		}
-		notify();
 	}
 
 	/**
@@ -153,7 +161,7 @@ public class TimeoutOutputStream extends FilterOutputStream {
 			e.bytesTransferred = oldLength - length;
 			throw e;
 		}
-		notify();
+		schedule(); // flush the underlying stream even if there are no bytes to write
 	}
 	
 	/**
@@ -165,11 +173,18 @@ public class TimeoutOutputStream extends FilterOutputStream {
 		checkError(); // check errors before allowing the addition of new bytes
 		if (partial && length != iobuffer.length || length == 0) return;
 		if (waitingForClose) throw new IOException(Messages.TimeoutOutputStream_cannotWriteToStream); 
-		notify();
-		try {
-			wait(writeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+		long start = System.currentTimeMillis();
+		for (;;) {
+			schedule();
+			long remaining = writeTimeout == 0 ? 0 : writeTimeout - (System.currentTimeMillis() - start);
+			if (writeTimeout != 0 && remaining <= 0) break;
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+				break;
+			}
+			if (partial && length != iobuffer.length || length == 0 || ioe != null) break;
 		}
 		checkError(); // check errors before allowing the addition of new bytes
 		if (partial && length != iobuffer.length || length == 0) return;
@@ -188,59 +203,71 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	}
 
 	/**
-	 * Runs the thread in the background.
+	 * Schedules the task unless it is already scheduled or there is nothing left to do.
 	 */
-	private void runThread() {
-		try {
-			writeUntilDone();
-		} catch (IOException e) {
-			synchronized (this) { ioe = e; }
-		} finally {
-			waitUntilClosed();
-			try {
-				out.close();
-			} catch (IOException e) {
-				synchronized (this) { ioe = e; } 
-			} finally {
-				synchronized (this) {
-					thread = null;
-					notify();
-				}
-			}
-		}
+	private void schedule() {
+		if (scheduled || closed || waitingForClose && ! closeRequested) return;
+		scheduled = true;
+		StreamScheduler.schedule(task);
 	}
 
 	/**
-	 * Waits until we have been requested to close the stream.
+	 * Runs the task in the background.
 	 */
-	private synchronized void waitUntilClosed() {
-		waitingForClose = true;
-		notify();
-		while (! closeRequested) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				closeRequested = true; // alternate quit signal
+	private void runTask() {
+		try {
+			if (writeBuffered()) return;
+		} catch (IOException e) {
+			synchronized (this) {
+				ioe = e;
+				waitingForClose = true;
+			}
+		} catch (RuntimeException e) {
+			IOException ex = new IOException(e.getMessage());
+			ex.initCause(e);
+			synchronized (this) {
+				ioe = ex;
+				waitingForClose = true;
+			}
+		}
+		synchronized (this) {
+			if (! closeRequested) {
+				scheduled = false;
+				notifyAll();
+				return;
+			}
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			synchronized (this) { ioe = e; } 
+		} finally {
+			synchronized (this) {
+				closed = true;
+				scheduled = false;
+				notifyAll();
 			}
 		}
 	}
 
 	/**
-	 * Writes bytes from the buffer until closed and buffer is empty
+	 * Writes bytes from the buffer until it is empty and no flush is pending.
+	 * @return true if there is nothing left to do, in which case the task is no
+	 *         longer scheduled, false if the stream is to be closed or an error occurred
 	 */
-	private void writeUntilDone() throws IOException {
+	private boolean writeBuffered() throws IOException {
 		int bytesUntilFlush = -1; // if > 0, then we will flush after that many bytes have been written
 		for (;;) {
 			int off, len;
 			synchronized (this) {
-				for (;;) {
-					if (closeRequested && length == 0) return; // quit signal
-					if (length != 0 || flushRequested) break;
-					try {
-						wait();
-					} catch (InterruptedException e) {
-						closeRequested = true; // alternate quit signal
-					}
+				if (waitingForClose) return false;
+				if (length == 0 && ! flushRequested && bytesUntilFlush < 0) {
+					if (closeRequested) return false;
+					// unschedule while holding the lock so that a flush requested from now on
+					// schedules the task again
+					scheduled = false;
+					notifyAll();
+					return true;
 				}
 				off = head;
 				len = iobuffer.length - head;
@@ -281,7 +308,7 @@ public class TimeoutOutputStream extends FilterOutputStream {
 				synchronized (this) {
 					head = (head + len) % iobuffer.length;
 					length -= len;
-					notify();
+					notifyAll();
 				}
 			}
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2008 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -86,6 +86,28 @@ public class DiffTreeStatistics {
 		}
 	}
 
+	/**
+	 * Return the total count of sync infos.
+	 * @return the number of sync infos that were added and not removed
+	 */
+	public long size() {
+		long count = 0;
+		synchronized (stats) {
+			for (Iterator it = stats.values().iterator(); it.hasNext();) {
+				count += ((Long) it.next()).longValue();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Return whether no sync infos are counted.
+	 * @return whether no sync infos are counted
+	 */
+	public boolean isEmpty() {
+		return stats.isEmpty();
+	}
+
 	/**
 	 * Clear the statistics counts. All calls to countFor() will return 0 until new
 	 * sync infos are added.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -198,7 +198,7 @@ public class SubscriberDiffTreeEventHandler extends SubscriberEventHandler {
 			});
 		} catch (CoreException e) {
 			if (resource.getProject().isAccessible())
-				handleException(e, resource, ITeamStatus.SYNC_INFO_SET_ERROR, e.getMessage());
+				handleCollectionException(e, resource, ITeamStatus.SYNC_INFO_SET_ERROR, e.getMessage());
 		} finally {
 			monitor.done();
 		}
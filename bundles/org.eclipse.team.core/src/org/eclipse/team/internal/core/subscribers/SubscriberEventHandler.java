@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
 package org.eclipse.team.internal.core.subscribers;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.eclipse.core.resources.IResource;
@@ -37,9 +39,27 @@ import org.eclipse.team.internal.core.*;
  */
 public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 
+	// The maximum number of jobs that collect synchronization states in parallel
+	private static final int MAX_COLLECTION_THREADS = 4;
+	
+	// The number of resources waiting to be collected before another worker job is started
+	private static final int WORKER_THRESHOLD = 32;
+	
+	// The number of results a worker job buffers before handing them to the handler job
+	private static final int BATCH_SIZE = 256;
+	
 	// Changes accumulated by the event handler
 	private List resultCache = new ArrayList();
 	
+	// The buffer of the worker collecting on the current thread
+	private final ThreadLocal collectionBuffer = new ThreadLocal();
+	
+	// The collector of the worker job running on the current thread
+	private final ThreadLocal collectionWorker = new ThreadLocal();
+	
+	// The collector run by the handler job
+	private ParallelCollector activeCollector;
+	
 	private boolean started = false;
 	private boolean initializing = true;
 
@@ -80,6 +100,331 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 		}
 	}
 	
+	/*
+	 * An error that occurred while collecting on a worker job. It is
+	 * reported by the handler job.
+	 */
+	private static class CollectionError {
+		final CoreException exception;
+		final IResource resource;
+		final int code;
+		final String message;
+		CollectionError(CoreException exception, IResource resource, int code, String message) {
+			this.exception = exception;
+			this.resource = resource;
+			this.code = code;
+			this.message = message;
+		}
+	}
+	
+	/*
+	 * Collects the synchronization state of a resource and its members on the
+	 * handler job and on a bounded number of worker jobs. The resources to collect
+	 * are taken from a shared queue to which the members of collected folders are
+	 * added. Each job buffers the results it queues for dispatch and hands them to
+	 * the handler job in batches so that results and errors are only passed to the
+	 * subclass by the handler job, which also keeps handling preemptive events and
+	 * pending dispatches. The queue may also hold initialization events, whose
+	 * roots are collected with collectAll, one root per job.
+	 */
+	private class ParallelCollector {
+		private final LinkedList pending = new LinkedList();
+		private final List batches = new ArrayList();
+		private final int maxWorkers;
+		private final int threshold;
+		private final IProgressMonitor monitor;
+		private int workers;
+		private int idle;
+		private int busy;
+		private int collected;
+		private int reported;
+		private IResource lastCollected;
+		private boolean stopped;
+		
+		/*
+		 * Create a collector that starts another worker whenever the given number of
+		 * items is waiting and no worker is idle. The monitor is the one of the handler job.
+		 */
+		ParallelCollector(int maxWorkers, int threshold, IProgressMonitor monitor) {
+			this.maxWorkers = maxWorkers;
+			this.threshold = threshold;
+			this.monitor = monitor;
+		}
+		
+		synchronized void add(SubscriberEvent item) {
+			pending.add(item);
+			startWorker();
+		}
+		
+		/*
+		 * Collect on the calling thread, which must be the handler job, until
+		 * the queue is empty and the workers are done.
+		 */
+		void run() {
+			activeCollector = this;
+			try {
+				while (true) {
+					Policy.checkCanceled(monitor);
+					handlePreemptiveEvents(monitor);
+					drain(monitor);
+					handlePendingDispatch(monitor);
+					SubscriberEvent item = next(false);
+					if (item != null && item.getType() == SubscriberEvent.INITIALIZE) {
+						initialize(item);
+						continue;
+					}
+					if (item != null) {
+						List buffer = new ArrayList();
+						collectionBuffer.set(buffer);
+						try {
+							collect(item);
+						} finally {
+							collectionBuffer.set(null);
+						}
+						handOver(buffer);
+						continue;
+					}
+					synchronized (this) {
+						if (pending.isEmpty() && busy == 0)
+							break;
+						if (batches.isEmpty())
+							wait(getDispatchWaitDelay());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} finally {
+				stop();
+				activeCollector = null;
+			}
+			drain(monitor);
+		}
+		
+		/*
+		 * Stop the workers and wait for them to hand over their results.
+		 */
+		private synchronized void stop() {
+			stopped = true;
+			notifyAll();
+			while (workers > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		
+		private synchronized SubscriberEvent next(boolean wait) {
+			while (!stopped) {
+				if (!pending.isEmpty()) {
+					busy++;
+					return (SubscriberEvent)pending.removeFirst();
+				}
+				if (!wait || busy == 0)
+					return null;
+				idle++;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				} finally {
+					idle--;
+				}
+			}
+			return null;
+		}
+		
+		/*
+		 * Queue the members of the collected resource and start a worker
+		 * if there is enough work waiting for it.
+		 */
+		private synchronized void collected(SubscriberEvent item, IResource[] members, int depth) {
+			for (int i = 0; i < members.length; i++) {
+				pending.add(new SubscriberEvent(members[i], SubscriberEvent.CHANGE, depth));
+			}
+			busy--;
+			collected++;
+			lastCollected = item.getResource();
+			startWorker();
+			notifyAll();
+		}
+		
+		private synchronized void startWorker() {
+			if (!stopped && idle == 0 && workers < maxWorkers && pending.size() >= threshold) {
+				workers++;
+				Job job = new Job(getName()) {
+					protected IStatus run(IProgressMonitor monitor) {
+						try {
+							work();
+						} finally {
+							synchronized (ParallelCollector.this) {
+								workers--;
+								ParallelCollector.this.notifyAll();
+							}
+						}
+						return Status.OK_STATUS;
+					}
+					public boolean belongsTo(Object family) {
+						return getJobFamiliy() == family;
+					}
+				};
+				job.setSystem(true);
+				job.schedule();
+			}
+		}
+		
+		private synchronized boolean isStopped() {
+			return stopped;
+		}
+		
+		private synchronized void handOver(List buffer) {
+			if (!buffer.isEmpty()) {
+				batches.add(buffer);
+				notifyAll();
+			}
+		}
+		
+		/*
+		 * Hand the results buffered on the current worker job to the handler
+		 * job if there are at least the given number of them.
+		 */
+		void handOverBuffer(int minimum) {
+			List buffer = (List) collectionBuffer.get();
+			if (!buffer.isEmpty() && buffer.size() >= minimum) {
+				handOver(buffer);
+				collectionBuffer.set(new ArrayList());
+			}
+		}
+		
+		private void work() {
+			collectionWorker.set(this);
+			collectionBuffer.set(new ArrayList());
+			// The collection of a root stops when the handler job is canceled
+			IProgressMonitor workerMonitor = new NullProgressMonitor() {
+				public boolean isCanceled() {
+					return isStopped() || monitor.isCanceled();
+				}
+			};
+			try {
+				SubscriberEvent item;
+				while ((item = next(true)) != null) {
+					if (item.getType() == SubscriberEvent.INITIALIZE) {
+						initialize(item, workerMonitor);
+					} else {
+						collect(item);
+					}
+					handOverBuffer(BATCH_SIZE);
+				}
+				handOverBuffer(1);
+			} finally {
+				collectionWorker.set(null);
+				collectionBuffer.set(null);
+			}
+		}
+		
+		/*
+		 * Collect all the states below the root of the item on the handler job.
+		 */
+		private void initialize(SubscriberEvent item) {
+			IResource resource = item.getResource();
+			try {
+				monitor.subTask(NLS.bind(Messages.SubscriberEventHandler_2, new String[] { resource.getFullPath().toString() })); 
+				collectAll(resource, item.getDepth(), Policy.subMonitorFor(monitor, 64));
+			} catch (OperationCanceledException e) {
+				// Stops the collection of the other roots
+				throw e;
+			} catch (RuntimeException e) {
+				handleException(new TeamException(Messages.SubscriberEventHandler_10, e), resource, ITeamStatus.SYNC_INFO_SET_ERROR, NLS.bind(Messages.SubscriberEventHandler_11, new String[] { resource.getFullPath().toString(), e.getMessage() }));
+			} finally {
+				collected(item, new IResource[0], IResource.DEPTH_ZERO);
+			}
+		}
+		
+		/*
+		 * Collect all the states below the root of the item on a worker job.
+		 */
+		private void initialize(SubscriberEvent item, IProgressMonitor workerMonitor) {
+			IResource resource = item.getResource();
+			try {
+				collectAll(resource, item.getDepth(), workerMonitor);
+			} catch (OperationCanceledException e) {
+				// The handler job handles the cancelation
+			} catch (RuntimeException e) {
+				((List) collectionBuffer.get()).add(new CollectionError(new TeamException(Messages.SubscriberEventHandler_10, e), resource, ITeamStatus.SYNC_INFO_SET_ERROR, NLS.bind(Messages.SubscriberEventHandler_11, new String[] { resource.getFullPath().toString(), e.getMessage() })));
+			} finally {
+				collected(item, new IResource[0], IResource.DEPTH_ZERO);
+			}
+		}
+		
+		/*
+		 * Collect the state of the item's resource into the buffer of the current thread.
+		 */
+		private void collect(SubscriberEvent item) {
+			IResource resource = item.getResource();
+			int depth = item.getDepth();
+			IResource[] members = new IResource[0];
+			List buffer = (List) collectionBuffer.get();
+			try {
+				if (resource.getType() != IResource.FILE
+					&& depth != IResource.DEPTH_ZERO) {
+					try {
+						members = getSubscriber().members(resource);
+					} catch (TeamException e) {
+						// We only handle the exception if the resource's project is accessible.
+						// The project close delta will clean up.
+						if (resource.getProject().isAccessible())
+							buffer.add(new CollectionError(e, resource, ITeamStatus.SYNC_INFO_SET_ERROR, NLS.bind(Messages.SubscriberEventHandler_8, new String[] { resource.getFullPath().toString(), e.getMessage() })));
+					}
+				}
+				try {
+					handleChange(resource);
+				} catch (CoreException e) {
+					buffer.add(new CollectionError(e, resource, ITeamStatus.RESOURCE_SYNC_INFO_ERROR, NLS.bind(Messages.SubscriberEventHandler_9, new String[] { resource.getFullPath().toString(), e.getMessage() })));
+				}
+			} catch (RuntimeException e) {
+				buffer.add(new CollectionError(new TeamException(Messages.SubscriberEventHandler_10, e), resource, ITeamStatus.SYNC_INFO_SET_ERROR, NLS.bind(Messages.SubscriberEventHandler_11, new String[] { resource.getFullPath().toString(), e.getMessage() })));
+			} finally {
+				collected(item, members, depth == IResource.DEPTH_INFINITE ? IResource.DEPTH_INFINITE : IResource.DEPTH_ZERO);
+			}
+		}
+		
+		/*
+		 * Pass the results handed over by the jobs to the handler.
+		 */
+		private void drain(IProgressMonitor monitor) {
+			List ready;
+			int worked;
+			IResource last;
+			synchronized (this) {
+				ready = new ArrayList(batches);
+				batches.clear();
+				worked = collected - reported;
+				reported = collected;
+				last = lastCollected;
+			}
+			for (Iterator iter = ready.iterator(); iter.hasNext();) {
+				List buffer = (List) iter.next();
+				for (Iterator results = buffer.iterator(); results.hasNext();) {
+					Object result = results.next();
+					if (result instanceof CollectionError) {
+						CollectionError error = (CollectionError) result;
+						handleException(error.exception, error.resource, error.code, error.message);
+					} else {
+						queueDispatchEvent((Event)result);
+					}
+				}
+			}
+			if (worked > 0) {
+				monitor.subTask(NLS.bind(Messages.SubscriberEventHandler_2, new String[] { last.getFullPath().toString() })); 
+				monitor.worked(worked);
+			}
+		}
+	}
+	
 	/**
 	 * Create a handler. This will initialize all resources for the subscriber associated with
 	 * the set.
@@ -130,6 +475,13 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 			super.queueEvent(event, front);
 		}
 	}
+
+	protected boolean isCoalescable(ResourceEvent event) {
+		// Collecting the state of a resource again, or deeper, gives the same result.
+		// Subclasses of SubscriberEvent carry results and are never coalesced.
+		return event.getClass() == SubscriberEvent.class;
+	}
+
 	/**
 	 * Schedule the job or process the events now.
 	 */
@@ -179,6 +531,75 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 			new SubscriberEvent(resource, SubscriberEvent.REMOVAL, IResource.DEPTH_INFINITE), false);
 	}
 	
+	/*
+	 * Collect the changes for the resource at the given depth. The members of a folder
+	 * are collected in parallel unless the handler job holds a scheduling rule, which
+	 * the worker jobs could need.
+	 */
+	private void collectChanges(IResource resource, int depth, IProgressMonitor monitor) {
+		int threads = getCollectionThreadCount();
+		if (threads > 1 
+				&& resource.getType() != IResource.FILE 
+				&& depth != IResource.DEPTH_ZERO
+				&& Job.getJobManager().currentRule() == null) {
+			ParallelCollector collector = new ParallelCollector(threads - 1, WORKER_THRESHOLD, monitor);
+			collector.add(new SubscriberEvent(resource, SubscriberEvent.CHANGE, depth));
+			collector.run();
+		} else {
+			collect(resource, depth, monitor);
+		}
+	}
+	
+	/*
+	 * Collect all the states below the root of the event. The roots of the
+	 * initialization events that follow it on the queue are collected at the
+	 * same time, one root per job, unless the handler job holds a scheduling
+	 * rule, which the worker jobs could need.
+	 */
+	private void initialize(SubscriberEvent event, IProgressMonitor monitor) {
+		int threads = getCollectionThreadCount();
+		if (threads > 1 && Job.getJobManager().currentRule() == null) {
+			List roots = new ArrayList();
+			synchronized (this) {
+				while (isInitializeEvent(peek())) {
+					roots.add(nextElement());
+				}
+			}
+			if (!roots.isEmpty()) {
+				ParallelCollector collector = new ParallelCollector(threads - 1, 1, monitor);
+				collector.add(event);
+				for (Iterator iter = roots.iterator(); iter.hasNext();) {
+					collector.add((SubscriberEvent) iter.next());
+				}
+				collector.run();
+				return;
+			}
+		}
+		monitor.subTask(NLS.bind(Messages.SubscriberEventHandler_2, new String[] { event.getResource().getFullPath().toString() })); 
+		collectAll(event.getResource(), event.getDepth(), Policy.subMonitorFor(monitor, 64));
+	}
+	
+	private boolean isInitializeEvent(Event event) {
+		return event instanceof SubscriberEvent && event.getType() == SubscriberEvent.INITIALIZE;
+	}
+	
+	/**
+	 * Return the number of threads, including the handler job, that collect
+	 * synchronization states when a folder has changed or when the handler is
+	 * initialized. The <code>handleChange</code> method, and the
+	 * <code>collectAll</code> method for different roots, are called
+	 * concurrently from that many threads. States are only collected in
+	 * parallel for subscribers that declare themselves thread safe, otherwise
+	 * 1 is returned.
+	 * @return the number of threads that collect synchronization states
+	 * @see Subscriber#isThreadSafe()
+	 */
+	protected int getCollectionThreadCount() {
+		if (!getSubscriber().isThreadSafe())
+			return 1;
+		return Math.min(MAX_COLLECTION_THREADS, Runtime.getRuntime().availableProcessors());
+	}
+
 	/**
 	 * Collect the calculated synchronization information for the given resource at the given depth. The
 	 * results are added to the provided list.
@@ -240,6 +661,14 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 	protected abstract void handleChange(IResource resource) throws CoreException;
 
 	protected void handlePendingDispatch(IProgressMonitor monitor) {
+		ParallelCollector worker = (ParallelCollector) collectionWorker.get();
+		if (worker != null) {
+			// Only the handler job dispatches; a worker hands over what it has collected
+			worker.handOverBuffer(BATCH_SIZE);
+			return;
+		}
+		if (activeCollector != null)
+			activeCollector.drain(monitor);
 		if (isReadyForDispatch(false /*don't wait if queue is empty*/)) {
 			try {
 				dispatchEvents(Policy.subMonitorFor(monitor, 5));
@@ -258,10 +687,26 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 	protected void handleException(CoreException e, IResource resource, int code, String message) {
 		handleException(e);
 	}
+	
+	/**
+	 * Handle an exception that occurred in <code>collectAll</code>. On a worker
+	 * job the exception is handed to the handler job, which passes it to
+	 * <code>handleException</code>.
+	 * The resource passed may be null.
+	 */
+	protected void handleCollectionException(CoreException e, IResource resource, int code, String message) {
+		if (collectionWorker.get() != null) {
+			((List) collectionBuffer.get()).add(new CollectionError(e, resource, code, message));
+		} else {
+			handleException(e, resource, code, message);
+		}
+	}
 
 	/**
 	 * Called to initialize to calculate the synchronization information using the optimized subscriber method. For
 	 * subscribers that don't support the optimization, all resources in the subscriber are manually re-calculated. 
+	 * If the subscriber is thread safe, this method may be called for different roots at the same time, 
+	 * from the handler job and from worker jobs. Exceptions must be passed to <code>handleCollectionException</code>.
 	 * @param resource the resources to check
 	 * @param depth the depth
 	 * @param monitor
@@ -307,17 +752,13 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 					queueDispatchEvent(event);
 					break;
 				case SubscriberEvent.CHANGE :
-					collect(
+					collectChanges(
 					    event.getResource(),
 					    ((ResourceEvent)event).getDepth(),
 						monitor);
 					break;
 				case SubscriberEvent.INITIALIZE :
-					monitor.subTask(NLS.bind(Messages.SubscriberEventHandler_2, new String[] { event.getResource().getFullPath().toString() })); 
-					collectAll(
-					        event.getResource(),
-					        ((ResourceEvent)event).getDepth(),
-							Policy.subMonitorFor(monitor, 64));
+					initialize((SubscriberEvent)event, monitor);
 					break;
 			}
 		} catch (OperationCanceledException e) {
@@ -339,7 +780,13 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 	 * @param event the event
 	 */
 	protected void queueDispatchEvent(Event event) {
-		resultCache.add(event);
+		List buffer = (List) collectionBuffer.get();
+		if (buffer != null) {
+			// collecting in parallel; the results are handed to the handler job in batches
+			buffer.add(event);
+		} else {
+			resultCache.add(event);
+		}
 	}
 
 	/**
@@ -399,6 +846,8 @@ public abstract class SubscriberEventHandler extends BackgroundEventHandler {
 	}
 	
 	protected void handlePreemptiveEvents(IProgressMonitor monitor) {
+		if (collectionWorker.get() != null)
+			return;
 		Event event = peek();
 		if (event instanceof RunnableEvent && ((RunnableEvent)event).isPreemtive()) {
 			executeRunnable(nextElement(), monitor);
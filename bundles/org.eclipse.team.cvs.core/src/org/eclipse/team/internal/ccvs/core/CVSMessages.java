@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -52,6 +52,7 @@ public class CVSMessages extends NLS {
 	public static String Connection_readUnestablishedConnection;
 	public static String Connection_writeUnestablishedConnection;
 	public static String Connection_0;
+	public static String ConnectionPool_closeIdle;
 	public static String PrepareForReplaceVisitor_DeletedFileWithoutHistoryCannotBeRestoredWhileRevertToBase;
 	public static String PrepareForReplaceVisitor_FileCannotBeReplacedWithBase;
 
@@ -62,6 +63,8 @@ public class CVSMessages extends NLS {
 	public static String PServerConnection_connectionRefused;
 	public static String PServerConnection_noResponse;
 	public static String PServerConnection_authenticating;
+	public static String PServerConnection_readTimeout;
+	public static String PServerConnection_writeTimeout;
 
 	public static String CVSProviderPlugin_unknownStateFileVersion;
 
@@ -99,6 +102,7 @@ public class CVSMessages extends NLS {
 	public static String RemoteFolderTreeBuilder_receivingDelta;
 	public static String RemoteFolderTreeBuilder_receivingRevision;
 	public static String RemoteFolderTreeBuilder_missingParent;
+	public static String SessionQueue_fetchingRemoteState;
 	public static String RemoteFolderTreeBuild_folderDeletedFromServer;
 
 	public static String Session_badInt;
@@ -29,6 +29,7 @@ import org.eclipse.team.internal.ccvs.core.client.*;
 import org.eclipse.team.internal.ccvs.core.client.Command.KSubstOption;
 import org.eclipse.team.internal.ccvs.core.client.Command.QuietOption;
 import org.eclipse.team.internal.ccvs.core.client.listeners.IConsoleListener;
+import org.eclipse.team.internal.ccvs.core.connection.ConnectionPool;
 import org.eclipse.team.internal.ccvs.core.mapping.CVSActiveChangeSetCollector;
 import org.eclipse.team.internal.ccvs.core.resources.FileModificationManager;
 import org.eclipse.team.internal.ccvs.core.util.*;
@@ -83,6 +84,8 @@ public class CVSProviderPlugin extends Plugin {
 	private String cvsRshParameters = DEFAULT_CVS_RSH_PARAMETERS;
 	private String cvsServer = DEFAULT_CVS_SERVER;
 	private boolean determineVersionEnabled = true;
+	private boolean connectionPoolingEnabled = true;
+	private boolean concurrentTreeBuildingEnabled = true;
 	
 	private static volatile CVSProviderPlugin instance;
 	
@@ -338,6 +341,10 @@ public class CVSProviderPlugin extends Plugin {
 			
 			getChangeSetManager().dispose();
 			
+			// close the idle connections so that their sockets, ssh sessions
+			// and eviction jobs do not outlive the plug-in
+			ConnectionPool.clearAll();
+			
 			tracker.close();
 			
 			deleteCrashFile();
@@ -569,6 +576,41 @@ public class CVSProviderPlugin extends Plugin {
 		this.determineVersionEnabled = determineVersionEnabled;
 	}
 	
+	/**
+	 * Returns whether connections are kept open after a session is closed
+	 * so they can be reused by later sessions with the same location.
+	 * @return boolean
+	 */
+	public boolean isConnectionPoolingEnabled() {
+		return connectionPoolingEnabled;
+	}
+
+	/**
+	 * Sets whether connections are reused between sessions.
+	 * @param connectionPoolingEnabled whether connections are reused
+	 */
+	public void setConnectionPoolingEnabled(boolean connectionPoolingEnabled) {
+		this.connectionPoolingEnabled = connectionPoolingEnabled;
+	}
+	
+	/**
+	 * Returns whether remote trees are built and the contents of their
+	 * files are fetched using several sessions concurrently.
+	 * @return boolean
+	 */
+	public boolean isConcurrentTreeBuildingEnabled() {
+		return concurrentTreeBuildingEnabled;
+	}
+
+	/**
+	 * Sets whether remote trees are built and the contents of their
+	 * files are fetched using several sessions concurrently.
+	 * @param concurrentTreeBuildingEnabled whether several sessions are used
+	 */
+	public void setConcurrentTreeBuildingEnabled(boolean concurrentTreeBuildingEnabled) {
+		this.concurrentTreeBuildingEnabled = concurrentTreeBuildingEnabled;
+	}
+	
 	/**
 	 * Returns the fileModificationManager.
 	 * @return FileModificationManager
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -440,4 +440,14 @@ public class CVSWorkspaceSubscriber extends CVSSyncTreeSubscriber implements IRe
 	protected boolean getCacheFileContentsHint() {
 		return contentFetch;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.team.core.subscribers.Subscriber#isThreadSafe()
+	 */
+	public boolean isThreadSafe() {
+		// The local sync info is guarded by the locks of the EclipseSynchronizer and
+		// the base and remote trees are kept in the workspace synchronizer, the
+		// decorators already compute states concurrently
+		return true;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -305,6 +305,7 @@ public abstract class Command extends Request {
 				// update the global and local options
 				GlobalOption[] gOptions = filterGlobalOptions(session, globalOptions);
 				LocalOption[] lOptions = filterLocalOptions(session, gOptions, localOptions);
+				session.prepareGlobalOptions(gOptions, Policy.subMonitorFor(monitor, 0));
 				
 				// print the invocation string to the console
 				if (session.isOutputToConsole() || Policy.isDebugProtocol()) {
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.client;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+
+/**
+ * The noop request, the server only answers with ok. It is used to check that
+ * a pooled connection is still alive before it is reused.
+ */
+class NoopRequest extends Request {
+		
+	protected NoopRequest() { }
+	
+	protected String getRequestId() {
+		return "noop"; //$NON-NLS-1$
+	}
+
+	public IStatus execute(Session session, IProgressMonitor monitor) throws CVSException {
+		return executeRequest(session, Command.DEFAULT_OUTPUT_LISTENER, monitor);
+	}
+}
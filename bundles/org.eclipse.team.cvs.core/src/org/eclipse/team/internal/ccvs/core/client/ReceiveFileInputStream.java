@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.client;
+
+import java.io.*;
+import java.util.zip.*;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.*;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.team.internal.ccvs.core.*;
+
+/**
+ * Reads the contents of a file sent by the server, which span the next
+ * <code>size</code> bytes of the response stream.
+ * <p>
+ * The contents are decompressed if they were sent gzipped and, for text
+ * files, either translated to CRLF line ends or checked for CRLF line ends
+ * sent by the server. All of this is done in one pass over bulk buffers,
+ * uncompressed contents that are not translated are read straight into the
+ * caller's buffer. The bytes of the contents that have not been read are
+ * discarded when the stream is closed so that the response can be read on.
+ * </p>
+ */
+public abstract class ReceiveFileInputStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	// gzip header, see RFC 1952
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	/** The contents are not translated */
+	public static final int BINARY = 0;
+	/** Line ends are translated to CRLF */
+	public static final int TO_CRLF = 1;
+	/** Line ends are not translated, a warning is logged if CRLF is found */
+	public static final int DETECT_CRLF = 2;
+
+	private final InputStream in;
+	private final int mode;
+	private final ICVSStorage file;
+
+	// size limiting and progress
+	private final long size;
+	private long remaining;
+	private final int updateIncrement;
+	private final IProgressMonitor monitor;
+	private long lastUpdate = -1;
+	private long nextUpdate = 0;
+
+	// decompression
+	private Inflater inflater;
+	private CRC32 crc;
+	private byte[] input;
+	private int inputPosition;
+	private int inputLimit;
+	private boolean headerRead;
+	private boolean trailerRead;
+
+	// line end translation
+	private byte[] data;
+	private int dataPosition;
+	private int dataLimit;
+	private boolean pendingCR; // a CR that may start a CRLF
+	private boolean pendingLF; // the LF of a CRLF that did not fit in the last read
+	private boolean previousCR;
+	private boolean reported;
+
+	private boolean closed;
+
+	/**
+	 * Create a stream over the contents of a file.
+	 * @param in the response stream
+	 * @param size the number of bytes sent by the server
+	 * @param compressed whether the contents are gzipped
+	 * @param mode how to treat the line ends, one of BINARY, TO_CRLF and DETECT_CRLF
+	 * @param file the file being received
+	 * @param updateIncrement the number of bytes between progress updates
+	 * @param monitor the progress monitor
+	 */
+	public ReceiveFileInputStream(InputStream in, long size, boolean compressed, int mode, ICVSStorage file, int updateIncrement, IProgressMonitor monitor) {
+		this.in = in;
+		this.size = size;
+		this.remaining = size;
+		this.mode = mode;
+		this.file = file;
+		this.updateIncrement = updateIncrement;
+		this.monitor = monitor;
+		if (compressed) {
+			inflater = new Inflater(true /* the gzip header and trailer are read here */);
+			crc = new CRC32();
+			input = new byte[BUFFER_SIZE];
+		}
+		if (mode == TO_CRLF)
+			data = new byte[BUFFER_SIZE];
+		update(true);
+	}
+
+	/**
+	 * Called when the number of bytes read from the response stream passes a
+	 * multiple of the update increment.
+	 * @param bytesRead the number of bytes read, rounded to the increment
+	 * @param bytesTotal the number of bytes sent by the server
+	 * @param monitor the progress monitor
+	 */
+	protected abstract void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor);
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int count;
+		while ((count = read(b, 0, 1)) == 0);
+		return count == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		if (len == 0)
+			return 0;
+		if (mode == TO_CRLF) {
+			for (;;) {
+				int count = translate(b, off, len);
+				if (count > 0)
+					return count;
+				count = produce(data, 0, data.length);
+				if (count == -1) {
+					if (!pendingCR)
+						return -1;
+					pendingCR = false;
+					b[off] = CR;
+					return 1;
+				}
+				dataPosition = 0;
+				dataLimit = count;
+			}
+		}
+		int count = produce(b, off, len);
+		if (mode == DETECT_CRLF && count > 0)
+			detectCRLF(b, off, count);
+		return count;
+	}
+
+	public int available() throws IOException {
+		if (closed || inflater != null)
+			return 0;
+		return (int) Math.min(remaining, in.available()) + dataLimit - dataPosition;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Discards the rest of the contents. The response stream is not closed.
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (inflater != null)
+			inflater.end();
+		try {
+			byte[] buffer = input != null ? input : new byte[BUFFER_SIZE];
+			while (readRaw(buffer, 0, buffer.length) > 0);
+		} catch (OperationCanceledException e) {
+			// The response stream may poll for cancelation.
+			// Since we're closing, just ignore the cancel and let the caller check the monitor
+		} finally {
+			remaining = 0;
+			update(true);
+		}
+	}
+
+	/*
+	 * Reads decompressed or raw contents into the buffer. Returns -1 at the
+	 * end of the contents.
+	 */
+	private int produce(byte[] b, int off, int len) throws IOException {
+		if (inflater == null)
+			return readRaw(b, off, len);
+		if (!headerRead) {
+			readHeader();
+			headerRead = true;
+		}
+		try {
+			for (;;) {
+				if (inflater.finished()) {
+					if (!trailerRead) {
+						inputPosition = inputLimit - inflater.getRemaining();
+						readTrailer();
+						trailerRead = true;
+					}
+					return -1;
+				}
+				if (inflater.needsDictionary())
+					throw new ZipException("Unexpected dictionary in compressed file"); //$NON-NLS-1$
+				if (inflater.needsInput()) {
+					if (inputPosition == inputLimit)
+						fillInput();
+					inflater.setInput(input, inputPosition, inputLimit - inputPosition);
+					inputPosition = inputLimit;
+				}
+				int count = inflater.inflate(b, off, len);
+				if (count > 0) {
+					crc.update(b, off, count);
+					return count;
+				}
+			}
+		} catch (DataFormatException e) {
+			String message = e.getMessage();
+			throw new ZipException(message != null ? message : "Invalid compressed file"); //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * Reads the next bytes of the contents from the response stream.
+	 */
+	private int readRaw(byte[] b, int off, int len) throws IOException {
+		if (remaining == 0)
+			return -1;
+		if (len > remaining)
+			len = (int) remaining;
+		int count;
+		try {
+			count = in.read(b, off, len);
+		} catch (InterruptedIOException e) {
+			remaining -= e.bytesTransferred;
+			update(false);
+			throw e;
+		}
+		if (count > 0) {
+			remaining -= count;
+			update(false);
+		}
+		return count;
+	}
+
+	private void fillInput() throws IOException {
+		int count = readRaw(input, 0, input.length);
+		if (count == -1)
+			throw new EOFException("Unexpected end of compressed file"); //$NON-NLS-1$
+		inputPosition = 0;
+		inputLimit = count;
+	}
+
+	private int readInputByte() throws IOException {
+		while (inputPosition == inputLimit)
+			fillInput();
+		return input[inputPosition++] & 0xFF;
+	}
+
+	private int readInputShort() throws IOException {
+		return readInputByte() | (readInputByte() << 8);
+	}
+
+	private long readInputInt() throws IOException {
+		return readInputShort() | ((long) readInputShort() << 16);
+	}
+
+	private void readHeader() throws IOException {
+		if (readInputShort() != GZIP_MAGIC || readInputByte() != Deflater.DEFLATED)
+			throw new ZipException("Not in GZIP format"); //$NON-NLS-1$
+		int flags = readInputByte();
+		for (int i = 0; i < 6; i++)
+			readInputByte(); // modification time, extra flags and OS
+		if ((flags & FEXTRA) != 0) {
+			for (int length = readInputShort(); length > 0; length--)
+				readInputByte();
+		}
+		if ((flags & FNAME) != 0)
+			while (readInputByte() != 0);
+		if ((flags & FCOMMENT) != 0)
+			while (readInputByte() != 0);
+		if ((flags & FHCRC) != 0)
+			readInputShort();
+	}
+
+	private void readTrailer() throws IOException {
+		long checksum = readInputInt();
+		long length = readInputInt();
+		if (checksum != crc.getValue() || length != (inflater.getTotalOut() & 0xFFFFFFFFL))
+			throw new ZipException("Corrupt GZIP trailer"); //$NON-NLS-1$
+	}
+
+	/*
+	 * Copies the buffered data to the given buffer, translating LF and CRLF
+	 * to CRLF. A CR that is not followed by LF is kept. Returns the number of
+	 * bytes copied.
+	 */
+	private int translate(byte[] b, int off, int len) {
+		int start = off;
+		int end = off + len;
+		if (pendingLF) {
+			b[off++] = LF;
+			pendingLF = false;
+		}
+		while (off < end && dataPosition < dataLimit) {
+			byte next = data[dataPosition];
+			if (pendingCR) {
+				pendingCR = false;
+				if (next != LF) {
+					b[off++] = CR;
+					continue;
+				}
+			} else if (next == CR) {
+				pendingCR = true;
+				dataPosition++;
+				continue;
+			}
+			dataPosition++;
+			if (next == LF) {
+				b[off++] = CR;
+				if (off == end) {
+					pendingLF = true;
+					break;
+				}
+			}
+			b[off++] = next;
+		}
+		return off - start;
+	}
+
+	private void detectCRLF(byte[] b, int off, int count) {
+		if (reported)
+			return;
+		for (int i = off; i < off + count; i++) {
+			byte next = b[i];
+			if (previousCR && next == LF) {
+				CVSProviderPlugin.log(IStatus.WARNING, NLS.bind(CVSMessages.CRLFDetectInputStream_0, new String[] { getFileName() }), null);
+				reported = true;
+				return;
+			}
+			previousCR = (next == CR);
+		}
+	}
+
+	private String getFileName() {
+		try {
+			if (file instanceof ICVSFile) {
+				ICVSFile cvsFile = (ICVSFile)file;
+				String fileName = cvsFile.getRepositoryRelativePath();
+				if (fileName != null)
+					return fileName;
+				IResource resource = cvsFile.getIResource();
+				if (resource != null)
+					// Use the resource path if there is one since the remote path is unknown
+					return resource.getFullPath().toString();
+			}
+		} catch (CVSException e) {
+			// use the name of the file
+		}
+		return file.getName();
+	}
+
+	private void update(boolean now) {
+		long bytesRead = size - remaining;
+		if (bytesRead >= nextUpdate || now) {
+			nextUpdate = bytesRead - (bytesRead % updateIncrement);
+			if (nextUpdate != lastUpdate) updateMonitor(nextUpdate, size, monitor);
+			lastUpdate = nextUpdate;
+			nextUpdate += updateIncrement;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,6 +25,10 @@ import org.eclipse.team.internal.ccvs.core.connection.CVSServerException;
 public abstract class Request {
 	public static final ExpandModules EXPAND_MODULES = new ExpandModules();
 	public static final ValidRequests VALID_REQUESTS = new ValidRequests();
+	public static final NoopRequest NOOP = new NoopRequest();
+
+	/*** The most frequent responses, used to avoid creating their names for every line ***/
+	private static final String[] COMMON_RESPONSES = { "M", "E", "MT", "ok", "error" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 
 	/*** Response handler map ***/
 	private static final Map responseHandlers = new HashMap();
@@ -139,19 +143,27 @@ public abstract class Request {
 			}			
 			Policy.checkCanceled(monitor);
 
-			// retrieve a response line
-			String response = session.readLine();
-			int spacePos = response.indexOf(' ');
+			// retrieve a response line, only the argument is copied into a new string
+			CharSequence line = session.readLineChars();
+			int spacePos = indexOf(line, ' ');
+			String response;
 			String argument;
 			if (spacePos != -1) {
-				argument = response.substring(spacePos + 1);
-				response = response.substring(0, spacePos);
-			} else argument = "";  //$NON-NLS-1$
+				response = getResponseName(line, spacePos);
+				argument = line.subSequence(spacePos + 1, line.length()).toString();
+			} else {
+				response = getResponseName(line, line.length());
+				argument = "";  //$NON-NLS-1$
+			}
 
 			// handle completion responses
 			if (response.equals("ok")) {  //$NON-NLS-1$
+				session.requestCompleted();
 				break;
 			} else if (response.equals("error") || (isCVSNT && response.equals(""))) {  //$NON-NLS-1$ //$NON-NLS-2$
+				// CVSNT drops the connection after an empty error
+				if (response.length() != 0)
+					session.requestCompleted();
 				argument = argument.trim();
 				boolean serious = false;
 				if (argument.length() == 0) {
@@ -231,6 +243,34 @@ public abstract class Request {
 				NLS.bind(CVSMessages.Command_warnings, new String[] { getDisplayText() }), null);
 		}
 	}
+
+	private static int indexOf(CharSequence line, char c) {
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == c)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the response name that makes up the first length characters of the line.
+	 */
+	private static String getResponseName(CharSequence line, int length) {
+		for (int i = 0; i < COMMON_RESPONSES.length; i++) {
+			String name = COMMON_RESPONSES[i];
+			if (name.length() == length && regionMatches(line, name))
+				return name;
+		}
+		return line.subSequence(0, length).toString();
+	}
+
+	private static boolean regionMatches(CharSequence line, String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (line.charAt(i) != name.charAt(i))
+				return false;
+		}
+		return true;
+	}
 	
 	/*
 	 * Provide the message that is used for the status that is generated when the server
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,11 +16,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.core.resources.IResource;
@@ -32,6 +33,7 @@ import org.eclipse.team.internal.ccvs.core.client.Command.GlobalOption;
 import org.eclipse.team.internal.ccvs.core.client.Command.QuietOption;
 import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
 import org.eclipse.team.internal.ccvs.core.connection.Connection;
+import org.eclipse.team.internal.ccvs.core.connection.ConnectionPool;
 import org.eclipse.team.internal.ccvs.core.syncinfo.NotifyInfo;
 import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
 import org.eclipse.team.internal.ccvs.core.util.Util;
@@ -67,6 +69,9 @@ public class Session {
 	// update progress bar in increments of this size (in bytes)
 	//   no incremental progress shown for files smaller than this size
 	private static final int TRANSFER_PROGRESS_INCREMENT = 32768;
+	// the number of bytes of a file being sent that are kept in memory
+	//   the contents of larger files are collected in a temporary file
+	private static final int MAX_SPOOL_MEMORY = 1024 * 1024;
 
 	public static final boolean IS_CRLF_PLATFORM = Arrays.equals(
 		System.getProperty("line.separator").getBytes(), new byte[] { '\r', '\n' }); //$NON-NLS-1$
@@ -76,6 +81,17 @@ public class Session {
 	private boolean outputToConsole;
 	private Connection connection = null;
 	private String validRequests = null;
+	// the pool the connection is returned to and the key of its negotiated state
+	private ConnectionPool connectionPool = null;
+	private String connectionKey = null;
+	// whether the session was opened with write access
+	private boolean writeAccess = true;
+	// false once the server state of the connection differs from that of a new connection
+	private boolean reusable = false;
+	// the global options in effect on the server, they cannot be reset
+	private Set globalOptions = new HashSet();
+	// the global options set by the sessions that used the pooled connection before, or null
+	private Set pooledOptions = null;
 	private Date modTime = null;
 	private boolean noLocalChanges = false;
 	private boolean createBackups = true;
@@ -94,6 +110,9 @@ public class Session {
     private List errors = new ArrayList();
     
     private Command currentCommand;
+    
+    // the contents of the file being sent, to learn their length before sending them
+    private SpoolOutputStream sendSpool;
 
 	/**
 	 * Creates a new CVS session, initially in the CLOSED state.
@@ -156,7 +175,8 @@ public class Session {
 		boolean opened = false;	
 	
 		try {
-			connection = getLocationForConnection(writeAccess).openConnection(Policy.subMonitorFor(monitor, 50));
+			this.writeAccess = writeAccess;
+			CVSRepositoryLocation connectionLocation = getLocationForConnection(writeAccess);
 			
 			// If we're connected to a CVSNT server or we don't know the platform, 
 			// accept MT. Otherwise don't.
@@ -165,37 +185,17 @@ public class Session {
 				removeResponseHandler("MT"); //$NON-NLS-1$
 			}
 			
-			// tell the server the names of the responses we can handle
-			connection.writeLine("Valid-responses " + makeResponseList()); //$NON-NLS-1$
-			// Flush in order to recieve the valid requests
-			connection.flush();
-	
-			// ask for the set of valid requests
-			IStatus status = Request.VALID_REQUESTS.execute(this, Policy.subMonitorFor(monitor, 40));
-			if (!status.isOK()) {
-				throw new CVSException(status);
+			// reuse an idle connection that has negotiated the same state
+			connectionPool = connectionLocation.getConnectionPool();
+			if (connectionPool != null) {
+				connectionKey = makeResponseList() + ' ' + CVSProviderPlugin.getPlugin().getCompressionLevel();
+				if (location.isStreamCompressionEnabled())
+					connectionKey += " stream"; //$NON-NLS-1$
+				openPooledConnection(null, Policy.subMonitorFor(monitor, 10));
 			}
-			
-			// set the root directory on the server for this connection
-			connection.writeLine("Root " + getRepositoryRoot()); //$NON-NLS-1$
-
-			// enable compression
-			compressionLevel = CVSProviderPlugin.getPlugin().getCompressionLevel();
-			if (compressionLevel != 0 && isValidRequest("gzip-file-contents")) { //$NON-NLS-1$
-				// Enable the use of CVS 1.8 per-file compression mechanism.
-				// The newer Gzip-stream request seems to be problematic due to Java's
-				// GZIPInputStream tendency to block on read() rather than to return a
-				// partially filled buffer.  The latter option would be better since it
-				// can make more effective use of the code dictionary, if it can be made
-				// to work...
-				connection.writeLine("gzip-file-contents " + Integer.toString(compressionLevel)); //$NON-NLS-1$
-			} else {
-				compressionLevel = 0;
-			}
-			
-			// get the server platform if it is unknown
-			if (CVSProviderPlugin.getPlugin().isDetermineVersionEnabled() && location.getServerPlatform() == CVSRepositoryLocation.UNDETERMINED_PLATFORM) {
-				Command.VERSION.execute(this, location, Policy.subMonitorFor(monitor, 10));
+			if (connection == null) {
+				connection = connectionLocation.openConnection(Policy.subMonitorFor(monitor, 40));
+				initializeConnection(monitor);
 			}
 			opened = true;
 		} finally {
@@ -206,6 +206,128 @@ public class Session {
 		}
 	}		
 	
+	/*
+	 * Negotiate the state of a new connection with the server
+	 */
+	private void initializeConnection(IProgressMonitor monitor) throws CVSException {
+		// tell the server the names of the responses we can handle
+		connection.writeLine("Valid-responses " + makeResponseList()); //$NON-NLS-1$
+		// Flush in order to recieve the valid requests
+		connection.flush();
+
+		// ask for the set of valid requests
+		IStatus status = Request.VALID_REQUESTS.execute(this, Policy.subMonitorFor(monitor, 40));
+		if (!status.isOK()) {
+			throw new CVSException(status);
+		}
+		
+		// set the root directory on the server for this connection
+		connection.writeLine("Root " + getRepositoryRoot()); //$NON-NLS-1$
+
+		// enable compression
+		compressionLevel = CVSProviderPlugin.getPlugin().getCompressionLevel();
+		if (compressionLevel != 0 && location.isStreamCompressionEnabled() && isValidRequest("Gzip-stream")) { //$NON-NLS-1$
+			// Compress the whole conversation, including the requests and responses
+			// that describe the files, with one code dictionary. The streams return
+			// partially filled buffers and each request batch is flushed, so reads
+			// do not block on data the server has not sent yet. The file contents are
+			// not compressed again.
+			connection.writeLine("Gzip-stream " + Integer.toString(compressionLevel)); //$NON-NLS-1$
+			connection.enableCompression(compressionLevel);
+			compressionLevel = 0;
+		} else if (compressionLevel != 0 && isValidRequest("gzip-file-contents")) { //$NON-NLS-1$
+			// Enable the use of CVS 1.8 per-file compression mechanism.
+			connection.writeLine("gzip-file-contents " + Integer.toString(compressionLevel)); //$NON-NLS-1$
+		} else {
+			compressionLevel = 0;
+		}
+		
+		// get the server platform if it is unknown
+		if (CVSProviderPlugin.getPlugin().isDetermineVersionEnabled() && location.getServerPlatform() == CVSRepositoryLocation.UNDETERMINED_PLATFORM) {
+			Command.VERSION.execute(this, location, Policy.subMonitorFor(monitor, 10));
+		}
+		reusable = true;
+	}
+	
+	/*
+	 * Take an idle connection from the pool. The valid requests, the
+	 * compression level and the global options sent on the connection before
+	 * are still in effect on the server. The connection is bound to the given
+	 * monitor, which is polled for cancelation from now on. A connection that
+	 * has been idle for a while is checked with a noop request first, it may
+	 * have been dropped.
+	 */
+	private void openPooledConnection(Set options, IProgressMonitor monitor) {
+		ConnectionPool.Entry entry;
+		while ((entry = connectionPool.acquire(connectionKey, options)) != null) {
+			connection = entry.getConnection();
+			connection.setProgressMonitor(monitor);
+			validRequests = entry.getValidRequests();
+			compressionLevel = entry.getCompressionLevel();
+			globalOptions = new HashSet(entry.getGlobalOptions());
+			pooledOptions = globalOptions.isEmpty() ? null : new HashSet(globalOptions);
+			reusable = true;
+			if (!entry.needsCheck() || !isValidRequest(Request.NOOP.getRequestId()) || isAlive(monitor))
+				return;
+			connection.close();
+			connection = null;
+			validRequests = null;
+			globalOptions = new HashSet();
+			pooledOptions = null;
+			reusable = false;
+		}
+	}
+	
+	/**
+	 * Makes sure that the global options that earlier sessions have sent on
+	 * a pooled connection are among the given options of the first command
+	 * of this session, since they stay in effect on the server. Otherwise the
+	 * connection is returned to the pool and another pooled connection, or a
+	 * new one, is used.
+	 *
+	 * @param options the global options of the command
+	 * @param monitor the progress monitor
+	 */
+	void prepareGlobalOptions(GlobalOption[] options, IProgressMonitor monitor) throws CVSException {
+		if (pooledOptions == null)
+			return;
+		Set sent = new HashSet();
+		for (int i = 0; i < options.length; i++) {
+			String option = options[i].getOption();
+			if (option.length() != 0)
+				sent.add(option);
+		}
+		boolean compatible = sent.containsAll(pooledOptions);
+		pooledOptions = null;
+		if (compatible)
+			return;
+		connectionPool.release(new ConnectionPool.Entry(connection, connectionKey, validRequests, compressionLevel, globalOptions));
+		connection = null;
+		validRequests = null;
+		globalOptions = new HashSet();
+		reusable = false;
+		monitor = Policy.monitorFor(monitor);
+		monitor.beginTask(null, 100);
+		try {
+			openPooledConnection(sent, Policy.subMonitorFor(monitor, 10));
+			pooledOptions = null;
+			if (connection == null) {
+				connection = getLocationForConnection(writeAccess).openConnection(Policy.subMonitorFor(monitor, 40));
+				initializeConnection(monitor);
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+	
+	private boolean isAlive(IProgressMonitor monitor) {
+		try {
+			return Request.NOOP.execute(this, monitor).isOK();
+		} catch (CVSException e) {
+			return false;
+		}
+	}
+	
 	/*
 	 * Return the location to be used for this connection
 	 */
@@ -220,10 +342,25 @@ public class Session {
 	 */
 	public void close() {
 		if (connection != null) {
-			connection.close();
+			if (reusable && connectionPool != null && connection.isEstablished() && !connection.isPending()) {
+				connectionPool.release(new ConnectionPool.Entry(connection, connectionKey, validRequests, compressionLevel, globalOptions));
+			} else {
+				connection.close();
+			}
 			connection = null;
 			validRequests = null;
+			globalOptions = new HashSet();
+			pooledOptions = null;
+			reusable = false;
 		}
+		sendSpool = null;
+	}
+	
+	/**
+	 * Marks the response to the last request as read completely.
+	 */
+	void requestCompleted() {
+		connection.requestCompleted();
 	}
 	
 	/**
@@ -300,6 +437,17 @@ public class Session {
 		return connection.readLine();
 	}
 
+	/**
+	 * Receives a line of text minus the newline from the server without
+	 * creating a <code>String</code>. The characters are only valid until
+	 * the next read from the server.
+	 * 
+	 * @return the characters of the line
+	 */
+	public CharSequence readLineChars() throws CVSException {
+		return connection.readLineChars();
+	}
+
 	/**
 	 * Sends a line of text followed by a newline to the server.
 	 * 
@@ -498,6 +646,9 @@ public class Session {
 	 * @param option the global option to send
 	 */
 	public void sendGlobalOption(String option) throws CVSException {
+		// global options remain in effect on the server, they are pooled
+		// with the connection
+		globalOptions.add(option);
 		connection.writeLine("Global_option " + option); //$NON-NLS-1$
 	}
 
@@ -606,7 +757,9 @@ public class Session {
 		 * (required by the CVS specification) when sending non-binary files.  This
 		 * may alter the actual size and contents of the file that is sent.
 		 * </p><p>
-		 * Note: Non-binary files must be small enough to fit in available memory.
+		 * The contents are read once. When they are translated or compressed, the
+		 * result is collected in memory, or in a temporary file for large files,
+		 * to learn the length that is sent before the contents.
 		 * </p>
 		 * @param file the file to be sent
 		 * @param isBinary is true if the file should be sent without translation
@@ -630,56 +783,44 @@ public class Session {
 						return;
 					}
 					
-					if (compressionLevel == 0) {
-						in = file.getContents();
-						if (!isBinary && IS_CRLF_PLATFORM){
-							// uncompressed text
-							byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
-							in = new CRLFtoLFInputStream(in);
-							ByteCountOutputStream counter = new ByteCountOutputStream();
-							try {
-								for (int count; (count = in.read(buffer)) != -1;) counter.write(buffer, 0, count);
-							} finally {
-								counter.close();
-							}
-							in.close();
-							length = counter.getSize();
-							in = new CRLFtoLFInputStream(file.getContents());
-						} else {
-							// uncompressed binary
-							length = file.getSize();
-						}
-						in = new ProgressMonitorInputStream(in, length, TRANSFER_PROGRESS_INCREMENT, monitor) {
-							protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
-								if (bytesRead == 0) return;
-								Assert.isTrue(bytesRead <= bytesTotal);
-								monitor.subTask(NLS.bind(CVSMessages.Session_transfer, (new Object[] { title, Long.toString(bytesRead >> 10), Long.toString(bytesTotal >> 10) })));
-							}
-						};
+					if (compressionLevel == 0 && (isBinary || !IS_CRLF_PLATFORM)) {
+						// uncompressed and untranslated, the size of the file is the length sent
+						length = file.getSize();
+						in = monitorTransfer(file.getContents(), length, title, monitor);
 						sendUncompressedBytes(in, length);
-					} else {
+						return;
+					}
+					// translate and compress the contents in one pass to learn the length sent
+					if (compressionLevel != 0)
 						monitor.subTask(NLS.bind(CVSMessages.Session_calculatingCompressedSize, new String[] { Util.toTruncatedPath(file, localRoot, 3) })); 
+					SpoolOutputStream spool = getSendSpool();
+					CompressingOutputStream compressor = null;
+					try {
 						in = file.getContents();
-						byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
-						ByteCountOutputStream counter = new ByteCountOutputStream();
-						OutputStream zout = new GZIPOutputStream(counter);
 						if (!isBinary && IS_CRLF_PLATFORM) in = new CRLFtoLFInputStream(in);
-						try {
-							for (int count; (count = in.read(buffer)) != -1;) zout.write(buffer, 0, count);
-						} finally {
-							zout.close();
-						}
+						OutputStream out = spool;
+						if (compressionLevel != 0)
+							out = compressor = new CompressingOutputStream(spool, TRANSFER_BUFFER_SIZE);
+						byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+						for (int count; (count = in.read(buffer)) != -1;) out.write(buffer, 0, count);
+						// finishes the compression, closing the spool has no effect
+						out.close();
 						in.close();
-						in = file.getContents();
-						in = new ProgressMonitorInputStream(in, file.getSize(), TRANSFER_PROGRESS_INCREMENT, monitor) {
-							protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
-								if (bytesRead == 0) return;
-								Assert.isTrue(bytesRead <= bytesTotal);
-								monitor.subTask(NLS.bind(CVSMessages.Session_transfer, (new Object[] { title, Long.toString(bytesRead >> 10), Long.toString(bytesTotal >> 10) })));
-							}
-						};
-						if (!isBinary && IS_CRLF_PLATFORM) in = new CRLFtoLFInputStream(in);
-						sendCompressedBytes(in, counter.getSize());
+						length = spool.getSize();
+						in = monitorTransfer(spool.getInputStream(), length, title, monitor);
+						if (compressionLevel == 0) {
+							sendUncompressedBytes(in, length);
+						} else {
+							sendCompressedBytes(in, length);
+						}
+					} finally {
+						if (in != null) {
+							in.close();
+							in = null;
+						}
+						if (compressor != null)
+							compressor.end();
+						spool.reset();
 					}
 				} finally {
 					if (in != null) in.close();
@@ -690,7 +831,44 @@ public class Session {
 		}
 
 	/*
-	 * Send the contents of the input stream to CVS.
+	 * A gzip stream whose deflater can be released without finishing the
+	 * compression, so that the native memory of the deflater is not left
+	 * to finalization when the contents cannot be read.
+	 */
+	private static class CompressingOutputStream extends GZIPOutputStream {
+		CompressingOutputStream(OutputStream out, int size) throws IOException {
+			super(out, size);
+		}
+		void end() {
+			def.end();
+		}
+	}
+
+	/*
+	 * Return the stream that the contents of files are collected in before
+	 * they are sent. It is reused for all the files sent by the session.
+	 */
+	private SpoolOutputStream getSendSpool() {
+		if (sendSpool == null)
+			sendSpool = new SpoolOutputStream(TRANSFER_BUFFER_SIZE, MAX_SPOOL_MEMORY);
+		return sendSpool;
+	}
+
+	/*
+	 * Wrap the stream of contents being sent to report the progress of the transfer.
+	 */
+	private InputStream monitorTransfer(InputStream in, long length, final String title, IProgressMonitor monitor) {
+		return new ProgressMonitorInputStream(in, length, TRANSFER_PROGRESS_INCREMENT, monitor) {
+			protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
+				if (bytesRead == 0) return;
+				Assert.isTrue(bytesRead <= bytesTotal);
+				monitor.subTask(NLS.bind(CVSMessages.Session_transfer, (new Object[] { title, Long.toString(bytesRead >> 10), Long.toString(bytesTotal >> 10) })));
+			}
+		};
+	}
+
+	/*
+	 * Send the compressed contents of the input stream to CVS.
 	 * Length must equal the number of bytes that will be transferred
 	 * across the wire, that is, the compressed file size.
 	 */
@@ -698,12 +876,8 @@ public class Session {
 		String sizeLine = "z" + Long.toString(length); //$NON-NLS-1$
 		writeLine(sizeLine);
 		OutputStream out = connection.getOutputStream();
-		GZIPOutputStream zo = new GZIPOutputStream(out);
 		byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
-		for (int count;
-		(count = in.read(buffer)) != -1;)
-		zo.write(buffer, 0, count);
-		zo.finish();
+		for (int count; (count = in.read(buffer)) != -1;) out.write(buffer, 0, count);
 	}
 
 	/*
@@ -767,36 +941,24 @@ public class Session {
 		        throw new CVSException(status); 
 		    }
 		}
-		// create an input stream that spans the next 'size' bytes from the connection
-		InputStream in = new SizeConstrainedInputStream(connection.getInputStream(), size, true /*discardOnClose*/);
-		// setup progress monitoring
-		in = new ProgressMonitorInputStream(in, size, TRANSFER_PROGRESS_INCREMENT, monitor) {
-			protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
-				if (bytesRead == 0) return;
-				monitor.subTask(NLS.bind(CVSMessages.Session_transfer, (new Object[] { title, Long.toString(bytesRead >> 10), Long.toString(bytesTotal >> 10) })));
-			}
-		};
-		// if compression enabled, decompress on the fly
-		if (compressed) {
-			try {
-				in = new GZIPInputStream(in);
-			} catch (IOException e) {
-				throw CVSException.wrapException(e);
-			}
-		}
 		// if not binary, translate line delimiters on the fly
+		int mode = ReceiveFileInputStream.BINARY;
 		if (! isBinary) {
-			// switch from LF to CRLF if appropriate
 			if (IS_CRLF_PLATFORM && CVSProviderPlugin.getPlugin().isUsePlatformLineend()) {
-				// auto-correct for CRLF line-ends that come from the server
-				in = new CRLFtoLFInputStream(in);
-				// convert LF to CRLF
-				in = new LFtoCRLFInputStream(in);
+				// convert LF to CRLF, auto-correcting for CRLF line-ends that come from the server
+				mode = ReceiveFileInputStream.TO_CRLF;
 			} else {
 				// be nice and warn about text files that contain CRLF
-				in = new CRLFDetectInputStream(in, file);
+				mode = ReceiveFileInputStream.DETECT_CRLF;
 			}
 		}
+		// read the next 'size' bytes from the connection, decompressing and translating them in one pass
+		InputStream in = new ReceiveFileInputStream(connection.getInputStream(), size, compressed, mode, file, TRANSFER_PROGRESS_INCREMENT, monitor) {
+			protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
+				if (bytesRead == 0) return;
+				monitor.subTask(NLS.bind(CVSMessages.Session_transfer, (new Object[] { title, Long.toString(bytesRead >> 10), Long.toString(bytesTotal >> 10) })));
+			}
+		};
 		// write the file locally
 		file.setContents(in, responseType, true, new NullProgressMonitor());
 	}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.client;
+
+import java.io.*;
+
+/**
+ * Collects the bytes written to it so that their number is known before they
+ * are read back. The bytes are kept in memory up to a limit and in a
+ * temporary file beyond it. The stream can be reused after a reset, which
+ * keeps the memory buffer.
+ */
+public class SpoolOutputStream extends OutputStream {
+
+	private final int memoryLimit;
+	private byte[] buffer;
+	private int count;
+	private long size;
+	private File file;
+	private OutputStream fileOut;
+
+	/**
+	 * Create a stream.
+	 * @param initialSize the initial size of the memory buffer
+	 * @param memoryLimit the number of bytes kept in memory
+	 */
+	public SpoolOutputStream(int initialSize, int memoryLimit) {
+		this.buffer = new byte[Math.min(initialSize, memoryLimit)];
+		this.memoryLimit = memoryLimit;
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte)b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (file == null && count + len > buffer.length) {
+			if (count + len <= memoryLimit) {
+				byte[] grown = new byte[Math.min(memoryLimit, Math.max(buffer.length * 2, count + len))];
+				System.arraycopy(buffer, 0, grown, 0, count);
+				buffer = grown;
+			} else {
+				file = File.createTempFile("cvs", null); //$NON-NLS-1$
+				fileOut = new BufferedOutputStream(new FileOutputStream(file));
+				fileOut.write(buffer, 0, count);
+			}
+		}
+		if (file != null) {
+			fileOut.write(b, off, len);
+		} else {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+		size += len;
+	}
+
+	/**
+	 * Return the number of bytes written since the last reset.
+	 * @return the number of bytes written
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Return a stream over the bytes written since the last reset. No
+	 * more bytes can be written until the stream is reset and the
+	 * returned stream must be closed before the reset.
+	 * @return a stream over the written bytes
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (file == null)
+			return new ByteArrayInputStream(buffer, 0, count);
+		fileOut.close();
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Discard the written bytes and delete the temporary file, if any.
+	 */
+	public void reset() {
+		if (file != null) {
+			try {
+				fileOut.close();
+			} catch (IOException e) {
+				// Ignore since the file is deleted
+			}
+			file.delete();
+			file = null;
+			fileOut = null;
+		}
+		count = 0;
+		size = 0;
+	}
+
+	/*
+	 * Method used for testing only
+	 */
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/*
+	 * Method used for testing only
+	 */
+	public File getFile() {
+		return file;
+	}
+}
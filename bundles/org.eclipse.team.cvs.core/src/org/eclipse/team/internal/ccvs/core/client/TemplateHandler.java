@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,7 +40,7 @@ public class TemplateHandler extends ResponseHandler {
 	 * @see org.eclipse.team.internal.ccvs.core.client.ResponseHandler#handle(org.eclipse.team.internal.ccvs.core.client.Session, java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
 	 */
 	public void handle(Session session, String localDir, IProgressMonitor monitor) throws CVSException {
-		session.readLine(); /* read the remote dir which is not needed */
+		session.readLineChars(); /* read the remote dir which is not needed */
         // Only read the template file if the container exists.
         // This is OK as we only use the template from the project folder which must exist
         ICVSFolder localFolder = session.getLocalRoot().getFolder(localDir);
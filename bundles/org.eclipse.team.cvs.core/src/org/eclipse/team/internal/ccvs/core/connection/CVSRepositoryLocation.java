@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -76,6 +76,7 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 	// Preference keys used to persist the state of the location
 	public static final String PREF_LOCATION = "location"; //$NON-NLS-1$
 	public static final String PREF_SERVER_ENCODING = "encoding"; //$NON-NLS-1$
+	public static final String PREF_STREAM_COMPRESSION = "streamCompression"; //$NON-NLS-1$
 	
 	// server platform constants
 	public static final int UNDETERMINED_PLATFORM = 0;
@@ -101,6 +102,8 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 	private boolean userFixed;
 	private boolean passwordFixed;
 	private boolean allowCaching;
+	private ConnectionPool connectionPool;
+	private int concurrentSessions;
 	
 	private int serverPlatform = UNDETERMINED_PLATFORM;
 	
@@ -546,12 +549,66 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 		return connection;
 	}
 	
+	/**
+	 * Returns the pool of idle connections to this location, or
+	 * <code>null</code> if connections are not to be reused.
+	 * 
+	 * @return the connection pool or <code>null</code>
+	 */
+	public ConnectionPool getConnectionPool() {
+		if (!CVSProviderPlugin.getPlugin().isConnectionPoolingEnabled())
+			return null;
+		synchronized (this) {
+			if (connectionPool == null)
+				connectionPool = new ConnectionPool();
+			return connectionPool;
+		}
+	}
+	
+	/**
+	 * Reserves a session that an operation opens in addition to its own
+	 * session so that it can send requests concurrently. At most
+	 * {@link ConnectionPool#MAX_IDLE_CONNECTIONS} such sessions are open to
+	 * a location at any time, which allows them to reuse pooled connections.
+	 * A reserved session must be released with
+	 * {@link #releaseConcurrentSession()}.
+	 * 
+	 * @return whether a session was reserved
+	 */
+	public synchronized boolean reserveConcurrentSession() {
+		if (concurrentSessions >= ConnectionPool.MAX_IDLE_CONNECTIONS)
+			return false;
+		concurrentSessions++;
+		return true;
+	}
+	
+	/**
+	 * Releases a session reserved by {@link #reserveConcurrentSession()}.
+	 */
+	public synchronized void releaseConcurrentSession() {
+		concurrentSessions--;
+	}
+	
+	/*
+	 * Close the idle connections to this location. Closing may block so it
+	 * is done without holding the lock of the receiver.
+	 */
+	private void clearConnectionPool() {
+		ConnectionPool pool;
+		synchronized (this) {
+			pool = connectionPool;
+		}
+		if (pool != null)
+			pool.clear();
+	}
+	
 	/*
 	 * Dispose of the receiver by clearing any cached authorization information.
 	 * This method should only be invoked when the corresponding adapter is shut
 	 * down or a connection is being validated.
 	 */
 	public void dispose() {
+		clearConnectionPool();
 		removeNode();
 		try {
 			if (hasPreferences()) {
@@ -648,6 +705,38 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 		}
 	}	
 
+	/**
+	 * Return whether sessions to this location compress the whole
+	 * conversation with the server (the Gzip-stream request) instead of only
+	 * the file contents. The compression level is the one set for the plug-in.
+	 * @return whether the conversation with the server is compressed
+	 */
+	public boolean isStreamCompressionEnabled() {
+		if (hasPreferences()) {
+			return internalGetPreferences().getBoolean(PREF_STREAM_COMPRESSION, false);
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Set whether sessions to this location compress the whole conversation
+	 * with the server. Idle connections that were opened with the old
+	 * setting are not reused.
+	 * @param enabled whether the conversation with the server is compressed
+	 */
+	public void setStreamCompressionEnabled(boolean enabled) {
+		if (!enabled) {
+			if (hasPreferences()) {
+				internalGetPreferences().remove(PREF_STREAM_COMPRESSION);
+			}
+		} else {
+			ensurePreferencesStored();
+			internalGetPreferences().putBoolean(PREF_STREAM_COMPRESSION, true);
+			flushPreferences();
+		}
+	}
+
 	/*
 	 * @see ICVSRepositoryLocation#members(CVSTag, boolean, IProgressMonitor)
 	 */
@@ -969,6 +1058,8 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 		// The password has been changed, reset the flag, so we won't 
 		// prompt before attempting to connect
 		previousAuthenticationFailed = false;
+		// Connections authenticated with the old password must not be reused
+		clearConnectionPool();
 	}
 	
 	/*
@@ -978,6 +1069,7 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 		if (userFixed)
 			throw new UnsupportedOperationException();
 		this.user = user;
+		clearConnectionPool();
 	}
 	
 	public void setUserMuteable(boolean muteable) {
@@ -1095,6 +1187,7 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 	 * @see ICVSRepositoryLocation#flushUserInfo()
 	 */
 	public void flushUserInfo() {
+		clearConnectionPool();
 		removeNode();
 	}
 	
@@ -13,9 +13,11 @@ package org.eclipse.team.internal.ccvs.core.connection;
 
  
 import java.io.*;
+import java.nio.charset.*;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.team.internal.ccvs.core.*;
 
@@ -42,9 +44,13 @@ public class Connection {
 	private IServerConnection serverConnection;
 	private ICVSRepositoryLocation fCVSRoot;
 	private boolean fIsEstablished;
-	private InputStream fResponseStream;
+	private ResponseInputStream fResponseStream;
+	private ZlibOutputStream fCompressedOut;
+	private ZlibInputStream fCompressedIn;
 	private String fServerEncoding;
-	private byte[] readLineBuffer = new byte[256];
+	private CharsetDecoder fDecoder;
+	private boolean fPending;
+	private final ConnectionMonitor fMonitor = new ConnectionMonitor();
 
 	public Connection(ICVSRepositoryLocation cvsroot, IServerConnection serverConnection) {
 		fCVSRoot = cvsroot;
@@ -76,8 +82,15 @@ public class Connection {
 				CVSProviderPlugin.log(new CVSCommunicationException(CVSMessages.Connection_cannotClose, fCVSRoot, ex));
 			}
 		} finally {
+			if (fCompressedOut != null) {
+				fCompressedOut.close();
+				fCompressedIn.close();
+				fCompressedOut = null;
+				fCompressedIn = null;
+			}
 			fResponseStream = null;
 			fIsEstablished = false;
+			fPending = false;
 		}
 	}
 	/**
@@ -100,6 +113,8 @@ public class Connection {
 	public OutputStream getOutputStream() {
 		if (!isEstablished())
 			return null;
+		if (fCompressedOut != null)
+			return fCompressedOut;
 		return serverConnection.getOutputStream();
 	}
 	/**
@@ -110,10 +125,28 @@ public class Connection {
 		if (!isEstablished())
 			return null;
 		if (fResponseStream == null)
-			fResponseStream = serverConnection.getInputStream();
+			fResponseStream = new ResponseInputStream(serverConnection.getInputStream());
 		return fResponseStream;	
 	}
 
+	/**
+	 * Compresses the rest of the conversation with the server. Must be
+	 * called right after sending the <code>Gzip-stream</code> request, the
+	 * server compresses its responses to any later request. Each flush of the
+	 * request stream sends the requests written so far as complete blocks.
+	 * @param level the compression level sent with the request
+	 */
+	public void enableCompression(int level) throws CVSException {
+		if (!isEstablished())
+			throw new CVSCommunicationException(CVSMessages.Connection_writeUnestablishedConnection,fCVSRoot,null);
+		if (fCompressedOut != null)
+			return;
+		// inflate from the current response stream so that no buffered bytes are lost
+		fCompressedIn = new ZlibInputStream(getInputStream());
+		fCompressedOut = new ZlibOutputStream(serverConnection.getOutputStream(), level);
+		fResponseStream = new ResponseInputStream(fCompressedIn);
+	}
+
 	/**
 	 * Returns <code>true</code> if the connection is established;
 	 * otherwise <code>false</code>.
@@ -122,42 +155,90 @@ public class Connection {
 		return fIsEstablished;
 	}
 
+	/**
+	 * Returns <code>true</code> if a request has been sent whose response
+	 * has not been read completely. Such a connection cannot be reused.
+	 */
+	public boolean isPending() {
+		return fPending;
+	}
+
+	/**
+	 * Marks the response to the last request as read completely.
+	 */
+	public void requestCompleted() {
+		fPending = false;
+	}
+
 	/**
 	 * Opens the connection.
 	 */	
 	public void open(IProgressMonitor monitor) throws CVSException {
 		if (isEstablished())
 			return;
+		fMonitor.setMonitor(monitor);
 		try {
-			serverConnection.open(monitor);
+			serverConnection.open(fMonitor);
 		} catch (IOException e) {
 			throw new CVSCommunicationException(NLS.bind(CVSMessages.Connection_0, new String[] { fCVSRoot.getLocation(true), CVSCommunicationException.getMessageFor(e) }), fCVSRoot, e); 
 		}
 		fIsEstablished= true; 
 	}
+
+	/**
+	 * Sets the progress monitor that is polled for cancelation while the
+	 * connection reads and writes. The streams of the server connection keep
+	 * the monitor passed to <code>open</code>, so a connection that is reused
+	 * by another session must be bound to the monitor of that session.
+	 * @param monitor the progress monitor or <code>null</code> if the
+	 *            connection is not used
+	 */
+	public void setProgressMonitor(IProgressMonitor monitor) {
+		fMonitor.setMonitor(monitor);
+	}
 	/**
 	 * Reads a line from the response stream.
 	 */
 	public String readLine() throws CVSException {
+		return readLineChars().toString();
+	}
+	
+	/**
+	 * Reads a line from the response stream. The returned characters are
+	 * only valid until the next read from the response stream; callers
+	 * that keep the line must convert it to a <code>String</code>.
+	 */
+	public CharSequence readLineChars() throws CVSException {
 		if (!isEstablished())
 			throw new CVSCommunicationException(CVSMessages.Connection_readUnestablishedConnection,fCVSRoot,null);
 		try { 
-			InputStream in = getInputStream();
-			int index = 0;
-			int r;
-			while ((r = in.read()) != -1) {
-				if (r == NEWLINE) break;
-				readLineBuffer = append(readLineBuffer, index++, (byte) r);
-			}
-
-			String result = new String(readLineBuffer, 0, index, fServerEncoding);
-			if (Policy.isDebugProtocol()) Policy.printProtocolLine(result);
+			getInputStream();
+			CharSequence result = fResponseStream.readLine(getDecoder());
+			if (Policy.isDebugProtocol()) Policy.printProtocolLine(result.toString());
 			return result;
 		} catch (IOException e) {
 			throw new CVSCommunicationException(fCVSRoot,e);
 		}
 	}
 	
+	/*
+	 * Returns the decoder for the server encoding. Malformed input is
+	 * replaced the same way as by the String constructors.
+	 */
+	private CharsetDecoder getDecoder() throws UnsupportedEncodingException {
+		if (fDecoder == null) {
+			try {
+				fDecoder = Charset.forName(fServerEncoding).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			} catch (IllegalArgumentException e) {
+				// the charset is not supported or its name is illegal
+				throw new UnsupportedEncodingException(fServerEncoding);
+			}
+		}
+		return fDecoder;
+	}
+	
 	static String readLine(ICVSRepositoryLocation location, InputStream in) throws IOException {
 		byte[] buffer = new byte[256];
 		int index = 0;
@@ -223,6 +304,7 @@ public class Connection {
 		if (Policy.isDebugProtocol())
 		    Policy.printProtocol(new String(b, off, len), newline);
 	
+		fPending = true;
 		try {
 			OutputStream out= getOutputStream();
 			out.write(b, off, len);
@@ -233,4 +315,40 @@ public class Connection {
 			throw new CVSCommunicationException(fCVSRoot,e);
 		}
 	}
+
+	/*
+	 * The monitor the server connection is opened with, which forwards to the
+	 * monitor of the session that currently uses the connection.
+	 */
+	private static class ConnectionMonitor implements IProgressMonitor {
+		private volatile IProgressMonitor monitor = new NullProgressMonitor();
+
+		void setMonitor(IProgressMonitor monitor) {
+			this.monitor = monitor == null ? new NullProgressMonitor() : monitor;
+		}
+		public void beginTask(String name, int totalWork) {
+			monitor.beginTask(name, totalWork);
+		}
+		public void done() {
+			monitor.done();
+		}
+		public void internalWorked(double work) {
+			monitor.internalWorked(work);
+		}
+		public boolean isCanceled() {
+			return monitor.isCanceled();
+		}
+		public void setCanceled(boolean value) {
+			monitor.setCanceled(value);
+		}
+		public void setTaskName(String name) {
+			monitor.setTaskName(name);
+		}
+		public void subTask(String name) {
+			monitor.subTask(name);
+		}
+		public void worked(int work) {
+			monitor.worked(work);
+		}
+	}
 }
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.team.internal.ccvs.core.CVSMessages;
+
+/**
+ * Keeps the idle connections of a repository location so that sessions can
+ * reuse them instead of connecting and authenticating again.
+ * <p>
+ * A connection is returned to the pool by the session that used it, together
+ * with the state that has been negotiated with the server when the connection
+ * was opened and the global options sent on it, which stay in effect on the
+ * server. A connection is only handed to a session whose key, i.e. the user
+ * and the negotiated state it would send, is the same. While it is idle a
+ * connection does not poll any progress monitor for cancelation. At most
+ * {@link #MAX_IDLE_CONNECTIONS} connections are kept; connections that have
+ * not been used for {@link #IDLE_TIMEOUT} milliseconds, or the timeout the
+ * pool was created with, are closed. The idle
+ * connections of all pools are closed by {@link #clearAll()} when the plug-in
+ * is stopped.
+ * </p>
+ */
+public class ConnectionPool {
+
+	/**
+	 * The maximum number of idle connections kept per repository location.
+	 */
+	public static final int MAX_IDLE_CONNECTIONS = 4;
+
+	/**
+	 * The default time in milliseconds after which an idle connection is
+	 * closed.
+	 */
+	public static final long IDLE_TIMEOUT = 60000;
+
+	/**
+	 * The default time in milliseconds a connection can be idle before it
+	 * should be checked before use, servers or firewalls may have dropped it.
+	 */
+	public static final long CHECK_AFTER = 5000;
+
+	/**
+	 * An idle connection and the state negotiated with the server.
+	 */
+	public static class Entry {
+		private final Connection connection;
+		private final String key;
+		private final String validRequests;
+		private final int compressionLevel;
+		private final Set globalOptions;
+		private long released;
+		private long checkAfter;
+
+		public Entry(Connection connection, String key, String validRequests, int compressionLevel, Set globalOptions) {
+			this.connection = connection;
+			this.key = key;
+			this.validRequests = validRequests;
+			this.compressionLevel = compressionLevel;
+			this.globalOptions = Collections.unmodifiableSet(new HashSet(globalOptions));
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Returns the requests the server reported as valid when the
+		 * connection was opened.
+		 */
+		public String getValidRequests() {
+			return validRequests;
+		}
+
+		/**
+		 * Returns the compression level enabled on the connection.
+		 */
+		public int getCompressionLevel() {
+			return compressionLevel;
+		}
+
+		/**
+		 * Returns the global options that have been sent on the connection.
+		 */
+		public Set getGlobalOptions() {
+			return globalOptions;
+		}
+
+		/**
+		 * Returns whether the connection has been idle long enough to be
+		 * checked before it is used.
+		 */
+		public boolean needsCheck() {
+			return System.currentTimeMillis() - released > checkAfter;
+		}
+	}
+
+	// the pools that have idle connections
+	private static final Set active = new HashSet();
+
+	private final LinkedList idle = new LinkedList(); // of Entry, the most recently released first
+	private final long idleTimeout;
+	private final long checkAfter;
+
+	private final Job evictionJob = new Job(CVSMessages.ConnectionPool_closeIdle) {
+		protected IStatus run(IProgressMonitor monitor) {
+			closeExpired();
+			synchronized (ConnectionPool.this) {
+				if (!idle.isEmpty())
+					schedule(idleTimeout);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	public ConnectionPool() {
+		this(IDLE_TIMEOUT, CHECK_AFTER);
+	}
+
+	/**
+	 * Creates a pool that closes connections that have been idle for the
+	 * given time and checks connections that have been idle for the given
+	 * time before they are used.
+	 *
+	 * @param idleTimeout the time in milliseconds after which an idle
+	 *            connection is closed
+	 * @param checkAfter the time in milliseconds after which an idle
+	 *            connection is checked before use
+	 */
+	public ConnectionPool(long idleTimeout, long checkAfter) {
+		this.idleTimeout = idleTimeout;
+		this.checkAfter = checkAfter;
+		evictionJob.setSystem(true);
+	}
+
+	/**
+	 * Removes and returns the most recently used idle connection with the
+	 * given key on which no global options other than the given ones have
+	 * been sent, or <code>null</code> if there is none.
+	 *
+	 * @param key the key of the state the connection must have
+	 * @param globalOptions the global options that may be in effect on the
+	 *            connection, or <code>null</code> if any may be
+	 * @return an idle connection or <code>null</code>
+	 */
+	public Entry acquire(String key, Collection globalOptions) {
+		closeExpired();
+		synchronized (this) {
+			for (Iterator iter = idle.iterator(); iter.hasNext();) {
+				Entry entry = (Entry) iter.next();
+				if (entry.key.equals(key) && (globalOptions == null || globalOptions.containsAll(entry.globalOptions))) {
+					iter.remove();
+					if (idle.isEmpty())
+						setActive(false);
+					return entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a connection that is no longer used to the pool. If the pool
+	 * is full the connection that has been idle the longest is closed.
+	 *
+	 * @param entry the connection and its state
+	 */
+	public void release(Entry entry) {
+		// the monitor of the session that used the connection is no longer polled
+		entry.connection.setProgressMonitor(null);
+		Entry evicted = null;
+		synchronized (this) {
+			entry.released = System.currentTimeMillis();
+			entry.checkAfter = checkAfter;
+			idle.addFirst(entry);
+			setActive(true);
+			if (idle.size() > MAX_IDLE_CONNECTIONS)
+				evicted = (Entry) idle.removeLast();
+			if (evictionJob.getState() == Job.NONE)
+				evictionJob.schedule(idleTimeout);
+		}
+		if (evicted != null)
+			evicted.connection.close();
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public void clear() {
+		List closed;
+		synchronized (this) {
+			closed = new ArrayList(idle);
+			idle.clear();
+			setActive(false);
+			evictionJob.cancel();
+		}
+		close(closed);
+	}
+
+	/**
+	 * Closes the idle connections of all pools.
+	 */
+	public static void clearAll() {
+		ConnectionPool[] pools;
+		synchronized (active) {
+			pools = (ConnectionPool[]) active.toArray(new ConnectionPool[active.size()]);
+		}
+		for (int i = 0; i < pools.length; i++) {
+			pools[i].clear();
+		}
+	}
+
+	/**
+	 * Returns the number of idle connections in the pool.
+	 *
+	 * @return the number of idle connections
+	 */
+	public synchronized int size() {
+		return idle.size();
+	}
+
+	/*
+	 * Must be called while holding the lock of the receiver.
+	 */
+	private void setActive(boolean hasIdle) {
+		synchronized (active) {
+			if (hasIdle)
+				active.add(this);
+			else
+				active.remove(this);
+		}
+	}
+
+	private void closeExpired() {
+		List expired = new ArrayList();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			for (Iterator iter = idle.iterator(); iter.hasNext();) {
+				Entry entry = (Entry) iter.next();
+				if (now - entry.released >= idleTimeout) {
+					iter.remove();
+					expired.add(entry);
+				}
+			}
+			if (idle.isEmpty())
+				setActive(false);
+		}
+		close(expired);
+	}
+
+	private static void close(List entries) {
+		// closing may block on the network, so it is done outside of the lock
+		for (Iterator iter = entries.iterator(); iter.hasNext();) {
+			((Entry) iter.next()).connection.close();
+		}
+	}
+}
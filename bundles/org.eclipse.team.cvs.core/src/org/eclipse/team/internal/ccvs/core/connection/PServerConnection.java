@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,10 +63,17 @@ public class PServerConnection implements IServerConnection {
 	private static final String LOGIN_OK= "I LOVE YOU";//$NON-NLS-1$
 	private static final String LOGIN_FAILED= "I HATE YOU";//$NON-NLS-1$
 	
+	/**
+	 * Whether direct connections use a blocking socket wrapped in timeout
+	 * streams instead of a non-blocking socket channel
+	 */
+	private static final boolean USE_BLOCKING_SOCKET = Boolean.valueOf(System.getProperty("eclipse.cvs.pserver.blockingSocket")).booleanValue(); //$NON-NLS-1$
+	
 	private String password;
 	private ICVSRepositoryLocation cvsroot;
 
 	private Socket fSocket;
+	private SocketChannelStreams fChannel;
 	
 	private InputStream inputStream;
 	private OutputStream outputStream;
@@ -87,6 +94,11 @@ public class PServerConnection implements IServerConnection {
 					if (fSocket != null) fSocket.close();
 				} finally {
 					fSocket = null;
+					try {
+						if (fChannel != null) fChannel.close();
+					} finally {
+						fChannel = null;
+					}
 				}
 			}
 		}
@@ -121,19 +133,27 @@ public class PServerConnection implements IServerConnection {
           is = proxy.getInputStream();
           os = proxy.getOutputStream();
           
-        } else {
+        } else if (USE_BLOCKING_SOCKET) {
           fSocket = createSocket(monitor);
           is = fSocket.getInputStream();
           os = fSocket.getOutputStream();
+        } else {
+          fChannel = createChannel(monitor);
         }
         
 		boolean connected = false;
 		try {
-			this.inputStream = new BufferedInputStream(new PollingInputStream(is,
-				cvsroot.getTimeout(), monitor));
-			this.outputStream = new PollingOutputStream(new TimeoutOutputStream(
-				os, 8192 /*bufferSize*/, 1000 /*writeTimeout*/, 1000 /*closeTimeout*/),
-				cvsroot.getTimeout(), monitor);
+			if (fChannel != null) {
+				// the channel streams poll the monitor and time out themselves
+				this.inputStream = fChannel.getInputStream();
+				this.outputStream = fChannel.getOutputStream();
+			} else {
+				this.inputStream = new BufferedInputStream(new PollingInputStream(is,
+					cvsroot.getTimeout(), monitor));
+				this.outputStream = new PollingOutputStream(new TimeoutOutputStream(
+					os, 8192 /*bufferSize*/, 1000 /*writeTimeout*/, 1000 /*closeTimeout*/),
+					cvsroot.getTimeout(), monitor);
+			}
 			authenticate();
 			connected = true;
 		} finally {
@@ -266,6 +286,21 @@ public class PServerConnection implements IServerConnection {
 		return result;
 	}
 
+	/**
+	 * Connects a non-blocking socket channel
+	 */
+	private SocketChannelStreams createChannel(IProgressMonitor monitor) throws IOException {
+		int port = cvsroot.getPort();
+		if (port == ICVSRepositoryLocation.USE_DEFAULT_PORT)
+			port = DEFAULT_PORT;
+		try {
+			return SocketChannelStreams.open(cvsroot.getHost(), port, cvsroot.getTimeout(), monitor);
+		} catch (InterruptedIOException e) {
+			// If we get this exception, chances are the host is not responding
+			throw new InterruptedIOException(NLS.bind(CVSMessages.PServerConnection_socket, (new Object[] {cvsroot.getHost()})));
+		}
+	}
+
 	private String scramblePassword(String password) throws CVSAuthenticationException {
 		int length = password.length();
 		char[] out= new char[length];
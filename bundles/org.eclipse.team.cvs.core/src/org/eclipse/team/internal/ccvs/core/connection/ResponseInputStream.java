@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Buffers the response stream of a connection and reads lines from it.
+ * <p>
+ * Lines are found by scanning the buffer for newlines, only lines that span
+ * two reads of the underlying stream are copied. The decoded characters are
+ * kept in a buffer which is reused for every line. Bytes that have been read
+ * ahead of a line are returned by the <code>read</code> methods, so lines and
+ * raw bytes (e.g. file contents) can be read alternately.
+ * </p>
+ */
+class ResponseInputStream extends FilterInputStream {
+
+	private static final byte NEWLINE= 0xA;
+	private static final int BUFFER_SIZE= 8192;
+
+	private final byte[] buffer= new byte[BUFFER_SIZE];
+	private int position;	// the index of the next byte to return
+	private int limit;	// the number of valid bytes in the buffer
+
+	private byte[] lineBytes= new byte[256];	// a line that spans more than one read
+	private CharBuffer lineChars= CharBuffer.allocate(256);
+
+	ResponseInputStream(InputStream in) {
+		super(in);
+	}
+
+	/*
+	 * Reads more bytes into the empty buffer. Returns false at the end of
+	 * the stream.
+	 */
+	private boolean fill() throws IOException {
+		int n= in.read(buffer, 0, BUFFER_SIZE);
+		if (n <= 0)
+			return false;
+		position= 0;
+		limit= n;
+		return true;
+	}
+
+	public int read() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position++] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		int buffered= limit - position;
+		if (buffered == 0) {
+			// large reads bypass the buffer
+			if (len >= BUFFER_SIZE)
+				return in.read(b, off, len);
+			if (!fill())
+				return -1;
+			buffered= limit;
+		}
+		int n= Math.min(len, buffered);
+		System.arraycopy(buffer, position, b, off, n);
+		position+= n;
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		int buffered= limit - position;
+		if (buffered == 0)
+			return in.skip(n);
+		int skipped= (int) Math.min(n, buffered);
+		position+= skipped;
+		return skipped;
+	}
+
+	public int available() throws IOException {
+		return (limit - position) + in.available();
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	public synchronized void mark(int readlimit) {
+		// not supported
+	}
+
+	public synchronized void reset() throws IOException {
+		throw new IOException();
+	}
+
+	/**
+	 * Reads the next line, without the trailing newline, and decodes it with
+	 * the given decoder. At the end of the stream the characters read so far
+	 * are returned.
+	 *
+	 * @param decoder the decoder for the server encoding, it is reset before use
+	 * @return the characters of the line, only valid until the next line is read
+	 * @throws IOException if reading from the underlying stream fails
+	 */
+	CharSequence readLine(CharsetDecoder decoder) throws IOException {
+		int length= 0;	// the number of bytes in lineBytes
+		for (;;) {
+			if (position == limit && !fill())
+				return decode(decoder, lineBytes, 0, length);
+			int start= position;
+			int end= limit;
+			byte[] bytes= buffer;
+			int i= start;
+			while (i < end && bytes[i] != NEWLINE)
+				i++;
+			if (i < end) {
+				position= i + 1;
+				if (length == 0)	// the common case, the line is in the buffer
+					return decode(decoder, bytes, start, i - start);
+				lineBytes= append(lineBytes, length, bytes, start, i - start);
+				return decode(decoder, lineBytes, 0, length + i - start);
+			}
+			lineBytes= append(lineBytes, length, bytes, start, end - start);
+			length+= end - start;
+			position= end;
+		}
+	}
+
+	private static byte[] append(byte[] target, int length, byte[] source, int offset, int count) {
+		if (length + count > target.length) {
+			byte[] newTarget= new byte[Math.max(target.length * 2, length + count)];
+			System.arraycopy(target, 0, newTarget, 0, length);
+			target= newTarget;
+		}
+		System.arraycopy(source, offset, target, length, count);
+		return target;
+	}
+
+	private CharSequence decode(CharsetDecoder decoder, byte[] bytes, int offset, int length) {
+		ByteBuffer in= ByteBuffer.wrap(bytes, offset, length);
+		int capacity= (int) (length * decoder.maxCharsPerByte()) + 1;
+		if (lineChars.capacity() < capacity)
+			lineChars= CharBuffer.allocate(Math.max(capacity, lineChars.capacity() * 2));
+		CharBuffer out= lineChars;
+		out.clear();
+		decoder.reset();
+		CoderResult result= decoder.decode(in, out, true);
+		if (!result.isOverflow())
+			decoder.flush(out);
+		out.flip();
+		return out;
+	}
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.team.internal.ccvs.core.*;
+
+/**
+ * The streams of a connection to a server over a non-blocking socket channel.
+ * <p>
+ * The streams read and write the channel through direct buffers and wait for
+ * it with selectors, in steps of a second, so that timeouts and cancelation
+ * are handled without the helper threads and the layers of streams needed
+ * for a blocking socket. Reads and writes of the same connection may happen
+ * on different threads, each direction has its own selector. Only the host
+ * name is resolved on a helper thread since the lookup cannot be interrupted.
+ * </p>
+ */
+public class SocketChannelStreams {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int POLL_INTERVAL = 1000; // milliseconds between checks for cancelation
+
+	private final SocketChannel channel;
+	private final String host;
+	private final int timeout; // seconds, 0 waits indefinitely
+	private final IProgressMonitor monitor;
+	private final ChannelInputStream inputStream = new ChannelInputStream();
+	private final ChannelOutputStream outputStream = new ChannelOutputStream();
+
+	/**
+	 * Open a channel to the given host and port. The connection attempt,
+	 * including the resolution of the host name, is aborted when it takes
+	 * longer than the timeout or the monitor is canceled.
+	 * @param host the host
+	 * @param port the port
+	 * @param timeout the communication timeout in seconds, 0 uses the default
+	 *            timeout for the connection attempt and no timeout afterwards
+	 * @param monitor the monitor polled for cancelation
+	 * @return the streams of the connected channel
+	 * @throws InterruptedIOException if the connection timed out
+	 * @throws UnknownHostException if the host name could not be resolved
+	 * @throws IOException if the connection failed
+	 */
+	public static SocketChannelStreams open(String host, int port, int timeout, IProgressMonitor monitor) throws IOException {
+		long connectTimeout = (timeout == 0 ? CVSProviderPlugin.DEFAULT_TIMEOUT : timeout) * 1000L;
+		long start = System.currentTimeMillis();
+		InetSocketAddress address = resolve(host, port, start, connectTimeout, monitor);
+		SocketChannel channel = SocketChannel.open();
+		boolean connected = false;
+		try {
+			channel.configureBlocking(false);
+			// Bug 36351: disable buffering and send bytes immediately
+			channel.socket().setTcpNoDelay(true);
+			if (!channel.connect(address)) {
+				Selector selector = Selector.open();
+				try {
+					channel.register(selector, SelectionKey.OP_CONNECT);
+					while (!channel.finishConnect()) {
+						Policy.checkCanceled(monitor);
+						if (System.currentTimeMillis() - start >= connectTimeout)
+							throw new InterruptedIOException(NLS.bind(CVSMessages.Util_timeout, new String[] { host }));
+						selector.select(POLL_INTERVAL);
+						selector.selectedKeys().clear();
+					}
+				} finally {
+					selector.close();
+				}
+			}
+			connected = true;
+			return new SocketChannelStreams(channel, host, timeout, monitor);
+		} finally {
+			if (!connected)
+				channel.close();
+		}
+	}
+
+	/*
+	 * Resolves the host name on a helper thread and waits for it in steps of
+	 * the poll interval. The thread is abandoned when the resolution takes
+	 * longer than the connect timeout or the monitor is canceled.
+	 */
+	private static InetSocketAddress resolve(final String host, final int port, long start, long connectTimeout, IProgressMonitor monitor) throws IOException {
+		final InetSocketAddress[] result = new InetSocketAddress[1];
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				InetSocketAddress address = new InetSocketAddress(host, port);
+				synchronized (result) {
+					result[0] = address;
+					result.notifyAll();
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		InetSocketAddress address;
+		synchronized (result) {
+			while (result[0] == null) {
+				Policy.checkCanceled(monitor);
+				long remaining = connectTimeout - (System.currentTimeMillis() - start);
+				if (remaining <= 0)
+					throw new InterruptedIOException(NLS.bind(CVSMessages.Util_timeout, new String[] { host }));
+				try {
+					result.wait(Math.min(remaining, POLL_INTERVAL));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+					throw new InterruptedIOException(NLS.bind(CVSMessages.Util_timeout, new String[] { host }));
+				}
+			}
+			address = result[0];
+		}
+		if (address.isUnresolved())
+			throw new UnknownHostException(host);
+		return address;
+	}
+
+	private SocketChannelStreams(SocketChannel channel, String host, int timeout, IProgressMonitor monitor) {
+		this.channel = channel;
+		this.host = host;
+		this.timeout = timeout;
+		this.monitor = monitor;
+	}
+
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * Close the channel. Bytes that have not been flushed are discarded.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			inputStream.closeSelector();
+			outputStream.closeSelector();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/*
+	 * Waits for the channel to become ready for the given operation, at most
+	 * for the poll interval. Returns the selector, which is opened on the
+	 * first wait.
+	 */
+	private Selector select(Selector selector, int operation) throws IOException {
+		if (selector == null) {
+			selector = Selector.open();
+			channel.register(selector, operation);
+		}
+		selector.select(POLL_INTERVAL);
+		selector.selectedKeys().clear();
+		return selector;
+	}
+
+	private void checkTimeout(long start, String message) throws InterruptedIOException {
+		Policy.checkCanceled(monitor);
+		if (timeout > 0 && System.currentTimeMillis() - start >= timeout * 1000L)
+			throw new InterruptedIOException(NLS.bind(message, new String[] { host }));
+	}
+
+	private class ChannelInputStream extends InputStream {
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private Selector selector;
+
+		ChannelInputStream() {
+			buffer.flip(); // empty
+		}
+
+		public int read() throws IOException {
+			if (!buffer.hasRemaining() && !fill())
+				return -1;
+			return buffer.get() & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining() && !fill())
+				return -1;
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		public int available() {
+			return buffer.remaining();
+		}
+
+		/*
+		 * Reads more bytes into the empty buffer. Returns false at the end of
+		 * the stream.
+		 */
+		private boolean fill() throws IOException {
+			Policy.checkCanceled(monitor);
+			buffer.clear();
+			try {
+				int n = channel.read(buffer);
+				long start = System.currentTimeMillis();
+				while (n == 0) {
+					selector = select(selector, SelectionKey.OP_READ);
+					n = channel.read(buffer);
+					if (n == 0)
+						checkTimeout(start, CVSMessages.PServerConnection_readTimeout);
+				}
+				return n != -1;
+			} finally {
+				buffer.flip();
+			}
+		}
+
+		public void close() {
+			// the channel is closed by the connection
+		}
+
+		void closeSelector() throws IOException {
+			if (selector != null)
+				selector.close();
+		}
+	}
+
+	private class ChannelOutputStream extends OutputStream {
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private Selector selector;
+
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining())
+				drain();
+			buffer.put((byte) b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining())
+					drain();
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		public void flush() throws IOException {
+			drain();
+		}
+
+		/*
+		 * Writes the buffered bytes. The bytes that could not be written
+		 * before a timeout stay in the buffer.
+		 */
+		private void drain() throws IOException {
+			Policy.checkCanceled(monitor);
+			buffer.flip();
+			try {
+				long start = System.currentTimeMillis();
+				while (buffer.hasRemaining()) {
+					if (channel.write(buffer) == 0) {
+						selector = select(selector, SelectionKey.OP_WRITE);
+						if (channel.write(buffer) == 0)
+							checkTimeout(start, CVSMessages.PServerConnection_writeTimeout);
+					}
+				}
+			} finally {
+				buffer.compact();
+			}
+		}
+
+		public void close() {
+			// the channel is closed by the connection
+		}
+
+		void closeSelector() throws IOException {
+			if (selector != null)
+				selector.close();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses the response stream of a connection that has sent the
+ * <code>Gzip-stream</code> request.
+ * <p>
+ * Unlike <code>InflaterInputStream</code>, a read returns as soon as some
+ * bytes have been decompressed and the underlying stream is only read when
+ * the inflater has consumed all of its input. A response that the server has
+ * flushed can therefore be read completely without blocking for more data.
+ * Closing the stream releases the inflater but not the underlying stream.
+ * </p>
+ */
+public class ZlibInputStream extends FilterInputStream {
+
+	private static final int BUFFER_SIZE= 8192;
+
+	private final Inflater inflater= new Inflater();
+	private final byte[] input= new byte[BUFFER_SIZE];
+	private boolean closed;
+
+	public ZlibInputStream(InputStream in) {
+		super(in);
+	}
+
+	public int read() throws IOException {
+		byte[] b= new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		if (len == 0)
+			return 0;
+		try {
+			while (true) {
+				int n= inflater.inflate(b, off, len);
+				if (n > 0)
+					return n;
+				if (inflater.finished())
+					return -1;
+				if (inflater.needsDictionary())
+					throw new ZipException("Unexpected dictionary in compressed stream"); //$NON-NLS-1$
+				if (inflater.needsInput()) {
+					int count= in.read(input, 0, BUFFER_SIZE);
+					if (count == -1)
+						throw new EOFException("Unexpected end of compressed stream"); //$NON-NLS-1$
+					inflater.setInput(input, 0, count);
+				}
+			}
+		} catch (DataFormatException e) {
+			IOException exception= new IOException(e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	public int available() throws IOException {
+		// the number of bytes the remaining input inflates to is not known
+		return 0;
+	}
+
+	public long skip(long n) throws IOException {
+		byte[] b= new byte[(int) Math.min(n, BUFFER_SIZE)];
+		long skipped= 0;
+		while (skipped < n) {
+			int count= read(b, 0, (int) Math.min(n - skipped, b.length));
+			if (count == -1)
+				break;
+			skipped+= count;
+		}
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Releases the inflater, the underlying stream is left open.
+	 */
+	public void close() {
+		if (!closed) {
+			closed= true;
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the request stream of a connection that has sent the
+ * <code>Gzip-stream</code> request.
+ * <p>
+ * Unlike <code>DeflaterOutputStream</code>, <code>flush()</code> writes all
+ * of the bytes written so far as complete deflate blocks so that the server
+ * can process the requests without waiting for more input. The compression
+ * dictionary is kept across flushes. Closing the stream releases the deflater
+ * but not the underlying stream.
+ * </p>
+ */
+public class ZlibOutputStream extends FilterOutputStream {
+
+	private static final int BUFFER_SIZE= 8192;
+	private static final int SYNC_FLUSH= 2;	// Deflater.SYNC_FLUSH, added in Java 7
+
+	private static Method syncFlush;
+	private static boolean syncFlushLookedUp;
+
+	private final Deflater deflater;
+	private final int level;
+	private final byte[] input= new byte[BUFFER_SIZE];
+	private final byte[] output= new byte[BUFFER_SIZE];
+	private int count;	// the number of bytes in the input buffer
+	private boolean closed;
+
+	public ZlibOutputStream(OutputStream out, int level) {
+		super(out);
+		this.level= level;
+		this.deflater= new Deflater(level);
+	}
+
+	/*
+	 * Looks up the deflate method that takes a flush mode, if this is a Java 7
+	 * or later runtime.
+	 */
+	private static synchronized Method lookUpSyncFlushMethod() {
+		if (!syncFlushLookedUp) {
+			try {
+				syncFlush= Deflater.class.getMethod("deflate", new Class[] { byte[].class, int.class, int.class, int.class }); //$NON-NLS-1$
+			} catch (NoSuchMethodException e) {
+				// fall back to flushing by changing the level
+			}
+			syncFlushLookedUp= true;
+		}
+		return syncFlush;
+	}
+
+	/**
+	 * Returns the deflate method that takes a flush mode or <code>null</code>
+	 * if the runtime does not have it, in which case a flush changes the
+	 * compression level. Overridden by tests to exercise the fallback.
+	 * @return the deflate method that takes a flush mode or <code>null</code>
+	 */
+	protected Method getSyncFlushMethod() {
+		return lookUpSyncFlushMethod();
+	}
+
+	public void write(int b) throws IOException {
+		if (count == BUFFER_SIZE)
+			deflateInput(getSyncFlushMethod() == null);
+		input[count++]= (byte) b;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == BUFFER_SIZE)
+				deflateInput(getSyncFlushMethod() == null);
+			int n= Math.min(len, BUFFER_SIZE - count);
+			System.arraycopy(b, off, input, count, n);
+			count+= n;
+			off+= n;
+			len-= n;
+		}
+	}
+
+	/*
+	 * Compresses the buffered input, the deflater may keep some of the
+	 * output until the next flush. If keepLast is true, the last byte stays
+	 * in the buffer.
+	 */
+	private void deflateInput(boolean keepLast) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		int n= keepLast ? count - 1 : count;
+		if (n <= 0)
+			return;
+		deflater.setInput(input, 0, n);
+		while (!deflater.needsInput())
+			writeOutput(deflater.deflate(output, 0, BUFFER_SIZE));
+		if (keepLast)
+			input[0]= input[n];
+		count-= n;
+	}
+
+	private void writeOutput(int n) throws IOException {
+		if (n > 0)
+			out.write(output, 0, n);
+	}
+
+	public void flush() throws IOException {
+		Method method= getSyncFlushMethod();
+		deflateInput(method == null);
+		if (method != null) {
+			Object[] args= new Object[] { output, new Integer(0), new Integer(BUFFER_SIZE), new Integer(SYNC_FLUSH) };
+			int n;
+			do {
+				try {
+					n= ((Integer) method.invoke(deflater, args)).intValue();
+				} catch (Exception e) {
+					IOException exception= new IOException(e.getMessage());
+					exception.initCause(e);
+					throw exception;
+				}
+				writeOutput(n);
+			} while (n == BUFFER_SIZE);
+		} else if (count > 0) {
+			// The zlib of older runtimes ends the current block when the
+			// level changes but may keep its last bits until more output
+			// follows. The last byte written, which has been held back, is
+			// therefore sent in a block without compression, which always
+			// ends on a byte boundary, before the level is restored. This
+			// requires a level other than NO_COMPRESSION.
+			deflater.setInput(input, 0, 0);
+			deflater.setLevel(Deflater.NO_COMPRESSION);
+			drainOutput();
+			deflater.setInput(input, 0, 1);
+			while (!deflater.needsInput())
+				drainOutput();
+			count= 0;
+			deflater.setLevel(level);
+			deflater.setInput(input, 0, 0);
+			drainOutput();
+		}
+		out.flush();
+	}
+
+	private void drainOutput() throws IOException {
+		int n;
+		do {
+			n= deflater.deflate(output, 0, BUFFER_SIZE);
+			writeOutput(n);
+		} while (n == BUFFER_SIZE);
+	}
+
+	/**
+	 * Releases the deflater. Buffered bytes are discarded and the underlying
+	 * stream is left open.
+	 */
+	public void close() {
+		if (!closed) {
+			closed= true;
+			deflater.end();
+		}
+	}
+}
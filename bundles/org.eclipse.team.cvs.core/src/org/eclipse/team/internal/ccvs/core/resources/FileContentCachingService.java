@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,9 @@ import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
  */
 public class FileContentCachingService {
 
+	// the number of files fetched by a request when several sessions are used
+	private static final int FILES_PER_REQUEST = 64;
+	
 	String[] fileDiffs;
 	private CVSRepositoryLocation repository;
 	private ICVSFolder remoteRoot;
@@ -89,6 +92,10 @@ public class FileContentCachingService {
 	private void cacheFileContents(IProgressMonitor monitor) throws CVSException {
 		String[] files = getUncachedFiles();
 		if (files.length == 0) return;
+		if (files.length > FILES_PER_REQUEST && CVSProviderPlugin.getPlugin().isConcurrentTreeBuildingEnabled()) {
+			cacheFileContentsConcurrently(files, monitor);
+			return;
+		}
 		// Fetch the file contents for all out-of-sync files by running an update
 		// on the remote tree passing the known changed files as arguments
 		monitor.beginTask(null, 10 + files.length * 100);
@@ -113,6 +120,44 @@ public class FileContentCachingService {
 		}
 	}
 
+	/*
+	 * Fetch the file contents in groups over several sessions. The contents of
+	 * each file are cached as soon as they are received so that they can be
+	 * used while the other files are still being fetched. Besides the session
+	 * of the calling thread, at most as many sessions are opened as can be
+	 * reserved from the repository location.
+	 */
+	private void cacheFileContentsConcurrently(String[] files, IProgressMonitor monitor) throws CVSException {
+		int groups = (files.length + FILES_PER_REQUEST - 1) / FILES_PER_REQUEST;
+		monitor.beginTask(null, 3 * groups);
+		try {
+			SessionQueue queue = new SessionQueue(repository, remoteRoot, monitor) {
+				protected void run(Session session, Object request, IProgressMonitor monitor) throws CVSException {
+					String[] group = (String[]) request;
+					IStatus status = Command.UPDATE.execute(session,
+						Command.NO_GLOBAL_OPTIONS,
+						new LocalOption[] { Update.IGNORE_LOCAL_CHANGES },
+						group,
+						null,
+						monitor);
+					if (!status.isOK()) {
+						// No big deal but log the problem anyway
+						CVSProviderPlugin.log (new CVSException(status));
+					}
+				}
+			};
+			for (int i = 0; i < groups; i++) {
+				int length = Math.min(FILES_PER_REQUEST, files.length - i * FILES_PER_REQUEST);
+				String[] group = new String[length];
+				System.arraycopy(files, i * FILES_PER_REQUEST, group, 0, length);
+				queue.add(group);
+			}
+			queue.finish();
+		} finally {
+			monitor.done();
+		}
+	}
+
 	/*
 	 * Only return those file in the diff list that exist remotely and whose contents are not already cached
 	 */
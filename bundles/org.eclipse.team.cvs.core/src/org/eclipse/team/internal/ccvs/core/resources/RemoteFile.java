@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -607,6 +607,29 @@ public class RemoteFile extends RemoteResource implements ICVSRemoteFile  {
 		return getRevision();
 	}
 
+	/*
+	 * The contents received from the server depend on the keyword substitution
+	 * mode and, for text files, on whether the line ends are converted, so
+	 * these are part of the path that identifies the cached contents.
+	 * @see org.eclipse.team.internal.ccvs.core.resources.RemoteResource#getCachePath()
+	 */
+	public String getCachePath() {
+		KSubstOption mode = getKeywordMode();
+		StringBuffer buffer = new StringBuffer(super.getCachePath());
+		buffer.append(' ').append(mode.toMode());
+		if (!mode.isBinary() && Session.IS_CRLF_PLATFORM && CVSProviderPlugin.getPlugin().isUsePlatformLineend()) {
+			buffer.append(" crlf"); //$NON-NLS-1$
+		}
+		return buffer.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.team.core.variants.CachedResourceVariant#getDisplayPath()
+	 */
+	public IPath getDisplayPath() {
+		return new Path(null, super.getCachePath());
+	}
+
 	/**
 	 * Callback which indicates that the remote file is about to receive contents that should be cached
 	 * @param entryLine
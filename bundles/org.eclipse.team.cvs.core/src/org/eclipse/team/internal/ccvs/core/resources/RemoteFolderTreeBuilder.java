@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,11 @@ import org.eclipse.team.internal.ccvs.core.util.Util;
  * 
  * The provider IManagedFolder can be a local resource or a RemoteFolderTree that
  * that was previously built.
+ * 
+ * If concurrent tree building is enabled, the subtrees of folders that are new on
+ * the server and the groups of file revisions are fetched on several sessions at
+ * the same time. The resulting tree is the same as when everything is fetched
+ * over a single session.
  */
 public class RemoteFolderTreeBuilder {
 
@@ -64,6 +69,11 @@ public class RemoteFolderTreeBuilder {
 	
 	private boolean newFolderExist = false;
 	
+	// while new folders are fetched concurrently, the new folders in the order
+	// they are found and the folders whose pruning is decided once they are fetched
+	private List newFolders;
+	private List pendingPrunes;
+	
 	static class DeltaNode {
 		int syncState = Update.STATE_NONE;
 		String name;
@@ -87,6 +97,36 @@ public class RemoteFolderTreeBuilder {
 			return syncState;
 		}
 	}
+	
+	/*
+	 * A new folder whose subtree is fetched on another session.
+	 */
+	private static class NewFolder {
+		RemoteFolderTree folder;
+		String localPath;
+		// the files of the subtree whose revision is to be fetched
+		List changedFiles = new ArrayList();
+		
+		NewFolder(RemoteFolderTree folder, String localPath) {
+			this.folder = folder;
+			this.localPath = localPath;
+		}
+	}
+	
+	/*
+	 * A folder that is pruned if it is empty once the new folders have been fetched.
+	 */
+	private static class PendingPrune {
+		RemoteFolderTree parent;
+		RemoteFolderTree folder;
+		ICVSFolder localFolder;
+		
+		PendingPrune(RemoteFolderTree parent, RemoteFolderTree folder, ICVSFolder localFolder) {
+			this.parent = parent;
+			this.folder = folder;
+			this.localFolder = localFolder;
+		}
+	}
 		
 	
 	/* package */ RemoteFolderTreeBuilder(CVSRepositoryLocation repository, ICVSFolder root, CVSTag tag) {
@@ -233,6 +273,10 @@ public class RemoteFolderTreeBuilder {
 			new RemoteFolderTree(null, root.getName(), repository,
 				folderSyncInfo.getRepository(),
 				tagForRemoteFolder(root, tag));
+		if (newFolderExist && CVSProviderPlugin.getPlugin().isConcurrentTreeBuildingEnabled()) {
+			fetchNewDirectoriesConcurrently(monitor);
+			return;
+		}
 		if (newFolderExist) {
 			// New folders will require a connection for fetching their members
 			session = new Session(repository, remoteRoot, false);
@@ -245,7 +289,7 @@ public class RemoteFolderTreeBuilder {
 			IProgressMonitor subProgress = Policy.infiniteSubMonitorFor(monitor, 90);
 			subProgress.beginTask(null, 512);
 			// Build the remote tree
-			buildRemoteTree(session, root, remoteRoot, "", subProgress); //$NON-NLS-1$
+			buildRemoteTree(session, root, remoteRoot, "", changedFiles, null, subProgress); //$NON-NLS-1$
 		} finally {
 			if (session != null) {
 				session.close();
@@ -254,17 +298,79 @@ public class RemoteFolderTreeBuilder {
 		}
 	}
 	
+	/*
+	 * Build the remote tree while the subtrees of the new folders are fetched
+	 * on other sessions. The walk of the local tree does not need a session.
+	 */
+	private void fetchNewDirectoriesConcurrently(IProgressMonitor monitor) throws CVSException {
+		// Set up an infinite progress monitor for the recursive build
+		IProgressMonitor subProgress = Policy.infiniteSubMonitorFor(monitor, 100);
+		subProgress.beginTask(null, 512);
+		SessionQueue queue = new SessionQueue(repository, remoteRoot, subProgress) {
+			protected void run(Session session, Object request, IProgressMonitor monitor) throws CVSException {
+				NewFolder newFolder = (NewFolder) request;
+				buildRemoteTree(session, null, newFolder.folder, newFolder.localPath, newFolder.changedFiles, null, monitor);
+			}
+		};
+		newFolders = new ArrayList();
+		pendingPrunes = new ArrayList();
+		try {
+			try {
+				buildRemoteTree(null, root, remoteRoot, "", changedFiles, queue, subProgress); //$NON-NLS-1$
+			} catch (CVSException e) {
+				queue.close(true);
+				throw e;
+			} catch (RuntimeException e) {
+				queue.close(true);
+				throw e;
+			}
+			queue.finish();
+			// Add the files in the order in which they are found over a single session
+			for (Iterator iter = newFolders.iterator(); iter.hasNext();) {
+				changedFiles.addAll(((NewFolder) iter.next()).changedFiles);
+			}
+			// Prune the empty folders now that all the subtrees are complete
+			for (Iterator iter = pendingPrunes.iterator(); iter.hasNext();) {
+				PendingPrune prune = (PendingPrune) iter.next();
+				if (prune.folder.getChildren().length == 0 && isPrunable(prune.localFolder)) {
+					List children = new ArrayList(Arrays.asList(prune.parent.getChildren()));
+					children.remove(prune.folder);
+					prune.parent.setChildren((ICVSRemoteResource[])children.toArray(new ICVSRemoteResource[children.size()]));
+				}
+			}
+		} finally {
+			newFolders = null;
+			pendingPrunes = null;
+			monitor.done();
+		}
+	}
+	
 	private void fetchFileRevisions(IProgressMonitor monitor) throws CVSException {
 		// 3rd+ Connection: Used to fetch file status in groups of 1024
 		if (remoteRoot != null && !changedFiles.isEmpty()) {
 			String[] allChangedFiles = (String[])changedFiles.toArray(new String[changedFiles.size()]);
 			int iterations = (allChangedFiles.length / MAX_REVISION_FETCHES_PER_CONNECTION) 
 				+ (allChangedFiles.length % MAX_REVISION_FETCHES_PER_CONNECTION == 0 ? 0 : 1);
+			if (iterations > 1 && CVSProviderPlugin.getPlugin().isConcurrentTreeBuildingEnabled()) {
+				// The groups update different files so they can be fetched at the same time
+				monitor.beginTask(null, 3 * iterations);
+				SessionQueue queue = new SessionQueue(repository, remoteRoot, monitor) {
+					protected void run(Session session, Object request, IProgressMonitor monitor) throws CVSException {
+						fetchFileRevisions(session, (String[]) request, monitor);
+					}
+				};
+				for (int i = 0; i < iterations ; i++) {
+					queue.add(getRevisionGroup(allChangedFiles, i));
+				}
+				try {
+					queue.finish();
+				} finally {
+					monitor.done();
+				}
+				return;
+			}
 			for (int i = 0; i < iterations ; i++) {
-				int length = Math.min(MAX_REVISION_FETCHES_PER_CONNECTION, 
-					allChangedFiles.length - (MAX_REVISION_FETCHES_PER_CONNECTION * i));
-				String buffer[] = new String[length];
-				System.arraycopy(allChangedFiles, i * MAX_REVISION_FETCHES_PER_CONNECTION, buffer, 0, length);
+				String buffer[] = getRevisionGroup(allChangedFiles, i);
 				Session session = new Session(repository, remoteRoot, false);
 				session.open(Policy.subMonitorFor(monitor, 1), false /* read-only */);
 				try {
@@ -276,6 +382,14 @@ public class RemoteFolderTreeBuilder {
 		}
 	}
 	
+	private String[] getRevisionGroup(String[] allChangedFiles, int i) {
+		int length = Math.min(MAX_REVISION_FETCHES_PER_CONNECTION, 
+			allChangedFiles.length - (MAX_REVISION_FETCHES_PER_CONNECTION * i));
+		String buffer[] = new String[length];
+		System.arraycopy(allChangedFiles, i * MAX_REVISION_FETCHES_PER_CONNECTION, buffer, 0, length);
+		return buffer;
+	}
+	
 	/* package */ RemoteFile buildTree(ICVSFile file, IProgressMonitor monitor) throws CVSException {
 		QuietOption quietness = CVSProviderPlugin.getPlugin().getQuietness();
 		try {
@@ -303,7 +417,7 @@ public class RemoteFolderTreeBuilder {
 					tagForRemoteFolder(root, tag));
 			// Create the remote resource (using the delta if there is one)
 			RemoteFile remoteFile;
-			Map deltas = (Map)fileDeltas.get(""); //$NON-NLS-1$
+			Map deltas = getDeltas(""); //$NON-NLS-1$
 			if (deltas == null || deltas.isEmpty()) {
 				// If the file is an addition, return null as the remote
 				// Note: If there was a conflicting addition, the delta would not be empty
@@ -431,8 +545,11 @@ public class RemoteFolderTreeBuilder {
 	 * The localPath is used to retrieve deltas from the recorded deltas
 	 * 
 	 * Does 1 work for each file and folder delta processed
+	 * 
+	 * The revisions to fetch are added to changed. If a queue is provided, the
+	 * new folders are not fetched but added to the queue.
 	 */
-	private void buildRemoteTree(Session session, ICVSFolder local, RemoteFolderTree remote, String localPath, IProgressMonitor monitor) throws CVSException {
+	private void buildRemoteTree(Session session, ICVSFolder local, RemoteFolderTree remote, String localPath, List changed, SessionQueue queue, IProgressMonitor monitor) throws CVSException {
 		
 		Policy.checkCanceled(monitor);
 		
@@ -444,11 +561,11 @@ public class RemoteFolderTreeBuilder {
 		
 		// If there's no corresponding local resource then we need to fetch its contents in order to populate the deltas
 		if (local == null) {
-			fetchNewDirectory(session, remote, localPath, monitor);
+			fetchNewDirectory(session, remote, localPath, changed, monitor);
 		}
 		
 		// Fetch the delta's for the folder
-		Map deltas = (Map)fileDeltas.get(localPath);
+		Map deltas = getDeltas(localPath);
 		if (deltas == null)
 			deltas = EMPTY_MAP;
 		
@@ -547,18 +664,24 @@ public class RemoteFolderTreeBuilder {
 					localFolder = null;
 				else
 					localFolder = local.getFolder(name);
-				buildRemoteTree(session, localFolder, remoteFolder, Util.appendPath(localPath, name), monitor);
-				// Record any children that are empty
-				if (isPruneEmptyDirectories() && remoteFolder.getChildren().length == 0) {
-					// Prune if the local folder is also empty.
-					if (localFolder == null || (localFolder.members(ICVSFolder.ALL_EXISTING_MEMBERS).length == 0))
-						emptyChildren.add(remoteFolder);
-					else {
-						// Also prune if the tag we are fetching is not HEAD and differs from the tag of the local folder
-						FolderSyncInfo info = localFolder.getFolderSyncInfo();
-						if (tag != null && info != null && ! tag.equals(CVSTag.DEFAULT) && ! tag.equals(info.getTag()))
-							emptyChildren.add(remoteFolder);
+				if (queue != null) {
+					// The new folder only requires the server, fetch its subtree on another session
+					if (localFolder == null) {
+						NewFolder newFolder = new NewFolder(remoteFolder, Util.appendPath(localPath, name));
+						newFolders.add(newFolder);
+						queue.add(newFolder);
+					} else {
+						buildRemoteTree(session, localFolder, remoteFolder, Util.appendPath(localPath, name), changed, queue, monitor);
 					}
+					// Whether the folder is empty is only known once all new folders are fetched
+					if (isPruneEmptyDirectories())
+						pendingPrunes.add(new PendingPrune(remote, remoteFolder, localFolder));
+					continue;
+				}
+				buildRemoteTree(session, localFolder, remoteFolder, Util.appendPath(localPath, name), changed, queue, monitor);
+				// Record any children that are empty
+				if (isPruneEmptyDirectories() && remoteFolder.getChildren().length == 0 && isPrunable(localFolder)) {
+					emptyChildren.add(remoteFolder);
 				}
 			}
 		}
@@ -573,6 +696,18 @@ public class RemoteFolderTreeBuilder {
 		}
 	}
 	
+	/*
+	 * Return whether an empty remote folder is pruned given its local folder.
+	 */
+	private boolean isPrunable(ICVSFolder localFolder) throws CVSException {
+		// Prune if the local folder is also empty.
+		if (localFolder == null || (localFolder.members(ICVSFolder.ALL_EXISTING_MEMBERS).length == 0))
+			return true;
+		// Also prune if the tag we are fetching is not HEAD and differs from the tag of the local folder
+		FolderSyncInfo info = localFolder.getFolderSyncInfo();
+		return tag != null && info != null && ! tag.equals(CVSTag.DEFAULT) && ! tag.equals(info.getTag());
+	}
+	
 	/*
 	 * This method fetches the delta between the local state and the remote state of the resource tree
 	 * and records the deltas in the fileDeltas instance variable
@@ -611,7 +746,7 @@ public class RemoteFolderTreeBuilder {
 								// The change could be a local change conflicting with a remote deletion.
 								// If so, the deltas may already have a DELETED for the file.
 								// We shouldn't override this DELETED
-								Map deltas = (Map)fileDeltas.get(Util.removeLastSegment(filename));
+								Map deltas = getDeltas(Util.removeLastSegment(filename));
 								DeltaNode d = deltas != null ? (DeltaNode)deltas.get(Util.getLastSegment(filename)) : null;
 								if ((d!=null) && (d.getRevision() == DELETED))
 									break;
@@ -656,7 +791,7 @@ public class RemoteFolderTreeBuilder {
 	 * 
 	 * The fetch may do up to 2 units of work in the provided monitor.
 	 */
-	private void fetchNewDirectory(Session session, RemoteFolderTree newFolder, String localPath, final IProgressMonitor monitor) throws CVSException {
+	private void fetchNewDirectory(Session session, RemoteFolderTree newFolder, String localPath, final List changed, final IProgressMonitor monitor) throws CVSException {
 		
 		// Create an listener that will accumulate new files and folders
 		IUpdateMessageListener listener = new IUpdateMessageListener() {
@@ -672,7 +807,7 @@ public class RemoteFolderTreeBuilder {
 			}
 			public void fileInformation(int type, ICVSFolder root, String filename) {
 				// NOTE: Check path prefix
-				changedFiles.add(filename);
+				changed.add(filename);
 				recordDelta(filename, ADDED, type);
 				monitor.subTask(NLS.bind(CVSMessages.RemoteFolderTreeBuilder_receivingDelta, new String[] { Util.toTruncatedPath(filename, 3) })); 
 			}
@@ -764,13 +899,25 @@ public class RemoteFolderTreeBuilder {
 			newFolderExist = true;
 		}
 		String parent = Util.removeLastSegment(path);
-		Map deltas = (Map)fileDeltas.get(parent);
-		if (deltas == null) {
-			deltas = new HashMap();
-			fileDeltas.put(parent, deltas);
-		}
 		String name = Util.getLastSegment(path);
-		deltas.put(name, new DeltaNode(name, revision, syncState));
+		// New folders fetched concurrently only share the entry of the new folder in its parent
+		synchronized (fileDeltas) {
+			Map deltas = (Map)fileDeltas.get(parent);
+			if (deltas == null) {
+				deltas = new HashMap();
+				fileDeltas.put(parent, deltas);
+			}
+			deltas.put(name, new DeltaNode(name, revision, syncState));
+		}
+	}
+	
+	/*
+	 * Return the deltas recorded for the given parent directory or null.
+	 */
+	private Map getDeltas(String parent) {
+		synchronized (fileDeltas) {
+			return (Map)fileDeltas.get(parent);
+		}
 	}
 	
 	private void updateRevision(String path, String revision) throws CVSException {
@@ -803,11 +950,15 @@ public class RemoteFolderTreeBuilder {
 	
 	private void recordRemoteFolder(RemoteFolderTree remote) throws CVSException {
 		String path = remote.getFolderSyncInfo().getRemoteLocation();
-		remoteFolderTable.put(Util.asPath(path), remote);
+		synchronized (remoteFolderTable) {
+			remoteFolderTable.put(Util.asPath(path), remote);
+		}
 	}
 	
 	private RemoteFolderTree getRecoredRemoteFolder(String path) {
-		return (RemoteFolderTree)remoteFolderTable.get(Util.asPath(path));
+		synchronized (remoteFolderTable) {
+			return (RemoteFolderTree)remoteFolderTable.get(Util.asPath(path));
+		}
 	}
 
 	/**
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.resources;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSMessages;
+import org.eclipse.team.internal.ccvs.core.ICVSFolder;
+import org.eclipse.team.internal.ccvs.core.Policy;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+
+/**
+ * Requests that are each run on a session rooted at the same folder. The
+ * requests are taken by the thread that calls <code>finish()</code> and by
+ * jobs that are started as requests are added, each holding a session
+ * reserved from the repository location. A thread keeps its session open for
+ * all the requests it takes. The session of the calling thread is not
+ * reserved, so a queue has at most one more session open than the location
+ * allows to be reserved.
+ */
+abstract class SessionQueue {
+
+	private final CVSRepositoryLocation repository;
+	private final ICVSFolder root;
+	private final IProgressMonitor monitor;
+	private final LinkedList requests = new LinkedList();
+	private final List jobs = new ArrayList();
+	private int idle;
+	private boolean closed;
+	private boolean aborted;
+	private Throwable exception;
+
+	/**
+	 * Create a queue whose requests are run on sessions to the given
+	 * location.
+	 * @param repository the location
+	 * @param root the local root of the sessions
+	 * @param monitor the monitor of the calling thread, also used to cancel
+	 *            the jobs
+	 */
+	SessionQueue(CVSRepositoryLocation repository, ICVSFolder root, IProgressMonitor monitor) {
+		this.repository = repository;
+		this.root = root;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Run the request over the given open session. The method is called
+	 * concurrently for different requests.
+	 * @param session an open session
+	 * @param request the request
+	 * @param monitor a progress monitor
+	 * @throws CVSException
+	 */
+	protected abstract void run(Session session, Object request, IProgressMonitor monitor) throws CVSException;
+
+	/**
+	 * Add a request. A job is started to run it unless a thread is waiting
+	 * for requests or no more sessions can be opened to the location.
+	 * @param request the request
+	 */
+	synchronized void add(Object request) {
+		requests.add(request);
+		if (requests.size() > idle && repository.reserveConcurrentSession()) {
+			Job job = new Job(CVSMessages.SessionQueue_fetchingRemoteState) {
+				protected IStatus run(IProgressMonitor jobMonitor) {
+					try {
+						// progress is reported by the calling thread, the jobs only check for cancelation
+						work(new NullProgressMonitor() {
+							public boolean isCanceled() {
+								return monitor.isCanceled();
+							}
+						});
+					} finally {
+						repository.releaseConcurrentSession();
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			jobs.add(job);
+			job.schedule();
+		}
+		notify();
+	}
+
+	/**
+	 * Indicate that no more requests will be added. Requests that have not
+	 * been taken yet are discarded if the queue is aborted.
+	 * @param abort whether to discard the remaining requests
+	 */
+	synchronized void close(boolean abort) {
+		closed = true;
+		aborted |= abort;
+		notifyAll();
+	}
+
+	private synchronized Object next() {
+		while (!aborted && exception == null && !monitor.isCanceled()) {
+			if (!requests.isEmpty())
+				return requests.removeFirst();
+			if (closed)
+				return null;
+			idle++;
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (exception == null)
+					exception = new OperationCanceledException();
+				return null;
+			} finally {
+				idle--;
+			}
+		}
+		return null;
+	}
+
+	private synchronized void failed(Throwable e) {
+		if (exception == null)
+			exception = e;
+		notifyAll();
+	}
+
+	private void work(IProgressMonitor workMonitor) {
+		Session session = null;
+		try {
+			Object request;
+			while ((request = next()) != null) {
+				if (session == null) {
+					session = new Session(repository, root, false);
+					session.open(Policy.subMonitorFor(workMonitor, 1), false /* read-only */);
+				}
+				run(session, request, Policy.subMonitorFor(workMonitor, 2));
+			}
+		} catch (CVSException e) {
+			failed(e);
+		} catch (RuntimeException e) {
+			failed(e);
+		} catch (Error e) {
+			failed(e);
+		} finally {
+			if (session != null)
+				session.close();
+		}
+	}
+
+	/**
+	 * Close the queue, run the remaining requests and wait for the jobs. The
+	 * calling thread reports 1 unit of work for its session and 2 for each
+	 * request it runs. The first exception thrown by a request is rethrown.
+	 * @throws CVSException
+	 */
+	void finish() throws CVSException {
+		close(false);
+		work(monitor);
+		Job[] started;
+		synchronized (this) {
+			started = (Job[]) jobs.toArray(new Job[jobs.size()]);
+		}
+		for (int i = 0; i < started.length; i++) {
+			try {
+				started[i].join();
+			} catch (InterruptedException e) {
+				close(true);
+				throw new OperationCanceledException();
+			}
+		}
+		if (exception instanceof CVSException)
+			throw (CVSException) exception;
+		if (exception instanceof RuntimeException)
+			throw (RuntimeException) exception;
+		if (exception instanceof Error)
+			throw (Error) exception;
+		Policy.checkCanceled(monitor);
+	}
+}
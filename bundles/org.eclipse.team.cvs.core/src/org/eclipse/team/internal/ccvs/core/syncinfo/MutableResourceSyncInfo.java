@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -37,7 +37,7 @@ public class MutableResourceSyncInfo extends ResourceSyncInfo {
 		this.name = info.getName();
 		setRevision(info.getRevision());
 		setTag(info.getTag());
-		this.timeStamp = info.getTimeStamp();
+		this.timeStamp = info.timeStamp;
 		this.isDirectory = info.isDirectory();
 		this.keywordMode = info.getKeywordMode();
 		this.isDeleted = info.isDeleted();
@@ -73,7 +73,7 @@ public class MutableResourceSyncInfo extends ResourceSyncInfo {
 	 * @param timeStamp The timeStamp to set
 	 */
 	public void setTimeStamp(Date timeStamp) {
-		this.timeStamp = timeStamp;
+		this.timeStamp = timeStamp == null ? NO_TIMESTAMP : timeStamp.getTime();
 	}
 	
 	/**
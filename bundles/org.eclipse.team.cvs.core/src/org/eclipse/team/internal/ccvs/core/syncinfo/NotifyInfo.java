@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -37,7 +37,7 @@ public class NotifyInfo {
 	
 	private String filename;
 	private char notificationType;
-	private Date timeStamp;
+	private long timeStamp;
 	private char[] watches;
 	
 	/**
@@ -47,7 +47,7 @@ public class NotifyInfo {
 			
 		this.filename = filename;
 		this.notificationType = notificationType;
-		this.timeStamp = timeStamp;
+		this.timeStamp = timeStamp.getTime();
 		this.watches = watches;
 	}
 
@@ -72,7 +72,7 @@ public class NotifyInfo {
 		
 		String date = strings[2];
 		try {	
-			this.timeStamp = CVSDateFormatter.entryLineToDate(date);
+			this.timeStamp = CVSDateFormatter.entryLineToTime(date);
 		} catch(ParseException e) {
 			IStatus status = new CVSStatus(IStatus.ERROR, CVSStatus.ERROR_LINE, NLS.bind(CVSMessages.NotifyInfo_MalformedNotifyDate, new String[] { line }), parent);
 			throw new CVSException(status);			
@@ -102,7 +102,7 @@ public class NotifyInfo {
 		buffer.append(ResourceSyncInfo.SEPARATOR);
 		buffer.append(notificationType);
 		buffer.append(ResourceSyncInfo.SEPARATOR);
-		buffer.append(CVSDateFormatter.dateToEntryLine(timeStamp));
+		buffer.append(CVSDateFormatter.timeToEntryLine(timeStamp));
 		buffer.append(ResourceSyncInfo.SEPARATOR);
 		if (watches != null) {
 			for (int i = 0; i < watches.length; i++) {
@@ -142,7 +142,7 @@ public class NotifyInfo {
 	 * @return String
 	 */
 	private String getServerTimestamp() {
-		return CVSDateFormatter.dateToNotifyServer(timeStamp);
+		return CVSDateFormatter.timeToNotifyServer(timeStamp);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -75,10 +75,14 @@ public class ResourceSyncInfo {
 	protected static final String TIMESTAMP_MERGED = "Result of merge"; //$NON-NLS-1$
 	protected static final String TIMESTAMP_MERGED_WITH_CONFLICT = TIMESTAMP_MERGED + "+"; //$NON-NLS-1$
 	protected static final String TIMESTAMP_DELETED_AND_RESTORED = "restored+"; //$NON-NLS-1$
+	private static final byte[] TIMESTAMP_DELETED_AND_RESTORED_BYTES = TIMESTAMP_DELETED_AND_RESTORED.getBytes();
 	
 	protected static final String TIMESTAMP_SERVER_MERGED = "+modified"; //$NON-NLS-1$
 	protected static final String TIMESTAMP_SERVER_MERGED_WITH_CONFLICT = "+="; //$NON-NLS-1$
 	
+	// the value of the timestamp field if a timestamp is not available
+	protected static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	
 	// a directory sync info will have nothing more than a name
 	protected boolean isDirectory = false;
 	protected boolean isDeleted = false;
@@ -91,7 +95,7 @@ public class ResourceSyncInfo {
 	// fields describing the synchronization of a resource in CVS parlance
 	protected String name;
 	protected String revision;
-	protected Date timeStamp;
+	protected long timeStamp = NO_TIMESTAMP;
 	protected KSubstOption keywordMode;
 	protected CVSEntryLineTag tag;
 	
@@ -122,7 +126,7 @@ public class ResourceSyncInfo {
 		// override the timestamp that may of been in entryLine. In some cases the timestamp is not in the
 		// entry line (e.g. receiving entry lines from the server versus reading them from the Entry file).
 		if(timestamp!=null) {
-			this.timeStamp = timestamp;
+			this.timeStamp = timestamp.getTime();
 		}
 	}
 	
@@ -156,7 +160,7 @@ public class ResourceSyncInfo {
 	 * <code>false</code> for folders and for files that have not been merged.
 	 */
 	public boolean isNeedsMerge(Date otherTimestamp) {
-		return syncType == TYPE_MERGED_WITH_CONFLICTS && timeStamp != null && timeStamp.equals(otherTimestamp);
+		return syncType == TYPE_MERGED_WITH_CONFLICTS && timeStamp != NO_TIMESTAMP && otherTimestamp != null && timeStamp == otherTimestamp.getTime();
 	}
 	
 	/**
@@ -252,7 +256,9 @@ public class ResourceSyncInfo {
 	 * @return a date instance representing the timestamp
 	 */
 	public Date getTimeStamp() {
-		return timeStamp;
+		if (timeStamp == NO_TIMESTAMP)
+			return null;
+		return new Date(timeStamp);
 	}
 	/**
 	 * Gets the version or <code>null</code> if this is a folder sync info. The returned
@@ -355,7 +361,7 @@ public class ResourceSyncInfo {
 	protected void setRevision(String revision) {
 		if(revision==null || revision.equals(ADDED_REVISION)) {
 			this.revision = ADDED_REVISION;
-			timeStamp = null;
+			timeStamp = NO_TIMESTAMP;
 			syncType = TYPE_REGULAR;
 			isDeleted = false;
 		} else if(revision.startsWith(DELETED_PREFIX)) {
@@ -429,14 +435,14 @@ public class ResourceSyncInfo {
 		}
 		
 		if(date==null || "".equals(date)) { //$NON-NLS-1$
-			timeStamp = null;	
+			timeStamp = NO_TIMESTAMP;	
 		} else {
 			try {	
-				timeStamp = CVSDateFormatter.entryLineToDate(date);
+				timeStamp = CVSDateFormatter.entryLineToTime(date);
 			} catch(ParseException e) {
 				// something we don't understand, just make this sync have no timestamp and
 				// never be in sync with the server.
-				timeStamp = null;
+				timeStamp = NO_TIMESTAMP;
 			}
 		}
 		keywordMode = KSubstOption.fromMode(strings[4]);
@@ -463,6 +469,16 @@ public class ResourceSyncInfo {
 		}
 	}
 	
+	/*
+	 * Returns the timestamp as written to the entry line, or an empty string
+	 * if a timestamp is not available.
+	 */
+	private String getEntryLineTimestamp() {
+		if (timeStamp == NO_TIMESTAMP)
+			return ""; //$NON-NLS-1$
+		return CVSDateFormatter.timeToEntryLine(timeStamp);
+	}
+	
 	private String getEntryLine(boolean includeTimeStamp, String timestampOverride) {
 		StringBuffer result = new StringBuffer();
 		
@@ -490,17 +506,17 @@ public class ResourceSyncInfo {
 				} else {					
 					switch(syncType) {
 						case TYPE_REGULAR:
-							if(timeStamp==null) {
+							if(timeStamp==NO_TIMESTAMP) {
 								entryLineTimestamp = TIMESTAMP_DUMMY;
 							} else {
-								entryLineTimestamp = CVSDateFormatter.dateToEntryLine(timeStamp);
+								entryLineTimestamp = CVSDateFormatter.timeToEntryLine(timeStamp);
 							} break;
 						case TYPE_MERGED:
 							entryLineTimestamp = TIMESTAMP_MERGED; break;
 						case TYPE_MERGED_WITH_CONFLICTS:
-							entryLineTimestamp = TIMESTAMP_MERGED_WITH_CONFLICT + CVSDateFormatter.dateToEntryLine(timeStamp); break;
+							entryLineTimestamp = TIMESTAMP_MERGED_WITH_CONFLICT + getEntryLineTimestamp(); break;
 						case TYPE_DELETED_AND_RESTORED:
-							entryLineTimestamp = TIMESTAMP_DELETED_AND_RESTORED + CVSDateFormatter.dateToEntryLine(timeStamp); break;
+							entryLineTimestamp = TIMESTAMP_DELETED_AND_RESTORED + getEntryLineTimestamp(); break;
 					}						
 				}
 				result.append(entryLineTimestamp);
@@ -529,7 +545,7 @@ public class ResourceSyncInfo {
 	 * @return String
 	 */
 	public static String getName(byte[] syncBytes) throws CVSException {
-		String name = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 1, false);
+		String name = SlotIndex.get(syncBytes).getSlot(1);
 		if (name == null) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -542,7 +558,7 @@ public class ResourceSyncInfo {
 	 * @return String
 	 */
 	public static KSubstOption getKeywordMode(byte[] syncBytes) throws CVSException {
-		String mode = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 4, false);
+		String mode = SlotIndex.get(syncBytes).getSlot(4);
 		if (mode == null) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -587,11 +603,14 @@ public class ResourceSyncInfo {
 	 */
 	public static boolean isBinary(byte[] syncBytes)  throws CVSException {
 		if (syncBytes == null) return false;
-		String mode = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 4, false);
-		if (mode == null) {
+		SlotIndex index = SlotIndex.get(syncBytes);
+		int start = index.startOfSlot(4);
+		if (start == -1) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
-		return "-kb".equals(mode); //$NON-NLS-1$
+		// compare the bytes in place rather than creating a string for the mode
+		return index.endOfSlot(4) == start + 4
+			&& syncBytes[start + 1] == '-' && syncBytes[start + 2] == 'k' && syncBytes[start + 3] == 'b';
 	}
 	
 	/**
@@ -609,7 +628,7 @@ public class ResourceSyncInfo {
 	 * @return boolean
 	 */
 	public static boolean isAddition(byte[] syncBytes) throws CVSException {
-		int start = startOfSlot(syncBytes, 2);
+		int start = SlotIndex.get(syncBytes).startOfSlot(2);
 		// There must be a slot and, in the very least, there must be two characters after the slot
 		if (start == -1 || start > syncBytes.length - 3) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
@@ -624,7 +643,7 @@ public class ResourceSyncInfo {
 	 * @return boolean
 	 */
 	public static boolean isDeletion(byte[] syncBytes) throws CVSException {
-		int start = startOfSlot(syncBytes, 2);
+		int start = SlotIndex.get(syncBytes).startOfSlot(2);
 		if (start == -1 || start >= syncBytes.length) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -637,7 +656,7 @@ public class ResourceSyncInfo {
 	 * @return byte[]
 	 */
 	public static byte[] convertToDeletion(byte[] syncBytes) throws CVSException {
-		int index = startOfSlot(syncBytes, 2);
+		int index = SlotIndex.get(syncBytes).startOfSlot(2);
 		if (index == -1) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -657,55 +676,139 @@ public class ResourceSyncInfo {
 	 * @return byte[]
 	 */
 	public static byte[] convertFromDeletion(byte[] syncBytes) throws CVSException {
-		int index = startOfSlot(syncBytes, 2);
+		SlotIndex slots = SlotIndex.get(syncBytes);
+		int index = slots.startOfSlot(2);
 		if (index == -1) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
 		if (syncBytes.length > index && syncBytes[index+1] == DELETED_PREFIX_BYTE) {
-			byte[] newSyncBytes = new byte[syncBytes.length - 1];
-			System.arraycopy(syncBytes, 0, newSyncBytes, 0, index + 1);
-			System.arraycopy(syncBytes, index + 2, newSyncBytes, index + 1, newSyncBytes.length - index - 1);
-
-			String syncTimestamp = Util.getSubstring(syncBytes, SEPARATOR_BYTE,
-					3, false);
-			if (getSyncType(new String(syncTimestamp)) == TYPE_REGULAR) {
-				syncTimestamp = TIMESTAMP_DELETED_AND_RESTORED + syncTimestamp;
-				byte[] oldSyncBytes = newSyncBytes;
-				newSyncBytes = new byte[oldSyncBytes.length
-						+ TIMESTAMP_DELETED_AND_RESTORED.length()];
-				System.arraycopy(oldSyncBytes, 0, newSyncBytes, 0,
-						startOfSlot(oldSyncBytes, 3) + 1);
-				System.arraycopy(syncTimestamp.getBytes(), 0, newSyncBytes,
-						startOfSlot(oldSyncBytes, 3) + 1,
-						syncTimestamp.length());
-				System.arraycopy(oldSyncBytes,
-						startOfSlot(oldSyncBytes, 4) - 1, newSyncBytes,
-						startOfSlot(oldSyncBytes, 3) + syncTimestamp.length(),
-						oldSyncBytes.length
-								- (startOfSlot(oldSyncBytes, 4) - 1));
+			int timestampStart = slots.startOfSlot(3);
+			if (timestampStart == -1) {
+				throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 			}
+			// a regular timestamp is marked as restored so that the file is sent as modified
+			byte[] prefix = getSyncType(slots.getSlot(3)) == TYPE_REGULAR ? TIMESTAMP_DELETED_AND_RESTORED_BYTES : new byte[0];
+			byte[] newSyncBytes = new byte[syncBytes.length - 1 + prefix.length];
+			System.arraycopy(syncBytes, 0, newSyncBytes, 0, index + 1);
+			System.arraycopy(syncBytes, index + 2, newSyncBytes, index + 1, timestampStart - index - 1);
+			System.arraycopy(prefix, 0, newSyncBytes, timestampStart, prefix.length);
+			System.arraycopy(syncBytes, timestampStart + 1, newSyncBytes, timestampStart + prefix.length, syncBytes.length - timestampStart - 1);
 			return newSyncBytes;
 		}
 		return syncBytes;
 	}
+	
 	/**
-	 * Method startOfSlot returns the index of the slash that occurs before the
-	 * given slot index. The provided index should be >= 1 which assumes that
-	 * slot zero occurs before the first slash.
-	 * 
-	 * @param syncBytes
-	 * @param i
-	 * @return int
+	 * The offsets of the slot separators of an array of sync bytes. Sync bytes
+	 * are never modified once created, so the index of the most recently used
+	 * arrays is cached by identity and the helpers of this class that are
+	 * called several times for the same bytes only scan them once.
 	 */
-	private static int startOfSlot(byte[] syncBytes, int slot) {
-		int count = 0;
-		for (int j = 0; j < syncBytes.length; j++) {
-			if (syncBytes[j] == SEPARATOR_BYTE) {
-				count++;
-				if (count == slot) return j;
-			} 
+	private static final class SlotIndex {
+		
+		// enough separators to delimit the tag, the last slot of an entry line
+		private static final int MAX_SEPARATORS = 6;
+		private static final int CACHE_SIZE = 64;
+		private static final SlotIndex[] cache = new SlotIndex[CACHE_SIZE];
+		
+		private final byte[] bytes;
+		private final int[] separators;
+		
+		private SlotIndex(byte[] bytes) {
+			int[] offsets = new int[MAX_SEPARATORS];
+			int count = 0;
+			for (int i = 0; i < bytes.length && count < MAX_SEPARATORS; i++) {
+				if (bytes[i] == SEPARATOR_BYTE)
+					offsets[count++] = i;
+			}
+			if (count < MAX_SEPARATORS) {
+				int[] found = new int[count];
+				System.arraycopy(offsets, 0, found, 0, count);
+				offsets = found;
+			}
+			this.bytes = bytes;
+			this.separators = offsets;
+		}
+		
+		/**
+		 * Return the index of the given sync bytes.
+		 * @param syncBytes
+		 * @return SlotIndex
+		 */
+		static SlotIndex get(byte[] syncBytes) {
+			// the index is immutable so a race on the cache slot is harmless
+			int hash = System.identityHashCode(syncBytes) & (CACHE_SIZE - 1);
+			SlotIndex index = cache[hash];
+			if (index == null || index.bytes != syncBytes) {
+				index = new SlotIndex(syncBytes);
+				cache[hash] = index;
+			}
+			return index;
+		}
+		
+		/**
+		 * Return the index of the slash that occurs before the given slot
+		 * index or -1 if there is no such slot. The provided index should be
+		 * >= 1 which assumes that slot zero occurs before the first slash.
+		 * @param slot
+		 * @return int
+		 */
+		int startOfSlot(int slot) {
+			if (slot < 1)
+				return -1;
+			if (slot <= separators.length)
+				return separators[slot - 1];
+			if (separators.length < MAX_SEPARATORS)
+				return -1;
+			int count = MAX_SEPARATORS;
+			for (int i = separators[MAX_SEPARATORS - 1] + 1; i < bytes.length; i++) {
+				if (bytes[i] == SEPARATOR_BYTE && ++count == slot)
+					return i;
+			}
+			return -1;
+		}
+		
+		/**
+		 * Return the index of the slash that ends the given slot or the
+		 * length of the bytes if it is the last slot.
+		 * @param slot
+		 * @return int
+		 */
+		int endOfSlot(int slot) {
+			int end = startOfSlot(slot + 1);
+			return end == -1 ? bytes.length : end;
+		}
+		
+		/**
+		 * Return the contents of the given slot or <code>null</code> if
+		 * there is no such slot.
+		 * @param slot
+		 * @return String
+		 */
+		String getSlot(int slot) {
+			int start = startOfSlot(slot);
+			if (start == -1)
+				return null;
+			return new String(bytes, start + 1, endOfSlot(slot) - start - 1);
+		}
+		
+		/**
+		 * Return the bytes of the given slot, and of all following slots if
+		 * <code>includeRest</code> is set, or <code>null</code> if there is
+		 * no such slot.
+		 * @param slot
+		 * @param includeRest
+		 * @return byte[]
+		 */
+		byte[] getSlotBytes(int slot, boolean includeRest) {
+			int start = startOfSlot(slot);
+			if (start == -1)
+				return null;
+			int end = includeRest ? bytes.length : endOfSlot(slot);
+			byte[] result = new byte[end - start - 1];
+			System.arraycopy(bytes, start + 1, result, 0, result.length);
+			return result;
 		}
-		return -1;
 	}
 	
 	/**
@@ -724,11 +827,12 @@ public class ResourceSyncInfo {
 	 *             thrown when the entry lines bytes are malformed.
 	 */
 	public static byte[] setSlot(byte[] syncBytes, int slot, byte[] newBytes) throws CVSException {
-		int start = startOfSlot(syncBytes, slot);
+		SlotIndex index = SlotIndex.get(syncBytes);
+		int start = index.startOfSlot(slot);
 		if (start == -1) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
-		int end = startOfSlot(syncBytes, slot + 1);
+		int end = index.startOfSlot(slot + 1);
 		int totalLength = start + 1 + newBytes.length;
 		if (end != -1) {
 			totalLength += syncBytes.length - end;
@@ -752,7 +856,7 @@ public class ResourceSyncInfo {
 	 */
 	public static String getTimestampToServer(byte[] syncBytes, Date fileTimestamp) throws CVSException {
 		if(fileTimestamp != null) {
-			String syncTimestamp = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 3, false);
+			String syncTimestamp = SlotIndex.get(syncBytes).getSlot(3);
 			if (syncTimestamp == null) {
 				throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 			}
@@ -760,7 +864,7 @@ public class ResourceSyncInfo {
 			if (syncType == TYPE_DELETED_AND_RESTORED) {
 				return syncTimestamp.substring(syncTimestamp.indexOf("+") + 1); //$NON-NLS-1$
 			} else if (syncType != TYPE_REGULAR) {
-				if (syncType == TYPE_MERGED_WITH_CONFLICTS && fileTimestamp.equals(getTimestamp(syncTimestamp))) {
+				if (syncType == TYPE_MERGED_WITH_CONFLICTS && fileTimestamp.getTime() == getTimestamp(syncTimestamp)) {
 					return TIMESTAMP_SERVER_MERGED_WITH_CONFLICT;
 				} else {
 					return TIMESTAMP_SERVER_MERGED;
@@ -772,9 +876,9 @@ public class ResourceSyncInfo {
 	/**
 	 * Method getTimestamp.
 	 * @param syncTimestamp
-	 * @return Object
+	 * @return the time in milliseconds or <code>NO_TIMESTAMP</code>
 	 */
-	private static Date getTimestamp(String syncTimestamp) {
+	private static long getTimestamp(String syncTimestamp) {
 		String dateString= syncTimestamp;
 		if(syncTimestamp.indexOf(ResourceSyncInfo.TIMESTAMP_SERVER_MERGED) != -1) {
 			dateString = null;
@@ -787,14 +891,14 @@ public class ResourceSyncInfo {
 		}
 		
 		if(dateString==null || "".equals(dateString)) { //$NON-NLS-1$
-			return null;	
+			return NO_TIMESTAMP;	
 		} else {
 			try {	
-				return CVSDateFormatter.entryLineToDate(dateString);
+				return CVSDateFormatter.entryLineToTime(dateString);
 			} catch(ParseException e) {
 				// something we don't understand, just make this sync have no timestamp and
 				// never be in sync with the server.
-				return null;
+				return NO_TIMESTAMP;
 			}
 		}
 	}
@@ -825,7 +929,7 @@ public class ResourceSyncInfo {
 	 * @return String
 	 */
 	public static byte[] getTagBytes(byte[] syncBytes) throws CVSException {
-		byte[] tag = Util.getBytesForSlot(syncBytes, SEPARATOR_BYTE, 5, true);
+		byte[] tag = SlotIndex.get(syncBytes).getSlotBytes(5, true);
 		if (tag == null) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -869,14 +973,20 @@ public class ResourceSyncInfo {
 	 * @see #LOCKEDBY_REGEX
 	 */
 	public static String getRevision(byte[] syncBytes) throws CVSException {
-		String revision = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 2, false);
-		if (revision == null) {
+		SlotIndex index = SlotIndex.get(syncBytes);
+		int start = index.startOfSlot(2);
+		if (start == -1) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
-		if(revision.startsWith(DELETED_PREFIX)) {
-			revision = revision.substring(DELETED_PREFIX.length());
+		int end = index.endOfSlot(2);
+		if (start + 1 < end && syncBytes[start + 1] == DELETED_PREFIX_BYTE) {
+			start++;
+		}
+		String revision = new String(syncBytes, start + 1, end - start - 1);
+		// only run the expression if the revision can match it
+		if (revision.indexOf("locked by") != -1) { //$NON-NLS-1$
+			revision = revision.replaceFirst(LOCKEDBY_REGEX, ""); //$NON-NLS-1$
 		}
-		revision = revision.replaceFirst(LOCKEDBY_REGEX, ""); //$NON-NLS-1$
 		return revision;
 	}
 
@@ -896,7 +1006,7 @@ public class ResourceSyncInfo {
 	 * @return boolean
 	 */
 	public static boolean isMerge(byte[] syncBytes) throws CVSException {
-		String timestamp = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 3, false);
+		String timestamp = SlotIndex.get(syncBytes).getSlot(3);
 		if (timestamp == null) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -912,8 +1022,7 @@ public class ResourceSyncInfo {
 	 * @return boolean
 	 */
 	public static boolean wasDeleted(byte[] syncBytes) throws CVSException {
-		String timestamp = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 3,
-				false);
+		String timestamp = SlotIndex.get(syncBytes).getSlot(3);
 		if (timestamp == null) {
 			throw new CVSException(NLS.bind(
 					CVSMessages.ResourceSyncInfo_malformedSyncBytes,
@@ -929,7 +1038,7 @@ public class ResourceSyncInfo {
 	 * @return boolean
 	 */
 	public static boolean isMergedWithConflicts(byte[] syncBytes) throws CVSException {
-		String timestamp = Util.getSubstring(syncBytes, SEPARATOR_BYTE, 3, false);
+		String timestamp = SlotIndex.get(syncBytes).getSlot(3);
 		if (timestamp == null) {
 			throw new CVSException(NLS.bind(CVSMessages.ResourceSyncInfo_malformedSyncBytes, new String[] { new String(syncBytes) })); 
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.team.internal.ccvs.core.util;
 
 
+import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -22,55 +23,464 @@ import java.util.TimeZone;
  * required in the Entry file is ISO C asctime() function (Sun Apr  7 01:29:26 1996).
  * <p>
  * To be compatible with asctime(), the day field in the entryline format is
- * padded with a space and not a zero. Most other CVS clients use string comparison 
+ * padded with a space and not a zero. Most other CVS clients use string comparison
  * for timestamps based on the result of the C function asctime().
+ * </p><p>
+ * The class also converts the timestamps sent by the server in Mod-time
+ * responses and in the output of the log command. All methods are thread-safe
+ * and do not synchronize. Timestamps in the expected layout are converted by
+ * computing the fields directly; anything else, e.g. dates outside the
+ * Gregorian calendar or fields out of range, is handed to a
+ * <code>SimpleDateFormat</code> so the results are the same as before. The
+ * most recent entry line conversions are cached, entry lines of the files in
+ * a project often share the same timestamps.
  * </p>
  */
 public class CVSDateFormatter {
-	
+
 	private static final String ENTRYLINE_FORMAT = "E MMM dd HH:mm:ss yyyy"; //$NON-NLS-1$
 	private static final String SERVER_FORMAT = "dd MMM yyyy HH:mm:ss";//$NON-NLS-1$
+	private static final String LOG_FORMAT = "yyyy-MM-dd HH:mm:ss zzz";//$NON-NLS-1$
+	private static final String LOG_FORMAT_OLD = "yyyy/MM/dd HH:mm:ss zzz";//$NON-NLS-1$
 	private static final int ENTRYLINE_TENS_DAY_OFFSET = 8;
-	
-	private static final SimpleDateFormat serverFormat = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
-	private static SimpleDateFormat entryLineFormat = new SimpleDateFormat(ENTRYLINE_FORMAT, Locale.US);
-	
-	static {
-		entryLineFormat.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
-	}
-	static synchronized public Date serverStampToDate(String text) throws ParseException {
-		serverFormat.setTimeZone(getTimeZone(text));
-		Date date = serverFormat.parse(text);
-		return date;
-	}
-	
-	static synchronized public Date entryLineToDate(String text) throws ParseException {
-		try {
-			if (text.charAt(ENTRYLINE_TENS_DAY_OFFSET) == ' ') {
-				StringBuffer buf = new StringBuffer(text);
-				buf.setCharAt(ENTRYLINE_TENS_DAY_OFFSET, '0');
-				text = buf.toString();
+	private static final int ENTRYLINE_LENGTH = 24;
+
+	private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+	private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+
+	// the years converted without SimpleDateFormat, well after the Julian to Gregorian cutover
+	private static final int MIN_YEAR = 1900;
+	private static final int MAX_YEAR = 9999;
+
+	private static final long MILLIS_PER_SECOND = 1000;
+	private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+	private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+	private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+	/*
+	 * An immutable pair of a timestamp and its text. Instances are published
+	 * to the caches without synchronization; as all fields are final, a
+	 * thread sees either a complete entry or none.
+	 */
+	private static final class Entry {
+		final String text;
+		final long time;
+		Entry(String text, long time) {
+			this.text = text;
+			this.time = time;
+		}
+	}
+
+	private static final int CACHE_SIZE = 512; // a power of two
+	private static final Entry[] parsedEntryLines = new Entry[CACHE_SIZE];
+	private static final Entry[] formattedEntryLines = new Entry[CACHE_SIZE];
+
+	static public Date serverStampToDate(String text) throws ParseException {
+		long time = parseServerStamp(text);
+		if (time != Long.MIN_VALUE)
+			return new Date(time);
+		DateFormat format = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
+		format.setTimeZone(getTimeZone(text));
+		return format.parse(text);
+	}
+
+	static public Date entryLineToDate(String text) throws ParseException {
+		return new Date(entryLineToTime(text));
+	}
+
+	/**
+	 * Converts an entry line timestamp, e.g. "Sun Apr  7 01:29:26 1996", to
+	 * milliseconds since the epoch.
+	 *
+	 * @param text the timestamp
+	 * @return the time in milliseconds
+	 * @throws ParseException if the timestamp cannot be parsed
+	 */
+	static public long entryLineToTime(String text) throws ParseException {
+		int index = text.hashCode() & (CACHE_SIZE - 1);
+		Entry entry = parsedEntryLines[index];
+		if (entry != null && entry.text.equals(text))
+			return entry.time;
+		long time = parseEntryLine(text);
+		if (time == Long.MIN_VALUE) {
+			String padded = text;
+			try {
+				if (text.charAt(ENTRYLINE_TENS_DAY_OFFSET) == ' ') {
+					StringBuffer buf = new StringBuffer(text);
+					buf.setCharAt(ENTRYLINE_TENS_DAY_OFFSET, '0');
+					padded = buf.toString();
+				}
+			} catch (StringIndexOutOfBoundsException e) {
+				throw new ParseException(e.getMessage(), ENTRYLINE_TENS_DAY_OFFSET);
 			}
-		} catch (StringIndexOutOfBoundsException e) {
-			throw new ParseException(e.getMessage(), ENTRYLINE_TENS_DAY_OFFSET);
+			time = newEntryLineFormat().parse(padded).getTime();
 		}
-		return entryLineFormat.parse(text);
+		parsedEntryLines[index] = new Entry(text, time);
+		return time;
 	}
 
-	static synchronized public String dateToEntryLine(Date date) {
+	static public String dateToEntryLine(Date date) {
 		if (date == null) return ""; //$NON-NLS-1$
-		String passOne = entryLineFormat.format(date);
-		if (passOne.charAt(ENTRYLINE_TENS_DAY_OFFSET) != '0') return passOne;
-		StringBuffer passTwo = new StringBuffer(passOne);
-		passTwo.setCharAt(ENTRYLINE_TENS_DAY_OFFSET, ' ');
-		return passTwo.toString();
-	}
-	
-	static synchronized public String dateToNotifyServer(Date date) {
-		serverFormat.setTimeZone(TimeZone.getTimeZone("GMT"));//$NON-NLS-1$
-		return serverFormat.format(date) + " GMT"; //$NON-NLS-1$
-	}
-	
+		return timeToEntryLine(date.getTime());
+	}
+
+	/**
+	 * Converts milliseconds since the epoch to an entry line timestamp.
+	 *
+	 * @param time the time in milliseconds
+	 * @return the entry line timestamp
+	 */
+	static public String timeToEntryLine(long time) {
+		int index = (int) (time ^ (time >>> 32)) & (CACHE_SIZE - 1);
+		Entry entry = formattedEntryLines[index];
+		if (entry != null && entry.time == time)
+			return entry.text;
+		String text = formatEntryLine(time);
+		if (text == null) {
+			String passOne = newEntryLineFormat().format(new Date(time));
+			if (passOne.charAt(ENTRYLINE_TENS_DAY_OFFSET) != '0') {
+				text = passOne;
+			} else {
+				StringBuffer passTwo = new StringBuffer(passOne);
+				passTwo.setCharAt(ENTRYLINE_TENS_DAY_OFFSET, ' ');
+				text = passTwo.toString();
+			}
+		}
+		formattedEntryLines[index] = new Entry(text, time);
+		return text;
+	}
+
+	/**
+	 * Returns whether the given bytes are an entry line timestamp exactly as
+	 * {@link #timeToEntryLine(long)} writes it, i.e. the timestamp does not
+	 * change when it is parsed and written again.
+	 *
+	 * @param bytes the bytes containing the timestamp
+	 * @param offset the index of the first byte of the timestamp
+	 * @param length the length of the timestamp
+	 * @return whether the bytes are a timestamp in the canonical form
+	 */
+	static public boolean isEntryLine(byte[] bytes, int offset, int length) {
+		if (length != ENTRYLINE_LENGTH
+				|| bytes[offset + 3] != ' ' || bytes[offset + 7] != ' ' || bytes[offset + 10] != ' '
+				|| bytes[offset + 13] != ':' || bytes[offset + 16] != ':' || bytes[offset + 19] != ' ')
+			return false;
+		int dayOfWeek = indexOf(DAYS, bytes, offset);
+		int month = indexOf(MONTHS, bytes, offset + 4);
+		int day;
+		if (bytes[offset + ENTRYLINE_TENS_DAY_OFFSET] == ' ') {
+			day = parseNumber(bytes, offset + 9, offset + 10);
+		} else {
+			day = parseNumber(bytes, offset + 8, offset + 10);
+			if (day < 10)
+				return false;
+		}
+		long time = toTime(parseNumber(bytes, offset + 20, offset + 24), month + 1, day,
+				parseNumber(bytes, offset + 11, offset + 13), parseNumber(bytes, offset + 14, offset + 16), parseNumber(bytes, offset + 17, offset + 19), 0);
+		return time != Long.MIN_VALUE && dayOfWeek == getDayOfWeek(floorDiv(time, MILLIS_PER_DAY));
+	}
+
+	static public String dateToNotifyServer(Date date) {
+		return timeToNotifyServer(date.getTime());
+	}
+
+	/**
+	 * Converts milliseconds since the epoch to the timestamp sent to the
+	 * server in notifications, e.g. "07 Apr 1996 01:29:26 GMT".
+	 *
+	 * @param time the time in milliseconds
+	 * @return the timestamp
+	 */
+	static public String timeToNotifyServer(long time) {
+		String text = formatServerStamp(time);
+		if (text != null)
+			return text;
+		DateFormat format = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));//$NON-NLS-1$
+		return format.format(new Date(time)) + " GMT"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Converts a timestamp from the output of the log command, e.g.
+	 * "2004-05-10 18:23:45 +0000" or "2000/06/19 04:56:21 GMT" for servers
+	 * older than 1.12.9, to a <code>Date</code>.
+	 *
+	 * @param text the timestamp
+	 * @return the date
+	 * @throws ParseException if the timestamp cannot be parsed
+	 */
+	static public Date logStampToDate(String text) throws ParseException {
+		long time = parseLogStamp(text);
+		if (time != Long.MIN_VALUE)
+			return new Date(time);
+		// Compatibility for older cvs version (pre 1.12.9)
+		String pattern = text.length() > 4 && text.charAt(4) == '/' ? LOG_FORMAT_OLD : LOG_FORMAT;
+		return new SimpleDateFormat(pattern, Locale.US).parse(text);
+	}
+
+	private static DateFormat newEntryLineFormat() {
+		DateFormat format = new SimpleDateFormat(ENTRYLINE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format;
+	}
+
+	/*
+	 * Parses "Sun Apr  7 01:29:26 1996". Returns Long.MIN_VALUE if the text
+	 * is not exactly in this layout.
+	 */
+	private static long parseEntryLine(String text) {
+		if (text.length() != ENTRYLINE_LENGTH
+				|| text.charAt(3) != ' ' || text.charAt(7) != ' ' || text.charAt(10) != ' '
+				|| text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != ' ')
+			return Long.MIN_VALUE;
+		if (indexOf(DAYS, text, 0) == -1)
+			return Long.MIN_VALUE;
+		int month = indexOf(MONTHS, text, 4);
+		int day = text.charAt(ENTRYLINE_TENS_DAY_OFFSET) == ' '
+			? parseNumber(text, 9, 10)
+			: parseNumber(text, 8, 10);
+		return toTime(parseNumber(text, 20, 24), month + 1, day,
+				parseNumber(text, 11, 13), parseNumber(text, 14, 16), parseNumber(text, 17, 19), 0);
+	}
+
+	/*
+	 * Parses "7 Apr 1996 01:29:26 -0000" where the day may have one or two
+	 * digits. Returns Long.MIN_VALUE if the text is not in this layout.
+	 */
+	private static long parseServerStamp(String text) {
+		int offset = text.indexOf(' ');
+		if (offset != 1 && offset != 2 || text.length() != offset + 24)
+			return Long.MIN_VALUE;
+		if (text.charAt(offset + 4) != ' ' || text.charAt(offset + 9) != ' '
+				|| text.charAt(offset + 12) != ':' || text.charAt(offset + 15) != ':'
+				|| text.charAt(offset + 18) != ' ')
+			return Long.MIN_VALUE;
+		int zone = parseZone(text, offset + 19);
+		if (zone == Integer.MIN_VALUE)
+			return Long.MIN_VALUE;
+		return toTime(parseNumber(text, offset + 5, offset + 9), indexOf(MONTHS, text, offset + 1) + 1, parseNumber(text, 0, offset),
+				parseNumber(text, offset + 10, offset + 12), parseNumber(text, offset + 13, offset + 15), parseNumber(text, offset + 16, offset + 18), zone);
+	}
+
+	/*
+	 * Parses "2004-05-10 18:23:45 +0000" or "2000/06/19 04:56:21 GMT",
+	 * anything following the zone is ignored. Returns Long.MIN_VALUE if the
+	 * text is not in this layout.
+	 */
+	private static long parseLogStamp(String text) {
+		if (text.length() < 23)
+			return Long.MIN_VALUE;
+		char separator = text.charAt(4);
+		if (separator != '-' && separator != '/' || text.charAt(7) != separator
+				|| text.charAt(10) != ' ' || text.charAt(13) != ':' || text.charAt(16) != ':'
+				|| text.charAt(19) != ' ')
+			return Long.MIN_VALUE;
+		int zone;
+		if (text.startsWith("GMT", 20) || text.startsWith("UTC", 20)) { //$NON-NLS-1$ //$NON-NLS-2$
+			// a numeric offset following GMT is not handled here
+			if (text.length() > 23 && text.charAt(23) != ' ')
+				return Long.MIN_VALUE;
+			zone = 0;
+		} else {
+			zone = parseZone(text, 20);
+			if (zone == Integer.MIN_VALUE || text.length() > 25 && text.charAt(25) != ' ')
+				return Long.MIN_VALUE;
+		}
+		return toTime(parseNumber(text, 0, 4), parseNumber(text, 5, 7), parseNumber(text, 8, 10),
+				parseNumber(text, 11, 13), parseNumber(text, 14, 16), parseNumber(text, 17, 19), zone);
+	}
+
+	/*
+	 * Parses a zone of the form [-|+]HHMM at the end of the text or followed
+	 * by a space. Returns the offset from GMT in milliseconds or
+	 * Integer.MIN_VALUE.
+	 */
+	private static int parseZone(String text, int start) {
+		if (text.length() < start + 5)
+			return Integer.MIN_VALUE;
+		char sign = text.charAt(start);
+		if (sign != '+' && sign != '-')
+			return Integer.MIN_VALUE;
+		int hours = parseNumber(text, start + 1, start + 3);
+		int minutes = parseNumber(text, start + 3, start + 5);
+		if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59)
+			return Integer.MIN_VALUE;
+		int offset = (int) (hours * MILLIS_PER_HOUR + minutes * MILLIS_PER_MINUTE);
+		return sign == '-' ? -offset : offset;
+	}
+
+	/*
+	 * Returns the value of the digits between start and end, or -1 if there
+	 * is any other character.
+	 */
+	private static int parseNumber(String text, int start, int end) {
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	private static int parseNumber(byte[] bytes, int start, int end) {
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			byte b = bytes[i];
+			if (b < '0' || b > '9')
+				return -1;
+			result = result * 10 + (b - '0');
+		}
+		return result;
+	}
+
+	private static int indexOf(String[] names, String text, int start) {
+		for (int i = 0; i < names.length; i++) {
+			if (text.startsWith(names[i], start))
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(String[] names, byte[] bytes, int start) {
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (bytes[start] == name.charAt(0) && bytes[start + 1] == name.charAt(1) && bytes[start + 2] == name.charAt(2))
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the time of the given fields in a zone with the given offset, or
+	 * Long.MIN_VALUE if a field is out of range.
+	 */
+	private static long toTime(int year, int month, int day, int hour, int minute, int second, int zoneOffset) {
+		if (year < MIN_YEAR || year > MAX_YEAR || month < 1 || month > 12 || day < 1
+				|| day > daysInMonth(year, month) || hour < 0 || hour > 23
+				|| minute < 0 || minute > 59 || second < 0 || second > 59)
+			return Long.MIN_VALUE;
+		return daysSinceEpoch(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR
+			+ minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND - zoneOffset;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+			case 2:
+				return isLeapYear(year) ? 29 : 28;
+			case 4: case 6: case 9: case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	private static boolean isLeapYear(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	/*
+	 * Returns the number of days from 1970-01-01 to the given date of the
+	 * proleptic Gregorian calendar. The year is counted from March so that
+	 * the leap day is the last day of a year.
+	 */
+	private static long daysSinceEpoch(int year, int month, int day) {
+		if (month <= 2)
+			year--;
+		int era = year / 400; // the years are positive
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/*
+	 * Formats "Sun Apr  7 01:29:26 1996" in GMT, or returns null if the year
+	 * is out of range.
+	 */
+	private static String formatEntryLine(long time) {
+		int[] fields = toFields(time);
+		if (fields == null)
+			return null;
+		StringBuffer buffer = new StringBuffer(ENTRYLINE_LENGTH);
+		buffer.append(DAYS[fields[6]]).append(' ').append(MONTHS[fields[1] - 1]).append(' ');
+		if (fields[2] < 10)
+			buffer.append(' ');
+		buffer.append(fields[2]).append(' ');
+		appendTime(buffer, fields);
+		buffer.append(' ').append(fields[0]);
+		return buffer.toString();
+	}
+
+	/*
+	 * Formats "07 Apr 1996 01:29:26 GMT", or returns null if the year is out
+	 * of range.
+	 */
+	private static String formatServerStamp(long time) {
+		int[] fields = toFields(time);
+		if (fields == null)
+			return null;
+		StringBuffer buffer = new StringBuffer(24);
+		appendTwoDigits(buffer, fields[2]);
+		buffer.append(' ').append(MONTHS[fields[1] - 1]).append(' ').append(fields[0]).append(' ');
+		appendTime(buffer, fields);
+		buffer.append(" GMT"); //$NON-NLS-1$
+		return buffer.toString();
+	}
+
+	private static void appendTime(StringBuffer buffer, int[] fields) {
+		appendTwoDigits(buffer, fields[3]);
+		buffer.append(':');
+		appendTwoDigits(buffer, fields[4]);
+		buffer.append(':');
+		appendTwoDigits(buffer, fields[5]);
+	}
+
+	private static void appendTwoDigits(StringBuffer buffer, int value) {
+		buffer.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	/*
+	 * Returns year, month, day, hour, minute, second and day of the week (0
+	 * for Sunday) of the given time in GMT, or null if the year is out of
+	 * range. This is the inverse of daysSinceEpoch.
+	 */
+	private static int[] toFields(long time) {
+		long days = floorDiv(time, MILLIS_PER_DAY);
+		long millis = time - days * MILLIS_PER_DAY;
+		long shifted = days + 719468;
+		if (shifted < 0)
+			return null;
+		long era = shifted / 146097;
+		int dayOfEra = (int) (shifted - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int monthIndex = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+		int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+		long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+		if (year < MIN_YEAR || year > MAX_YEAR)
+			return null;
+		int seconds = (int) (millis / MILLIS_PER_SECOND);
+		return new int[] { (int) year, month, day, seconds / 3600, seconds / 60 % 60, seconds % 60, getDayOfWeek(days) };
+	}
+
+	private static long floorDiv(long value, long divisor) {
+		long result = value / divisor;
+		if (value % divisor < 0)
+			result--;
+		return result;
+	}
+
+	/*
+	 * Returns the day of the week, 0 for Sunday, of the given day since the
+	 * epoch; 1970-01-01 was a Thursday.
+	 */
+	private static int getDayOfWeek(long days) {
+		return (int) ((days % 7 + 11) % 7);
+	}
+
 	/*
 	 * Converts timezone text from date string from CVS server and
 	 * returns a timezone representing the received timezone.
@@ -78,7 +488,7 @@ public class CVSDateFormatter {
 	 */
 	static private TimeZone getTimeZone(String dateFromServer) {
 	    if (dateFromServer.lastIndexOf("0000") != -1)  //$NON-NLS-1$
-	        return TimeZone.getTimeZone("GMT");//$NON-NLS-1$ 
+	        return TimeZone.getTimeZone("GMT");//$NON-NLS-1$
 		String tz = null;
 		StringBuffer resultTz = new StringBuffer("GMT");//$NON-NLS-1$
 		if (dateFromServer.indexOf("-") != -1) {//$NON-NLS-1$
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,12 @@ public class SyncFileWriter {
 	private static final String ADD_TAG="A "; //$NON-NLS-1$
 	private static final String REMOVE_TAG="R "; //$NON-NLS-1$	
 	
+	// Entry line timestamps that are written back unchanged
+	private static final byte[] TIMESTAMP_DUMMY = "dummy timestamp".getBytes(); //$NON-NLS-1$
+	private static final byte[] TIMESTAMP_MERGED = "Result of merge".getBytes(); //$NON-NLS-1$
+	private static final byte[] KSUBST_TEXT_EXPAND = "-kkv".getBytes(); //$NON-NLS-1$
+	private static final byte[] FOLDER_SUFFIX = "////".getBytes(); //$NON-NLS-1$
+	
 	// key for saving the mod stamp for each written meta file
 	public static final QualifiedName MODSTAMP_KEY = new QualifiedName("org.eclipse.team.cvs.core", "meta-file-modtime"); //$NON-NLS-1$ //$NON-NLS-2$
 	
@@ -77,48 +83,159 @@ public class SyncFileWriter {
 		}
 
 		// process Entries file contents
-		String[] entries = readLines(cvsSubDir.getFile(ENTRIES));
+		byte[] entries = readBytes(cvsSubDir.getFile(ENTRIES));
 		if (entries == null) return null;
 		Map infos = new TreeMap();
-		for (int i = 0; i < entries.length; i++) {
-			String line = entries[i];
-			if(!FOLDER_TAG.equals(line) && !"".equals(line)) { //$NON-NLS-1$
-				try {
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.put(info.getName(), info);
-				} catch (CVSException e) {
-					// There was a problem parsing the entry line.
-					// Log the problem and skip the entry
-					CVSProviderPlugin.log(new CVSStatus(IStatus.ERROR, NLS.bind(CVSMessages.SyncFileWriter_0, new String[] { parent.getFullPath().toString() }), e)); 
-				}			
+		for (int start = 0; start < entries.length; start = nextLine(entries, start)) {
+			int end = endOfLine(entries, start);
+			if (end == start || (end == start + 1 && entries[start] == FOLDER_TAG.charAt(0)))
+				continue;
+			byte[] syncBytes = getSyncBytes(entries, start, end);
+			if (syncBytes != null) {
+				infos.put(ResourceSyncInfo.getName(syncBytes), syncBytes);
+				continue;
 			}
+			String line = new String(entries, start, end - start);
+			try {
+				ResourceSyncInfo info = new ResourceSyncInfo(line, null);
+				infos.put(info.getName(), info.getBytes());
+			} catch (CVSException e) {
+				// There was a problem parsing the entry line.
+				// Log the problem and skip the entry
+				CVSProviderPlugin.log(new CVSStatus(IStatus.ERROR, NLS.bind(CVSMessages.SyncFileWriter_0, new String[] { parent.getFullPath().toString() }), e)); 
+			}			
 		}
 		
 		// process Entries.log file contents
-		String[] entriesLog = readLines(cvsSubDir.getFile(ENTRIES_LOG));
+		byte[] entriesLog = readBytes(cvsSubDir.getFile(ENTRIES_LOG));
 		if (entriesLog != null) {
-			for (int i = 0; i < entriesLog.length; i++) {
-				String line = entriesLog[i];
-				if (line.startsWith(ADD_TAG)) {
-					line = line.substring(ADD_TAG.length());
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.put(info.getName(), info);
-				} else if (line.startsWith(REMOVE_TAG)) {
-					line = line.substring(REMOVE_TAG.length());
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.remove(info.getName());
+			for (int start = 0; start < entriesLog.length; start = nextLine(entriesLog, start)) {
+				int end = endOfLine(entriesLog, start);
+				boolean add = startsWith(entriesLog, start, end, ADD_TAG);
+				if (!add && !startsWith(entriesLog, start, end, REMOVE_TAG))
+					continue;
+				int entryStart = start + ADD_TAG.length();
+				byte[] syncBytes = getSyncBytes(entriesLog, entryStart, end);
+				if (syncBytes == null)
+					syncBytes = new ResourceSyncInfo(new String(entriesLog, entryStart, end - entryStart), null).getBytes();
+				if (add) {
+					infos.put(ResourceSyncInfo.getName(syncBytes), syncBytes);
+				} else {
+					infos.remove(ResourceSyncInfo.getName(syncBytes));
 				}
 			}
 		}
 		
-		//return (ResourceSyncInfo[])infos.values().toArray(new ResourceSyncInfo[infos.size()]);
-		byte[][] result = new byte[infos.size()][];
-		int i = 0;
-		for (Iterator iter = infos.values().iterator(); iter.hasNext();) {
-			ResourceSyncInfo info = (ResourceSyncInfo) iter.next();
-			result[i++] = info.getBytes();
+		return (byte[][]) infos.values().toArray(new byte[infos.size()][]);
+	}
+	
+	/*
+	 * Returns a copy of the entry line between start and end if it is in the
+	 * form ResourceSyncInfo would write it, or null if the line needs to be
+	 * parsed. Only lines of ASCII characters are copied, their names are the
+	 * same with any default encoding.
+	 */
+	private static byte[] getSyncBytes(byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] < 0)
+				return null;
+		}
+		if (end - start > 2 && bytes[start] == 'D' && bytes[start + 1] == '/') {
+			// a folder entry is written as D/name////
+			int nameEnd = indexOf(bytes, start + 2, end, '/');
+			if (nameEnd <= start + 2 || !regionEquals(bytes, nameEnd, end, FOLDER_SUFFIX))
+				return null;
+		} else {
+			// a file entry is written as /name/revision/timestamp/keyword mode/tag
+			if (start == end || bytes[start] != '/')
+				return null;
+			int nameEnd = indexOf(bytes, start + 1, end, '/');
+			if (nameEnd <= start + 1)
+				return null;
+			int revisionEnd = indexOf(bytes, nameEnd + 1, end, '/');
+			if (revisionEnd == -1 || !isCanonicalRevision(bytes, nameEnd + 1, revisionEnd))
+				return null;
+			int timestampEnd = indexOf(bytes, revisionEnd + 1, end, '/');
+			if (timestampEnd == -1 || !isCanonicalTimestamp(bytes, revisionEnd + 1, timestampEnd))
+				return null;
+			int modeEnd = indexOf(bytes, timestampEnd + 1, end, '/');
+			if (modeEnd == -1 || regionEquals(bytes, timestampEnd + 1, modeEnd, KSUBST_TEXT_EXPAND))
+				return null;
+			// only branch or version tags with the T prefix and date tags are written unchanged
+			if (modeEnd + 1 < end && bytes[modeEnd + 1] != 'T' && bytes[modeEnd + 1] != 'D')
+				return null;
 		}
-		return result;
+		byte[] syncBytes = new byte[end - start];
+		System.arraycopy(bytes, start, syncBytes, 0, syncBytes.length);
+		return syncBytes;
+	}
+	
+	/*
+	 * The locker is removed from the revision.
+	 */
+	private static boolean isCanonicalRevision(byte[] bytes, int start, int end) {
+		if (start == end)
+			return false;
+		for (int i = start; i < end; i++) {
+			if (bytes[i] <= ' ')
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean isCanonicalTimestamp(byte[] bytes, int start, int end) {
+		if (regionEquals(bytes, start, end, TIMESTAMP_DUMMY) || regionEquals(bytes, start, end, TIMESTAMP_MERGED))
+			return true;
+		if (end - start > TIMESTAMP_MERGED.length && bytes[start + TIMESTAMP_MERGED.length] == '+'
+				&& regionEquals(bytes, start, start + TIMESTAMP_MERGED.length, TIMESTAMP_MERGED))
+			start += TIMESTAMP_MERGED.length + 1;
+		return CVSDateFormatter.isEntryLine(bytes, start, end - start);
+	}
+	
+	private static int indexOf(byte[] bytes, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == c)
+				return i;
+		}
+		return -1;
+	}
+	
+	private static boolean regionEquals(byte[] bytes, int start, int end, byte[] region) {
+		if (end - start != region.length)
+			return false;
+		for (int i = 0; i < region.length; i++) {
+			if (bytes[start + i] != region[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean startsWith(byte[] bytes, int start, int end, String prefix) {
+		if (end - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (bytes[start + i] != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Returns the index of the line terminator of the line starting at the
+	 * given index. As in BufferedReader, a line is terminated by \n, \r or \r\n.
+	 */
+	private static int endOfLine(byte[] bytes, int start) {
+		int i = start;
+		while (i < bytes.length && bytes[i] != '\n' && bytes[i] != '\r')
+			i++;
+		return i;
+	}
+	
+	private static int nextLine(byte[] bytes, int start) {
+		int end = endOfLine(bytes, start);
+		if (end < bytes.length && bytes[end] == '\r' && end + 1 < bytes.length && bytes[end + 1] == '\n')
+			return end + 2;
+		return end + 1;
 	}
 	
 	private static boolean folderExists(IFolder cvsSubDir) throws CVSException {
@@ -144,14 +261,23 @@ public class SyncFileWriter {
 			IFolder cvsSubDir = createCVSSubdirectory(parent);
 
 			// format file contents
-			String[] entries = new String[infos.length];
+			byte[] lineEnd = getLineDelimiter();
+			int length = 0;
+			for (int i = 0; i < infos.length; i++) {
+				length += infos[i].length + lineEnd.length;
+			}
+			byte[] entries = new byte[length];
+			int offset = 0;
 			for (int i = 0; i < infos.length; i++) {
 				byte[] info = infos[i];
-				entries[i] = new String(info);
+				System.arraycopy(info, 0, entries, offset, info.length);
+				offset += info.length;
+				System.arraycopy(lineEnd, 0, entries, offset, lineEnd.length);
+				offset += lineEnd.length;
 			}
 
 			// write Entries
-			writeLines(cvsSubDir.getFile(ENTRIES), entries);
+			writeBytes(cvsSubDir.getFile(ENTRIES), entries);
 
 			// delete Entries.log
 			cvsSubDir.getFile(ENTRIES_LOG).delete(IResource.NONE, null);
@@ -540,6 +666,46 @@ public class SyncFileWriter {
 		return null;
 	}
 	
+	/*
+	 * Reads the contents of the specified file.
+	 * Returns null if the file does not exist.
+	 */
+	private static byte[] readBytes(IFile file) throws CVSException {
+		try {
+			InputStream in = getInputStream(file);
+			if (in != null) {
+				try {
+					byte[] buffer = new byte[4096];
+					int length = 0;
+					int read;
+					while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+						length += read;
+						if (length == buffer.length) {
+							byte[] newBuffer = new byte[buffer.length * 2];
+							System.arraycopy(buffer, 0, newBuffer, 0, length);
+							buffer = newBuffer;
+						}
+					}
+					byte[] contents = new byte[length];
+					System.arraycopy(buffer, 0, contents, 0, length);
+					return contents;
+				} finally {
+					in.close();
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			throw CVSException.wrapException(e);
+		} catch (CoreException e) {
+			// If the IFile doesn't exist or the underlying File doesn't exist,
+			// just return null to indicate the absence of the file
+			if (e.getStatus().getCode() == IResourceStatus.RESOURCE_NOT_FOUND
+					|| e.getStatus().getCode() == IResourceStatus.FAILED_READ_LOCAL)
+				return null;
+			throw CVSException.wrapException(e);
+		}
+	}
+	
 	/*
 	 * Reads all lines of the specified file.
 	 * Returns null if the file does not exist.
@@ -578,6 +744,15 @@ public class SyncFileWriter {
 	 * compatibility with other CVS clients.
 	 */
 	private static void writeLines(final IFile file, final String[] contents) throws CVSException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writeLinesToStreamAndClose(os, contents);
+		writeBytes(file, os.toByteArray());
+	}
+	
+	/*
+	 * Writes the contents to the specified file in a single operation.
+	 */
+	private static void writeBytes(final IFile file, final byte[] contents) throws CVSException {
 		try {
 			// The creation of sync files has to be in a runnable in order for the resulting delta
 			// to include the MODSTAMP value. If not in a runnable then create/setContents
@@ -585,18 +760,12 @@ public class SyncFileWriter {
 			// was a result of our own creation.
 			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
 				public void run(IProgressMonitor monitor) throws CoreException {
-					try {
-						ByteArrayOutputStream os = new ByteArrayOutputStream();
-						writeLinesToStreamAndClose(os, contents);
-						if(!file.exists()) {
-							file.create(new ByteArrayInputStream(os.toByteArray()), IResource.FORCE /*don't keep history but do force*/, null);
-						} else {
-							file.setContents(new ByteArrayInputStream(os.toByteArray()), IResource.FORCE /*don't keep history but do force*/, null);
-						}			
-						file.setSessionProperty(MODSTAMP_KEY, new Long(file.getModificationStamp()));
-					} catch(CVSException e) {
-						throw new CoreException(e.getStatus());
-					}
+					if(!file.exists()) {
+						file.create(new ByteArrayInputStream(contents), IResource.FORCE /*don't keep history but do force*/, null);
+					} else {
+						file.setContents(new ByteArrayInputStream(contents), IResource.FORCE /*don't keep history but do force*/, null);
+					}			
+					file.setSessionProperty(MODSTAMP_KEY, new Long(file.getModificationStamp()));
 				}
 			}, ResourcesPlugin.getWorkspace().getRuleFactory().createRule(file), 0, null);
 		} catch (CoreException e) {
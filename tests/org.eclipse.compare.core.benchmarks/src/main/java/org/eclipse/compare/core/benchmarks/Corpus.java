@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.compare.rangedifferencer.AbstractRangeDifferenceFactory;
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+import org.eclipse.compare.rangedifferencer.RangeDifferencer;
+
+/**
+ * Generates deterministic, source code like inputs for the benchmarks.
+ */
+final class Corpus {
+
+	static final AbstractRangeDifferenceFactory FACTORY = new AbstractRangeDifferenceFactory() {
+		protected RangeDifference createRangeDifference() {
+			return new RangeDifference(RangeDifference.NOCHANGE) {
+				// nothing to add
+			};
+		}
+	};
+
+	// lines that occur over and over in real sources
+	private static final String[] COMMON_LINES = {
+			"", //$NON-NLS-1$
+			"}", //$NON-NLS-1$
+			"\t}", //$NON-NLS-1$
+			"\t\t}", //$NON-NLS-1$
+			"\t\treturn result;", //$NON-NLS-1$
+			"\t/**", //$NON-NLS-1$
+			"\t */", //$NON-NLS-1$
+			"\t\ttry {", //$NON-NLS-1$
+			"\t\t} finally {", //$NON-NLS-1$
+	};
+
+	private static final int CONTEXT = 3;
+
+	private Corpus() {
+		// no instances
+	}
+
+	/**
+	 * Creates the given number of lines, about one in five of them is one of
+	 * a few frequently repeated lines.
+	 */
+	static String[] createLines(int count, long seed) {
+		Random random = new Random(seed);
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			if (random.nextInt(5) == 0)
+				lines[i] = COMMON_LINES[random.nextInt(COMMON_LINES.length)];
+			else
+				lines[i] = "\t\tint value" + i + " = compute(" + random.nextInt(100000) + ");"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns a copy of the given lines where roughly the given fraction of
+	 * the lines is replaced, deleted or followed by an inserted line.
+	 */
+	static String[] edit(String[] lines, double density, long seed) {
+		Random random = new Random(seed);
+		List result = new ArrayList(lines.length + lines.length / 10);
+		for (int i = 0; i < lines.length; i++) {
+			if (random.nextDouble() >= density) {
+				result.add(lines[i]);
+				continue;
+			}
+			switch (random.nextInt(3)) {
+			case 0:
+				result.add("\t\tint changed" + i + " = compute(" + random.nextInt(100000) + ");"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				break;
+			case 1:
+				result.add(lines[i]);
+				result.add("\t\tint added" + i + " = 0;"); //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			default:
+				// deleted
+				break;
+			}
+		}
+		return (String[]) result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Returns the lines as one text, every line is terminated by a new line.
+	 */
+	static String toText(String[] lines) {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < lines.length; i++)
+			buffer.append(lines[i]).append('\n');
+		return buffer.toString();
+	}
+
+	/**
+	 * Creates a unified diff with three lines of context that turns the
+	 * before lines into the after lines.
+	 */
+	static String createPatch(String path, String[] before, String[] after) {
+		RangeDifference[] differences = RangeDifferencer.findDifferences(FACTORY, RangeDifferencer.STRATEGY_HISTOGRAM, null,
+				new LinesComparator(before), new LinesComparator(after));
+		StringBuffer patch = new StringBuffer();
+		patch.append("--- a/").append(path).append('\n'); //$NON-NLS-1$
+		patch.append("+++ b/").append(path).append('\n'); //$NON-NLS-1$
+		int first = 0;
+		while (first < differences.length) {
+			// join the differences whose context overlaps into one hunk
+			int last = first;
+			while (last + 1 < differences.length
+					&& differences[last + 1].leftStart() - differences[last].leftEnd() <= 2 * CONTEXT)
+				last++;
+			int start1 = Math.max(0, differences[first].leftStart() - CONTEXT);
+			int end1 = Math.min(before.length, differences[last].leftEnd() + CONTEXT);
+			int start2 = differences[first].rightStart() - (differences[first].leftStart() - start1);
+			int end2 = differences[last].rightEnd() + (end1 - differences[last].leftEnd());
+			patch.append("@@ -").append(start(start1, end1)).append(',').append(end1 - start1) //$NON-NLS-1$
+					.append(" +").append(start(start2, end2)).append(',').append(end2 - start2).append(" @@\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			int pos = start1;
+			for (int i = first; i <= last; i++) {
+				RangeDifference difference = differences[i];
+				for (; pos < difference.leftStart(); pos++)
+					patch.append(' ').append(before[pos]).append('\n');
+				for (int j = difference.leftStart(); j < difference.leftEnd(); j++)
+					patch.append('-').append(before[j]).append('\n');
+				for (int j = difference.rightStart(); j < difference.rightEnd(); j++)
+					patch.append('+').append(after[j]).append('\n');
+				pos = difference.leftEnd();
+			}
+			for (; pos < end1; pos++)
+				patch.append(' ').append(before[pos]).append('\n');
+			first = last + 1;
+		}
+		return patch.toString();
+	}
+
+	private static int start(int start, int end) {
+		// unified diffs use 1-based line numbers except for empty ranges
+		return start == end ? start : start + 1;
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import org.eclipse.compare.rangedifferencer.IHashedRangeComparator;
+import org.eclipse.compare.rangedifferencer.IRangeComparator;
+
+/**
+ * A range comparator for an array of lines.
+ */
+class LinesComparator implements IHashedRangeComparator {
+
+	private final String[] lines;
+
+	LinesComparator(String[] lines) {
+		this.lines = lines;
+	}
+
+	public int getRangeCount() {
+		return this.lines.length;
+	}
+
+	public boolean rangesEqual(int thisIndex, IRangeComparator other, int otherIndex) {
+		return this.lines[thisIndex].equals(((LinesComparator) other).lines[otherIndex]);
+	}
+
+	public boolean skipRangeComparison(int length, int maxLength, IRangeComparator other) {
+		return false;
+	}
+
+	public int getRangeHash(int index) {
+		return this.lines[index].hashCode();
+	}
+}
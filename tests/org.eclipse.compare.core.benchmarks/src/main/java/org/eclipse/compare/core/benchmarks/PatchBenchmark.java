@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.compare.internal.core.patch.FileDiffResult;
+import org.eclipse.compare.internal.core.patch.FilePatch2;
+import org.eclipse.compare.internal.core.patch.Hunk;
+import org.eclipse.compare.internal.core.patch.LineReader;
+import org.eclipse.compare.internal.core.patch.PatchReader;
+import org.eclipse.compare.patch.IHunk;
+import org.eclipse.compare.patch.PatchConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a unified diff and matching its hunks against the target lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatchBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int lines;
+
+	@Param({ "0.01", "0.1" })
+	public double editDensity;
+
+	private String patch;
+	private FilePatch2 filePatch;
+	private PatchConfiguration configuration;
+	private List targetLines;
+	private List shiftedTargetLines;
+
+	@Setup
+	public void setUp() throws IOException {
+		String[] before = Corpus.createLines(this.lines, 1);
+		String[] after = Corpus.edit(before, this.editDensity, 2);
+		this.patch = Corpus.createPatch("src/Generated.java", before, after); //$NON-NLS-1$
+		this.filePatch = parse()[0];
+		this.configuration = new PatchConfiguration();
+		this.targetLines = LineReader.readLines(new BufferedReader(new StringReader(Corpus.toText(before))));
+
+		// the hunks have to be searched for when lines were added above them
+		String[] shifted = new String[before.length + 20];
+		for (int i = 0; i < 20; i++)
+			shifted[i] = "// header line " + i; //$NON-NLS-1$
+		System.arraycopy(before, 0, shifted, 20, before.length);
+		this.shiftedTargetLines = LineReader.readLines(new BufferedReader(new StringReader(Corpus.toText(shifted))));
+	}
+
+	@Benchmark
+	public FilePatch2[] parse() throws IOException {
+		PatchReader reader = new PatchReader();
+		reader.parse(new BufferedReader(new StringReader(this.patch)));
+		return reader.getDiffs();
+	}
+
+	@Benchmark
+	public int tryPatch() {
+		int matched = 0;
+		IHunk[] hunks = this.filePatch.getHunks();
+		for (int i = 0; i < hunks.length; i++) {
+			if (((Hunk) hunks[i]).tryPatch(this.configuration, this.targetLines, 0, 0))
+				matched++;
+		}
+		return matched;
+	}
+
+	@Benchmark
+	public int calculateFuzz() {
+		FileDiffResult result = new FileDiffResult(this.filePatch, this.configuration);
+		return result.calculateFuzz(new ArrayList(this.shiftedTargetLines), null);
+	}
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+import org.eclipse.compare.rangedifferencer.RangeDifferencer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Two-way and three-way differences computed by {@link RangeDifferencer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RangeDifferencerBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int lines;
+
+	@Param({ "0.01", "0.1" })
+	public double editDensity;
+
+	@Param({ "0", "1" }) // RangeDifferencer.STRATEGY_LCS, STRATEGY_HISTOGRAM
+	public int strategy;
+
+	private LinesComparator ancestor;
+	private LinesComparator left;
+	private LinesComparator right;
+
+	@Setup
+	public void setUp() {
+		String[] base = Corpus.createLines(this.lines, 1);
+		this.ancestor = new LinesComparator(base);
+		this.left = new LinesComparator(Corpus.edit(base, this.editDensity, 2));
+		this.right = new LinesComparator(Corpus.edit(base, this.editDensity, 3));
+	}
+
+	@Benchmark
+	public RangeDifference[] twoWay() {
+		return RangeDifferencer.findDifferences(Corpus.FACTORY, this.strategy, null, this.left, this.right);
+	}
+
+	@Benchmark
+	public RangeDifference[] threeWay() {
+		return RangeDifferencer.findDifferences(Corpus.FACTORY, this.strategy, null, this.ancestor, this.left, this.right);
+	}
+}
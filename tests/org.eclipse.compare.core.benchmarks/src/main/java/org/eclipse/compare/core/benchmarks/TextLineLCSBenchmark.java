@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.compare.internal.core.TextLineLCS;
+import org.eclipse.compare.internal.core.TextLineTable;
+import org.eclipse.compare.internal.core.TextLineTableLCS;
+import org.eclipse.core.runtime.SubMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The LCS of two texts, including breaking the texts up into lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextLineLCSBenchmark {
+
+	@Param({ "1000", "10000", "50000" })
+	public int lines;
+
+	@Param({ "0.01", "0.1" })
+	public double editDensity;
+
+	private String text1;
+	private String text2;
+
+	@Setup
+	public void setUp() {
+		String[] base = Corpus.createLines(this.lines, 1);
+		this.text1 = Corpus.toText(base);
+		this.text2 = Corpus.toText(Corpus.edit(base, this.editDensity, 2));
+	}
+
+	@Benchmark
+	public TextLineLCS.TextLine[][] textLines() {
+		TextLineLCS lcs = new TextLineLCS(TextLineLCS.getTextLines(this.text1), TextLineLCS.getTextLines(this.text2));
+		lcs.longestCommonSubsequence(SubMonitor.convert(null));
+		return lcs.getResult();
+	}
+
+	@Benchmark
+	public int[][] lineTable() {
+		TextLineTable table = new TextLineTable();
+		TextLineTableLCS lcs = new TextLineTableLCS(table.tokenize(this.text1), table.tokenize(this.text2));
+		lcs.longestCommonSubsequence(SubMonitor.convert(null));
+		return lcs.getResult();
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.core.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IEncodedStorage;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.team.internal.core.mapping.TextStorageMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Three-way merges of non conflicting changes with {@link TextStorageMerger}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextStorageMergerBenchmark {
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	@Param({ "1000", "10000", "100000" })
+	public int lines;
+
+	@Param({ "0.01", "0.1" })
+	public double editDensity;
+
+	private Storage ancestor;
+	private Storage target;
+	private Storage other;
+
+	@Setup
+	public void setUp() throws UnsupportedEncodingException {
+		String[] base = Corpus.createLines(this.lines, 1);
+		// the target edits the first half and the other one the second half
+		int half = base.length / 2;
+		String[] head = new String[half];
+		String[] tail = new String[base.length - half];
+		System.arraycopy(base, 0, head, 0, half);
+		System.arraycopy(base, half, tail, 0, tail.length);
+		this.ancestor = new Storage(Corpus.toText(base));
+		this.target = new Storage(Corpus.toText(Corpus.edit(head, this.editDensity, 2)) + Corpus.toText(tail));
+		this.other = new Storage(Corpus.toText(head) + Corpus.toText(Corpus.edit(tail, this.editDensity, 3)));
+	}
+
+	@Benchmark
+	public IStatus merge() throws CoreException {
+		return new TextStorageMerger().merge(new ByteArrayOutputStream(), ENCODING,
+				this.ancestor, this.target, this.other, null);
+	}
+
+	private static class Storage implements IEncodedStorage {
+		private final byte[] contents;
+
+		Storage(String text) throws UnsupportedEncodingException {
+			this.contents = text.getBytes(ENCODING);
+		}
+
+		public InputStream getContents() {
+			return new ByteArrayInputStream(this.contents);
+		}
+
+		public String getCharset() {
+			return ENCODING;
+		}
+
+		public IPath getFullPath() {
+			return null;
+		}
+
+		public String getName() {
+			return "storage"; //$NON-NLS-1$
+		}
+
+		public boolean isReadOnly() {
+			return true;
+		}
+
+		public <T> T getAdapter(Class<T> adapter) {
+			return null;
+		}
+	}
+}
@@ -37,6 +37,8 @@ public class AllTests {
 		suite.addTestSuite(RangeDifferencerThreeWayDiffTest.class);
 		suite.addTestSuite(CompareUIPluginTest.class);
 		suite.addTestSuite(StructureCreatorTest.class);
+		suite.addTestSuite(ContentComparatorTest.class);
+		suite.addTestSuite(ZipFileStructureCreatorTest.class);
 		// $JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.compare.IStreamContentAccessor;
+import org.eclipse.compare.internal.ContentComparator;
+import org.eclipse.compare.structuremergeviewer.Differencer;
+import org.eclipse.compare.structuremergeviewer.IStructureComparator;
+import org.eclipse.core.runtime.CoreException;
+
+public class ContentComparatorTest extends TestCase {
+
+	/*
+	 * A stream that returns at most the given number of bytes per read.
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+		private final int fChunk;
+		ChunkedInputStream(byte[] bytes, int chunk) {
+			super(bytes);
+			fChunk= chunk;
+		}
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, fChunk));
+		}
+	}
+
+	private static class Content implements IStreamContentAccessor {
+		private final byte[] fBytes;
+		Content(byte[] bytes) {
+			fBytes= bytes;
+		}
+		public InputStream getContents() throws CoreException {
+			return new ChunkedInputStream(fBytes, 1000);
+		}
+	}
+
+	private static class Folder implements IStructureComparator {
+		private final String fName;
+		private final Object[] fChildren;
+		Folder(String name, Object[] children) {
+			fName= name;
+			fChildren= children;
+		}
+		public Object[] getChildren() {
+			return fChildren;
+		}
+		public boolean equals(Object other) {
+			return other instanceof Folder && fName.equals(((Folder) other).fName);
+		}
+		public int hashCode() {
+			return fName.hashCode();
+		}
+	}
+
+	private static class File extends Content {
+		private final String fName;
+		File(String name, byte[] bytes) {
+			super(bytes);
+			fName= name;
+		}
+		public boolean equals(Object other) {
+			return other instanceof File && fName.equals(((File) other).fName);
+		}
+		public int hashCode() {
+			return fName.hashCode();
+		}
+	}
+
+	/*
+	 * Creates a tree of folders with the given depth where every folder has
+	 * five children. Some files are missing, some are modified.
+	 */
+	private static Object createTree(String name, int depth, Random random) {
+		if (depth == 0) {
+			byte[] bytes= createBytes(name.length() * 100);
+			if (random.nextInt(5) == 0)
+				bytes[random.nextInt(bytes.length)]++;
+			return new File(name, bytes);
+		}
+		List children= new ArrayList();
+		for (int i= 0; i < 5; i++) {
+			if (random.nextInt(20) != 0)
+				children.add(createTree(name + '/' + i, depth - 1, random));
+		}
+		return new Folder(name, children.toArray());
+	}
+
+	private static byte[] createBytes(int length) {
+		byte[] bytes= new byte[length];
+		for (int i= 0; i < length; i++)
+			bytes[i]= (byte) (i * 31 + i / 7);
+		return bytes;
+	}
+
+	private static boolean contentsEqual(byte[] bytes1, int chunk1, byte[] bytes2, int chunk2) throws IOException {
+		ContentComparator comparator= new ContentComparator(false);
+		return comparator.contentsEqual(null, new ChunkedInputStream(bytes1, chunk1), null, new ChunkedInputStream(bytes2, chunk2));
+	}
+
+	public void testShortReads() throws IOException {
+		byte[] bytes= createBytes(200000);
+		assertTrue(contentsEqual(bytes, 1, bytes, 1));
+		assertTrue(contentsEqual(bytes, 777, bytes, 65536));
+		assertTrue(contentsEqual(bytes, 65536, bytes, 4093));
+		assertTrue(contentsEqual(new byte[0], 10, new byte[0], 10));
+
+		byte[] changed= (byte[]) bytes.clone();
+		changed[150001]++;
+		assertFalse(contentsEqual(bytes, 777, changed, 65536));
+		assertFalse(contentsEqual(changed, 3, bytes, 100000));
+
+		byte[] shorter= new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, shorter, 0, shorter.length);
+		assertFalse(contentsEqual(bytes, 777, shorter, 65536));
+		assertFalse(contentsEqual(shorter, 65536, bytes, 777));
+	}
+
+	public void testChecksums() throws IOException {
+		ContentComparator comparator= new ContentComparator(true);
+		Object a= new Object();
+		Object b= new Object();
+		Object c= new Object();
+		byte[] bytes= createBytes(1000);
+		byte[] other= createBytes(1001);
+		assertTrue(comparator.mayBeEqual(a, c));
+		assertTrue(comparator.contentsEqual(a, new ByteArrayInputStream(bytes), b, new ByteArrayInputStream(bytes)));
+		assertTrue(comparator.contentsEqual(c, new ByteArrayInputStream(other), c, new ByteArrayInputStream(other)));
+		assertTrue(comparator.mayBeEqual(a, b));
+		assertFalse(comparator.mayBeEqual(a, c));
+	}
+
+	public void testDifferencer() {
+		byte[] bytes= createBytes(100000);
+		byte[] changed= (byte[]) bytes.clone();
+		changed[99999]++;
+		Differencer differencer= new Differencer() {
+			protected Object visit(Object data, int result, Object ancestor, Object left, Object right) {
+				return new Integer(result);
+			}
+		};
+		assertNull(differencer.findDifferences(false, null, null, null, new Content(bytes), new Content(bytes)));
+		assertEquals(new Integer(Differencer.CHANGE), differencer.findDifferences(false, null, null, null, new Content(bytes), new Content(changed)));
+		Object result= differencer.findDifferences(true, null, null, new Content(bytes), new Content(bytes), new Content(changed));
+		assertEquals(new Integer(Differencer.RIGHT | Differencer.CHANGE), result);
+	}
+
+	private static List findDifferences(boolean threeWay, int parallelism, Object ancestor, Object left, Object right) {
+		final List result= new ArrayList();
+		Differencer differencer= new Differencer() {
+			protected Object visit(Object data, int kind, Object a, Object l, Object r) {
+				Object input= l != null ? l : r != null ? r : a;
+				result.add(input.hashCode() + ":" + kind); //$NON-NLS-1$
+				return null;
+			}
+		};
+		differencer.setParallelism(parallelism);
+		differencer.findDifferences(threeWay, null, null, ancestor, left, right);
+		return result;
+	}
+
+	public void testParallelDifferencer() {
+		Object ancestor= createTree("root", 4, new Random(1)); //$NON-NLS-1$
+		Object left= createTree("root", 4, new Random(2)); //$NON-NLS-1$
+		Object right= createTree("root", 4, new Random(3)); //$NON-NLS-1$
+		List twoWay= findDifferences(false, 1, null, left, right);
+		assertFalse(twoWay.isEmpty());
+		assertEquals(twoWay, findDifferences(false, 4, null, left, right));
+		List threeWay= findDifferences(true, 1, ancestor, left, right);
+		assertFalse(threeWay.isEmpty());
+		assertEquals(threeWay, findDifferences(true, 4, ancestor, left, right));
+	}
+}
@@ -10,10 +10,15 @@
  *******************************************************************************/
 package org.eclipse.compare.tests;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 import org.eclipse.compare.internal.DocLineComparator;
 import org.eclipse.compare.internal.core.TextLineLCS;
+import org.eclipse.compare.internal.core.TextLineTable;
+import org.eclipse.compare.internal.core.TextLineTableLCS;
+import org.eclipse.compare.rangedifferencer.AbstractRangeDifferenceFactory;
 import org.eclipse.compare.rangedifferencer.IRangeComparator;
 import org.eclipse.compare.rangedifferencer.RangeDifference;
 import org.eclipse.compare.rangedifferencer.RangeDifferencer;
@@ -32,6 +37,14 @@ public class DiffTest extends TestCase {
 	//private static final String _456= "456"; //$NON-NLS-1$
 	
 	static final String SEPARATOR= System.getProperty("line.separator"); //$NON-NLS-1$
+
+	private static final AbstractRangeDifferenceFactory FACTORY= new AbstractRangeDifferenceFactory() {
+		protected RangeDifference createRangeDifference() {
+			return new RangeDifference(RangeDifference.NOCHANGE) {
+				// nothing to add
+			};
+		}
+	};
 	
 	public DiffTest() {
 		super();
@@ -162,6 +175,83 @@ public class DiffTest extends TestCase {
 		assertTrue(result[1][1].lineNumber() == 1);
 	}
 	
+	public void testLineTableTokenize() {
+		String s= ABC + "\r\n" + DEF + "\r" + ABC + "\n" + "\n" + XYZ; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		TextLineTable table = new TextLineTable();
+		TextLineTable.Lines lines = table.tokenize(s);
+		TextLineLCS.TextLine[] textLines = TextLineLCS.getTextLines(s);
+		assertEquals(textLines.length, lines.getLineCount());
+		assertEquals(4, table.size());
+		assertEquals(lines.getId(0), lines.getId(2));
+		assertEquals(ABC, lines.getText(2));
+		assertEquals("", lines.getText(3)); //$NON-NLS-1$
+		assertEquals(XYZ, lines.getText(4));
+		assertEquals(s.length(), lines.getEnd(4));
+	}
+
+	public void testLineTableLCS() {
+		String[] s1= new String[] {
+				ABC + SEPARATOR + DEF + SEPARATOR + XYZ,
+				ABC + SEPARATOR + DEF + SEPARATOR + _123 + SEPARATOR + XYZ,
+				_123 + SEPARATOR + ABC + SEPARATOR + DEF,
+				ABC + SEPARATOR + ABC + SEPARATOR + DEF + SEPARATOR + ABC + SEPARATOR,
+		};
+		String[] s2= new String[] {
+				ABC + SEPARATOR + DEF + SEPARATOR + _123 + SEPARATOR + XYZ,
+				ABC + SEPARATOR + DEF + SEPARATOR + XYZ,
+				ABC + SEPARATOR + DEF,
+				DEF + SEPARATOR + ABC + SEPARATOR + XYZ + SEPARATOR + ABC,
+		};
+		for (int i = 0; i < s1.length; i++) {
+			TextLineLCS lcs = new TextLineLCS(TextLineLCS.getTextLines(s1[i]), TextLineLCS.getTextLines(s2[i]));
+			lcs.longestCommonSubsequence(SubMonitor.convert(null, 100));
+			TextLineLCS.TextLine[][] expected = lcs.getResult();
+
+			TextLineTable table = new TextLineTable();
+			TextLineTableLCS tableLcs = new TextLineTableLCS(table.tokenize(s1[i]), table.tokenize(s2[i]));
+			tableLcs.longestCommonSubsequence(SubMonitor.convert(null, 100));
+			int[][] result = tableLcs.getResult();
+
+			assertEquals(expected[0].length, result[0].length);
+			assertEquals(expected[1].length, result[1].length);
+			for (int j = 0; j < result[0].length; j++) {
+				assertEquals(expected[0][j].lineNumber(), result[0][j]);
+				assertEquals(expected[1][j].lineNumber(), result[1][j]);
+			}
+		}
+	}
+
+	public void testParallelLCS() {
+		StringBuffer s1= new StringBuffer();
+		StringBuffer s2= new StringBuffer();
+		Random random= new Random(42);
+		for (int i= 0; i < 30000; i++) {
+			int line= random.nextInt(1000);
+			s1.append(line).append(SEPARATOR);
+			if (random.nextInt(4) == 0)
+				s2.append(random.nextInt(1000)).append(SEPARATOR);
+			else
+				s2.append(line).append(SEPARATOR);
+		}
+		TextLineTable table= new TextLineTable();
+		TextLineTable.Lines l1= table.tokenize(s1);
+		TextLineTable.Lines l2= table.tokenize(s2);
+
+		TextLineTableLCS sequential= new TextLineTableLCS(l1, l2);
+		sequential.longestCommonSubsequence(SubMonitor.convert(null, 100));
+		TextLineTableLCS parallel= new TextLineTableLCS(l1, l2);
+		parallel.setParallelism(4);
+		parallel.longestCommonSubsequence(SubMonitor.convert(null, 100));
+
+		int[][] expected= sequential.getResult();
+		int[][] result= parallel.getResult();
+		assertEquals(expected[0].length, result[0].length);
+		for (int i= 0; i < result[0].length; i++) {
+			assertEquals(expected[0][i], result[0][i]);
+			assertEquals(expected[1][i], result[1][i]);
+		}
+	}
+
 	private IRangeComparator toRangeComparator(String s) {
 		IDocument doc1= new Document();
 		doc1.set(s);
@@ -178,6 +268,11 @@ public class DiffTest extends TestCase {
 			assertEquals(oldDifferences[i], differences[i]);
 			
 		}
+		RangeDifference[] histogramDifferences = RangeDifferencer.findDifferences(FACTORY, RangeDifferencer.STRATEGY_HISTOGRAM, null, comp1, comp2);
+		assertTrue(differences.length == histogramDifferences.length);
+		for (int i = 0; i < differences.length; i++) {
+			assertEquals(differences[i], histogramDifferences[i]);
+		}
 		return differences;
 	}
 	
@@ -259,4 +354,43 @@ public class DiffTest extends TestCase {
 		assertTrue(result[0].rightLength() == 0);
 	}
 
+	public void testHistogramRanges() {
+		StringBuffer s1= new StringBuffer();
+		StringBuffer s2= new StringBuffer();
+		for (int i= 0; i < 500; i++) {
+			String line= "line " + i + SEPARATOR; //$NON-NLS-1$
+			s1.append(line);
+			if (i % 50 == 10)
+				s2.append(_123 + SEPARATOR);
+			else if (i % 50 != 20)
+				s2.append(line);
+			// a line inserted in several places does not disturb the unique anchors around it
+			if (i % 100 == 30)
+				s2.append(ABC + SEPARATOR);
+		}
+		IRangeComparator comp1= toRangeComparator(s1.toString());
+		IRangeComparator comp2= toRangeComparator(s2.toString());
+		RangeDifference[] result= RangeDifferencer.findRanges(FACTORY, RangeDifferencer.STRATEGY_HISTOGRAM, null, comp1, comp2);
+
+		int leftEnd= 0;
+		int rightEnd= 0;
+		int changes= 0;
+		for (int i= 0; i < result.length; i++) {
+			assertEquals(leftEnd, result[i].leftStart());
+			assertEquals(rightEnd, result[i].rightStart());
+			if (result[i].kind() == RangeDifference.NOCHANGE) {
+				assertEquals(result[i].leftLength(), result[i].rightLength());
+				for (int j= 0; j < result[i].leftLength(); j++)
+					assertTrue(comp1.rangesEqual(result[i].leftStart() + j, comp2, result[i].rightStart() + j));
+			} else {
+				changes++;
+			}
+			leftEnd= result[i].leftEnd();
+			rightEnd= result[i].rightEnd();
+		}
+		assertEquals(comp1.getRangeCount(), leftEnd);
+		assertEquals(comp2.getRangeCount(), rightEnd);
+		assertEquals(25, changes);
+	}
+
 }
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.compare.IStreamContentAccessor;
+import org.eclipse.compare.ITypedElement;
+import org.eclipse.compare.ResourceNode;
+import org.eclipse.compare.ZipFileStructureCreator;
+import org.eclipse.compare.internal.Utilities;
+import org.eclipse.compare.structuremergeviewer.Differencer;
+import org.eclipse.compare.structuremergeviewer.IStructureComparator;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+
+public class ZipFileStructureCreatorTest extends WorkspaceTest {
+
+	public ZipFileStructureCreatorTest() {
+		super();
+	}
+
+	public ZipFileStructureCreatorTest(String name) {
+		super(name);
+	}
+
+	private static byte[] createZip(String[] names, String[] contents) throws IOException {
+		ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+		ZipOutputStream zip= new ZipOutputStream(bytes);
+		for (int i= 0; i < names.length; i++) {
+			zip.putNextEntry(new ZipEntry(names[i]));
+			zip.write(contents[i].getBytes());
+			zip.closeEntry();
+		}
+		zip.close();
+		return bytes.toByteArray();
+	}
+
+	private static List findDifferences(IStructureComparator left, IStructureComparator right) {
+		final List result= new ArrayList();
+		Differencer differencer= new Differencer() {
+			protected Object visit(Object data, int kind, Object a, Object l, Object r) {
+				ITypedElement input= (ITypedElement) (l != null ? l : r);
+				result.add(input.getName() + ":" + kind); //$NON-NLS-1$
+				return null;
+			}
+		};
+		differencer.findDifferences(false, null, null, null, left, right);
+		return result;
+	}
+
+	private static Object getChild(IStructureComparator parent, String name) {
+		Object[] children= parent.getChildren();
+		for (int i= 0; i < children.length; i++) {
+			if (((ITypedElement) children[i]).getName().equals(name))
+				return children[i];
+		}
+		return null;
+	}
+
+	public void testCompareArchives() throws CoreException, IOException {
+		IProject project= createProject("ZipFileStructureCreatorTest", new String[0]); //$NON-NLS-1$
+		byte[] zip1= createZip(new String[] { "dir/same.txt", "dir/changed.txt" }, //$NON-NLS-1$ //$NON-NLS-2$
+				new String[] { "same", "old" }); //$NON-NLS-1$ //$NON-NLS-2$
+		final byte[] zip2= createZip(new String[] { "dir/same.txt", "dir/changed.txt", "added.txt" }, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				new String[] { "same", "new", "added" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		IFile file1= project.getFile("1.zip"); //$NON-NLS-1$
+		file1.create(new ByteArrayInputStream(zip1), true, null);
+		IFile file2= project.getFile("2.zip"); //$NON-NLS-1$
+		file2.create(new ByteArrayInputStream(zip2), true, null);
+
+		ZipFileStructureCreator creator= new ZipFileStructureCreator("zip"); //$NON-NLS-1$
+		// local archives are indexed, the entries are inflated on demand
+		IStructureComparator structure1= creator.getStructure(new ResourceNode(file1));
+		IStructureComparator structure2= creator.getStructure(new ResourceNode(file2));
+		List differences= findDifferences(structure1, structure2);
+		assertEquals(4, differences.size());
+		assertTrue(differences.contains("dir:" + Differencer.CHANGE)); //$NON-NLS-1$
+		assertTrue(differences.contains("changed.txt:" + Differencer.CHANGE)); //$NON-NLS-1$
+		assertTrue(differences.contains("added.txt:" + Differencer.ADDITION)); //$NON-NLS-1$
+
+		IStructureComparator dir= (IStructureComparator) getChild(structure2, "dir"); //$NON-NLS-1$
+		InputStream is= ((IStreamContentAccessor) getChild(dir, "changed.txt")).getContents(); //$NON-NLS-1$
+		assertEquals("new", new String(Utilities.readBytes(is))); //$NON-NLS-1$
+		assertEquals("new", creator.getContents(getChild(dir, "changed.txt"), false)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// other inputs are read from their streams
+		IStructureComparator streamed= creator.getStructure(new IStreamContentAccessor() {
+			public InputStream getContents() {
+				return new ByteArrayInputStream(zip2);
+			}
+		});
+		assertEquals(differences, findDifferences(structure1, streamed));
+		assertTrue(findDifferences(structure2, streamed).isEmpty());
+	}
+}
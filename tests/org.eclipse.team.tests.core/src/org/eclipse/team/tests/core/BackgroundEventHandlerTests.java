@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.team.internal.core.BackgroundEventHandler;
+
+/**
+ * Tests the coalescing of queued resource events and the adaptation of the
+ * dispatch delay of the background event handler.
+ */
+public class BackgroundEventHandlerTests extends TeamTest {
+
+	private static final int FILES = 70;
+	private static final int COALESCE_WINDOW = 64;
+	private static final long SHORT_DELAY = 50;
+	private static final long LONG_DELAY = 100;
+	private static final long MAX_DISPATCH_DELAY = 30000;
+
+	private static final int BLOCK = 1;
+	private static final int CHANGE = 2;
+	private static final int REFRESH = 3;
+	private static final int WORK = 4;
+
+	/*
+	 * A handler that records the events it processes. An event of type BLOCK
+	 * blocks the handler until it is released so that events can be queued
+	 * while the handler is busy.
+	 */
+	private static class TestHandler extends BackgroundEventHandler {
+		private final Object gate = new Object();
+		private final List processed = new ArrayList();
+		private boolean blocked;
+		private boolean released;
+		private long eventTime;
+		private long dispatchTime;
+		private int dispatches;
+
+		TestHandler() {
+			super("Background Event Handler Tests", "Errors in Background Event Handler Tests");
+		}
+		protected boolean isCoalescable(ResourceEvent event) {
+			return true;
+		}
+		protected void processEvent(Event event, IProgressMonitor monitor) {
+			if (event.getType() == BLOCK) {
+				synchronized (gate) {
+					blocked = true;
+					gate.notifyAll();
+					while (!released) {
+						try {
+							gate.wait();
+						} catch (InterruptedException e) {
+							// keep waiting
+						}
+					}
+				}
+			} else if (event.getType() == WORK) {
+				sleep(eventTime);
+			}
+			synchronized (processed) {
+				processed.add(event);
+			}
+		}
+		protected boolean doDispatchEvents(IProgressMonitor monitor) {
+			sleep(dispatchTime);
+			synchronized (processed) {
+				dispatches++;
+			}
+			return true;
+		}
+		protected long getShortDispatchDelay() {
+			return SHORT_DELAY;
+		}
+		protected long getLongDispatchDelay() {
+			return LONG_DELAY;
+		}
+		void queue(Event event) {
+			queueEvent(event, false);
+		}
+		void queue(IResource resource, int type, int depth) {
+			queue(new ResourceEvent(resource, type, depth));
+		}
+		void block() throws InterruptedException {
+			queue(new Event(BLOCK));
+			synchronized (gate) {
+				long start = System.currentTimeMillis();
+				while (!blocked) {
+					assertTrue("The handler was not blocked", System.currentTimeMillis() - start < 60000);
+					gate.wait(100);
+				}
+			}
+		}
+		void release() {
+			synchronized (gate) {
+				released = true;
+				gate.notifyAll();
+			}
+		}
+		/*
+		 * Return the processed events other than the one that blocked the handler.
+		 */
+		List getProcessed() {
+			List result = new ArrayList();
+			synchronized (processed) {
+				for (int i = 0; i < processed.size(); i++) {
+					Event event = (Event) processed.get(i);
+					if (event.getType() != BLOCK)
+						result.add(event);
+				}
+			}
+			return result;
+		}
+		int getDispatches() {
+			synchronized (processed) {
+				return dispatches;
+			}
+		}
+		long dispatchDelay() {
+			return getDispatchDelay();
+		}
+		long estimatedQueueTime() {
+			return getEstimatedQueueTime();
+		}
+		private static void sleep(long millis) {
+			if (millis == 0)
+				return;
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private IProject project;
+	private IFolder folder;
+	private IFile[] files;
+	private TestHandler handler;
+
+	public BackgroundEventHandlerTests() {
+		super();
+	}
+
+	public BackgroundEventHandlerTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(BackgroundEventHandlerTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		String[] hierarchy = new String[FILES + 1];
+		hierarchy[0] = "folder/";
+		for (int i = 0; i < FILES; i++) {
+			hierarchy[i + 1] = "folder/file" + i + ".txt";
+		}
+		project = createProject(hierarchy);
+		folder = project.getFolder("folder");
+		files = new IFile[FILES];
+		for (int i = 0; i < FILES; i++) {
+			files[i] = folder.getFile("file" + i + ".txt");
+		}
+		handler = new TestHandler();
+	}
+
+	protected void tearDown() throws Exception {
+		handler.shutdown();
+		handler.release();
+		project.delete(true, null);
+		super.tearDown();
+	}
+
+	private void waitForHandler() throws InterruptedException {
+		Job job = handler.getEventHandlerJob();
+		long start = System.currentTimeMillis();
+		while (job.getState() != Job.NONE || handler.getQueueLength() > 0) {
+			assertTrue("The event handler did not finish", System.currentTimeMillis() - start < 60000);
+			if (job.getState() == Job.NONE)
+				Thread.sleep(10);
+			else
+				job.join();
+		}
+	}
+
+	public void testCoalesceSameResource() throws InterruptedException {
+		handler.block();
+		BackgroundEventHandler.ResourceEvent shallow = new BackgroundEventHandler.ResourceEvent(files[0], CHANGE, IResource.DEPTH_ZERO);
+		handler.queue(shallow);
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(1, handler.getQueueLength());
+		assertEquals(1, handler.getCoalescedEventCount());
+
+		// the deeper event replaces the queued one at its position
+		BackgroundEventHandler.ResourceEvent deep = new BackgroundEventHandler.ResourceEvent(files[0], CHANGE, IResource.DEPTH_INFINITE);
+		handler.queue(deep);
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ONE);
+		assertEquals(1, handler.getQueueLength());
+		assertEquals(3, handler.getCoalescedEventCount());
+
+		// events on other resources or of other types are kept
+		BackgroundEventHandler.ResourceEvent other = new BackgroundEventHandler.ResourceEvent(files[1], CHANGE, IResource.DEPTH_ZERO);
+		handler.queue(other);
+		BackgroundEventHandler.ResourceEvent refresh = new BackgroundEventHandler.ResourceEvent(files[0], REFRESH, IResource.DEPTH_ZERO);
+		handler.queue(refresh);
+		assertEquals(3, handler.getQueueLength());
+		assertEquals(3, handler.getCoalescedEventCount());
+
+		handler.release();
+		waitForHandler();
+		List processed = handler.getProcessed();
+		assertEquals(3, processed.size());
+		assertSame(deep, processed.get(0));
+		assertSame(other, processed.get(1));
+		assertSame(refresh, processed.get(2));
+	}
+
+	public void testCoalesceStopsAtOverlappingEvent() throws InterruptedException {
+		handler.block();
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		handler.queue(folder, REFRESH, IResource.DEPTH_INFINITE);
+		// the change must be processed again after the refresh of its folder
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(3, handler.getQueueLength());
+
+		// a refresh of another file does not overlap
+		handler.queue(files[1], CHANGE, IResource.DEPTH_ZERO);
+		handler.queue(files[2], REFRESH, IResource.DEPTH_ZERO);
+		handler.queue(files[1], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(5, handler.getQueueLength());
+
+		// an event that is not a resource event is not crossed
+		handler.queue(new BackgroundEventHandler.Event(WORK));
+		handler.queue(files[1], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(7, handler.getQueueLength());
+		assertEquals(1, handler.getCoalescedEventCount());
+
+		handler.release();
+		waitForHandler();
+		assertEquals(7, handler.getProcessed().size());
+	}
+
+	public void testCoalesceWindow() throws InterruptedException {
+		handler.block();
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		for (int i = 1; i < COALESCE_WINDOW; i++) {
+			handler.queue(files[i], CHANGE, IResource.DEPTH_ZERO);
+		}
+		// the first event is the last one in the window
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(COALESCE_WINDOW, handler.getQueueLength());
+		assertEquals(1, handler.getCoalescedEventCount());
+
+		// now it is outside of the window
+		handler.queue(files[COALESCE_WINDOW], CHANGE, IResource.DEPTH_ZERO);
+		handler.queue(files[0], CHANGE, IResource.DEPTH_ZERO);
+		assertEquals(COALESCE_WINDOW + 2, handler.getQueueLength());
+		assertEquals(1, handler.getCoalescedEventCount());
+
+		handler.release();
+		waitForHandler();
+		assertEquals(COALESCE_WINDOW + 2, handler.getProcessed().size());
+	}
+
+	public void testDispatchDelayAdapts() throws InterruptedException {
+		assertEquals(SHORT_DELAY, handler.dispatchDelay());
+
+		// dispatches that take long are spread out
+		handler.eventTime = 5;
+		handler.dispatchTime = 100;
+		for (int i = 0; i < 200; i++) {
+			handler.queue(new BackgroundEventHandler.Event(WORK));
+		}
+		handler.block();
+		assertTrue("Too few dispatches: " + handler.getDispatches(), handler.getDispatches() >= 3);
+		long delay = handler.dispatchDelay();
+		assertTrue("The delay did not adapt to the dispatch time: " + delay, delay > LONG_DELAY);
+		assertTrue(handler.getAverageEventTime() > 0);
+
+		// a backlog is dispatched in a limited number of batches
+		for (int i = 0; i < 10000; i++) {
+			handler.queue(new BackgroundEventHandler.Event(WORK));
+		}
+		long backlogDelay = handler.dispatchDelay();
+		assertTrue("The delay did not adapt to the backlog: " + backlogDelay, backlogDelay > delay);
+		assertTrue(backlogDelay <= MAX_DISPATCH_DELAY);
+		assertTrue(backlogDelay >= handler.estimatedQueueTime() / 10);
+
+		// but the delay is bounded
+		for (int i = 0; i < 100000; i++) {
+			handler.queue(new BackgroundEventHandler.Event(WORK));
+		}
+		assertEquals(MAX_DISPATCH_DELAY, handler.dispatchDelay());
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.*;
+import org.eclipse.team.core.diff.*;
+import org.eclipse.team.core.diff.provider.*;
+
+/**
+ * Tests the counts of the diffs below a path and the descendant conflicts
+ * property that a diff tree maintains as diffs are added, replaced and
+ * removed.
+ */
+public class DiffTreeTests extends TestCase {
+
+	private static final IPath PROJECT = new Path("/p");
+	private static final IPath FOLDER1 = PROJECT.append("f1");
+	private static final IPath FOLDER2 = PROJECT.append("f2");
+	private static final IPath FILE_A = FOLDER1.append("a");
+	private static final IPath FILE_B = FOLDER1.append("b");
+	private static final IPath FILE_C = FOLDER1.append("c");
+	private static final IPath FILE_D = FOLDER2.append("d");
+
+	/*
+	 * Records the paths whose descendant conflicts property changed and the
+	 * diff change events.
+	 */
+	private static class Listener implements IDiffChangeListener {
+		final Set conflictPropertyChanges = new HashSet();
+		final List events = new ArrayList();
+		public void diffsChanged(IDiffChangeEvent event, IProgressMonitor monitor) {
+			events.add(event);
+		}
+		public void propertyChanged(IDiffTree tree, int property, IPath[] paths) {
+			if (property == IDiffTree.P_HAS_DESCENDANT_CONFLICTS)
+				conflictPropertyChanges.addAll(Arrays.asList(paths));
+		}
+		void reset() {
+			conflictPropertyChanges.clear();
+			events.clear();
+		}
+	}
+
+	private DiffTree tree;
+	private Listener listener;
+
+	public DiffTreeTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(DiffTreeTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		tree = new DiffTree();
+		listener = new Listener();
+		tree.addDiffChangeListener(listener);
+	}
+
+	private static IDiff outgoing(IPath path, int kind) {
+		return new ThreeWayDiff(new TwoWayDiff(path, kind, 0), null);
+	}
+
+	private static IDiff incoming(IPath path, int kind) {
+		return new ThreeWayDiff(null, new TwoWayDiff(path, kind, 0));
+	}
+
+	private static IDiff conflict(IPath path) {
+		return new ThreeWayDiff(new TwoWayDiff(path, IDiff.CHANGE, 0), new TwoWayDiff(path, IDiff.CHANGE, 0));
+	}
+
+	private long countAll(IPath path) {
+		return tree.countFor(path, 0, 0);
+	}
+
+	private long countDirection(IPath path, int direction) {
+		return tree.countFor(path, direction, IThreeWayDiff.DIRECTION_MASK);
+	}
+
+	private boolean hasConflicts(IPath path) {
+		return tree.getProperty(path, IDiffTree.P_HAS_DESCENDANT_CONFLICTS);
+	}
+
+	private Set asSet(IPath[] paths) {
+		return new HashSet(Arrays.asList(paths));
+	}
+
+	public void testCountsAfterAddReplaceRemove() {
+		tree.add(outgoing(FILE_A, IDiff.ADD));
+		tree.add(outgoing(FILE_B, IDiff.CHANGE));
+		tree.add(incoming(FILE_D, IDiff.CHANGE));
+		assertEquals(3, countAll(Path.ROOT));
+		assertEquals(3, countAll(PROJECT));
+		assertEquals(2, countAll(FOLDER1));
+		assertEquals(1, countAll(FOLDER2));
+		assertEquals(1, countAll(FILE_A));
+		assertEquals(0, countAll(FILE_C));
+		assertEquals(0, countAll(new Path("/other")));
+		assertEquals(2, countDirection(PROJECT, IThreeWayDiff.OUTGOING));
+		assertEquals(1, countDirection(PROJECT, IThreeWayDiff.INCOMING));
+		assertEquals(0, countDirection(FOLDER2, IThreeWayDiff.OUTGOING));
+		// a mask of 0 matches the state exactly
+		assertEquals(1, tree.countFor(FOLDER1, IThreeWayDiff.OUTGOING | IDiff.ADD, 0));
+		// the subtree counts agree with the counts of the whole tree
+		assertEquals(tree.countFor(IThreeWayDiff.OUTGOING, IThreeWayDiff.DIRECTION_MASK), countDirection(Path.ROOT, IThreeWayDiff.OUTGOING));
+
+		tree.add(incoming(FILE_A, IDiff.REMOVE));
+		assertEquals(3, countAll(PROJECT));
+		assertEquals(2, countAll(FOLDER1));
+		assertEquals(1, countDirection(FOLDER1, IThreeWayDiff.OUTGOING));
+		assertEquals(1, countDirection(FOLDER1, IThreeWayDiff.INCOMING));
+		assertEquals(0, tree.countFor(FOLDER1, IThreeWayDiff.OUTGOING | IDiff.ADD, 0));
+		assertEquals(1, tree.countFor(FILE_A, IThreeWayDiff.INCOMING | IDiff.REMOVE, 0));
+
+		tree.remove(FILE_B);
+		assertEquals(2, countAll(PROJECT));
+		assertEquals(1, countAll(FOLDER1));
+		assertEquals(0, countAll(FILE_B));
+		assertEquals(0, countDirection(PROJECT, IThreeWayDiff.OUTGOING));
+
+		// removing a path without a diff changes nothing
+		tree.remove(FILE_C);
+		assertEquals(2, countAll(PROJECT));
+
+		tree.remove(FILE_A);
+		tree.remove(FILE_D);
+		assertEquals(0, countAll(Path.ROOT));
+		assertEquals(0, countAll(PROJECT));
+		assertEquals(0, countAll(FOLDER1));
+		assertTrue(tree.isEmpty());
+
+		tree.add(outgoing(FILE_C, IDiff.ADD));
+		tree.clear();
+		assertEquals(0, countAll(Path.ROOT));
+		assertEquals(0, countAll(FOLDER1));
+	}
+
+	public void testConflictReplacedByNonConflict() {
+		tree.add(conflict(FILE_A));
+		tree.add(outgoing(FILE_D, IDiff.ADD));
+		assertTrue(hasConflicts(FILE_A));
+		assertTrue(hasConflicts(FOLDER1));
+		assertTrue(hasConflicts(PROJECT));
+		assertFalse(hasConflicts(FILE_D));
+		assertFalse(hasConflicts(FOLDER2));
+		assertEquals(1, countDirection(PROJECT, IThreeWayDiff.CONFLICTING));
+
+		tree.add(outgoing(FILE_A, IDiff.CHANGE));
+		assertEquals(0, countDirection(PROJECT, IThreeWayDiff.CONFLICTING));
+		assertFalse(hasConflicts(FILE_A));
+		assertFalse(hasConflicts(FOLDER1));
+		assertFalse(hasConflicts(PROJECT));
+
+		// and back again
+		tree.add(conflict(FILE_A));
+		assertTrue(hasConflicts(FILE_A));
+		assertTrue(hasConflicts(PROJECT));
+	}
+
+	public void testLastConflictBelowFolderRemoved() {
+		tree.add(conflict(FILE_A));
+		tree.add(conflict(FILE_B));
+		tree.add(outgoing(FILE_C, IDiff.ADD));
+		tree.add(conflict(FILE_D));
+
+		tree.remove(FILE_A);
+		assertTrue(hasConflicts(FOLDER1));
+		assertTrue(hasConflicts(PROJECT));
+
+		tree.remove(FILE_B);
+		// the folder still has a diff below it but no conflicts
+		assertEquals(1, countAll(FOLDER1));
+		assertFalse(hasConflicts(FOLDER1));
+		assertFalse(hasConflicts(FILE_C));
+		assertTrue(hasConflicts(PROJECT));
+
+		tree.remove(FILE_D);
+		assertFalse(hasConflicts(FOLDER2));
+		assertFalse(hasConflicts(PROJECT));
+	}
+
+	public void testConflictPropertyChangeEvents() {
+		tree.add(conflict(FILE_A));
+		assertEquals(asSet(new IPath[] { FILE_A, FOLDER1, PROJECT }), listener.conflictPropertyChanges);
+		assertEquals(1, listener.events.size());
+		assertEquals(1, ((IDiffChangeEvent) listener.events.get(0)).getAdditions().length);
+
+		// the ancestors already have the property
+		listener.reset();
+		tree.add(conflict(FILE_B));
+		assertEquals(asSet(new IPath[] { FILE_B }), listener.conflictPropertyChanges);
+
+		// a diff that is not a conflict does not change the property
+		listener.reset();
+		tree.add(outgoing(FILE_D, IDiff.ADD));
+		assertTrue(listener.conflictPropertyChanges.isEmpty());
+		assertEquals(1, listener.events.size());
+
+		listener.reset();
+		tree.remove(FILE_A);
+		assertEquals(asSet(new IPath[] { FILE_A }), listener.conflictPropertyChanges);
+		assertEquals(1, ((IDiffChangeEvent) listener.events.get(0)).getRemovals().length);
+
+		listener.reset();
+		tree.add(incoming(FILE_B, IDiff.CHANGE));
+		assertEquals(asSet(new IPath[] { FILE_B, FOLDER1, PROJECT }), listener.conflictPropertyChanges);
+		assertEquals(1, ((IDiffChangeEvent) listener.events.get(0)).getChanges().length);
+
+		// changes made in one batch are reported once
+		listener.reset();
+		try {
+			tree.beginInput();
+			tree.add(conflict(FILE_C));
+			tree.add(conflict(FILE_D));
+		} finally {
+			tree.endInput(null);
+		}
+		assertEquals(asSet(new IPath[] { FILE_C, FOLDER1, FILE_D, FOLDER2, PROJECT }), listener.conflictPropertyChanges);
+		assertEquals(1, listener.events.size());
+		assertEquals(1, ((IDiffChangeEvent) listener.events.get(0)).getAdditions().length);
+		assertEquals(1, ((IDiffChangeEvent) listener.events.get(0)).getChanges().length);
+	}
+}
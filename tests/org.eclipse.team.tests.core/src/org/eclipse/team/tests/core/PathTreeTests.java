@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.team.internal.core.mapping.PathTree;
+
+/**
+ * Compares a path tree with a simple model of the tree after random changes.
+ */
+public class PathTreeTests extends TestCase {
+
+	private static final String[] NAMES = new String[] { "a", "b", "c", "d" };
+	private static final int MAX_DEPTH = 3;
+	private static final int[] PROPERTIES = new int[] { 1, 2 };
+
+	/*
+	 * The expected state of a path tree. A path has a node while it has an
+	 * object or a descendant with an object, the properties of a path are
+	 * lost when its node is.
+	 */
+	private static class Model {
+		final Map objects = new HashMap(); // IPath > Object
+		final Map flags = new HashMap(); // IPath > Integer
+
+		Object put(IPath path, Object object) {
+			return objects.put(path, object);
+		}
+
+		Object remove(IPath path) {
+			Object previous = objects.remove(path);
+			for (Iterator iter = flags.keySet().iterator(); iter.hasNext();) {
+				if (!hasNode((IPath) iter.next()))
+					iter.remove();
+			}
+			return previous;
+		}
+
+		void clear() {
+			objects.clear();
+			flags.clear();
+		}
+
+		boolean hasNode(IPath path) {
+			for (Iterator iter = objects.keySet().iterator(); iter.hasNext();) {
+				if (path.isPrefixOf((IPath) iter.next()))
+					return true;
+			}
+			return false;
+		}
+
+		Set getChildren(IPath path) {
+			Set children = new HashSet();
+			for (Iterator iter = objects.keySet().iterator(); iter.hasNext();) {
+				IPath descendant = (IPath) iter.next();
+				if (descendant.segmentCount() > path.segmentCount() && path.isPrefixOf(descendant))
+					children.add(descendant.uptoSegment(path.segmentCount() + 1));
+			}
+			return children;
+		}
+
+		boolean getProperty(IPath path, int property) {
+			if (path.segmentCount() == 0)
+				return false;
+			Integer value = (Integer) flags.get(path);
+			return value != null && (value.intValue() & property) != 0;
+		}
+
+		boolean setProperty(IPath path, int property, boolean value) {
+			if (!hasNode(path) || getProperty(path, property) == value)
+				return false;
+			Integer old = (Integer) flags.get(path);
+			int bits = old == null ? 0 : old.intValue();
+			flags.put(path, new Integer(value ? bits | property : bits & ~property));
+			return true;
+		}
+
+		/*
+		 * The property is set on the path and its ancestors, it is only cleared
+		 * from a path if no descendant with an object has it.
+		 */
+		Set setPropogatedProperty(IPath path, int property, boolean value) {
+			Set changed = new HashSet();
+			while (path.segmentCount() > 0 && hasNode(path) && getProperty(path, property) != value) {
+				if (!value && descendantHasProperty(path, property))
+					break;
+				setProperty(path, property, value);
+				changed.add(path);
+				path = path.removeLastSegments(1);
+			}
+			return changed;
+		}
+
+		private boolean descendantHasProperty(IPath path, int property) {
+			for (Iterator iter = objects.keySet().iterator(); iter.hasNext();) {
+				IPath descendant = (IPath) iter.next();
+				if (descendant.segmentCount() > path.segmentCount() && path.isPrefixOf(descendant) && getProperty(descendant, property))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private Random random;
+
+	public PathTreeTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(PathTreeTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		random = new Random(17);
+	}
+
+	private IPath randomPath() {
+		IPath path = Path.ROOT;
+		for (int depth = 1 + random.nextInt(MAX_DEPTH); depth > 0; depth--) {
+			path = path.append(NAMES[random.nextInt(NAMES.length)]);
+		}
+		return path;
+	}
+
+	private Set asSet(Object[] array) {
+		return new HashSet(Arrays.asList(array));
+	}
+
+	public void testRandomChanges() {
+		for (int round = 0; round < 50; round++) {
+			PathTree tree = new PathTree();
+			Model model = new Model();
+			Set paths = new HashSet();
+			paths.add(Path.ROOT);
+			for (int operation = 0; operation < 300; operation++) {
+				IPath path = randomPath();
+				paths.add(path);
+				String description = "Round " + round + ", operation " + operation + " on " + path;
+				int kind = random.nextInt(20);
+				if (kind < 8) {
+					Object object = new Integer(operation);
+					assertEquals(description, model.put(path, object), tree.put(path, object));
+				} else if (kind < 13) {
+					assertEquals(description, model.remove(path), tree.remove(path));
+				} else if (kind < 17) {
+					int property = PROPERTIES[random.nextInt(PROPERTIES.length)];
+					boolean value = random.nextBoolean();
+					assertEquals(description, model.setPropogatedProperty(path, property, value), asSet(tree.setPropogatedProperty(path, property, value)));
+				} else if (kind < 19) {
+					int property = PROPERTIES[random.nextInt(PROPERTIES.length)];
+					boolean value = random.nextBoolean();
+					assertEquals(description, model.setProperty(path, property, value), tree.setProperty(path, property, value));
+				} else if (random.nextInt(10) == 0) {
+					model.clear();
+					tree.clear();
+				}
+				assertSameTree(description, model, tree, paths);
+			}
+		}
+	}
+
+	public void testChildrenSnapshot() {
+		PathTree tree = new PathTree();
+		IPath parent = new Path("/a");
+		tree.put(parent.append("b"), "b");
+		IPath[] children = tree.getChildrenNoCopy(parent);
+		assertSame(children, tree.getChildrenNoCopy(parent));
+		tree.put(parent.append("c"), "c");
+		assertEquals(asSet(new IPath[] { parent.append("b") }), asSet(children));
+		assertEquals(asSet(new IPath[] { parent.append("b"), parent.append("c") }), asSet(tree.getChildrenNoCopy(parent)));
+		IPath[] copy = tree.getChildren(parent);
+		copy[0] = null;
+		assertEquals(2, asSet(tree.getChildren(parent)).size());
+	}
+
+	public void testCounts() {
+		PathTree tree = new PathTree();
+		IPath folder = new Path("/a");
+		IPath first = folder.append("b");
+		IPath second = folder.append("c").append("d");
+		tree.put(first, "b");
+		tree.put(second, "d");
+		tree.addToCount(first, 0x101, 1);
+		tree.addToCount(second, 0x101, 1);
+		tree.addToCount(second, 0x202, 1);
+		assertEquals(1, tree.getCount(first, 0x101, 0));
+		assertEquals(0, tree.getCount(first, 0x202, 0));
+		assertEquals(2, tree.getCount(folder, 0x101, 0));
+		assertEquals(1, tree.getCount(folder.append("c"), 0x200, 0x300));
+		assertEquals(3, tree.getTotalCount(folder));
+		assertEquals(3, tree.getTotalCount(Path.ROOT));
+
+		// the counts of a path are removed from its ancestors
+		tree.addToCount(second, 0x101, -1);
+		tree.addToCount(second, 0x202, -1);
+		tree.remove(second);
+		assertEquals(0, tree.getTotalCount(second));
+		assertEquals(0, tree.getTotalCount(folder.append("c")));
+		assertEquals(1, tree.getCount(folder, 0x100, 0x300));
+		assertEquals(1, tree.getTotalCount(Path.ROOT));
+		tree.clear();
+		assertEquals(0, tree.getTotalCount(Path.ROOT));
+	}
+
+	private void assertSameTree(String description, Model model, PathTree tree, Set paths) {
+		assertEquals(description, model.objects.keySet(), asSet(tree.getPaths()));
+		assertEquals(description, new HashSet(model.objects.values()), new HashSet(tree.values()));
+		assertEquals(description, model.objects.size(), tree.size());
+		assertEquals(description, model.objects.isEmpty(), tree.isEmpty());
+		for (Iterator iter = paths.iterator(); iter.hasNext();) {
+			IPath path = (IPath) iter.next();
+			String message = description + ": " + path;
+			assertEquals(message, model.objects.get(path), tree.get(path));
+			Set children = model.getChildren(path);
+			assertEquals(message, children, asSet(tree.getChildren(path)));
+			assertEquals(message, children, asSet(tree.getChildrenNoCopy(path)));
+			assertEquals(message, !children.isEmpty(), tree.hasChildren(path));
+			for (int i = 0; i < PROPERTIES.length; i++) {
+				assertEquals(message, model.getProperty(path, PROPERTIES[i]), tree.getProperty(path, PROPERTIES[i]));
+			}
+		}
+	}
+}
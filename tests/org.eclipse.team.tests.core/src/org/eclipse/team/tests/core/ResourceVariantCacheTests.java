@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.team.core.TeamException;
+import org.eclipse.team.core.variants.CachedResourceVariant;
+import org.eclipse.team.internal.core.ResourceVariantCache;
+import org.eclipse.team.internal.core.ResourceVariantCacheEntry;
+import org.eclipse.team.internal.core.TeamPlugin;
+
+public class ResourceVariantCacheTests extends TestCase {
+
+	private static final String CACHE_ID = "org.eclipse.team.tests.core.cache";
+
+	/*
+	 * A file variant whose contents are counted each time they are fetched
+	 */
+	private static class TestVariant extends CachedResourceVariant {
+		private final String path;
+		private final byte[] contents;
+		int fetches;
+
+		TestVariant(String path, String contents) {
+			this.path = path;
+			this.contents = contents.getBytes();
+		}
+		protected void fetchContents(IProgressMonitor monitor) throws TeamException {
+			fetches++;
+			setContents(new ByteArrayInputStream(contents), monitor);
+		}
+		protected String getCachePath() {
+			return path;
+		}
+		protected String getCacheId() {
+			return CACHE_ID;
+		}
+		public String getName() {
+			return path;
+		}
+		public boolean isContainer() {
+			return false;
+		}
+		public String getContentIdentifier() {
+			return "1.1";
+		}
+		public byte[] asBytes() {
+			return getContentIdentifier().getBytes();
+		}
+	}
+
+	/*
+	 * Contents that are only delivered once the contents of the other entry
+	 * are being read as well, so both entries must be written at the same time.
+	 */
+	private static class Rendezvous {
+		private int arrived;
+		synchronized boolean arrive() throws InterruptedException {
+			arrived++;
+			notifyAll();
+			long end = System.currentTimeMillis() + 10000;
+			while (arrived < 2 && System.currentTimeMillis() < end) {
+				wait(end - System.currentTimeMillis());
+			}
+			return arrived >= 2;
+		}
+	}
+
+	private static class RendezvousStream extends InputStream {
+		private final Rendezvous rendezvous;
+		private final InputStream contents;
+		private boolean started;
+		boolean overlapped;
+		RendezvousStream(Rendezvous rendezvous, String contents) {
+			this.rendezvous = rendezvous;
+			this.contents = new ByteArrayInputStream(contents.getBytes());
+		}
+		public int read() throws IOException {
+			if (!started) {
+				started = true;
+				try {
+					overlapped = rendezvous.arrive();
+				} catch (InterruptedException e) {
+					throw new IOException(e.getMessage());
+				}
+			}
+			return contents.read();
+		}
+	}
+
+	public ResourceVariantCacheTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ResourceVariantCacheTests.class);
+	}
+
+	protected void tearDown() throws Exception {
+		ResourceVariantCache.disableCache(CACHE_ID);
+		super.tearDown();
+	}
+
+	private String getContents(TestVariant variant) throws CoreException, IOException {
+		InputStream in = variant.getStorage(null).getContents();
+		try {
+			StringBuffer buffer = new StringBuffer();
+			int c;
+			while ((c = in.read()) != -1) {
+				buffer.append((char) c);
+			}
+			return buffer.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	public void testEviction() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		cache.setMaxSize(10);
+		TestVariant first = new TestVariant("repo/file1 1.1", "first");
+		TestVariant second = new TestVariant("repo/file2 1.1", "second");
+		assertEquals("first", getContents(first));
+		assertEquals("second", getContents(second));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(6, cache.getSize());
+		assertFalse(first.isContentsCached());
+		assertTrue(second.isContentsCached());
+		assertEquals("first", getContents(first));
+		assertEquals(2, first.fetches);
+		assertEquals(1, second.fetches);
+		assertFalse(second.isContentsCached());
+	}
+
+	public void testEvictedEntry() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		cache.setMaxSize(10);
+		TestVariant first = new TestVariant("repo/file1 1.1", "first");
+		assertEquals("first", getContents(first));
+		ResourceVariantCacheEntry entry = cache.getCacheEntry("repo/file1 1.1");
+		assertEquals("second", getContents(new TestVariant("repo/file2 1.1", "second")));
+		assertNull(cache.getCacheEntry("repo/file1 1.1"));
+		assertNull(entry.getContents());
+	}
+
+	public void testDeletedContentsFetchedAgain() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		TestVariant variant = new TestVariant("repo/file1 1.1", "contents");
+		assertEquals("contents", getContents(variant));
+		IStorage storage = variant.getStorage(null);
+		File[] files = TeamPlugin.getPlugin().getStateLocation().append(".cache").append(CACHE_ID).toFile().listFiles();
+		for (int i = 0; i < files.length; i++) {
+			assertTrue(files[i].delete());
+		}
+		try {
+			storage.getContents();
+			fail("The contents of the deleted file were returned");
+		} catch (TeamException e) {
+			// expected
+		}
+		assertFalse(variant.isContentsCached());
+		assertEquals("contents", getContents(variant));
+		assertEquals(2, variant.fetches);
+	}
+
+	public void testContentsKeptBetweenSessions() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		TestVariant variant = new TestVariant("repo/file1 1.1", "contents");
+		assertEquals("contents", getContents(variant));
+		ResourceVariantCache.closeCache(CACHE_ID);
+		assertFalse(ResourceVariantCache.isCachingEnabled(CACHE_ID));
+
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		assertEquals(8, cache.getSize());
+		TestVariant restored = new TestVariant("repo/file1 1.1", "changed");
+		assertTrue(restored.isContentsCached());
+		assertEquals("contents", getContents(restored));
+		assertEquals(0, restored.fetches);
+		assertTrue(cache.getHitCount() > 0);
+	}
+
+	public void testSharedContents() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		TestVariant onBranch = new TestVariant("repo/file1 1.1.2.1", "same");
+		TestVariant onTrunk = new TestVariant("repo/file1 1.2", "same");
+		assertEquals("same", getContents(onBranch));
+		assertEquals("same", getContents(onTrunk));
+		assertEquals(4, cache.getSize());
+		ResourceVariantCache.closeCache(CACHE_ID);
+
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		cache = ResourceVariantCache.getCache(CACHE_ID);
+		assertEquals(4, cache.getSize());
+		cache.getCacheEntry("repo/file1 1.1.2.1").dispose();
+		TestVariant restored = new TestVariant("repo/file1 1.2", "changed");
+		assertEquals("same", getContents(restored));
+		assertEquals(0, restored.fetches);
+		assertEquals(4, cache.getSize());
+	}
+
+	public void testSharedContentsEvictedTogether() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		cache.setMaxSize(10);
+		TestVariant onBranch = new TestVariant("repo/file1 1.1.2.1", "same");
+		TestVariant other = new TestVariant("repo/file2 1.1", "diff");
+		TestVariant onTrunk = new TestVariant("repo/file1 1.2", "same");
+		assertEquals("same", getContents(onBranch));
+		assertEquals("diff", getContents(other));
+		assertEquals("same", getContents(onTrunk));
+		assertEquals(8, cache.getSize());
+
+		// the shared contents were used more recently than the other contents
+		TestVariant more = new TestVariant("repo/file3 1.1", "more");
+		assertEquals("more", getContents(more));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(8, cache.getSize());
+		assertFalse(other.isContentsCached());
+		assertTrue(onBranch.isContentsCached());
+		assertTrue(onTrunk.isContentsCached());
+		assertTrue(more.isContentsCached());
+
+		// evicting the shared contents evicts all the entries that refer to them
+		assertEquals("last", getContents(new TestVariant("repo/file4 1.1", "last")));
+		assertEquals(3, cache.getEvictionCount());
+		assertEquals(8, cache.getSize());
+		assertFalse(onBranch.isContentsCached());
+		assertFalse(onTrunk.isContentsCached());
+		assertTrue(more.isContentsCached());
+	}
+
+	public void testIndexWrittenBeforeClose() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		TestVariant variant = new TestVariant("repo/file1 1.1", "contents");
+		assertEquals("contents", getContents(variant));
+		File index = TeamPlugin.getPlugin().getStateLocation().append(".cache").append(CACHE_ID).append(".index").toFile();
+		long start = System.currentTimeMillis();
+		while (!index.exists()) {
+			assertTrue("The index was not written", System.currentTimeMillis() - start < 30000);
+			Thread.sleep(100);
+		}
+		byte[] written = new byte[(int) index.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(index));
+		try {
+			in.readFully(written);
+		} finally {
+			in.close();
+		}
+
+		// restore the index written while the cache was open, as after a crash
+		ResourceVariantCache.closeCache(CACHE_ID);
+		OutputStream out = new FileOutputStream(index);
+		try {
+			out.write(written);
+		} finally {
+			out.close();
+		}
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		assertEquals(8, cache.getSize());
+		TestVariant restored = new TestVariant("repo/file1 1.1", "changed");
+		assertEquals("contents", getContents(restored));
+		assertEquals(0, restored.fetches);
+	}
+
+	public void testConcurrentWrites() throws Exception {
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		TestVariant first = new TestVariant("repo/file1 1.1", "first");
+		TestVariant second = new TestVariant("repo/file2 1.1", "second");
+		final ResourceVariantCacheEntry[] entries = new ResourceVariantCacheEntry[] {
+			cache.add("repo/file1 1.1", first), cache.add("repo/file2 1.1", second) };
+		Rendezvous rendezvous = new Rendezvous();
+		final RendezvousStream[] streams = new RendezvousStream[] {
+			new RendezvousStream(rendezvous, "first"), new RendezvousStream(rendezvous, "second") };
+		final Exception[] errors = new Exception[2];
+		Thread[] writers = new Thread[2];
+		for (int i = 0; i < writers.length; i++) {
+			final int index = i;
+			writers[i] = new Thread() {
+				public void run() {
+					try {
+						entries[index].setContents(streams[index], null);
+					} catch (Exception e) {
+						errors[index] = e;
+					}
+				}
+			};
+			writers[i].start();
+		}
+		for (int i = 0; i < writers.length; i++) {
+			writers[i].join();
+			if (errors[i] != null)
+				throw errors[i];
+			assertTrue("The entries were not written concurrently", streams[i].overlapped);
+		}
+		assertEquals("first", getContents(first));
+		assertEquals("second", getContents(second));
+		assertEquals(0, first.fetches);
+		assertEquals(0, second.fetches);
+	}
+}
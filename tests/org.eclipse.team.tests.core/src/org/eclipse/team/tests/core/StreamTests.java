@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,15 +10,22 @@
  *******************************************************************************/
 package org.eclipse.team.tests.core;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import org.eclipse.team.internal.core.streams.CRLFtoLFInputStream;
 import org.eclipse.team.internal.core.streams.LFtoCRLFInputStream;
+import org.eclipse.team.internal.core.streams.TimeoutInputStream;
+import org.eclipse.team.internal.core.streams.TimeoutOutputStream;
 
 public class StreamTests extends TestCase {
 
@@ -68,6 +75,58 @@ public class StreamTests extends TestCase {
 		assertStreamEquals(inExpected, in);
 	}
 
+	public void testTimeoutInputStream() throws IOException {
+		PipedOutputStream out = new PipedOutputStream();
+		InputStream in = new TimeoutInputStream(new PipedInputStream(out), 16, 100, 1000);
+		try {
+			in.read();
+			fail("Read should have timed out");
+		} catch (InterruptedIOException e) {
+			assertEquals(0, e.bytesTransferred);
+		}
+		byte[] bytes = new byte[100];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		out.write(bytes);
+		out.close();
+		assertStreamEquals(new ByteArrayInputStream(bytes), in);
+	}
+
+	public void testTimeoutOutputStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TimeoutOutputStream timeoutOut = new TimeoutOutputStream(out, 16, 1000, 1000);
+		timeoutOut.write("The quick brown fox".getBytes());
+		timeoutOut.write(' ');
+		timeoutOut.flush();
+		timeoutOut.write("jumped over the lazy dog.".getBytes());
+		timeoutOut.close();
+		assertEquals("The quick brown fox jumped over the lazy dog.", out.toString());
+	}
+
+	public void testTimeoutOutputStreamFlush() throws Exception {
+		byte[] bytes = new byte[40];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		// a flush requested while the task that drains the buffer is finishing must reach the sink
+		for (int i = 0; i < 300; i++) {
+			ByteArrayOutputStream sink = new ByteArrayOutputStream();
+			TimeoutOutputStream out = new TimeoutOutputStream(new BufferedOutputStream(sink, 1024), 16, 1000, -1);
+			out.write(bytes);
+			if (i % 3 != 0) {
+				Thread.sleep(i % 3);
+			}
+			out.flush();
+			long start = System.currentTimeMillis();
+			while (sink.size() < bytes.length && System.currentTimeMillis() - start < 5000) {
+				Thread.sleep(1);
+			}
+			assertEquals("Flushed bytes not written", bytes.length, sink.size());
+			out.close();
+		}
+	}
+
 	private void assertStreamEquals(InputStream in1, InputStream in2) throws IOException {
 		try {
 			for (;;) {
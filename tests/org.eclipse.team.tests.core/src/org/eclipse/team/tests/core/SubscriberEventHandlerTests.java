@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.util.*;
+
+import junit.framework.Test;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.team.core.ITeamStatus;
+import org.eclipse.team.core.TeamException;
+import org.eclipse.team.core.TeamStatus;
+import org.eclipse.team.core.subscribers.Subscriber;
+import org.eclipse.team.core.synchronize.SyncInfo;
+import org.eclipse.team.core.synchronize.SyncInfoSet;
+import org.eclipse.team.core.variants.IResourceVariant;
+import org.eclipse.team.core.variants.IResourceVariantComparator;
+import org.eclipse.team.internal.core.subscribers.SubscriberSyncInfoEventHandler;
+
+/**
+ * Tests the collection of synchronization states by the subscriber event
+ * handler, which collects the states of a changed folder, or of the roots it is
+ * initialized with, on several jobs if the subscriber is thread safe.
+ */
+public class SubscriberEventHandlerTests extends TeamTest {
+
+	private static final int FOLDERS = 10;
+	private static final int FILES = 20;
+	private static final String FAILING_FILE = "file3.txt";
+
+	/*
+	 * A subscriber whose resources are all outgoing additions. The threads that
+	 * compute the states are recorded.
+	 */
+	private static class TestSubscriber extends Subscriber {
+		private final boolean threadSafe;
+		private final Set failing = new HashSet();
+		private final Set threads = new HashSet();
+		private long delay;
+		private int calls;
+		private boolean collectOutOfSync;
+
+		TestSubscriber(boolean threadSafe) {
+			this.threadSafe = threadSafe;
+		}
+		public String getName() {
+			return "Subscriber Event Handler Tests";
+		}
+		public boolean isThreadSafe() {
+			return threadSafe;
+		}
+		public IResourceVariantComparator getResourceComparator() {
+			return new IResourceVariantComparator() {
+				public boolean isThreeWay() {
+					return false;
+				}
+				public boolean compare(IResourceVariant base, IResourceVariant remote) {
+					return false;
+				}
+				public boolean compare(IResource local, IResourceVariant remote) {
+					return false;
+				}
+			};
+		}
+		public SyncInfo getSyncInfo(IResource resource) throws TeamException {
+			long sleep;
+			synchronized (this) {
+				calls++;
+				threads.add(Thread.currentThread());
+				sleep = delay;
+			}
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (failing.contains(resource.getName()))
+				throw new TeamException("Cannot compute the state of " + resource.getFullPath());
+			SyncInfo info = new SyncInfo(resource, null, null, getResourceComparator()) {
+				protected int calculateKind() throws TeamException {
+					return SyncInfo.OUTGOING | SyncInfo.ADDITION;
+				}
+			};
+			info.init();
+			return info;
+		}
+		public void collectOutOfSync(IResource[] resources, int depth, final SyncInfoSet set, final IProgressMonitor monitor) {
+			if (!isCollectOutOfSync()) {
+				// The states are only collected for the changes queued by the tests
+				return;
+			}
+			for (int i = 0; i < resources.length; i++) {
+				try {
+					resources[i].accept(new IResourceVisitor() {
+						public boolean visit(IResource resource) throws CoreException {
+							set.add(getSyncInfo(resource));
+							monitor.worked(1);
+							return true;
+						}
+					}, depth, false);
+				} catch (CoreException e) {
+					set.addError(new TeamStatus(IStatus.ERROR, "org.eclipse.team.tests.core", ITeamStatus.RESOURCE_SYNC_INFO_ERROR, e.getMessage(), e, resources[i]));
+				}
+			}
+		}
+		public boolean isSupervised(IResource resource) throws TeamException {
+			return true;
+		}
+		public IResource[] members(IResource resource) throws TeamException {
+			if (resource instanceof IContainer) {
+				try {
+					return ((IContainer) resource).members();
+				} catch (CoreException e) {
+					throw TeamException.asTeamException(e);
+				}
+			}
+			return new IResource[0];
+		}
+		public void refresh(IResource[] resources, int depth, IProgressMonitor monitor) throws TeamException {
+			// Nothing to do
+		}
+		public IResource[] roots() {
+			return ResourcesPlugin.getWorkspace().getRoot().getProjects();
+		}
+		synchronized void setDelay(long delay) {
+			this.delay = delay;
+		}
+		synchronized void setCollectOutOfSync(boolean collectOutOfSync) {
+			this.collectOutOfSync = collectOutOfSync;
+		}
+		synchronized boolean isCollectOutOfSync() {
+			return collectOutOfSync;
+		}
+		synchronized int getCalls() {
+			return calls;
+		}
+		synchronized int getThreadCount() {
+			return threads.size();
+		}
+	}
+
+	/*
+	 * A handler that records the errors it is given and whether they are
+	 * given to it on the handler job.
+	 */
+	private static class TestHandler extends SubscriberSyncInfoEventHandler {
+		private final Set errors = new HashSet();
+		private boolean errorOffHandlerJob;
+		private boolean canceled;
+
+		TestHandler(Subscriber subscriber, IResource root) {
+			this(subscriber, new IResource[] { root });
+		}
+		TestHandler(Subscriber subscriber, IResource[] roots) {
+			super(subscriber, roots);
+		}
+		protected void handleException(CoreException e, IResource resource, int code, String message) {
+			super.handleException(e, resource, code, message);
+			synchronized (this) {
+				if (Job.getJobManager().currentJob() != getEventHandlerJob())
+					errorOffHandlerJob = true;
+				errors.add(resource);
+			}
+		}
+		protected void handleCancel(OperationCanceledException e) {
+			super.handleCancel(e);
+			synchronized (this) {
+				canceled = true;
+			}
+		}
+		Set getCollected() {
+			return new HashSet(Arrays.asList(getSyncSetInput().getSyncSet().getResources()));
+		}
+		synchronized Set getErrors() {
+			return new HashSet(errors);
+		}
+		synchronized boolean isErrorOffHandlerJob() {
+			return errorOffHandlerJob;
+		}
+		synchronized boolean isCanceled() {
+			return canceled;
+		}
+	}
+
+	private IProject project;
+	private Set resources;
+
+	public SubscriberEventHandlerTests() {
+		super();
+	}
+
+	public SubscriberEventHandlerTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(SubscriberEventHandlerTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		List hierarchy = new ArrayList();
+		for (int i = 0; i < FOLDERS; i++) {
+			hierarchy.add("folder" + i + "/");
+			for (int j = 0; j < FILES; j++) {
+				hierarchy.add("folder" + i + "/file" + j + ".txt");
+			}
+		}
+		project = createProject((String[]) hierarchy.toArray(new String[hierarchy.size()]));
+		resources = new HashSet();
+		project.accept(new IResourceVisitor() {
+			public boolean visit(IResource resource) {
+				resources.add(resource);
+				return true;
+			}
+		});
+	}
+
+	protected void tearDown() throws Exception {
+		project.delete(true, null);
+		super.tearDown();
+	}
+
+	/*
+	 * Collect the states of the project and all its members and wait until the
+	 * handler is done.
+	 */
+	private TestHandler collect(TestSubscriber subscriber) throws InterruptedException {
+		TestHandler handler = new TestHandler(subscriber, project);
+		handler.start();
+		handler.change(project, IResource.DEPTH_INFINITE);
+		waitForHandler(handler);
+		return handler;
+	}
+
+	/*
+	 * Initialize a handler with the folders of the project as roots and wait
+	 * until the handler is done.
+	 */
+	private TestHandler initialize(TestSubscriber subscriber) throws CoreException, InterruptedException {
+		subscriber.setCollectOutOfSync(true);
+		IResource[] folders = project.members();
+		assertEquals(FOLDERS, folders.length);
+		TestHandler handler = new TestHandler(subscriber, folders);
+		handler.start();
+		waitForHandler(handler);
+		return handler;
+	}
+
+	private void waitForHandler(TestHandler handler) throws InterruptedException {
+		Job job = handler.getEventHandlerJob();
+		long start = System.currentTimeMillis();
+		while (job.getState() != Job.NONE || handler.getQueueLength() > 0) {
+			assertTrue("The event handler did not finish", System.currentTimeMillis() - start < 60000);
+			if (job.getState() == Job.NONE)
+				Thread.sleep(10);
+			else
+				job.join();
+		}
+	}
+
+	private Set getResourcesNamed(String name) {
+		Set named = new HashSet();
+		for (Iterator iter = resources.iterator(); iter.hasNext();) {
+			IResource resource = (IResource) iter.next();
+			if (resource.getName().equals(name))
+				named.add(resource);
+		}
+		return named;
+	}
+
+	public void testSequentialByDefault() throws InterruptedException {
+		TestSubscriber subscriber = new TestSubscriber(false);
+		subscriber.setDelay(1);
+		TestHandler handler = collect(subscriber);
+		try {
+			assertEquals(resources, handler.getCollected());
+			assertEquals("The states of a subscriber that is not thread safe were computed concurrently", 1, subscriber.getThreadCount());
+		} finally {
+			handler.shutdown();
+		}
+	}
+
+	public void testParallelCollection() throws InterruptedException {
+		TestSubscriber subscriber = new TestSubscriber(true);
+		subscriber.setDelay(1);
+		TestHandler handler = collect(subscriber);
+		try {
+			assertEquals(resources, handler.getCollected());
+			assertEquals(resources.size(), subscriber.getCalls());
+			if (Runtime.getRuntime().availableProcessors() > 1)
+				assertTrue("The states were not collected in parallel", subscriber.getThreadCount() > 1);
+		} finally {
+			handler.shutdown();
+		}
+		TestHandler sequential = collect(new TestSubscriber(false));
+		try {
+			assertEquals(sequential.getCollected(), handler.getCollected());
+		} finally {
+			sequential.shutdown();
+		}
+	}
+
+	public void testErrorsReportedOnHandlerJob() throws InterruptedException {
+		Set failed = getResourcesNamed(FAILING_FILE);
+		assertEquals(FOLDERS, failed.size());
+		Set expected = new HashSet(resources);
+		expected.removeAll(failed);
+
+		TestSubscriber subscriber = new TestSubscriber(true);
+		subscriber.failing.add(FAILING_FILE);
+		subscriber.setDelay(1);
+		TestHandler handler = collect(subscriber);
+		try {
+			assertEquals(expected, handler.getCollected());
+			assertEquals(failed, handler.getErrors());
+			assertFalse("An error was reported off the handler job", handler.isErrorOffHandlerJob());
+			assertEquals(failed.size(), handler.getSyncSetInput().getSyncSet().getErrors().length);
+		} finally {
+			handler.shutdown();
+		}
+
+		TestSubscriber sequentialSubscriber = new TestSubscriber(false);
+		sequentialSubscriber.failing.add(FAILING_FILE);
+		TestHandler sequential = collect(sequentialSubscriber);
+		try {
+			assertEquals(sequential.getCollected(), handler.getCollected());
+			assertEquals(sequential.getErrors(), handler.getErrors());
+		} finally {
+			sequential.shutdown();
+		}
+	}
+
+	public void testCancelation() throws InterruptedException {
+		TestSubscriber subscriber = new TestSubscriber(true);
+		subscriber.setDelay(20);
+		TestHandler handler = new TestHandler(subscriber, project);
+		try {
+			handler.start();
+			handler.change(project, IResource.DEPTH_INFINITE);
+			long start = System.currentTimeMillis();
+			while (subscriber.getCalls() < 2 * FILES) {
+				assertTrue("The collection did not start", System.currentTimeMillis() - start < 60000);
+				Thread.sleep(10);
+			}
+			handler.getEventHandlerJob().cancel();
+			waitForHandler(handler);
+			assertTrue("The cancelation was not handled", handler.isCanceled());
+			int calls = subscriber.getCalls();
+			assertTrue("The collection was not canceled", calls < resources.size());
+			// The worker jobs must not outlive the handler job
+			Thread.sleep(500);
+			assertEquals("States were computed after the collection was canceled", calls, subscriber.getCalls());
+		} finally {
+			handler.shutdown();
+		}
+	}
+
+	public void testParallelInitialization() throws CoreException, InterruptedException {
+		Set expected = new HashSet(resources);
+		expected.remove(project);
+
+		TestSubscriber subscriber = new TestSubscriber(true);
+		subscriber.setDelay(1);
+		TestHandler handler = initialize(subscriber);
+		try {
+			assertEquals(expected, handler.getCollected());
+			assertEquals(expected.size(), subscriber.getCalls());
+			if (Runtime.getRuntime().availableProcessors() > 1)
+				assertTrue("The roots were not collected in parallel", subscriber.getThreadCount() > 1);
+		} finally {
+			handler.shutdown();
+		}
+
+		TestSubscriber sequentialSubscriber = new TestSubscriber(false);
+		TestHandler sequential = initialize(sequentialSubscriber);
+		try {
+			assertEquals(expected, sequential.getCollected());
+			assertEquals("The roots of a subscriber that is not thread safe were collected concurrently", 1, sequentialSubscriber.getThreadCount());
+		} finally {
+			sequential.shutdown();
+		}
+	}
+}
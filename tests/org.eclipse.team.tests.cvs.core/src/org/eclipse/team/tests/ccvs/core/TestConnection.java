@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -38,6 +38,10 @@ public class TestConnection implements IServerConnection {
 	
 	private ByteArrayInputStream serverResponse;
 	
+	// A connection that is no longer alive answers a noop request with an error
+	private boolean alive = true;
+	private int noopCount;
+	
 	private static final String VALID_SERVER_REQUESTS = "Valid-requests Root Valid-responses valid-requests Repository Directory Max-dotdot Static-directory Sticky Checkin-prog Update-prog Entry Kopt Checkin-time Modified Is-modified UseUnchanged Unchanged Notify Questionable Case Argument Argumentx Global_option Gzip-stream wrapper-sendme-rcsOptions Set Kerberos-encrypt Gssapi-encrypt Gssapi-authenticate expand-modules ci co update diff log rlog add remove update-patches gzip-file-contents status rdiff tag rtag import admin export history release watch-on watch-off watch-add watch-remove watchers editors init annotate rannotate noop version";
 
 	public static IServerConnection createConnection(ICVSRepositoryLocation location, String password) {
@@ -113,7 +117,29 @@ public class TestConnection implements IServerConnection {
 	protected void respondToSentLine(String sentLine) {
 		if (sentLine.equals("valid-requests")) {
 			serverResponse = new ByteArrayInputStream((VALID_SERVER_REQUESTS + "\nok\n").getBytes());
+		} else if (sentLine.equals("noop")) {
+			noopCount++;
+			serverResponse = new ByteArrayInputStream((alive ? "ok\n" : "error  \n").getBytes());
+		} else if (sentLine.equals("version")) {
+			serverResponse = new ByteArrayInputStream("M Concurrent Versions System (CVS) 1.11.22 (client/server)\nok\n".getBytes());
 		}
 	}
+	
+	/**
+	 * Sets whether the connection answers noop requests as if the server
+	 * had not dropped it.
+	 * @param alive whether the connection is alive
+	 */
+	public void setAlive(boolean alive) {
+		this.alive = alive;
+	}
+	
+	/**
+	 * Returns the number of noop requests sent on the connection.
+	 * @return the number of noop requests
+	 */
+	public int getNoopCount() {
+		return noopCount;
+	}
 
 }
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.client.Command;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.connection.Connection;
+import org.eclipse.team.internal.ccvs.core.connection.ConnectionPool;
+import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.tests.ccvs.core.CVSTestSetup;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.TestConnection;
+
+/**
+ * Tests the reuse of pooled connections by sessions. The sessions connect
+ * with the test connection method, which answers the requests sent when a
+ * connection is opened.
+ */
+public class ConnectionPoolTest extends EclipseTest {
+
+	private static final String KEY = "key";
+
+	private CVSRepositoryLocation location;
+	private ConnectionPool pool;
+	private boolean determineVersion;
+	private int compressionLevel;
+
+	public ConnectionPoolTest() {
+		super();
+	}
+
+	public ConnectionPoolTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(ConnectionPoolTest.class);
+		return new CVSTestSetup(suite);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		location = CVSRepositoryLocation.fromString(":test:user:password@host:/pool");
+		pool = location.getConnectionPool();
+		assertNotNull("Connection pooling is not enabled", pool);
+		pool.clear();
+		// disable version determination to reduce traffic
+		determineVersion = CVSProviderPlugin.getPlugin().isDetermineVersionEnabled();
+		CVSProviderPlugin.getPlugin().setDetermineVersionEnabled(false);
+		compressionLevel = CVSProviderPlugin.getPlugin().getCompressionLevel();
+		CVSProviderPlugin.getPlugin().setCompressionLevel(0);
+	}
+
+	protected void tearDown() throws Exception {
+		// closes the pooled connections and removes the preferences of the location
+		location.dispose();
+		CVSProviderPlugin.getPlugin().setCompressionLevel(compressionLevel);
+		CVSProviderPlugin.getPlugin().setDetermineVersionEnabled(determineVersion);
+		super.tearDown();
+	}
+
+	private Session openSession() throws CVSException {
+		Session session = new Session(location, CVSWorkspaceRoot.getCVSFolderFor(ResourcesPlugin.getWorkspace().getRoot()));
+		session.open(DEFAULT_MONITOR, false /* read-only */);
+		return session;
+	}
+
+	/*
+	 * Open a session and return it to the pool. Return the server connection
+	 * it used.
+	 */
+	private TestConnection poolConnection() throws CVSException {
+		Session session = openSession();
+		TestConnection connection = TestConnection.currentConnection;
+		session.close();
+		return connection;
+	}
+
+	private Connection openConnection() throws CVSException {
+		Connection connection = new Connection(location, TestConnection.createConnection(location, "password"));
+		connection.open(DEFAULT_MONITOR);
+		return connection;
+	}
+
+	public void testAcquireAndRelease() throws CVSException {
+		ConnectionPool pool = new ConnectionPool();
+		Connection first = openConnection();
+		Connection second = openConnection();
+		Set none = Collections.EMPTY_SET;
+		pool.release(new ConnectionPool.Entry(first, KEY, "valid", 0, none));
+		pool.release(new ConnectionPool.Entry(second, KEY, "valid", 0, none));
+		assertEquals(2, pool.size());
+
+		// the most recently released connection is reused first
+		ConnectionPool.Entry entry = pool.acquire(KEY, null);
+		assertSame(second, entry.getConnection());
+		assertEquals("valid", entry.getValidRequests());
+		assertNull(pool.acquire("other key", null));
+		assertSame(first, pool.acquire(KEY, null).getConnection());
+		assertNull(pool.acquire(KEY, null));
+		assertEquals(0, pool.size());
+		assertTrue(first.isEstablished());
+		assertTrue(second.isEstablished());
+		first.close();
+		second.close();
+
+		// the connection that has been idle the longest is closed when the pool is full
+		Connection[] connections = new Connection[ConnectionPool.MAX_IDLE_CONNECTIONS + 1];
+		for (int i = 0; i < connections.length; i++) {
+			connections[i] = openConnection();
+			pool.release(new ConnectionPool.Entry(connections[i], KEY, "valid", 0, none));
+		}
+		assertEquals(ConnectionPool.MAX_IDLE_CONNECTIONS, pool.size());
+		assertFalse(connections[0].isEstablished());
+		pool.clear();
+		assertEquals(0, pool.size());
+		for (int i = 1; i < connections.length; i++) {
+			assertFalse(connections[i].isEstablished());
+		}
+	}
+
+	public void testGlobalOptionsOfEntry() throws CVSException {
+		ConnectionPool pool = new ConnectionPool();
+		Set options = new HashSet();
+		options.add("-n");
+		Connection connection = openConnection();
+		pool.release(new ConnectionPool.Entry(connection, KEY, "valid", 0, options));
+		// the options in effect on the connection must be among the given ones
+		assertNull(pool.acquire(KEY, Collections.EMPTY_SET));
+		Set more = new HashSet(options);
+		more.add("-q");
+		assertSame(connection, pool.acquire(KEY, more).getConnection());
+		pool.clear();
+	}
+
+	public void testIdleEviction() throws CVSException, InterruptedException {
+		ConnectionPool pool = new ConnectionPool(100, ConnectionPool.CHECK_AFTER);
+		Connection connection = openConnection();
+		pool.release(new ConnectionPool.Entry(connection, KEY, "valid", 0, Collections.EMPTY_SET));
+		// the eviction job closes the connection without the pool being used
+		long start = System.currentTimeMillis();
+		while (connection.isEstablished()) {
+			assertTrue("The idle connection was not closed", System.currentTimeMillis() - start < 10000);
+			Thread.sleep(50);
+		}
+		assertEquals(0, pool.size());
+		assertNull(pool.acquire(KEY, null));
+	}
+
+	public void testClearAll() throws CVSException {
+		ConnectionPool pool = new ConnectionPool();
+		Connection connection = openConnection();
+		pool.release(new ConnectionPool.Entry(connection, KEY, "valid", 0, Collections.EMPTY_SET));
+		TestConnection pooled = poolConnection();
+		assertEquals(1, this.pool.size());
+		// called when the plug-in is stopped
+		ConnectionPool.clearAll();
+		assertEquals(0, pool.size());
+		assertEquals(0, this.pool.size());
+		assertFalse(connection.isEstablished());
+		assertNotSame(pooled, poolConnection());
+	}
+
+	public void testSessionReusesConnection() throws CVSException {
+		TestConnection pooled = poolConnection();
+		assertEquals(1, pool.size());
+		Session session = openSession();
+		try {
+			assertSame("The pooled connection was not reused", pooled, TestConnection.currentConnection);
+			assertEquals(0, pool.size());
+		} finally {
+			session.close();
+		}
+		assertEquals(1, pool.size());
+	}
+
+	public void testCompressionChangesKey() throws CVSException {
+		TestConnection pooled = poolConnection();
+		CVSProviderPlugin.getPlugin().setCompressionLevel(5);
+		TestConnection compressed = poolConnection();
+		assertNotSame("A connection was reused with another compression level", pooled, compressed);
+		assertEquals(2, pool.size());
+
+		// the compression of the whole stream is negotiated differently
+		location.setStreamCompressionEnabled(true);
+		Session session = openSession();
+		try {
+			assertNotSame(pooled, TestConnection.currentConnection);
+			assertNotSame(compressed, TestConnection.currentConnection);
+			assertEquals(2, pool.size());
+		} finally {
+			session.close();
+		}
+		assertEquals(3, pool.size());
+
+		location.setStreamCompressionEnabled(false);
+		CVSProviderPlugin.getPlugin().setCompressionLevel(0);
+		session = openSession();
+		try {
+			assertSame(pooled, TestConnection.currentConnection);
+		} finally {
+			session.close();
+		}
+	}
+
+	public void testStaleConnectionChecked() throws CVSException, InterruptedException {
+		TestConnection pooled = poolConnection();
+		// a connection that has been idle for a while is checked with a noop request
+		Thread.sleep(ConnectionPool.CHECK_AFTER + 100);
+		Session session = openSession();
+		try {
+			assertSame(pooled, TestConnection.currentConnection);
+			assertEquals(1, pooled.getNoopCount());
+		} finally {
+			session.close();
+		}
+		// the check is only needed after the connection has been idle
+		session = openSession();
+		try {
+			assertSame(pooled, TestConnection.currentConnection);
+			assertEquals(1, pooled.getNoopCount());
+		} finally {
+			session.close();
+		}
+
+		// a connection that the server has dropped is replaced
+		pooled.setAlive(false);
+		Thread.sleep(ConnectionPool.CHECK_AFTER + 100);
+		session = openSession();
+		try {
+			assertEquals(2, pooled.getNoopCount());
+			assertNotSame("A dropped connection was reused", pooled, TestConnection.currentConnection);
+			assertEquals(0, pool.size());
+		} finally {
+			session.close();
+		}
+		assertEquals(1, pool.size());
+	}
+
+	public void testGlobalOptionsFallBack() throws CVSException {
+		Session session = openSession();
+		TestConnection withOption = TestConnection.currentConnection;
+		try {
+			// global options stay in effect on the server
+			session.sendGlobalOption("-n");
+		} finally {
+			session.close();
+		}
+		assertEquals(1, pool.size());
+
+		// the first command of the session does not send the pooled option
+		session = openSession();
+		try {
+			assertSame(withOption, TestConnection.currentConnection);
+			assertTrue(Command.VERSION.execute(session, location, DEFAULT_MONITOR).isOK());
+			assertNotSame("A connection was used with a global option in effect", withOption, TestConnection.currentConnection);
+			assertEquals("The connection was not returned to the pool", 1, pool.size());
+		} finally {
+			session.close();
+		}
+		assertEquals(2, pool.size());
+	}
+}
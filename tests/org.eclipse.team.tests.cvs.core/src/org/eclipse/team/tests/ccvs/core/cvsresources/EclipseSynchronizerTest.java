@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.team.tests.ccvs.core.cvsresources;
 
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -577,6 +578,44 @@ public class EclipseSynchronizerTest extends EclipseTest {
 
 	}
 	
+	public void testReadAndWriteEntries() throws CoreException, CVSException {
+		IProject project = getUniqueTestProject(getName());
+		IFolder cvsFolder = project.getFolder(SyncFileWriter.CVS_DIRNAME);
+		cvsFolder.create(false /*force*/, true /*local*/, null);
+		String entries = "/b.txt/1.2/Sat Feb  9 21:44:02 2002//Tbranch\r\n"
+			+ "/a.txt/1.1 locked by: me/Mon Feb 09 21:44:02 2002/-kkv/\r\n"
+			+ "D/folder////\r\n"
+			+ "D\r\n"
+			+ "/added.txt/0/dummy timestamp/-kb/\r\n"
+			+ "/removed.txt/1.1/Result of merge//Nversion\r\n";
+		String entriesLog = "R /removed.txt/1.1///\n"
+			+ "A /new.txt/1.1/Result of merge+Sat Feb  9 21:44:02 2002//\n";
+		cvsFolder.getFile(SyncFileWriter.ENTRIES).create(new ByteArrayInputStream(entries.getBytes()), false /*force*/, null);
+		cvsFolder.getFile(SyncFileWriter.ENTRIES_LOG).create(new ByteArrayInputStream(entriesLog.getBytes()), false /*force*/, null);
+		
+		// the entries are sorted by name and written the same way as ResourceSyncInfo does
+		String[] expected = new String[] {
+			"/a.txt/1.1/Sat Feb  9 21:44:02 2002//",
+			"/added.txt/0/dummy timestamp/-kb/",
+			"/b.txt/1.2/Sat Feb  9 21:44:02 2002//Tbranch",
+			"D/folder////",
+			"/new.txt/1.1/Result of merge+Sat Feb  9 21:44:02 2002//"
+		};
+		byte[][] infos = SyncFileWriter.readAllResourceSync(project);
+		assertEquals(expected.length, infos.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], new String(infos[i]));
+		}
+		
+		SyncFileWriter.writeAllResourceSync(project, infos);
+		assertFalse(cvsFolder.getFile(SyncFileWriter.ENTRIES_LOG).exists());
+		byte[][] written = SyncFileWriter.readAllResourceSync(project);
+		assertEquals(infos.length, written.length);
+		for (int i = 0; i < infos.length; i++) {
+			assertTrue(Arrays.equals(infos[i], written[i]));
+		}
+	}
+	
 	public void testMembers() throws CoreException, CVSException {
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
 		IProject project1 = getUniqueTestProject(getName() + "1");
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.client.ReceiveFileInputStream;
+import org.eclipse.team.internal.core.streams.CRLFtoLFInputStream;
+import org.eclipse.team.internal.core.streams.LFtoCRLFInputStream;
+import org.eclipse.team.internal.core.streams.SizeConstrainedInputStream;
+
+/**
+ * Compares the stream that receives the contents of a file sent by a CVS
+ * server with the chain of streams it replaces.
+ */
+public class ReceiveFileInputStreamTests extends TestCase {
+
+	// gzip header flags
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	// the response that follows the contents of the file
+	private static final String NEXT_RESPONSE = "ok\n";
+
+	private static final String[] TEXTS = {
+		"", "a", "abc", "\n", "\r", "\r\n", "\r\r\n", "\r\r", "\n\r", "abc\r", "abc\r\r",
+		"x\r\r\n\rx", "\n\n\r\n\r",
+		"The \r\n quick brown \n fox \r\n\n\r\r\n jumped \n\n over \r\n the \n lazy dog.\r\n",
+		getLongText()
+	};
+
+	// the read lengths, 0 reads a byte at a time
+	private static final int[] READ_LENGTHS = { 0, 1, 2, 3, 8192 };
+
+	// the number of bytes the response stream returns at most for a read
+	private static final int[] RESPONSE_CHUNKS = { 1, 3, 8191, Integer.MAX_VALUE };
+
+	private static final int[] MODES = { ReceiveFileInputStream.BINARY, ReceiveFileInputStream.TO_CRLF, ReceiveFileInputStream.DETECT_CRLF };
+
+	/*
+	 * A response stream that returns at most a given number of bytes for a read
+	 */
+	private static class ChunkedInputStream extends FilterInputStream {
+		private final int chunk;
+
+		ChunkedInputStream(InputStream in, int chunk) {
+			super(in);
+			this.chunk = chunk;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, chunk));
+		}
+	}
+
+	public ReceiveFileInputStreamTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ReceiveFileInputStreamTests.class);
+	}
+
+	/*
+	 * Lines of LF, CRLF, CR CR LF and lone CR that span several buffers.
+	 */
+	private static String getLongText() {
+		StringBuffer buffer = new StringBuffer();
+		String[] ends = { "\n", "\r\n", "\r\r\n", "\r" };
+		for (int i = 0; i < 5000; i++) {
+			buffer.append("line ").append(i).append(ends[i % ends.length]);
+		}
+		return buffer.toString();
+	}
+
+	private static InputStream receive(InputStream response, long size, boolean compressed, int mode) {
+		return new ReceiveFileInputStream(response, size, compressed, mode, null, 1024, new NullProgressMonitor()) {
+			protected void updateMonitor(long bytesRead, long bytesTotal, IProgressMonitor monitor) {
+				// progress is not tested
+			}
+		};
+	}
+
+	/*
+	 * Read the contents as the streams used to before they were fused.
+	 */
+	private static byte[] receiveWithStreamChain(byte[] sent, boolean compressed, int mode) throws IOException {
+		InputStream in = new SizeConstrainedInputStream(new ByteArrayInputStream(sent), sent.length, true);
+		if (compressed)
+			in = new GZIPInputStream(in);
+		if (mode == ReceiveFileInputStream.TO_CRLF)
+			in = new LFtoCRLFInputStream(new CRLFtoLFInputStream(in));
+		try {
+			// the line end translators may return empty reads
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] readAll(InputStream in, int length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (length == 0) {
+			int b;
+			while ((b = in.read()) != -1) {
+				out.write(b);
+			}
+		} else {
+			byte[] buffer = new byte[length];
+			int count;
+			while ((count = in.read(buffer, 0, length)) != -1) {
+				assertTrue("Nothing was read", count > 0);
+				out.write(buffer, 0, count);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] contents, int flags) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x1f);
+		out.write(0x8b);
+		out.write(Deflater.DEFLATED);
+		out.write(flags);
+		out.write(new byte[] { 1, 2, 3, 4, 0, 3 }); // modification time, extra flags and OS
+		if ((flags & FEXTRA) != 0) {
+			out.write(5);
+			out.write(0);
+			out.write(new byte[] { 'A', 'B', 2, 0, 0 });
+		}
+		if ((flags & FNAME) != 0) {
+			out.write("file.txt".getBytes());
+			out.write(0);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			out.write("comment".getBytes());
+			out.write(0);
+		}
+		if ((flags & FHCRC) != 0) {
+			CRC32 crc = new CRC32();
+			crc.update(out.toByteArray());
+			writeShort(out, (int) crc.getValue());
+		}
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater);
+		deflaterOut.write(contents);
+		deflaterOut.finish();
+		deflater.end();
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		writeInt(out, crc.getValue());
+		writeInt(out, contents.length);
+		return out.toByteArray();
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value & 0xFF);
+		out.write((value >> 8) & 0xFF);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, long value) {
+		writeShort(out, (int) value);
+		writeShort(out, (int) (value >> 16));
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static String getNextResponse(InputStream response) throws IOException {
+		return new String(readAll(response, 8192));
+	}
+
+	/*
+	 * Receive the sent bytes in every way and check that the result is the one of the
+	 * stream chain and that the response can be read on.
+	 */
+	private void assertReceivedAsBefore(byte[] sent, boolean compressed, int mode) throws IOException {
+		byte[] expected = receiveWithStreamChain(sent, compressed, mode);
+		for (int i = 0; i < RESPONSE_CHUNKS.length; i++) {
+			for (int j = 0; j < READ_LENGTHS.length; j++) {
+				InputStream response = new ChunkedInputStream(new ByteArrayInputStream(concat(sent, NEXT_RESPONSE.getBytes())), RESPONSE_CHUNKS[i]);
+				InputStream in = receive(response, sent.length, compressed, mode);
+				byte[] received;
+				try {
+					received = readAll(in, READ_LENGTHS[j]);
+				} finally {
+					in.close();
+				}
+				String message = "mode " + mode + ", compressed " + compressed + ", chunk " + RESPONSE_CHUNKS[i] + ", read length " + READ_LENGTHS[j];
+				assertEquals(message, new String(expected), new String(received));
+				assertEquals(message, NEXT_RESPONSE, getNextResponse(response));
+			}
+		}
+	}
+
+	public void testSameAsStreamChain() throws IOException {
+		for (int i = 0; i < TEXTS.length; i++) {
+			byte[] contents = TEXTS[i].getBytes();
+			for (int j = 0; j < MODES.length; j++) {
+				// CRLF found in DETECT_CRLF mode is logged for a file, which is not tested here
+				if (MODES[j] == ReceiveFileInputStream.DETECT_CRLF && TEXTS[i].indexOf("\r\n") != -1)
+					continue;
+				assertReceivedAsBefore(contents, false, MODES[j]);
+				assertReceivedAsBefore(gzip(contents, 0), true, MODES[j]);
+			}
+		}
+	}
+
+	public void testGzipHeaderFields() throws IOException {
+		byte[] contents = TEXTS[TEXTS.length - 2].getBytes();
+		int[] flags = { FNAME, FEXTRA, FHCRC, FCOMMENT, FNAME | FEXTRA | FHCRC, FNAME | FEXTRA | FHCRC | FCOMMENT };
+		for (int i = 0; i < flags.length; i++) {
+			byte[] sent = gzip(contents, flags[i]);
+			assertEquals(new String(contents), new String(receiveWithStreamChain(sent, true, ReceiveFileInputStream.BINARY)));
+			assertReceivedAsBefore(sent, true, ReceiveFileInputStream.BINARY);
+			assertReceivedAsBefore(sent, true, ReceiveFileInputStream.TO_CRLF);
+		}
+	}
+
+	public void testBadChecksum() throws IOException {
+		byte[] contents = TEXTS[TEXTS.length - 2].getBytes();
+		byte[] sent = gzip(contents, 0);
+		// corrupt the CRC and then the length in the trailer
+		int[] offsets = { sent.length - 8, sent.length - 4 };
+		for (int i = 0; i < offsets.length; i++) {
+			byte[] corrupt = (byte[]) sent.clone();
+			corrupt[offsets[i]] ^= 1;
+			InputStream response = new ByteArrayInputStream(concat(corrupt, NEXT_RESPONSE.getBytes()));
+			InputStream in = receive(response, corrupt.length, true, ReceiveFileInputStream.BINARY);
+			try {
+				readAll(in, 8192);
+				fail("Corrupt trailer not detected");
+			} catch (IOException e) {
+				// expected
+			} finally {
+				in.close();
+			}
+			assertEquals(NEXT_RESPONSE, getNextResponse(response));
+		}
+	}
+
+	public void testTruncated() throws IOException {
+		byte[] contents = TEXTS[TEXTS.length - 1].getBytes();
+		byte[] sent = gzip(contents, FNAME);
+		// cut in the header, the compressed data and the trailer
+		int[] lengths = { 0, 5, 12, sent.length / 2, sent.length - 6, sent.length - 1 };
+		for (int i = 0; i < lengths.length; i++) {
+			byte[] truncated = new byte[lengths[i]];
+			System.arraycopy(sent, 0, truncated, 0, truncated.length);
+			InputStream in = receive(new ByteArrayInputStream(truncated), truncated.length, true, ReceiveFileInputStream.TO_CRLF);
+			try {
+				readAll(in, 8192);
+				fail("Truncated contents not detected, length " + truncated.length);
+			} catch (IOException e) {
+				// expected
+			} finally {
+				in.close();
+			}
+		}
+		// uncompressed contents end where the response stream ends
+		byte[] text = TEXTS[TEXTS.length - 2].getBytes();
+		InputStream in = receive(new ByteArrayInputStream(text), text.length + 10, false, ReceiveFileInputStream.BINARY);
+		try {
+			assertEquals(new String(text), new String(readAll(in, 8192)));
+		} finally {
+			in.close();
+		}
+	}
+
+	public void testCloseDiscardsRemainder() throws IOException {
+		byte[] contents = TEXTS[TEXTS.length - 1].getBytes();
+		byte[][] sent = { contents, gzip(contents, 0) };
+		int[] reads = { 0, 1, 100, 20000 };
+		for (int i = 0; i < sent.length; i++) {
+			for (int j = 0; j < MODES.length; j++) {
+				if (MODES[j] == ReceiveFileInputStream.DETECT_CRLF)
+					continue;
+				for (int k = 0; k < reads.length; k++) {
+					InputStream response = new ChunkedInputStream(new ByteArrayInputStream(concat(sent[i], NEXT_RESPONSE.getBytes())), 1000);
+					InputStream in = receive(response, sent[i].length, i == 1, MODES[j]);
+					byte[] buffer = new byte[reads[k]];
+					int read = 0;
+					while (read < buffer.length) {
+						int count = in.read(buffer, read, buffer.length - read);
+						assertTrue(count > 0);
+						read += count;
+					}
+					in.close();
+					in.close();
+					assertEquals(NEXT_RESPONSE, getNextResponse(response));
+					try {
+						in.read();
+						fail("Read after close");
+					} catch (IOException e) {
+						// expected
+					}
+				}
+			}
+		}
+	}
+}
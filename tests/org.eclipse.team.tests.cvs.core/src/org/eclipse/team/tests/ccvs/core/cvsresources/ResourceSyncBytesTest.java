@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -89,6 +89,43 @@ public class ResourceSyncBytesTest extends EclipseTest {
 		assertNull(getBytesForSlot(input, -1));
 	}
 
+	public void testSlotAccess() throws CVSException {
+		byte[] syncBytes = "/file.txt/-1.3 locked by: user;/Tue Mar  4 19:47:36 2003/-kb/Tbranch".getBytes();
+		assertEquals("file.txt", ResourceSyncInfo.getName(syncBytes));
+		assertEquals("1.3", ResourceSyncInfo.getRevision(syncBytes));
+		assertTrue(ResourceSyncInfo.isDeletion(syncBytes));
+		assertFalse(ResourceSyncInfo.isAddition(syncBytes));
+		assertTrue(ResourceSyncInfo.isBinary(syncBytes));
+		assertFalse(ResourceSyncInfo.isMerge(syncBytes));
+		assertEqualBytes("Tbranch", ResourceSyncInfo.getTagBytes(syncBytes));
+		
+		// setters return new bytes and leave the given bytes unchanged
+		assertEqualBytes("/file.txt/1.4/Tue Mar  4 19:47:36 2003/-kb/Tbranch", ResourceSyncInfo.setSlot(syncBytes, 2, "1.4".getBytes()));
+		assertEqualBytes("/file.txt/-1.3 locked by: user;/Tue Mar  4 19:47:36 2003/-kb/", ResourceSyncInfo.setTag(syncBytes, new byte[0]));
+		assertEqualBytes("/file.txt/1.3 locked by: user;/restored+Tue Mar  4 19:47:36 2003/-kb/Tbranch", ResourceSyncInfo.convertFromDeletion(syncBytes));
+		assertEquals("1.3", ResourceSyncInfo.getRevision(syncBytes));
+		
+		syncBytes = "/file.txt/-1.3//-ko/".getBytes();
+		assertFalse(ResourceSyncInfo.isBinary(syncBytes));
+		assertEqualBytes("/file.txt/1.3/restored+/-ko/", ResourceSyncInfo.convertFromDeletion(syncBytes));
+		assertEqualBytes("/file.txt/-1.3/Result of merge/-ko/", ResourceSyncInfo.convertToDeletion("/file.txt/1.3/Result of merge/-ko/".getBytes()));
+		assertEqualBytes("/file.txt/1.3/Result of merge/-ko/", ResourceSyncInfo.convertFromDeletion("/file.txt/-1.3/Result of merge/-ko/".getBytes()));
+		
+		// malformed bytes
+		try {
+			ResourceSyncInfo.getRevision("/file.txt".getBytes());
+			fail("Expected exception for missing revision");
+		} catch (CVSException e) {
+			// expected
+		}
+		try {
+			ResourceSyncInfo.setSlot("/file.txt/1.1".getBytes(), 0, new byte[0]);
+			fail("Expected exception for slot 0");
+		} catch (CVSException e) {
+			// expected
+		}
+	}
+
 	public void testSendEntry() throws CVSException, ParseException {
 		ICVSRepositoryLocation location = KnownRepositories.getInstance().getRepository(":test:user:password@host:/path");
 		// disable version detemrination to reduce traffic
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -9,7 +9,12 @@
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 package org.eclipse.team.tests.ccvs.core.cvsresources;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -19,6 +24,7 @@ import org.eclipse.team.internal.ccvs.core.CVSException;
 import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
 import org.eclipse.team.internal.ccvs.core.syncinfo.FolderSyncInfo;
 import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
+import org.eclipse.team.internal.ccvs.core.util.CVSDateFormatter;
 import org.eclipse.team.tests.ccvs.core.CVSTestSetup;
 import org.eclipse.team.tests.ccvs.core.EclipseTest;
 
@@ -144,6 +150,35 @@ public class ResourceSyncInfoTest extends EclipseTest {
 		assertTrue(date2.equals(date3));
 	}
 	
+	public void testTimestampConversions() throws ParseException {
+		SimpleDateFormat entryLineFormat = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy", Locale.US);
+		entryLineFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		SimpleDateFormat serverFormat = new SimpleDateFormat("dd MMM yyyy HH:mm:ss", Locale.US);
+		serverFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			Date date = new Date(Math.abs(random.nextLong() % 4000000000000L) / 1000 * 1000);
+			String expected = entryLineFormat.format(date);
+			if (expected.charAt(8) == '0')
+				expected = expected.substring(0, 8) + ' ' + expected.substring(9);
+			String entryLine = CVSDateFormatter.dateToEntryLine(date);
+			assertEquals(expected, entryLine);
+			assertEquals(date, CVSDateFormatter.entryLineToDate(entryLine));
+			String serverStamp = serverFormat.format(date);
+			assertEquals(serverStamp + " GMT", CVSDateFormatter.dateToNotifyServer(date));
+			assertEquals(date, CVSDateFormatter.serverStampToDate(serverStamp + " -0000"));
+		}
+		assertEquals(CVSDateFormatter.serverStampToDate("07 Apr 1996 01:29:26 -0000"), CVSDateFormatter.serverStampToDate("7 Apr 1996 03:29:26 +0200"));
+		assertEquals(CVSDateFormatter.entryLineToDate("Sun Apr  7 01:29:26 1996"), CVSDateFormatter.logStampToDate("1996-04-07 01:29:26 +0000 GMT"));
+		assertEquals(CVSDateFormatter.entryLineToDate("Sun Apr  7 01:29:26 1996"), CVSDateFormatter.logStampToDate("1996/04/07 01:29:26 GMT"));
+		try {
+			CVSDateFormatter.entryLineToDate("Sun Apr  7");
+			fail();
+		} catch (ParseException e) {
+			// Error expected
+		}
+	}
+	
 	public void testRevisionComparison() {
 		assertTrue(ResourceSyncInfo.isLaterRevision("1.9", "1.8"));
 		assertTrue( ! ResourceSyncInfo.isLaterRevision("1.8", "1.8"));
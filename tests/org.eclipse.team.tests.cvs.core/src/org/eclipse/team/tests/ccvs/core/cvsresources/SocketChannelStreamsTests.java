@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.team.internal.ccvs.core.connection.SocketChannelStreams;
+
+/**
+ * Tests the timeouts and the cancelation of the streams of a socket channel
+ * against a server socket on the loopback interface.
+ */
+public class SocketChannelStreamsTests extends TestCase {
+
+	private static final int TIMEOUT = 1; // seconds
+
+	private ServerSocket server;
+	private Socket peer;
+	private SocketChannelStreams streams;
+
+	public SocketChannelStreamsTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(SocketChannelStreamsTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+	}
+
+	protected void tearDown() throws Exception {
+		if (streams != null)
+			streams.close();
+		if (peer != null)
+			peer.close();
+		server.close();
+		super.tearDown();
+	}
+
+	private void connect(int timeout, NullProgressMonitor monitor) throws IOException {
+		streams = SocketChannelStreams.open("127.0.0.1", server.getLocalPort(), timeout, monitor);
+		peer = server.accept();
+	}
+
+	public void testTransfer() throws IOException {
+		connect(TIMEOUT, new NullProgressMonitor());
+		byte[] bytes = new byte[100000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		OutputStream out = streams.getOutputStream();
+		out.write(bytes);
+		out.flush();
+		assertEquals(bytes, read(peer.getInputStream(), bytes.length));
+		peer.getOutputStream().write(bytes);
+		peer.getOutputStream().flush();
+		assertEquals(bytes, read(streams.getInputStream(), bytes.length));
+		peer.close();
+		assertEquals(-1, streams.getInputStream().read());
+	}
+
+	public void testReadTimeout() throws IOException {
+		connect(TIMEOUT, new NullProgressMonitor());
+		InputStream in = streams.getInputStream();
+		long start = System.currentTimeMillis();
+		try {
+			in.read();
+			fail("Read should have timed out");
+		} catch (InterruptedIOException e) {
+			assertTrue("Read timed out too early", System.currentTimeMillis() - start >= TIMEOUT * 1000L);
+		}
+		// the stream is still usable after a timeout
+		peer.getOutputStream().write("ok".getBytes());
+		peer.getOutputStream().flush();
+		assertEquals("ok", new String(read(in, 2)));
+	}
+
+	public void testWriteTimeout() throws IOException {
+		connect(TIMEOUT, new NullProgressMonitor());
+		// the peer never reads so the socket buffers fill up
+		OutputStream out = streams.getOutputStream();
+		byte[] bytes = new byte[65536];
+		long written = 0;
+		try {
+			while (written < 256L * 1024 * 1024) {
+				out.write(bytes);
+				written += bytes.length;
+			}
+			fail("Write should have timed out");
+		} catch (InterruptedIOException e) {
+			assertTrue(written > 0);
+		}
+	}
+
+	public void testReadCanceled() throws IOException, InterruptedException {
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		connect(0, monitor);
+		Thread canceler = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					// cancel now
+				}
+				monitor.setCanceled(true);
+			}
+		});
+		canceler.start();
+		try {
+			streams.getInputStream().read();
+			fail("Read should have been canceled");
+		} catch (OperationCanceledException e) {
+			// expected
+		} finally {
+			canceler.join();
+		}
+	}
+
+	public void testWriteCanceled() throws IOException, InterruptedException {
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		connect(0, monitor);
+		Thread canceler = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					// cancel now
+				}
+				monitor.setCanceled(true);
+			}
+		});
+		canceler.start();
+		OutputStream out = streams.getOutputStream();
+		byte[] bytes = new byte[65536];
+		long written = 0;
+		try {
+			while (written < 256L * 1024 * 1024) {
+				out.write(bytes);
+				written += bytes.length;
+			}
+			fail("Write should have been canceled");
+		} catch (OperationCanceledException e) {
+			// expected
+		} finally {
+			canceler.join();
+		}
+	}
+
+	public void testConnectCanceled() throws IOException {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		try {
+			// the channel is not opened if the host name is still being resolved
+			// or if the connection is not established immediately
+			streams = SocketChannelStreams.open("127.0.0.1", server.getLocalPort(), TIMEOUT, monitor);
+			peer = server.accept();
+		} catch (OperationCanceledException e) {
+			return;
+		}
+		// the connection was established without waiting, the first read is canceled
+		try {
+			streams.getInputStream().read();
+			fail("Read should have been canceled");
+		} catch (OperationCanceledException e) {
+			// expected
+		}
+	}
+
+	private byte[] read(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int count = 0;
+		while (count < length) {
+			int n = in.read(bytes, count, length - count);
+			if (n == -1)
+				fail("Unexpected end of stream");
+			count += n;
+		}
+		return bytes;
+	}
+
+	private void assertEquals(byte[] expected, byte[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("Bytes differ at " + i, expected[i], actual[i]);
+		}
+	}
+}
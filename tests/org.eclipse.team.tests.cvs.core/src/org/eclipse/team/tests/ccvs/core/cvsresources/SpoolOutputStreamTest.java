@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.ICVSStorage;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+import org.eclipse.team.internal.ccvs.core.client.SpoolOutputStream;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.tests.ccvs.core.CVSTestSetup;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.TestConnection;
+
+/**
+ * Tests the collection of the contents of files before they are sent, in
+ * memory and in a temporary file beyond the memory limit, and the use of the
+ * collected contents by the session.
+ */
+public class SpoolOutputStreamTest extends EclipseTest {
+
+	// the number of bytes that a session keeps in memory
+	private static final int MAX_SPOOL_MEMORY = 1024 * 1024;
+
+	private CVSRepositoryLocation location;
+	private boolean determineVersion;
+	private int compressionLevel;
+	private Set tempFiles;
+
+	/*
+	 * The contents of a file that is sent. The contents fail to be read after
+	 * the given number of bytes, if any.
+	 */
+	private class TestStorage implements ICVSStorage {
+		private final byte[] contents;
+		private final int failAfter;
+		boolean spilled;
+
+		TestStorage(byte[] contents) {
+			this(contents, -1);
+		}
+		TestStorage(byte[] contents, int failAfter) {
+			this.contents = contents;
+			this.failAfter = failAfter;
+		}
+		public String getName() {
+			return "file.txt";
+		}
+		public void setContents(InputStream stream, int responseType, boolean keepLocalHistory, IProgressMonitor monitor) {
+			fail("The contents of a sent file were set");
+		}
+		public long getSize() {
+			return contents.length;
+		}
+		public InputStream getContents() {
+			return new FilterInputStream(new ByteArrayInputStream(contents)) {
+				private int read;
+				public int read(byte[] b, int off, int len) throws IOException {
+					if (failAfter != -1 && read + len > failAfter) {
+						spilled = !getNewTempFiles().isEmpty();
+						throw new IOException("The contents cannot be read");
+					}
+					int count = super.read(b, off, len);
+					if (count != -1)
+						read += count;
+					return count;
+				}
+			};
+		}
+	}
+
+	public SpoolOutputStreamTest() {
+		super();
+	}
+
+	public SpoolOutputStreamTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(SpoolOutputStreamTest.class);
+		return new CVSTestSetup(suite);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		location = CVSRepositoryLocation.fromString(":test:user:password@host:/spool");
+		// disable version determination to reduce traffic
+		determineVersion = CVSProviderPlugin.getPlugin().isDetermineVersionEnabled();
+		CVSProviderPlugin.getPlugin().setDetermineVersionEnabled(false);
+		// the contents of files are compressed before they are sent
+		compressionLevel = CVSProviderPlugin.getPlugin().getCompressionLevel();
+		CVSProviderPlugin.getPlugin().setCompressionLevel(5);
+		tempFiles = getTempFiles();
+	}
+
+	protected void tearDown() throws Exception {
+		location.dispose();
+		CVSProviderPlugin.getPlugin().setCompressionLevel(compressionLevel);
+		CVSProviderPlugin.getPlugin().setDetermineVersionEnabled(determineVersion);
+		super.tearDown();
+	}
+
+	/*
+	 * Return the temporary files in which contents are collected.
+	 */
+	private static Set getTempFiles() {
+		Set result = new HashSet();
+		File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.startsWith("cvs") && name.endsWith(".tmp"))
+				result.add(files[i]);
+		}
+		return result;
+	}
+
+	private Set getNewTempFiles() {
+		Set result = getTempFiles();
+		result.removeAll(tempFiles);
+		return result;
+	}
+
+	private static byte[] getBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int count; (count = in.read(buffer)) != -1;)
+				out.write(buffer, 0, count);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int getCompressedLength(byte[] contents) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes, 8192);
+		out.write(contents);
+		out.close();
+		return bytes.size();
+	}
+
+	private Session openSession() throws CVSException {
+		Session session = new Session(location, CVSWorkspaceRoot.getCVSFolderFor(ResourcesPlugin.getWorkspace().getRoot()));
+		session.open(DEFAULT_MONITOR, false /* read-only */);
+		return session;
+	}
+
+	private void assertSent(byte[] contents) throws IOException {
+		String sizeLine = "z" + getCompressedLength(contents);
+		assertTrue("The compressed length was not sent", TestConnection.previousLines.contains(sizeLine));
+	}
+
+	public void testGrowthUpToLimit() throws IOException {
+		SpoolOutputStream spool = new SpoolOutputStream(16, 64);
+		assertEquals(16, spool.getCapacity());
+		spool.write(getBytes(10, 1));
+		assertEquals(16, spool.getCapacity());
+		spool.write(getBytes(10, 2));
+		assertEquals(32, spool.getCapacity());
+		// the buffer does not grow beyond the limit
+		spool.write(getBytes(30, 3));
+		assertEquals(64, spool.getCapacity());
+		assertNull(spool.getFile());
+		assertEquals(50, spool.getSize());
+		spool.reset();
+
+		// a write larger than twice the buffer grows it to the size needed
+		spool = new SpoolOutputStream(16, 64);
+		spool.write(getBytes(40, 4));
+		assertEquals(40, spool.getCapacity());
+		spool.reset();
+
+		// the initial size is bounded by the limit as well
+		spool = new SpoolOutputStream(8192, 64);
+		assertEquals(64, spool.getCapacity());
+	}
+
+	public void testSpillAtLimit() throws IOException {
+		SpoolOutputStream spool = new SpoolOutputStream(16, 64);
+		byte[] contents = getBytes(65, 5);
+		// a limit's worth of bytes is kept in memory
+		spool.write(contents, 0, 64);
+		assertNull(spool.getFile());
+		assertEquals(64, spool.getSize());
+		assertTrue(Arrays.equals(getBytes(64, 5), read(spool.getInputStream())));
+
+		spool.reset();
+		spool.write(contents, 0, 64);
+		// one more byte moves the contents to a file
+		spool.write(contents[64]);
+		File file = spool.getFile();
+		assertNotNull(file);
+		assertTrue(file.exists());
+		assertEquals(65, spool.getSize());
+		assertTrue(Arrays.equals(contents, read(spool.getInputStream())));
+		spool.reset();
+		assertNull(spool.getFile());
+		assertFalse("The temporary file was not deleted", file.exists());
+		assertEquals(0, spool.getSize());
+	}
+
+	public void testBufferReused() throws IOException {
+		SpoolOutputStream spool = new SpoolOutputStream(16, 64);
+		spool.write(getBytes(20, 6));
+		spool.write(getBytes(40, 6));
+		assertEquals(64, spool.getCapacity());
+		spool.reset();
+
+		// the grown buffer holds the contents of the next file
+		byte[] contents = getBytes(20, 7);
+		spool.write(contents);
+		assertEquals(64, spool.getCapacity());
+		assertTrue(Arrays.equals(contents, read(spool.getInputStream())));
+		spool.reset();
+
+		// and of the file after one that did not fit
+		spool.write(getBytes(100, 8));
+		assertNotNull(spool.getFile());
+		spool.reset();
+		spool.write(contents);
+		assertNull(spool.getFile());
+		assertEquals(64, spool.getCapacity());
+		assertTrue(Arrays.equals(contents, read(spool.getInputStream())));
+		spool.reset();
+	}
+
+	public void testSendFiles() throws CVSException, IOException {
+		byte[] small = getBytes(1000, 9);
+		// random bytes do not compress so the compressed contents do not fit in memory
+		byte[] large = getBytes(MAX_SPOOL_MEMORY + 1000, 10);
+		final boolean[] spilled = new boolean[1];
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			public void subTask(String name) {
+				spilled[0] |= !getNewTempFiles().isEmpty();
+			}
+		};
+		Session session = openSession();
+		try {
+			session.sendFile(new TestStorage(small), true, true, monitor);
+			assertSent(small);
+			assertFalse(spilled[0]);
+			session.sendFile(new TestStorage(large), true, true, monitor);
+			assertSent(large);
+			assertTrue("The contents were not collected in a file", spilled[0]);
+			assertTrue("The temporary file was not deleted", getNewTempFiles().isEmpty());
+
+			// the memory buffer is used again
+			spilled[0] = false;
+			session.sendFile(new TestStorage(small), true, true, monitor);
+			assertFalse(spilled[0]);
+		} finally {
+			session.close();
+		}
+	}
+
+	public void testSendFileFails() throws CVSException, IOException {
+		byte[] contents = getBytes(2 * MAX_SPOOL_MEMORY, 11);
+		TestStorage failing = new TestStorage(contents, MAX_SPOOL_MEMORY + MAX_SPOOL_MEMORY / 2);
+		Session session = openSession();
+		try {
+			try {
+				session.sendFile(failing, true, true, DEFAULT_MONITOR);
+				fail("The contents were sent");
+			} catch (CVSException e) {
+				// expected
+			}
+			assertTrue("The contents were not collected in a file", failing.spilled);
+			assertTrue("The temporary file was not deleted", getNewTempFiles().isEmpty());
+
+			// the session can send the next file
+			byte[] next = getBytes(1000, 12);
+			session.sendFile(new TestStorage(next), true, true, DEFAULT_MONITOR);
+			assertSent(next);
+			assertTrue(getNewTempFiles().isEmpty());
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.team.internal.ccvs.core.connection.ZlibInputStream;
+import org.eclipse.team.internal.ccvs.core.connection.ZlibOutputStream;
+
+/**
+ * Tests that the bytes written to a compressed request or response stream
+ * can be read completely once the stream is flushed, without waiting for the
+ * stream to be closed.
+ */
+public class ZlibStreamsTests extends TestCase {
+
+	/*
+	 * A connection whose reads fail instead of blocking when all of the bytes
+	 * written so far have been read.
+	 */
+	private static class Channel {
+		private byte[] buffer = new byte[1024];
+		private int position;
+		private int limit;
+
+		final OutputStream out = new OutputStream() {
+			public void write(int b) {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+			public void write(byte[] b, int off, int len) {
+				if (limit + len > buffer.length) {
+					byte[] grown = new byte[Math.max(buffer.length * 2, limit + len)];
+					System.arraycopy(buffer, 0, grown, 0, limit);
+					buffer = grown;
+				}
+				System.arraycopy(b, off, buffer, limit, len);
+				limit += len;
+			}
+		};
+
+		final InputStream in = new InputStream() {
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+			}
+			public int read(byte[] b, int off, int len) {
+				if (position == limit)
+					throw new AssertionFailedError("The read would block for bytes that were not flushed");
+				int n = Math.min(len, limit - position);
+				System.arraycopy(buffer, position, b, off, n);
+				position += n;
+				return n;
+			}
+		};
+	}
+
+	/*
+	 * Flushes by changing the compression level as on runtimes older than
+	 * Java 7.
+	 */
+	private static class FallbackOutputStream extends ZlibOutputStream {
+		FallbackOutputStream(OutputStream out, int level) {
+			super(out, level);
+		}
+		protected Method getSyncFlushMethod() {
+			return null;
+		}
+	}
+
+	public ZlibStreamsTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ZlibStreamsTests.class);
+	}
+
+	public void testSyncFlush() throws IOException {
+		// flushes with Deflater.SYNC_FLUSH on Java 7 and later
+		Channel channel = new Channel();
+		assertFlushedBytesRead(channel, new ZlibOutputStream(channel.out, 6));
+	}
+
+	public void testLevelChangeFlush() throws IOException {
+		Channel channel = new Channel();
+		assertFlushedBytesRead(channel, new FallbackOutputStream(channel.out, 6));
+	}
+
+	public void testLevelChangeFlushBestSpeed() throws IOException {
+		Channel channel = new Channel();
+		assertFlushedBytesRead(channel, new FallbackOutputStream(channel.out, Deflater.BEST_SPEED));
+	}
+
+	/*
+	 * Writes requests of various sizes and reads each of them after it has
+	 * been flushed, the output stream is never closed.
+	 */
+	private void assertFlushedBytesRead(Channel channel, ZlibOutputStream out) throws IOException {
+		ZlibInputStream in = new ZlibInputStream(channel.in);
+		Random random = new Random(7);
+		int[] sizes = new int[] { 1, 2, 17, 100, 8191, 8192, 8193, 20000, 100000, 3 };
+		for (int i = 0; i < sizes.length; i++) {
+			byte[] bytes = new byte[sizes[i]];
+			for (int j = 0; j < bytes.length; j++) {
+				// alternate between compressible text and random bytes
+				bytes[j] = (byte) (i % 2 == 0 ? 'a' + j % 7 : random.nextInt());
+			}
+			if (i == sizes.length - 1) {
+				for (int j = 0; j < bytes.length; j++) {
+					out.write(bytes[j]);
+				}
+			} else {
+				out.write(bytes);
+			}
+			out.flush();
+			if (i % 3 == 0)
+				out.flush(); // nothing left to flush
+			byte[] read = new byte[bytes.length];
+			int count = 0;
+			while (count < read.length) {
+				int n = in.read(read, count, read.length - count);
+				assertTrue("Unexpected end of stream", n > 0);
+				count += n;
+			}
+			for (int j = 0; j < bytes.length; j++) {
+				assertEquals("Request " + i + " differs at " + j, bytes[j], read[j]);
+			}
+		}
+		out.close();
+		in.close();
+	}
+
+	public void testEndOfStream() throws IOException {
+		Channel channel = new Channel();
+		byte[] bytes = "The quick brown fox jumped over the lazy dog.".getBytes();
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] output = new byte[1024];
+		while (!deflater.finished()) {
+			channel.out.write(output, 0, deflater.deflate(output));
+		}
+		deflater.end();
+		ZlibInputStream in = new ZlibInputStream(channel.in);
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(bytes[i], in.read());
+		}
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	public void testDictionary() throws IOException {
+		Channel channel = new Channel();
+		Deflater deflater = new Deflater();
+		deflater.setDictionary("quick brown".getBytes());
+		deflater.setInput("The quick brown fox".getBytes());
+		deflater.finish();
+		byte[] output = new byte[1024];
+		while (!deflater.finished()) {
+			channel.out.write(output, 0, deflater.deflate(output));
+		}
+		deflater.end();
+		ZlibInputStream in = new ZlibInputStream(channel.in);
+		try {
+			in.read(new byte[100], 0, 100);
+			fail("A stream that needs a dictionary should not be read");
+		} catch (ZipException e) {
+			// expected
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,7 +27,9 @@ import org.eclipse.team.core.TeamException;
 import org.eclipse.team.core.variants.CachedResourceVariant;
 import org.eclipse.team.core.variants.IResourceVariant;
 import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
 import org.eclipse.team.internal.ccvs.core.CVSTag;
+import org.eclipse.team.internal.ccvs.core.ICVSFile;
 import org.eclipse.team.internal.ccvs.core.ICVSFolder;
 import org.eclipse.team.internal.ccvs.core.ICVSRemoteFile;
 import org.eclipse.team.internal.ccvs.core.ICVSRemoteFolder;
@@ -38,8 +40,10 @@ import org.eclipse.team.internal.ccvs.core.ILogEntry;
 import org.eclipse.team.internal.ccvs.core.client.Command.LocalOption;
 import org.eclipse.team.internal.ccvs.core.client.listeners.LogEntry;
 import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.internal.ccvs.core.resources.FileContentCachingService;
 import org.eclipse.team.internal.ccvs.core.resources.RemoteFolder;
 import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTree;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFile;
 import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTreeBuilder;
 import org.eclipse.team.internal.ccvs.ui.operations.CheckoutToRemoteFolderOperation;
 import org.eclipse.team.internal.ccvs.ui.operations.TagInRepositoryOperation;
@@ -141,6 +145,83 @@ public class RemoteResourceTest extends EclipseTest {
 		assertRemoteMatchesLocal("testFolderAddition", tree, copy);
 	}
 	
+	/**
+	 * RemoteFolderTreeBuilder test
+	 * 
+	 * Add several folders remotely and ensure that the remote tree built
+	 * using concurrent sessions is the same as the one built using a single
+	 * session.
+	 */
+	public void testConcurrentFolderAddition() throws TeamException, CoreException, IOException {
+		
+		// Create a test project
+		IProject project = createProject("testConcurrentFolderAddition", new String[] { "file1.txt", "folder1/", "folder1/a.txt"});
+		
+		// Checkout and modify a copy
+		IProject copy = checkoutCopy(project, "-copy");
+		setContentsAndEnsureModified(copy.getFile("folder1/a.txt"));
+		addResources(copy, new String[] { "folder2/b.txt", "folder3/folder4/c.txt", "folder1/folder5/d.txt", "folder6/" }, false);
+		commitResources(new IResource[] {copy}, IResource.DEPTH_INFINITE);
+
+		// Build the remote tree from the project with and without concurrent sessions
+		boolean enabled = CVSProviderPlugin.getPlugin().isConcurrentTreeBuildingEnabled();
+		RemoteFolderTree concurrentTree;
+		RemoteFolderTree singleTree;
+		try {
+			CVSProviderPlugin.getPlugin().setConcurrentTreeBuildingEnabled(true);
+			concurrentTree = RemoteFolderTreeBuilder.buildRemoteTree(getRepository(), project, CVSTag.DEFAULT, DEFAULT_MONITOR);
+			CVSProviderPlugin.getPlugin().setConcurrentTreeBuildingEnabled(false);
+			singleTree = RemoteFolderTreeBuilder.buildRemoteTree(getRepository(), project, CVSTag.DEFAULT, DEFAULT_MONITOR);
+		} finally {
+			CVSProviderPlugin.getPlugin().setConcurrentTreeBuildingEnabled(enabled);
+		}
+		assertEquals(Path.EMPTY, singleTree, concurrentTree, true);
+		assertRemoteMatchesLocal("testConcurrentFolderAddition", concurrentTree, copy);
+	}
+	
+	/**
+	 * FileContentCachingService test
+	 * 
+	 * Change more files remotely than are fetched by a single request and
+	 * ensure that the contents of all of them are cached when they are fetched
+	 * using concurrent sessions.
+	 */
+	public void testConcurrentFileContents() throws TeamException, CoreException, IOException {
+		
+		// Files are fetched in groups of 64, the last group has a single file
+		String[] files = new String[2 * 64 + 1];
+		String[] resources = new String[files.length + 2];
+		resources[0] = "folder1/";
+		resources[1] = "folder2/";
+		for (int i = 0; i < files.length; i++) {
+			files[i] = (i % 2 == 0 ? "folder1/" : "folder2/") + "file" + i + ".txt";
+			resources[i + 2] = files[i];
+		}
+		IProject project = createProject("testConcurrentFileContents", resources);
+		
+		// Checkout and modify a copy
+		IProject copy = checkoutCopy(project, "-copy");
+		for (int i = 0; i < files.length; i++) {
+			setContentsAndEnsureModified(copy.getFile(files[i]));
+		}
+		commitResources(new IResource[] {copy}, IResource.DEPTH_INFINITE);
+		
+		// Build the remote tree and fetch the contents using concurrent sessions
+		boolean enabled = CVSProviderPlugin.getPlugin().isConcurrentTreeBuildingEnabled();
+		RemoteFolderTree tree;
+		try {
+			CVSProviderPlugin.getPlugin().setConcurrentTreeBuildingEnabled(true);
+			tree = FileContentCachingService.buildRemoteTree(getRepository(), CVSWorkspaceRoot.getCVSFolderFor(project), CVSTag.DEFAULT, DEFAULT_MONITOR);
+		} finally {
+			CVSProviderPlugin.getPlugin().setConcurrentTreeBuildingEnabled(enabled);
+		}
+		for (int i = 0; i < files.length; i++) {
+			ICVSFile file = tree.getFile(files[i]);
+			assertTrue("Contents of " + files[i] + " were not fetched", ((RemoteFile)file).isContentsCached());
+			assertTrue("Contents of " + files[i] + " do not match", compareContent(getContents(file), copy.getFile(files[i]).getContents()));
+		}
+	}
+	
 	/**
 	 * RemoteFolderTreeBuilder test
 	 * 